@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.index.engine;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.util.BytesRef;
+import org.havenask.common.bytes.BytesReference;
+import org.havenask.common.xcontent.XContentBuilder;
+import org.havenask.common.xcontent.XContentFactory;
+import org.havenask.common.xcontent.XContentType;
+import org.havenask.engine.index.mapper.VectorField;
+import org.havenask.index.engine.Engine.Operation;
+import org.havenask.index.mapper.IdFieldMapper;
+import org.havenask.index.mapper.KeywordFieldMapper;
+import org.havenask.index.mapper.ParseContext;
+import org.havenask.index.mapper.ParsedDocument;
+import org.havenask.index.mapper.SeqNoFieldMapper;
+import org.havenask.index.mapper.SourceFieldMapper;
+import org.havenask.index.mapper.Uid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Ha3DocEncoder} with the map based toHaIndex + buildWriteRequest path.
+ */
+@Fork(2)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class Ha3DocEncoderBenchmark {
+    @Param({ "10", "50" })
+    public int fields;
+
+    @Param({ "0", "768" })
+    public int dims;
+
+    private ParsedDocument parsedDocument;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(0);
+        ParseContext.Document document = new ParseContext.Document();
+        XContentBuilder source = XContentFactory.jsonBuilder().startObject();
+        for (int i = 0; i < fields; i++) {
+            if (i % 2 == 0) {
+                String value = "value_" + random.nextInt() + "_中文";
+                document.add(new KeywordFieldMapper.KeywordField("keyword_" + i, new BytesRef(value), new FieldType()));
+                source.field("keyword_" + i, value);
+            } else {
+                long value = random.nextLong();
+                document.add(new SortedNumericDocValuesField("long_" + i, value));
+                source.field("long_" + i, value);
+            }
+        }
+        if (dims > 0) {
+            float[] vector = new float[dims];
+            for (int i = 0; i < dims; i++) {
+                vector[i] = random.nextFloat();
+            }
+            document.add(new VectorField("vector", vector, new FieldType()));
+            source.array("vector", vector);
+        }
+        source.endObject();
+        BytesReference sourceBytes = BytesReference.bytes(source);
+
+        String id = "id_" + random.nextInt();
+        Field versionField = new NumericDocValuesField("_version", 1);
+        SeqNoFieldMapper.SequenceIDFields seqID = SeqNoFieldMapper.SequenceIDFields.emptySeqID();
+        document.add(new Field(IdFieldMapper.NAME, Uid.encodeId(id), IdFieldMapper.Defaults.FIELD_TYPE));
+        document.add(versionField);
+        document.add(seqID.seqNo);
+        document.add(seqID.seqNoDocValue);
+        document.add(seqID.primaryTerm);
+        BytesRef ref = sourceBytes.toBytesRef();
+        document.add(new StoredField(SourceFieldMapper.NAME, ref.bytes, ref.offset, ref.length));
+        parsedDocument = new ParsedDocument(
+            versionField,
+            seqID,
+            id,
+            "_doc",
+            null,
+            Collections.singletonList(document),
+            sourceBytes,
+            XContentType.JSON,
+            null
+        );
+    }
+
+    @Benchmark
+    public Object haIndexMap() throws IOException {
+        return HavenaskEngine.buildWriteRequest("table", 0, Operation.TYPE.INDEX, HavenaskEngine.toHaIndex(parsedDocument)).getSource();
+    }
+
+    @Benchmark
+    public Object streamingEncoder() throws IOException {
+        return Ha3DocEncoder.encode(parsedDocument, Operation.TYPE.INDEX);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.rpc;
+
+import org.havenask.client.ha.SqlResponse;
+import org.havenask.common.bytes.BytesArray;
+import org.havenask.common.bytes.BytesReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ColumnarSqlResponse} with the String based {@link SqlResponse} parsing of a qrs full_json fetch result.
+ * Run with {@code -prof gc} to compare the allocation rate as well.
+ */
+@Fork(2)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ColumnarSqlResponseBenchmark {
+    @Param({ "100", "10000" })
+    public int rows;
+
+    @Param({ "10", "50" })
+    public int sourceFields;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(0);
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"total_time\":8.126,\"has_soft_failure\":false,\"covered_percent\":1.0,\"row_count\":")
+            .append(rows)
+            .append(",\"format_type\":\"full_json\",\"search_info\":{},\"rpc_info\":\"\",\"sql_result\":{\"data\":[");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("[\"id_").append(i).append("\",").append(random.nextDouble() * 10).append(",\"{");
+            for (int f = 0; f < sourceFields; f++) {
+                if (f > 0) {
+                    sb.append(',');
+                }
+                if (f % 2 == 0) {
+                    sb.append("\\\"keyword_").append(f).append("\\\":\\\"value_").append(random.nextInt()).append("_中文\\\"");
+                } else {
+                    sb.append("\\\"long_").append(f).append("\\\":").append(random.nextLong());
+                }
+            }
+            sb.append("}\",\"r").append(i % 10).append("\"]");
+        }
+        sb.append("],\"column_name\":[\"_id\",\"_score\",\"_source\",\"_routing\"],")
+            .append("\"column_type\":[\"multi_char\",\"double\",\"multi_char\",\"multi_char\"]},")
+            .append("\"error_info\":{\"ErrorCode\":0,\"Error\":\"ERROR_NONE\",\"Message\":\"\"}}");
+        body = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public double sqlResponse() throws IOException {
+        // EntityUtils.toString + SqlResponse.parse, _source再转换为BytesArray
+        SqlResponse response = SqlResponse.parse(new String(body, StandardCharsets.UTF_8));
+        double sum = 0;
+        Object[][] data = response.getSqlResult().getData();
+        for (int i = 0; i < response.getRowCount(); i++) {
+            sum += ((Number) data[i][1]).floatValue();
+            BytesReference source = new BytesArray((String) data[i][2]);
+            sum += source.length();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double columnarSqlResponse() throws IOException {
+        ColumnarSqlResponse response = ColumnarSqlResponse.parse(new ByteArrayInputStream(body));
+        double sum = 0;
+        ColumnarSqlResponse.DoubleColumn scores = (ColumnarSqlResponse.DoubleColumn) response.getColumn(1);
+        ColumnarSqlResponse.BytesColumn sources = (ColumnarSqlResponse.BytesColumn) response.getColumn(2);
+        for (int i = 0; i < response.getRowCount(); i++) {
+            sum += (float) scores.getDouble(i);
+            sum += sources.getBytes(i).length();
+        }
+        return sum;
+    }
+}
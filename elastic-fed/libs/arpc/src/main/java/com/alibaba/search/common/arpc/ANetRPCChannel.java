@@ -14,6 +14,8 @@
 
 package com.alibaba.search.common.arpc;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,17 +31,28 @@ import com.google.protobuf.RpcCallback;
 import com.google.protobuf.RpcChannel;
 import com.google.protobuf.RpcController;
 
+/**
+ * Rpc channel over one or more connections to the same endpoint. With more
+ * than one connection each call goes to the connected one with the fewest
+ * pending packets, ties are broken round-robin. Calls posted on different
+ * connections may be served out of order.
+ */
 public class ANetRPCChannel implements RpcChannel, BlockingRpcChannel {
 	private final static Logger logger = LoggerFactory.
 	        getLogger(ANetRPCChannel.class);
 
-	private final Connection connection;
+	private final Connection[] connections;
+	private final AtomicInteger nextConnection = new AtomicInteger();
 	private final MessageCodec messageCodec;
 	private PacketHandler packetHandler;
 	private boolean postBlocking;
 	
 	public ANetRPCChannel(Connection connection) {
-		this.connection = connection;
+		this(new Connection[] { connection });
+	}
+
+	public ANetRPCChannel(Connection[] connections) {
+		this.connections = connections;
 		this.messageCodec = new DefaultMessageCodec();
 		this.packetHandler = new ANetRPCPacketHandler(messageCodec);
 		this.postBlocking = true;
@@ -60,7 +73,7 @@ public class ANetRPCChannel implements RpcChannel, BlockingRpcChannel {
 		RpcCallbackContext context = new RpcCallbackContext(anetController, 
 					request, responsePrototype, done); 
 		
-		boolean succ = connection.postPacket(packet, packetHandler, 
+		boolean succ = selectConnection().postPacket(packet, packetHandler, 
 				context, anetController.getRequestTimeout(), postBlocking);
 		if (!succ) {
 			setFailed(anetController, ErrorCode.ARPC_ERROR_POST_PACKET, done);	
@@ -99,23 +112,49 @@ public class ANetRPCChannel implements RpcChannel, BlockingRpcChannel {
 	}
 	
 	public void setPostQueueSizeLimit(int size) {
-		if (connection != null && size >= 1) {
-			connection.setQueueLimit(size);
+		if (size >= 1) {
+			for (Connection connection : connections) {
+				connection.setQueueLimit(size);
+			}
 		}
 	}
 	
 	public int getPostQueueSizeLimit() {
-		if (connection != null) {
-			return connection.getQueueLimit();
+		if (connections.length > 0) {
+			return connections[0].getQueueLimit();
 		}
 		return 0;
 	}
 	
+	/**
+	 * @return true only if every pooled connection is connected, so that
+	 * the channel manager reopens the whole pool when one of them is lost.
+	 */
 	public boolean isOpened() {
-		if (connection == null) {
+		if (connections.length == 0) {
 			return false;
 		}
-		return connection.isConnected();
+		for (Connection connection : connections) {
+			if (connection == null || !connection.isConnected()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getConnectionCount() {
+		return connections.length;
+	}
+
+	/**
+	 * @return packets posted on this channel and not answered yet
+	 */
+	public int getPendingCount() {
+		int pending = 0;
+		for (Connection connection : connections) {
+			pending += connection.getPendingCount();
+		}
+		return pending;
 	}
 	
 	public void setPacketHandler(PacketHandler packetHandler) {
@@ -126,7 +165,35 @@ public class ANetRPCChannel implements RpcChannel, BlockingRpcChannel {
 	    if (limit <= 0) {
 	        return;
 	    }
-	    connection.setQueueLimit(limit);
+	    for (Connection connection : connections) {
+	        connection.setQueueLimit(limit);
+	    }
+	}
+
+	Connection selectConnection() {
+		if (connections.length == 1) {
+			return connections[0];
+		}
+		int start = (nextConnection.getAndIncrement() & Integer.MAX_VALUE)
+				% connections.length;
+		Connection selected = null;
+		int minPending = Integer.MAX_VALUE;
+		for (int i = 0; i < connections.length; i++) {
+			Connection connection = connections[(start + i) % connections.length];
+			if (!connection.isConnected()) {
+				continue;
+			}
+			int pending = connection.getPendingCount();
+			if (pending < minPending) {
+				selected = connection;
+				minPending = pending;
+				if (pending == 0) {
+					break;
+				}
+			}
+		}
+		// all closed, let postPacket report the failure
+		return selected != null ? selected : connections[start];
 	}
 	
 	private void setFailed(ANetRPCController controller, int ec, 
@@ -140,7 +207,9 @@ public class ANetRPCChannel implements RpcChannel, BlockingRpcChannel {
 	}
 	
 	void close() {
-	    connection.close();
+	    for (Connection connection : connections) {
+	        connection.close();
+	    }
 	}
 
 }
@@ -15,8 +15,7 @@
 package com.alibaba.search.common.arpc;
 
 import com.alibaba.search.common.arpc.util.MutexPool;
-import java.util.HashMap;
-
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.slf4j.Logger;
@@ -36,8 +35,8 @@ public class ANetRPCChannelManager {
 
 	private MutexPool<Long> mutexPool = new MutexPool<>();
 	private final ReadWriteLock disposeLock = new ReentrantReadWriteLock();
-	private HashMap<Long, ANetRPCChannel> channelMap =
-            new HashMap<Long, ANetRPCChannel>();
+	private ConcurrentHashMap<Long, ANetRPCChannel> channelMap =
+            new ConcurrentHashMap<Long, ANetRPCChannel>();
     private Transport transport;
 
 	public ANetRPCChannelManager() {
@@ -76,7 +75,26 @@ public class ANetRPCChannelManager {
 	public ANetRPCChannel openChannel(String host, int port, boolean blocking,
 	        int postQueueLimit)
 	{
-		logger.debug("Open channel " + host + ":" + port);
+		return openChannel(host, port, blocking, postQueueLimit,
+				Constants.DEFAULT_CONNECTION_POOL_SIZE);
+	}
+
+	/**
+	 * @param host either hostname or ip
+	 * @param port port
+	 * @param blocking whether block if the post queue is full
+	 * @param postQueueLimit limit of the post queue of each connection
+	 * @param poolSize number of connections the channel spreads calls over
+	 * @return rpc channel which you can invoke rpc calles or null if failed.
+	 *
+	 * This method is thread-safe.
+	 * You will get the same ANetRPCChannel object if you open the same
+	 * host:port multi-times, the pool size of the first open wins.
+	 */
+	public ANetRPCChannel openChannel(String host, int port, boolean blocking,
+	        int postQueueLimit, int poolSize)
+	{
+		logger.debug("Open channel " + host + ":" + port + ", pool size " + poolSize);
 		ANetRPCChannel rpcChannel = null;
 		// can not create channel when disposing，but can create channel concurrently when not disposing
 		disposeLock.readLock().lock();
@@ -87,10 +105,17 @@ public class ANetRPCChannelManager {
 				synchronized (mutexPool.getMutex(key)) {
 					rpcChannel = channelMap.get(key);
 					if (null == rpcChannel || !rpcChannel.isOpened()) {
-						Connection connection = transport.createConnection(host, port);
-						if (null != connection) {
-							rpcChannel = new ANetRPCChannel(connection);
+						if (null != rpcChannel) {
+							// some pooled connections are lost, reopen all
+							rpcChannel.close();
+						}
+						rpcChannel = createChannel(host, port, Math.max(1, poolSize));
+						if (null != rpcChannel) {
+							rpcChannel.setPostBlocking(blocking);
+							rpcChannel.setPostQueueSizeLimit(postQueueLimit);
 							channelMap.put(key, rpcChannel);
+						} else {
+							channelMap.remove(key);
 						}
 					}
 				}
@@ -103,6 +128,20 @@ public class ANetRPCChannelManager {
 		return rpcChannel;
 	}
 
+	private ANetRPCChannel createChannel(String host, int port, int poolSize) {
+		Connection[] connections = new Connection[poolSize];
+		for (int i = 0; i < poolSize; i++) {
+			connections[i] = transport.createConnection(host, port);
+			if (null == connections[i]) {
+				for (int j = 0; j < i; j++) {
+					connections[j].close();
+				}
+				return null;
+			}
+		}
+		return new ANetRPCChannel(connections);
+	}
+
 	/**
 	 *
 	 * @param host either hostname or ip
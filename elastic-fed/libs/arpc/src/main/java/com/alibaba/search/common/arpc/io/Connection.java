@@ -16,6 +16,7 @@ package com.alibaba.search.common.arpc.io;
 
 import java.nio.ByteBuffer;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,8 +42,12 @@ public class Connection implements IoHandler {
     private StreamerContext streamerContext = null;
     private DataBuffer inputBuffer = new DataBuffer();
     private PacketManager packetManager = new PacketManager();
+    // only used to park posters when the queue is full
     private Object lockObj = new Object();
-    private int queueLimit = Constants.DEFAULT_OUTPUT_QUEUE_LIMIT;
+    private volatile int queueLimit = Constants.DEFAULT_OUTPUT_QUEUE_LIMIT;
+    // posted packets not yet answered, timed out or failed
+    private AtomicInteger pendingCount = new AtomicInteger();
+    private AtomicInteger waiterCount = new AtomicInteger();
     // packet send end time
     private static ThreadLocal<Long> packetSendEndTime = new ThreadLocal<>();
 
@@ -70,26 +75,23 @@ public class Connection implements IoHandler {
             return false;
         }
 
-        synchronized (lockObj) {
-            if (!isConnected()) {
-                logger.error("connection not avaliable, maybe closed");
-                return false;
-            }
-            if (packetManager.size() >= queueLimit && !blocking) {
-                logger.debug("queue full no block");
-                return false;
-            }
-            while (packetManager.size() >= queueLimit && isConnected()) {
-                try {
-                    lockObj.wait();
-                } catch (InterruptedException e) {
-                }
-            }
-            if (!isConnected()) {
-                logger.debug("wake up on closing");
+        if (!isConnected()) {
+            logger.error("connection not avaliable, maybe closed");
+            return false;
+        }
+        if (!acquireSlot(blocking)) {
+            return false;
+        }
+        PacketInfo packetInfo = packetManager.addPacket(packet, handler, args, timeout);
+        if (!isConnected()) {
+            // closed concurrently, handleClose may have missed this packet
+            if (packetManager.removePacketInfo(packetInfo)) {
+                releaseSlots(1);
+                logger.debug("connection closed while posting");
                 return false;
             }
-            packetManager.addPacket(packet, handler, args, timeout);
+            // already handed to the handler as closed
+            return true;
         }
 
         byte[] buf = packetStreamer.encode(packet);
@@ -128,11 +130,9 @@ public class Connection implements IoHandler {
     }
 
     public void handleClose() {
-        Collection<PacketInfo> packetInfos = null;
-        synchronized (lockObj) {
-            packetInfos = packetManager.pullAllPacketInfos();
-            lockObj.notifyAll();
-        }
+        Collection<PacketInfo> packetInfos = packetManager.pullAllPacketInfos();
+        releaseSlots(packetInfos.size());
+        wakeUpWaiters();
         ControlPacket packet = new ControlPacket(CmdType.CMD_CONNECTION_CLOSED);
         handleAll(packet, packetInfos);
     }
@@ -143,51 +143,114 @@ public class Connection implements IoHandler {
     }
 
     public void checkTimeout(long now) {
-        Collection<PacketInfo> packetInfos = null;
-        synchronized (lockObj) {
-            packetInfos = packetManager.pullTimeoutPacketInfos(now);
-            lockObj.notifyAll();
+        Collection<PacketInfo> packetInfos = packetManager.pullTimeoutPacketInfos(now);
+        if (packetInfos.isEmpty()) {
+            return;
         }
+        releaseSlots(packetInfos.size());
         ControlPacket packet = new ControlPacket(CmdType.CMD_TIMEOUT_PACKET);
         handleAll(packet, packetInfos);
     }
 
     public void close() {
-        synchronized (lockObj) {
-            ioComponent.close();
-            lockObj.notifyAll();
-        }
+        ioComponent.close();
+        wakeUpWaiters();
     }
 
     public void setQueueLimit(int queueLimit) {
         this.queueLimit = queueLimit;
+        wakeUpWaiters();
     }
 
     public int getQueueLimit() {
         return queueLimit;
     }
 
+    /**
+     * @return number of posted packets still waiting for response
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
     protected PacketManager getPacketManager() {
         return packetManager;
     }
 
     private void closeAndHandleAll(Packet packet) {
-        Collection<PacketInfo> packetInfos = null;
-        synchronized (lockObj) {
-            ioComponent.close();
-            packetInfos = packetManager.pullAllPacketInfos();
-            lockObj.notifyAll();
-        }
+        ioComponent.close();
+        Collection<PacketInfo> packetInfos = packetManager.pullAllPacketInfos();
+        releaseSlots(packetInfos.size());
+        wakeUpWaiters();
         handleAll(packet, packetInfos);
     }
 
     private void handlePacket(Packet packet) {
-        PacketInfo packetInfo = null;
+        PacketInfo packetInfo = packetManager.pullPacketInfo(packet);
+        if (packetInfo != null) {
+            releaseSlots(1);
+        }
+        handlePacket(packet, packetInfo);
+    }
+
+    private boolean tryAcquireSlot() {
+        while (true) {
+            int pending = pendingCount.get();
+            if (pending >= queueLimit) {
+                return false;
+            }
+            if (pendingCount.compareAndSet(pending, pending + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * reserve a place in the output queue, callers only touch lockObj when
+     * the queue is full and blocking is required
+     */
+    private boolean acquireSlot(boolean blocking) {
+        if (tryAcquireSlot()) {
+            return true;
+        }
+        if (!blocking) {
+            logger.debug("queue full no block");
+            return false;
+        }
+        synchronized (lockObj) {
+            waiterCount.incrementAndGet();
+            try {
+                while (isConnected()) {
+                    if (tryAcquireSlot()) {
+                        return true;
+                    }
+                    try {
+                        lockObj.wait();
+                    } catch (InterruptedException e) {
+                    }
+                }
+            } finally {
+                waiterCount.decrementAndGet();
+            }
+        }
+        logger.debug("wake up on closing");
+        return false;
+    }
+
+    private void releaseSlots(int count) {
+        if (count <= 0) {
+            return;
+        }
+        pendingCount.addAndGet(-count);
+        if (waiterCount.get() > 0) {
+            wakeUpWaiters();
+        }
+    }
+
+    private void wakeUpWaiters() {
         synchronized (lockObj) {
-            packetInfo = packetManager.pullPacketInfo(packet);
             lockObj.notifyAll();
         }
-        handlePacket(packet, packetInfo);
     }
 
     private void handleAll(Packet packet, Collection<PacketInfo> packetInfos) {
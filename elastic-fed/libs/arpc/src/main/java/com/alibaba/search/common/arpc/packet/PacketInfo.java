@@ -19,6 +19,8 @@ public class PacketInfo implements Comparable<PacketInfo> {
     private PacketHandler packetHandler = null;
     private Object args = null;
     private long expireTime = 0;
+    // bucket of the timeout wheel holding this packet, -1 if not added
+    private volatile int timeoutBucket = -1;
 
     public PacketInfo(int packetId, PacketHandler packetHandler, Object args, 
             long expireTime) {
@@ -44,6 +46,14 @@ public class PacketInfo implements Comparable<PacketInfo> {
         return expireTime;
     }
 
+    int getTimeoutBucket() {
+        return timeoutBucket;
+    }
+
+    void setTimeoutBucket(int timeoutBucket) {
+        this.timeoutBucket = timeoutBucket;
+    }
+
     public int compareTo(PacketInfo o) {
         if (expireTime - o.expireTime > 0) {
             return 1;
@@ -15,8 +15,9 @@
 package com.alibaba.search.common.arpc.packet;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.PriorityQueue;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
@@ -25,88 +26,123 @@ import org.slf4j.LoggerFactory;
 import com.alibaba.search.common.arpc.util.Constants;
 import com.alibaba.search.common.arpc.util.SystemTimer;
 
+/**
+ * In-flight packet table of a connection. All methods are thread-safe and
+ * lock-free; a packet info is handed out by exactly one of pullPacketInfo,
+ * pullTimeoutPacketInfos and pullAllPacketInfos.
+ */
 public class PacketManager {
     private final static Logger logger = LoggerFactory
             .getLogger(PacketManager.class);
+    private final static int TIMEOUT_WHEEL_SIZE = 256;
 
     private AtomicInteger atomicPacketId = new AtomicInteger(1);
-    private HashMap<Integer, PacketInfo> postedPacketMap = 
-            new HashMap<Integer, PacketInfo>();
-    private PriorityQueue<PacketInfo> waitingQueue = 
-            new PriorityQueue<PacketInfo>();
+    private ConcurrentHashMap<Integer, PacketInfo> postedPacketMap =
+            new ConcurrentHashMap<Integer, PacketInfo>();
+    private PacketTimeoutWheel timeoutWheel;
     private SystemTimer timer = new SystemTimer();
 
-    public void addPacket(Packet packet, PacketHandler packetHandler, 
-            Object args, long timeout) 
+    public PacketManager() {
+        this(Constants.CHECK_TIMEOUT_INTEVAL);
+    }
+
+    public PacketManager(long timeoutTickMs) {
+        timeoutWheel = new PacketTimeoutWheel(timeoutTickMs, TIMEOUT_WHEEL_SIZE);
+    }
+
+    public PacketInfo addPacket(Packet packet, PacketHandler packetHandler,
+            Object args, long timeout)
     {
         if (timeout <= 0) {
             timeout = Constants.DEFAULT_PACKET_TIMEOUT;
         }
         long packetExpireTime = timer.getExpireTime(timeout);
-        int packetId = atomicPacketId.getAndIncrement();
-        if (packetId == Integer.MAX_VALUE) {
-            atomicPacketId.set(1);
-        }
+        int packetId = nextPacketId();
         packet.getHeader().setPacketId(packetId);
-        PacketInfo packetInfo = new PacketInfo(packetId, packetHandler, args, 
+        PacketInfo packetInfo = new PacketInfo(packetId, packetHandler, args,
                 packetExpireTime);
         postedPacketMap.put(packetId, packetInfo);
-        waitingQueue.add(packetInfo);
+        timeoutWheel.add(packetInfo);
+        return packetInfo;
     }
-    
+
     public int size() {
         return postedPacketMap.size();
     }
-    
+
+    /**
+     * Must be called from a single thread, normally the transport's check
+     * timeout thread.
+     */
     public ArrayList<PacketInfo> pullTimeoutPacketInfos(long now) {
         ArrayList<PacketInfo> packetInfos = new ArrayList<PacketInfo>();
-        while (!waitingQueue.isEmpty()) {
-            PacketInfo packetInfo = waitingQueue.peek();
-            if (packetInfo.getExpireTime() > now) {
-                break;
+        for (PacketInfo packetInfo : timeoutWheel.expire(now)) {
+            // may have been answered after it was pulled from the wheel
+            if (postedPacketMap.remove(packetInfo.getPacketId(), packetInfo)) {
+                packetInfos.add(packetInfo);
             }
-            packetInfo = waitingQueue.poll();
-            postedPacketMap.remove(packetInfo.getPacketId());
-            packetInfos.add(packetInfo);
         }
         return packetInfos;
     }
-    
+
     public ArrayList<PacketInfo> pullAllPacketInfos() {
         ArrayList<PacketInfo> packetInfos = new ArrayList<PacketInfo>();
-        for (PacketInfo info : postedPacketMap.values()) {
-            packetInfos.add(info);
+        Iterator<Map.Entry<Integer, PacketInfo>> it =
+                postedPacketMap.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, PacketInfo> entry = it.next();
+            if (postedPacketMap.remove(entry.getKey(), entry.getValue())) {
+                packetInfos.add(entry.getValue());
+            }
         }
-        postedPacketMap.clear();
-        waitingQueue.clear();
+        timeoutWheel.clear();
         return packetInfos;
     }
-    
+
     public PacketInfo pullPacketInfo(Packet packet) {
         int packetId = packet.getHeader().getPacketId();
-        PacketInfo packetInfo = postedPacketMap.get(packetId);
-        if (packetInfo == null) {
-            return packetInfo;
+        PacketInfo packetInfo = postedPacketMap.remove(packetId);
+        if (packetInfo != null) {
+            timeoutWheel.remove(packetInfo);
         }
-        postedPacketMap.remove(packetId);
-        waitingQueue.remove(packetInfo);
         return packetInfo;
     }
-    
+
+    /**
+     * Remove the given packet info if it has not been handed out yet.
+     */
+    public boolean removePacketInfo(PacketInfo packetInfo) {
+        if (postedPacketMap.remove(packetInfo.getPacketId(), packetInfo)) {
+            timeoutWheel.remove(packetInfo);
+            return true;
+        }
+        return false;
+    }
+
     public void setTimer(SystemTimer timer) {
         this.timer = timer;
     }
-    
-    HashMap<Integer, PacketInfo> getPostedPacketMap() {
+
+    ConcurrentHashMap<Integer, PacketInfo> getPostedPacketMap() {
         return postedPacketMap;
     }
-    
-    PriorityQueue<PacketInfo> getWaitingQueue() {
-        return waitingQueue;
+
+    PacketTimeoutWheel getTimeoutWheel() {
+        return timeoutWheel;
     }
-    
+
     public void clear() {
-    	postedPacketMap.clear();
-    	waitingQueue.clear();
+        postedPacketMap.clear();
+        timeoutWheel.clear();
+    }
+
+    private int nextPacketId() {
+        while (true) {
+            int packetId = atomicPacketId.getAndIncrement();
+            if (packetId > 0 && packetId < Integer.MAX_VALUE) {
+                return packetId;
+            }
+            atomicPacketId.compareAndSet(packetId + 1, 1);
+        }
     }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.alibaba.search.common.arpc.packet;
+
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hashed timing wheel for packet timeouts.
+ *
+ * Adding and removing a packet are O(1) and lock-free. Answered packets must
+ * be removed so that their callback arguments are not retained until the
+ * timeout. Packets expiring more than one revolution ahead stay in their bucket until
+ * the right round comes. A bucket is only expired after its tick has fully
+ * elapsed, so packets time out at most one tick late.
+ */
+public class PacketTimeoutWheel {
+    private final long tickMs;
+    private final Set<PacketInfo>[] buckets;
+    // last tick which has been expired, only written by the timeout thread
+    private volatile long currentTick = -1;
+
+    @SuppressWarnings("unchecked")
+    public PacketTimeoutWheel(long tickMs, int wheelSize) {
+        if (tickMs <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tickMs and wheelSize must be positive");
+        }
+        this.tickMs = tickMs;
+        this.buckets = new Set[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    public void add(PacketInfo packetInfo) {
+        long expireTick = packetInfo.getExpireTime() / tickMs;
+        while (true) {
+            long tick = Math.max(expireTick, currentTick + 1);
+            int index = (int) (tick % buckets.length);
+            Set<PacketInfo> bucket = buckets[index];
+            packetInfo.setTimeoutBucket(index);
+            bucket.add(packetInfo);
+            // the timeout thread may have passed this tick between reading
+            // currentTick and the insert, the packet would then wait a whole
+            // revolution. Move it forward unless it has been pulled already.
+            if (currentTick < tick || !bucket.remove(packetInfo)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remove a packet which has been answered or dropped before its timeout.
+     */
+    public void remove(PacketInfo packetInfo) {
+        int index = packetInfo.getTimeoutBucket();
+        if (index >= 0) {
+            buckets[index].remove(packetInfo);
+        }
+    }
+
+    /**
+     * Pull all packet infos expired at now. Must be called from a single
+     * thread. The result may contain packets which are being answered
+     * concurrently, callers must check them against the posted packet table.
+     */
+    public ArrayList<PacketInfo> expire(long now) {
+        ArrayList<PacketInfo> expired = new ArrayList<PacketInfo>();
+        // ticks before lastTick have fully elapsed
+        long lastTick = now / tickMs - 1;
+        long tick = currentTick;
+        if (tick < 0 || lastTick - tick > buckets.length) {
+            // first run or timeout thread stalled: visit the whole wheel once
+            tick = lastTick - buckets.length;
+        }
+        while (tick < lastTick) {
+            tick++;
+            // publish first so that concurrent adds go to later buckets
+            currentTick = tick;
+            expireBucket(buckets[(int) (tick % buckets.length)], now, expired);
+        }
+        return expired;
+    }
+
+    private void expireBucket(Set<PacketInfo> bucket, long now, ArrayList<PacketInfo> expired) {
+        // entries of later rounds stay in the bucket; whoever removes an
+        // entry first owns it, so a concurrent remove or add retry is safe
+        for (PacketInfo packetInfo : bucket) {
+            if (packetInfo.getExpireTime() <= now && bucket.remove(packetInfo)) {
+                expired.add(packetInfo);
+            }
+        }
+    }
+
+    public void clear() {
+        for (Set<PacketInfo> bucket : buckets) {
+            bucket.clear();
+        }
+    }
+}
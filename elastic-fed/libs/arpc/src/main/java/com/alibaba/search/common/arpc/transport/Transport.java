@@ -15,6 +15,7 @@
 package com.alibaba.search.common.arpc.transport;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,8 +62,14 @@ public abstract class Transport {
     public final void checkTimeout() {
         long now = timer.getCurrentTime();
         synchronized (connections) {
-            for (Connection conn : connections) {
+            Iterator<Connection> it = connections.iterator();
+            while (it.hasNext()) {
+                Connection conn = it.next();
                 conn.checkTimeout(now);
+                // closed connections of reopened channels are dropped here
+                if (!conn.isConnected() && conn.getPendingCount() == 0) {
+                    it.remove();
+                }
             }
         }
     }
@@ -31,4 +31,5 @@ public interface Constants {
 
     // connection related
     int DEFAULT_OUTPUT_QUEUE_LIMIT = 50;
+    int DEFAULT_CONNECTION_POOL_SIZE = 1;
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.alibaba.search.common.arpc;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.havenask.test.HavenaskTestCase;
+
+import com.alibaba.search.common.arpc.io.Connection;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ANetRPCChannelTests extends HavenaskTestCase {
+
+    private static Connection connection(boolean connected, int pending) {
+        Connection connection = mock(Connection.class);
+        when(connection.isConnected()).thenReturn(connected);
+        when(connection.getPendingCount()).thenReturn(pending);
+        return connection;
+    }
+
+    public void testSelectLeastPending() {
+        Connection busy = connection(true, 5);
+        Connection idle = connection(true, 1);
+        Connection busier = connection(true, 7);
+        ANetRPCChannel channel = new ANetRPCChannel(new Connection[] { busy, idle, busier });
+        for (int i = 0; i < 10; i++) {
+            assertSame(idle, channel.selectConnection());
+        }
+        assertEquals(13, channel.getPendingCount());
+    }
+
+    public void testSelectSkipsClosed() {
+        Connection closed = connection(false, 0);
+        Connection open = connection(true, 3);
+        ANetRPCChannel channel = new ANetRPCChannel(new Connection[] { closed, open });
+        for (int i = 0; i < 10; i++) {
+            assertSame(open, channel.selectConnection());
+        }
+        assertFalse(channel.isOpened());
+    }
+
+    public void testSelectRoundRobinOnTies() {
+        Connection[] connections = new Connection[] { connection(true, 2), connection(true, 2), connection(true, 2) };
+        ANetRPCChannel channel = new ANetRPCChannel(connections);
+        Set<Connection> selected = new HashSet<>();
+        for (int i = 0; i < connections.length; i++) {
+            selected.add(channel.selectConnection());
+        }
+        assertEquals(connections.length, selected.size());
+    }
+
+    public void testSelectWhenAllClosed() {
+        Connection[] connections = new Connection[] { connection(false, 0), connection(false, 0) };
+        ANetRPCChannel channel = new ANetRPCChannel(connections);
+        // postPacket on the returned connection reports the failure
+        assertNotNull(channel.selectConnection());
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.alibaba.search.common.arpc.io;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.havenask.test.HavenaskTestCase;
+
+import com.alibaba.search.common.arpc.packet.PacketHandler;
+import com.alibaba.search.common.arpc.packet.PacketStreamer;
+import com.alibaba.search.common.arpc.packet.StreamerContext;
+import com.alibaba.search.common.arpc.packet.impl.DefaultPacket;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConnectionTests extends HavenaskTestCase {
+
+    private Connection newConnection(int queueLimit) {
+        IoComponent ioComponent = mock(IoComponent.class);
+        when(ioComponent.isConnected()).thenReturn(true);
+        PacketStreamer packetStreamer = mock(PacketStreamer.class);
+        when(packetStreamer.createStreamerContext()).thenReturn(new StreamerContext());
+        when(packetStreamer.encode(any())).thenReturn(new byte[0]);
+        Connection connection = new Connection(ioComponent, packetStreamer);
+        connection.setQueueLimit(queueLimit);
+        return connection;
+    }
+
+    public void testPendingCountSlots() {
+        Connection connection = newConnection(2);
+        AtomicInteger handled = new AtomicInteger();
+        PacketHandler handler = (packet, args) -> handled.incrementAndGet();
+
+        assertTrue(connection.postPacket(new DefaultPacket(), handler, null, 100, false));
+        assertTrue(connection.postPacket(new DefaultPacket(), handler, null, 100, false));
+        assertEquals(2, connection.getPendingCount());
+        // queue is full, non-blocking post fails without taking a slot
+        assertFalse(connection.postPacket(new DefaultPacket(), handler, null, 100, false));
+        assertEquals(2, connection.getPendingCount());
+
+        // timed out packets give their slots back
+        connection.checkTimeout(System.currentTimeMillis() + 10000);
+        assertEquals(2, handled.get());
+        assertEquals(0, connection.getPendingCount());
+        assertTrue(connection.postPacket(new DefaultPacket(), handler, null, 100, false));
+        assertEquals(1, connection.getPendingCount());
+
+        connection.handleClose();
+        assertEquals(3, handled.get());
+        assertEquals(0, connection.getPendingCount());
+    }
+
+    public void testConcurrentPostsNeverExceedLimit() throws Exception {
+        int queueLimit = randomIntBetween(1, 8);
+        Connection connection = newConnection(queueLimit);
+        AtomicInteger handled = new AtomicInteger();
+        PacketHandler handler = (packet, args) -> handled.incrementAndGet();
+        AtomicInteger posted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] threads = new Thread[randomIntBetween(2, 8)];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                for (int j = 0; j < 100; j++) {
+                    if (connection.postPacket(new DefaultPacket(), handler, null, 1000, false)) {
+                        posted.incrementAndGet();
+                    }
+                    assertTrue(connection.getPendingCount() <= queueLimit);
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // nothing is answered, so exactly queueLimit posts got a slot
+        assertEquals(queueLimit, posted.get());
+        assertEquals(queueLimit, connection.getPendingCount());
+        connection.handleClose();
+        assertEquals(queueLimit, handled.get());
+        assertEquals(0, connection.getPendingCount());
+    }
+}
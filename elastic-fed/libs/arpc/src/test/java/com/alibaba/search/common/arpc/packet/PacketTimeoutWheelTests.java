@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.alibaba.search.common.arpc.packet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.havenask.test.HavenaskTestCase;
+
+import com.alibaba.search.common.arpc.packet.impl.DefaultPacket;
+
+public class PacketTimeoutWheelTests extends HavenaskTestCase {
+    // expire times are absolute millis, keep them well past the first revolution
+    private static final long BASE = 10000;
+
+    private static PacketInfo packetInfo(int packetId, long expireTime) {
+        return new PacketInfo(packetId, null, null, expireTime);
+    }
+
+    private static List<Integer> packetIds(List<PacketInfo> packetInfos) {
+        List<Integer> packetIds = new ArrayList<>();
+        for (PacketInfo packetInfo : packetInfos) {
+            packetIds.add(packetInfo.getPacketId());
+        }
+        Collections.sort(packetIds);
+        return packetIds;
+    }
+
+    public void testExpireAfterTick() {
+        PacketTimeoutWheel wheel = new PacketTimeoutWheel(10, 8);
+        wheel.add(packetInfo(1, BASE + 25));
+        wheel.add(packetInfo(2, BASE + 35));
+        // more than one revolution ahead
+        wheel.add(packetInfo(3, BASE + 1000));
+
+        assertEquals(List.of(), packetIds(wheel.expire(BASE + 20)));
+        // tick of packet 1 has not fully elapsed yet
+        assertEquals(List.of(), packetIds(wheel.expire(BASE + 29)));
+        assertEquals(List.of(1), packetIds(wheel.expire(BASE + 30)));
+        assertEquals(List.of(2), packetIds(wheel.expire(BASE + 40)));
+        // bucket of packet 3 is visited several times before it is due
+        assertEquals(List.of(), packetIds(wheel.expire(BASE + 200)));
+        assertEquals(List.of(), packetIds(wheel.expire(BASE + 999)));
+        assertEquals(List.of(3), packetIds(wheel.expire(BASE + 1010)));
+        assertEquals(List.of(), packetIds(wheel.expire(BASE + 2000)));
+    }
+
+    public void testAddBehindCurrentTick() {
+        PacketTimeoutWheel wheel = new PacketTimeoutWheel(10, 8);
+        wheel.expire(BASE + 100);
+        // already expired when added, goes to the next tick instead of
+        // waiting for a whole revolution
+        wheel.add(packetInfo(1, BASE + 50));
+        assertEquals(List.of(1), packetIds(wheel.expire(BASE + 110)));
+    }
+
+    public void testRemove() {
+        PacketTimeoutWheel wheel = new PacketTimeoutWheel(10, 8);
+        PacketInfo answered = packetInfo(1, BASE + 25);
+        wheel.add(answered);
+        wheel.add(packetInfo(2, BASE + 25));
+        wheel.remove(answered);
+        // never added
+        wheel.remove(packetInfo(3, BASE + 25));
+        assertEquals(List.of(2), packetIds(wheel.expire(BASE + 30)));
+    }
+
+    public void testAnsweredPacketLeavesWheel() {
+        PacketManager packetManager = new PacketManager(10);
+        DefaultPacket answered = new DefaultPacket();
+        packetManager.addPacket(answered, null, new Object(), 100);
+        PacketInfo dropped = packetManager.addPacket(new DefaultPacket(), null, new Object(), 100);
+        assertNotNull(packetManager.pullPacketInfo(answered));
+        assertTrue(packetManager.removePacketInfo(dropped));
+        assertEquals(0, packetManager.size());
+        // nothing, including the callback args, is retained until the timeout
+        assertEquals(List.of(), packetIds(packetManager.getTimeoutWheel().expire(System.currentTimeMillis() + 10000)));
+    }
+
+    public void testClear() {
+        PacketTimeoutWheel wheel = new PacketTimeoutWheel(10, 8);
+        wheel.add(packetInfo(1, BASE + 25));
+        wheel.clear();
+        assertEquals(List.of(), packetIds(wheel.expire(BASE + 1000)));
+    }
+
+    public void testConcurrentAddAndExpire() throws Exception {
+        long tickMs = 10;
+        PacketTimeoutWheel wheel = new PacketTimeoutWheel(tickMs, 4);
+        AtomicLong clock = new AtomicLong(BASE);
+        AtomicBoolean stopped = new AtomicBoolean();
+        AtomicInteger added = new AtomicInteger();
+        Set<PacketInfo> expired = Collections.newSetFromMap(new IdentityHashMap<>());
+        CountDownLatch start = new CountDownLatch(1);
+
+        Thread expirer = new Thread(() -> {
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            while (false == stopped.get()) {
+                for (PacketInfo packetInfo : wheel.expire(clock.addAndGet(tickMs))) {
+                    assertTrue("expired twice", expired.add(packetInfo));
+                }
+            }
+        });
+        Thread[] adders = new Thread[randomIntBetween(2, 4)];
+        int packetsPerAdder = 10000;
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                for (int j = 0; j < packetsPerAdder; j++) {
+                    wheel.add(packetInfo(added.incrementAndGet(), clock.get()));
+                }
+            });
+            adders[i].start();
+        }
+        expirer.start();
+        start.countDown();
+        for (Thread adder : adders) {
+            adder.join();
+        }
+        stopped.set(true);
+        expirer.join();
+
+        // every packet is due now, none may be left for a later revolution
+        for (PacketInfo packetInfo : wheel.expire(clock.get() + 2 * tickMs)) {
+            assertTrue("expired twice", expired.add(packetInfo));
+        }
+        assertEquals(added.get(), expired.size());
+    }
+}
@@ -45,6 +45,7 @@ import org.havenask.cluster.routing.OperationRouting;
 import org.havenask.cluster.routing.allocation.decider.AllocationDecider;
 import org.havenask.engine.cluster.routing.allocation.decider.HavenaskShardsLimitAllocationDecider;
 import org.havenask.cluster.service.ClusterService;
+import org.havenask.common.breaker.CircuitBreaker;
 import org.havenask.common.io.stream.NamedWriteableRegistry;
 import org.havenask.common.settings.ClusterSettings;
 import org.havenask.common.settings.IndexScopedSettings;
@@ -53,31 +54,48 @@ import org.havenask.common.settings.Setting.Property;
 import org.havenask.common.settings.Settings;
 import org.havenask.common.settings.SettingsFilter;
 import org.havenask.common.unit.TimeValue;
+import org.havenask.common.util.concurrent.ThreadContext;
 import org.havenask.common.xcontent.NamedXContentRegistry;
+import org.havenask.engine.admission.action.HavenaskWriteAdmissionStatsAction;
+import org.havenask.engine.admission.action.TransportHavenaskWriteAdmissionStatsAction;
+import org.havenask.engine.admission.rest.RestHavenaskWriteAdmissionStats;
 import org.havenask.engine.create.rest.RestHavenaskCreate;
 import org.havenask.engine.index.HavenaskIndexEventListener;
 import org.havenask.engine.index.engine.EngineSettings;
 import org.havenask.engine.index.engine.HavenaskEngine;
+import org.havenask.engine.index.engine.WriteAdmissionController;
+import org.havenask.engine.index.engine.WriteAdmissionInterceptor;
 import org.havenask.engine.index.mapper.DenseVectorFieldMapper;
 import org.havenask.engine.index.query.KnnQueryBuilder;
 import org.havenask.engine.index.store.HavenaskStore;
+import org.havenask.engine.index.store.VersionFileWatcher;
 import org.havenask.engine.rpc.HavenaskClient;
 import org.havenask.engine.rpc.QrsClient;
 import org.havenask.engine.rpc.http.QrsHttpClient;
 import org.havenask.engine.rpc.http.SearcherHttpClient;
 import org.havenask.engine.search.HavenaskFetchPhase;
+import org.havenask.engine.search.HavenaskSearchRequestCache;
 import org.havenask.engine.search.action.ClearHavenaskScrollAction;
+import org.havenask.engine.search.action.HavenaskExportAction;
 import org.havenask.engine.search.action.HavenaskSearchAction;
 import org.havenask.engine.search.action.HavenaskSearchScrollAction;
 import org.havenask.engine.search.action.HavenaskSqlAction;
 import org.havenask.engine.search.action.HavenaskSqlClientInfoAction;
+import org.havenask.engine.search.action.HavenaskTableVersionAction;
 import org.havenask.engine.search.action.TransportClearHavenaskScrollAction;
+import org.havenask.engine.search.action.TransportHavenaskExportAction;
 import org.havenask.engine.search.action.TransportHavenaskSearchAction;
 import org.havenask.engine.search.action.TransportHavenaskSearchScrollAction;
 import org.havenask.engine.search.action.TransportHavenaskSqlAction;
 import org.havenask.engine.search.action.TransportHavenaskSqlClientInfoAction;
+import org.havenask.engine.search.action.TransportHavenaskTableVersionAction;
+import org.havenask.engine.search.dsl.DSLPlanCache;
+import org.havenask.engine.search.rest.RestHavenaskExportAction;
 import org.havenask.engine.search.rest.RestHavenaskSqlAction;
 import org.havenask.engine.search.rest.RestHavenaskSqlClientInfoAction;
+import org.havenask.engine.stats.action.HavenaskStatsAction;
+import org.havenask.engine.stats.action.TransportHavenaskStatsAction;
+import org.havenask.engine.stats.rest.RestHavenaskStats;
 import org.havenask.engine.stop.action.HavenaskStopAction;
 import org.havenask.engine.stop.action.TransportHavenaskStopAction;
 import org.havenask.engine.stop.rest.RestHavenaskStop;
@@ -100,12 +118,15 @@ import org.havenask.index.shard.ShardPath;
 import org.havenask.index.store.Store;
 import org.havenask.index.store.Store.OnClose;
 import org.havenask.indices.analysis.AnalysisModule;
+import org.havenask.indices.breaker.BreakerSettings;
 import org.havenask.plugins.ActionPlugin;
 import org.havenask.plugins.AnalysisPlugin;
+import org.havenask.plugins.CircuitBreakerPlugin;
 import org.havenask.plugins.ClusterPlugin;
 import org.havenask.plugins.EnginePlugin;
 import org.havenask.plugins.IndexStorePlugin;
 import org.havenask.plugins.MapperPlugin;
+import org.havenask.plugins.NetworkPlugin;
 import org.havenask.plugins.NodeEnvironmentPlugin;
 import org.havenask.plugins.Plugin;
 import org.havenask.plugins.SearchPlugin;
@@ -118,6 +139,7 @@ import org.havenask.search.fetch.FetchSubPhase;
 import org.havenask.threadpool.ExecutorBuilder;
 import org.havenask.threadpool.ScalingExecutorBuilder;
 import org.havenask.threadpool.ThreadPool;
+import org.havenask.transport.TransportInterceptor;
 import org.havenask.watcher.ResourceWatcherService;
 
 public class HavenaskEnginePlugin extends Plugin
@@ -129,14 +151,21 @@ public class HavenaskEnginePlugin extends Plugin
         NodeEnvironmentPlugin,
         MapperPlugin,
         IndexStorePlugin,
-        ClusterPlugin {
+        ClusterPlugin,
+        NetworkPlugin,
+        CircuitBreakerPlugin {
     private static Logger logger = LogManager.getLogger(HavenaskEnginePlugin.class);
     private final SetOnce<HavenaskEngineEnvironment> havenaskEngineEnvironmentSetOnce = new SetOnce<>();
     private final SetOnce<NativeProcessControlService> nativeProcessControlServiceSetOnce = new SetOnce<>();
     private final SetOnce<QrsClient> qrsClientSetOnce = new SetOnce<>();
     private final SetOnce<Client> clientSetOnce = new SetOnce<>();
     private final SetOnce<MetaDataSyncer> metaDataSyncerSetOnce = new SetOnce<>();
+    private final SetOnce<VersionFileWatcher> versionFileWatcherSetOnce = new SetOnce<>();
     private final SetOnce<HavenaskScrollService> havenaskScrollServiceSetOnce = new SetOnce<>();
+    private final SetOnce<WriteAdmissionController> writeAdmissionControllerSetOnce = new SetOnce<>();
+    private final SetOnce<ClusterService> clusterServiceSetOnce = new SetOnce<>();
+    private final SetOnce<ThreadPool> threadPoolSetOnce = new SetOnce<>();
+    private final SetOnce<CircuitBreaker> requestCacheBreakerSetOnce = new SetOnce<>();
     private final Settings settings;
 
     public static final String HAVENASK_THREAD_POOL_NAME = "havenask";
@@ -192,7 +221,9 @@ public class HavenaskEnginePlugin extends Plugin
                     nativeProcessControlServiceSetOnce.get().getSearcherTcpPort(),
                     havenaskEngineEnvironmentSetOnce.get(),
                     nativeProcessControlServiceSetOnce.get(),
-                    metaDataSyncerSetOnce.get()
+                    metaDataSyncerSetOnce.get(),
+                    writeAdmissionControllerSetOnce.get(),
+                    versionFileWatcherSetOnce.get()
                 )
             );
         }
@@ -225,26 +256,51 @@ public class HavenaskEnginePlugin extends Plugin
         nativeProcessControlServiceSetOnce.set(nativeProcessControlService);
         HavenaskClient havenaskClient = new SearcherHttpClient(nativeProcessControlService.getSearcherHttpPort());
 
+        VersionFileWatcher versionFileWatcher = new VersionFileWatcher(settings, threadPool);
+        versionFileWatcherSetOnce.set(versionFileWatcher);
+
         MetaDataSyncer metaDataSyncer = new MetaDataSyncer(
             clusterService,
             threadPool,
             havenaskEngineEnvironmentSetOnce.get(),
             nativeProcessControlService,
             havenaskClient,
-            qrsClientSetOnce.get()
+            qrsClientSetOnce.get(),
+            versionFileWatcher
         );
         metaDataSyncerSetOnce.set(metaDataSyncer);
 
         HavenaskScrollService havenaskScrollService = new HavenaskScrollService(clusterService, threadPool);
         havenaskScrollServiceSetOnce.set(havenaskScrollService);
 
+        WriteAdmissionController writeAdmissionController = new WriteAdmissionController(settings, threadPool);
+        writeAdmissionControllerSetOnce.set(writeAdmissionController);
+
+        DSLPlanCache dslPlanCache = new DSLPlanCache();
+        clusterService.addListener(dslPlanCache);
+
+        HavenaskSearchRequestCache requestCache = new HavenaskSearchRequestCache(
+            settings,
+            client,
+            threadPool,
+            namedWriteableRegistry,
+            requestCacheBreakerSetOnce.get()
+        );
+        clusterService.addListener(requestCache);
+
         clientSetOnce.set(client);
+        clusterServiceSetOnce.set(clusterService);
+        threadPoolSetOnce.set(threadPool);
 
         return Arrays.asList(
             nativeProcessControlServiceSetOnce.get(),
             havenaskEngineEnvironmentSetOnce.get(),
             metaDataSyncerSetOnce.get(),
-            havenaskScrollServiceSetOnce.get()
+            versionFileWatcherSetOnce.get(),
+            havenaskScrollServiceSetOnce.get(),
+            writeAdmissionControllerSetOnce.get(),
+            dslPlanCache,
+            requestCache
         );
     }
 
@@ -267,13 +323,29 @@ public class HavenaskEnginePlugin extends Plugin
             EngineSettings.HAVENASK_CLUSTER_JSON,
             EngineSettings.HAVENASK_DATA_TABLE_JSON,
             EngineSettings.HAVENASK_SCHEMA_JSON,
+            EngineSettings.HAVENASK_WRITE_BATCH_SIZE,
+            EngineSettings.HAVENASK_WRITE_LINGER,
+            EngineSettings.HAVENASK_REALTIME_GET_CACHE_SIZE,
+            WriteAdmissionController.HAVENASK_WRITE_ADMISSION_ENABLED,
+            WriteAdmissionController.HAVENASK_WRITE_ADMISSION_MAX_LIMIT,
+            WriteAdmissionController.HAVENASK_WRITE_ADMISSION_MIN_LIMIT,
+            WriteAdmissionController.HAVENASK_WRITE_ADMISSION_TARGET_LATENCY,
+            WriteAdmissionController.HAVENASK_WRITE_ADMISSION_MAX_WAIT,
             NativeProcessControlService.HAVENASK_COMMAND_TIMEOUT_SETTING,
             NativeProcessControlService.HAVENASK_SEARCHER_HTTP_PORT_SETTING,
             NativeProcessControlService.HAVENASK_SEARCHER_TCP_PORT_SETTING,
             NativeProcessControlService.HAVENASK_SEARCHER_GRPC_PORT_SETTING,
             NativeProcessControlService.HAVENASK_QRS_HTTP_PORT_SETTING,
             NativeProcessControlService.HAVENASK_QRS_TCP_PORT_SETTING,
-            HavenaskShardsLimitAllocationDecider.CLUSTER_TOTAL_HAVENASK_SHARDS_PER_NODE_SETTING
+            NativeProcessControlService.HAVENASK_TABLE_SIZE_REFRESH_INTERVAL_SETTING,
+            HavenaskShardsLimitAllocationDecider.CLUSTER_TOTAL_HAVENASK_SHARDS_PER_NODE_SETTING,
+            TransportHavenaskSearchAction.HAVENASK_SEARCH_SINGLE_PHASE_MAX_SIZE,
+            TransportHavenaskExportAction.HAVENASK_EXPORT_MAX_RESPONSE_SIZE,
+            HavenaskSearchRequestCache.HAVENASK_REQUEST_CACHE_SIZE,
+            HavenaskSearchRequestCache.HAVENASK_REQUEST_CACHE_VERSION_CHECK_INTERVAL,
+            HavenaskScrollService.HAVENASK_SCROLL_PREFETCH_MAX_MEMORY,
+            VersionFileWatcher.HAVENASK_VERSION_WATCHER_INTERVAL,
+            VersionFileWatcher.HAVENASK_VERSION_WATCHER_WATCH_SERVICE_ENABLED
         );
     }
 
@@ -285,10 +357,33 @@ public class HavenaskEnginePlugin extends Plugin
             new ActionHandler<>(HavenaskStopAction.INSTANCE, TransportHavenaskStopAction.class),
             new ActionHandler<>(HavenaskSearchAction.INSTANCE, TransportHavenaskSearchAction.class),
             new ActionHandler<>(HavenaskSearchScrollAction.INSTANCE, TransportHavenaskSearchScrollAction.class),
-            new ActionHandler<>(ClearHavenaskScrollAction.INSTANCE, TransportClearHavenaskScrollAction.class)
+            new ActionHandler<>(ClearHavenaskScrollAction.INSTANCE, TransportClearHavenaskScrollAction.class),
+            new ActionHandler<>(HavenaskWriteAdmissionStatsAction.INSTANCE, TransportHavenaskWriteAdmissionStatsAction.class),
+            new ActionHandler<>(HavenaskStatsAction.INSTANCE, TransportHavenaskStatsAction.class),
+            new ActionHandler<>(HavenaskTableVersionAction.INSTANCE, TransportHavenaskTableVersionAction.class),
+            new ActionHandler<>(HavenaskExportAction.INSTANCE, TransportHavenaskExportAction.class)
+        );
+    }
+
+    @Override
+    public BreakerSettings getCircuitBreaker(Settings settings) {
+        return BreakerSettings.updateFromSettings(
+            new BreakerSettings(
+                HavenaskSearchRequestCache.CIRCUIT_BREAKER_NAME,
+                HavenaskSearchRequestCache.HAVENASK_REQUEST_CACHE_SIZE.get(settings).getBytes(),
+                1.0d,
+                CircuitBreaker.Type.MEMORY,
+                CircuitBreaker.Durability.PERMANENT
+            ),
+            settings
         );
     }
 
+    @Override
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        requestCacheBreakerSetOnce.set(circuitBreaker);
+    }
+
     @Override
     public List<RestHandler> getRestHandlers(
         Settings settings,
@@ -303,7 +398,17 @@ public class HavenaskEnginePlugin extends Plugin
             new RestHavenaskSqlAction(),
             new RestHavenaskSqlClientInfoAction(),
             new RestHavenaskStop(),
-            new RestHavenaskCreate()
+            new RestHavenaskCreate(),
+            new RestHavenaskWriteAdmissionStats(),
+            new RestHavenaskStats(),
+            new RestHavenaskExportAction()
+        );
+    }
+
+    @Override
+    public List<TransportInterceptor> getTransportInterceptors(NamedWriteableRegistry namedWriteableRegistry, ThreadContext threadContext) {
+        return Collections.singletonList(
+            new WriteAdmissionInterceptor(writeAdmissionControllerSetOnce.get(), clusterServiceSetOnce.get(), threadPoolSetOnce.get())
         );
     }
 
@@ -337,7 +442,11 @@ public class HavenaskEnginePlugin extends Plugin
     public void onIndexModule(IndexModule indexModule) {
         if (EngineSettings.isHavenaskEngine(indexModule.getSettings())) {
             indexModule.addIndexEventListener(
-                new HavenaskIndexEventListener(havenaskEngineEnvironmentSetOnce.get(), metaDataSyncerSetOnce.get())
+                new HavenaskIndexEventListener(
+                    havenaskEngineEnvironmentSetOnce.get(),
+                    metaDataSyncerSetOnce.get(),
+                    nativeProcessControlServiceSetOnce.get()
+                )
             );
         }
     }
@@ -394,7 +503,16 @@ public class HavenaskEnginePlugin extends Plugin
                 HavenaskEngineEnvironment env = havenaskEngineEnvironmentSetOnce.get();
                 String partitionName = RangeUtil.getRangePartition(indexSettings.getNumberOfShards(), shardId.id());
                 Path shardPath = env.getShardPath(shardId).resolve("generation_0").resolve(partitionName);
-                return new HavenaskStore(shardId, indexSettings, directory, shardLock, onClose, shardPath);
+                return new HavenaskStore(
+                    shardId,
+                    indexSettings,
+                    directory,
+                    shardLock,
+                    onClose,
+                    shardPath,
+                    versionFileWatcherSetOnce.get(),
+                    threadPoolSetOnce.get().executor(HAVENASK_THREAD_POOL_NAME)
+                );
             }
         });
     }
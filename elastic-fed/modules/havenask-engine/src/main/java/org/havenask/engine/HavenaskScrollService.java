@@ -19,9 +19,12 @@ import org.apache.logging.log4j.Logger;
 import org.havenask.cluster.service.ClusterService;
 import org.havenask.common.component.AbstractLifecycleComponent;
 import org.havenask.common.inject.Inject;
+import org.havenask.common.settings.Setting;
 import org.havenask.common.settings.Settings;
+import org.havenask.common.unit.ByteSizeValue;
 import org.havenask.common.unit.TimeValue;
 import org.havenask.engine.search.internal.HavenaskScrollContext;
+import org.havenask.engine.search.internal.ScrollPrefetchMemory;
 import org.havenask.search.Scroll;
 import org.havenask.search.SearchService;
 import org.havenask.threadpool.Scheduler.Cancellable;
@@ -33,12 +36,21 @@ import static org.havenask.search.SearchService.KEEPALIVE_INTERVAL_SETTING;
 
 public class HavenaskScrollService extends AbstractLifecycleComponent {
     private static final Logger logger = LogManager.getLogger(HavenaskScrollService.class);
+
+    // scroll在后台预取下一页时, 所有未被取走的预取结果占用的内存上限, 0表示关闭预取
+    public static final Setting<ByteSizeValue> HAVENASK_SCROLL_PREFETCH_MAX_MEMORY = Setting.memorySizeSetting(
+        "havenask.search.scroll.prefetch.max_memory",
+        "1%",
+        Setting.Property.NodeScope
+    );
+
     private ThreadPool threadPool;
     private Settings settings;
     private volatile long defaultKeepAlive;
     private volatile long maxKeepAlive;
     private final Cancellable keepAliveReaper;
     private final ConcurrentHashMap<String, HavenaskScrollContext> activeScrollContexts = new ConcurrentHashMap<>();
+    private final ScrollPrefetchMemory prefetchMemory;
 
     @Inject
     public HavenaskScrollService(ClusterService clusterService, ThreadPool threadPool) {
@@ -47,6 +59,7 @@ public class HavenaskScrollService extends AbstractLifecycleComponent {
         TimeValue keepAliveInterval = KEEPALIVE_INTERVAL_SETTING.get(settings);
         this.keepAliveReaper = threadPool.scheduleWithFixedDelay(new Reaper(), keepAliveInterval, ThreadPool.Names.SAME);
         setKeepAlives(SearchService.DEFAULT_KEEPALIVE_SETTING.get(settings), SearchService.MAX_KEEPALIVE_SETTING.get(settings));
+        this.prefetchMemory = new ScrollPrefetchMemory(HAVENASK_SCROLL_PREFETCH_MAX_MEMORY.get(settings).getBytes());
     }
 
     @Override
@@ -69,7 +82,11 @@ public class HavenaskScrollService extends AbstractLifecycleComponent {
     }
 
     public HavenaskScrollContext removeScrollContext(String scrollSessionId) {
-        return activeScrollContexts.remove(scrollSessionId);
+        HavenaskScrollContext removed = activeScrollContexts.remove(scrollSessionId);
+        if (removed != null) {
+            removed.close();
+        }
+        return removed;
     }
 
     public HavenaskScrollContext getScrollContext(String scrollSessionId) {
@@ -134,6 +151,10 @@ public class HavenaskScrollService extends AbstractLifecycleComponent {
         return activeScrollContexts.size();
     }
 
+    public ScrollPrefetchMemory getPrefetchMemory() {
+        return prefetchMemory;
+    }
+
     public ThreadPool getThreadPool() {
         return threadPool;
     }
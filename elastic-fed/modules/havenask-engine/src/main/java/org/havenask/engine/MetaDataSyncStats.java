@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine;
+
+import java.io.IOException;
+
+import org.havenask.common.io.stream.StreamInput;
+import org.havenask.common.io.stream.StreamOutput;
+import org.havenask.common.io.stream.Writeable;
+import org.havenask.common.unit.TimeValue;
+import org.havenask.common.xcontent.ToXContentFragment;
+import org.havenask.common.xcontent.XContentBuilder;
+
+/**
+ * {@link MetaDataSyncer}的heartbeat target同步耗时和配置拷贝统计信息
+ */
+public class MetaDataSyncStats implements Writeable, ToXContentFragment {
+    private final long searcherSyncs;
+    private final long searcherSyncFailures;
+    private final long searcherSyncTimeInMillis;
+    private final long searcherChangedTables;
+    private final long qrsSyncs;
+    private final long qrsSyncFailures;
+    private final long qrsSyncTimeInMillis;
+    private final long configCopies;
+    private final long configCopySkips;
+
+    public MetaDataSyncStats(
+        long searcherSyncs,
+        long searcherSyncFailures,
+        long searcherSyncTimeInMillis,
+        long searcherChangedTables,
+        long qrsSyncs,
+        long qrsSyncFailures,
+        long qrsSyncTimeInMillis,
+        long configCopies,
+        long configCopySkips
+    ) {
+        this.searcherSyncs = searcherSyncs;
+        this.searcherSyncFailures = searcherSyncFailures;
+        this.searcherSyncTimeInMillis = searcherSyncTimeInMillis;
+        this.searcherChangedTables = searcherChangedTables;
+        this.qrsSyncs = qrsSyncs;
+        this.qrsSyncFailures = qrsSyncFailures;
+        this.qrsSyncTimeInMillis = qrsSyncTimeInMillis;
+        this.configCopies = configCopies;
+        this.configCopySkips = configCopySkips;
+    }
+
+    public MetaDataSyncStats(StreamInput in) throws IOException {
+        searcherSyncs = in.readVLong();
+        searcherSyncFailures = in.readVLong();
+        searcherSyncTimeInMillis = in.readVLong();
+        searcherChangedTables = in.readVLong();
+        qrsSyncs = in.readVLong();
+        qrsSyncFailures = in.readVLong();
+        qrsSyncTimeInMillis = in.readVLong();
+        configCopies = in.readVLong();
+        configCopySkips = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(searcherSyncs);
+        out.writeVLong(searcherSyncFailures);
+        out.writeVLong(searcherSyncTimeInMillis);
+        out.writeVLong(searcherChangedTables);
+        out.writeVLong(qrsSyncs);
+        out.writeVLong(qrsSyncFailures);
+        out.writeVLong(qrsSyncTimeInMillis);
+        out.writeVLong(configCopies);
+        out.writeVLong(configCopySkips);
+    }
+
+    public long getSearcherSyncs() {
+        return searcherSyncs;
+    }
+
+    public long getSearcherSyncFailures() {
+        return searcherSyncFailures;
+    }
+
+    public long getSearcherSyncTimeInMillis() {
+        return searcherSyncTimeInMillis;
+    }
+
+    public long getSearcherChangedTables() {
+        return searcherChangedTables;
+    }
+
+    public long getQrsSyncs() {
+        return qrsSyncs;
+    }
+
+    public long getQrsSyncFailures() {
+        return qrsSyncFailures;
+    }
+
+    public long getQrsSyncTimeInMillis() {
+        return qrsSyncTimeInMillis;
+    }
+
+    public long getConfigCopies() {
+        return configCopies;
+    }
+
+    public long getConfigCopySkips() {
+        return configCopySkips;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("metadata_sync");
+        builder.field("searcher_syncs", searcherSyncs);
+        builder.field("searcher_sync_failures", searcherSyncFailures);
+        builder.humanReadableField("searcher_sync_time_in_millis", "searcher_sync_time", new TimeValue(searcherSyncTimeInMillis));
+        builder.field("searcher_changed_tables", searcherChangedTables);
+        builder.field("qrs_syncs", qrsSyncs);
+        builder.field("qrs_sync_failures", qrsSyncFailures);
+        builder.humanReadableField("qrs_sync_time_in_millis", "qrs_sync_time", new TimeValue(qrsSyncTimeInMillis));
+        builder.field("config_copies", configCopies);
+        builder.field("config_copy_skips", configCopySkips);
+        builder.endObject();
+        return builder;
+    }
+}
@@ -15,6 +15,12 @@
 package org.havenask.engine;
 
 import static org.havenask.engine.HavenaskEnginePlugin.HAVENASK_THREAD_POOL_NAME;
+import static org.havenask.engine.index.config.generator.TableConfigGenerator.CLUSTER_DIR;
+import static org.havenask.engine.index.config.generator.TableConfigGenerator.CLUSTER_FILE_SUFFIX;
+import static org.havenask.engine.index.config.generator.TableConfigGenerator.DATA_TABLES_DIR;
+import static org.havenask.engine.index.config.generator.TableConfigGenerator.DATA_TABLES_FILE_SUFFIX;
+import static org.havenask.engine.index.config.generator.TableConfigGenerator.SCHEMAS_DIR;
+import static org.havenask.engine.index.config.generator.TableConfigGenerator.SCHEMAS_FILE_SUFFIX;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -25,6 +31,7 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -36,9 +43,11 @@ import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -55,13 +64,16 @@ import org.havenask.cluster.service.ClusterService;
 import org.havenask.common.Strings;
 import org.havenask.common.collect.Tuple;
 import org.havenask.common.component.AbstractLifecycleComponent;
+import org.havenask.common.metrics.CounterMetric;
 import org.havenask.common.network.NetworkAddress;
 import org.havenask.common.settings.Settings;
 import org.havenask.common.unit.TimeValue;
 import org.havenask.common.util.concurrent.AbstractAsyncTask;
+import org.havenask.common.util.concurrent.ConcurrentCollections;
 import org.havenask.core.internal.io.IOUtils;
 import org.havenask.engine.index.config.ZoneBiz;
 import org.havenask.engine.index.engine.EngineSettings;
+import org.havenask.engine.index.store.VersionFileWatcher;
 import org.havenask.engine.rpc.HavenaskClient;
 import org.havenask.engine.rpc.HeartbeatTargetResponse;
 import org.havenask.engine.rpc.TargetInfo;
@@ -110,6 +122,7 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
     private final HavenaskEngineEnvironment env;
     private final NativeProcessControlService nativeProcessControlService;
     private final HavenaskClient searcherClient;
+    private final VersionFileWatcher versionFileWatcher;
     private final HavenaskClient qrsClient;
 
     private SyncTask syncTask;
@@ -132,6 +145,22 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
     private ConcurrentHashSet<String> indexLockSet = new ConcurrentHashSet<>();
     private ConcurrentHashSet<String> shardLockSet = new ConcurrentHashSet<>();
     private ConcurrentHashSet<ShardId> recoveryDoneShards = new ConcurrentHashSet<>();
+    // 上一次同步成功的searcher target, 用于计算本次同步变化的table
+    private AtomicReference<TargetInfo> lastSyncedSearcherTarget = new AtomicReference<>();
+    // 已拷贝到zone_config下的配置: table配置以index uuid为签名, biz配置以目录指纹为签名, 签名不变时跳过拷贝
+    private final Map<String, String> tableConfigSignatures = ConcurrentCollections.newConcurrentMap();
+    private final Map<String, Long> bizConfigSignatures = ConcurrentCollections.newConcurrentMap();
+    private volatile Set<String> syncedDependencyTables;
+
+    private final CounterMetric searcherSyncs = new CounterMetric();
+    private final CounterMetric searcherSyncFailures = new CounterMetric();
+    private final CounterMetric searcherSyncTimeInNanos = new CounterMetric();
+    private final CounterMetric searcherChangedTables = new CounterMetric();
+    private final CounterMetric qrsSyncs = new CounterMetric();
+    private final CounterMetric qrsSyncFailures = new CounterMetric();
+    private final CounterMetric qrsSyncTimeInNanos = new CounterMetric();
+    private final CounterMetric configCopies = new CounterMetric();
+    private final CounterMetric configCopySkips = new CounterMetric();
 
     public MetaDataSyncer(
         ClusterService clusterService,
@@ -139,9 +168,11 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
         HavenaskEngineEnvironment env,
         NativeProcessControlService nativeProcessControlService,
         HavenaskClient searcherClient,
-        HavenaskClient qrsClient
+        HavenaskClient qrsClient,
+        VersionFileWatcher versionFileWatcher
     ) {
         this.clusterService = clusterService;
+        this.versionFileWatcher = versionFileWatcher;
         this.threadPool = threadPool;
         this.env = env;
         env.setMetaDataSyncer(this);
@@ -250,8 +281,13 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
                             syncTimes
                         );
 
+                        long start = System.nanoTime();
                         try {
                             UpdateHeartbeatTargetRequest searcherTargetRequest = createSearcherUpdateHeartbeatTargetRequest(clusterState);
+                            Set<String> changedTables = diffTables(lastSyncedSearcherTarget.get(), searcherTargetRequest.getTargetInfo());
+                            if (false == changedTables.isEmpty()) {
+                                LOGGER.info("searcher heartbeat target changed tables: {}", changedTables);
+                            }
                             HeartbeatTargetResponse searcherResponse = searcherClient.updateHeartbeatTarget(searcherTargetRequest);
 
                             boolean searcherEquals = searcherTargetRequest.getTargetInfo().equals(searcherResponse.getSignature());
@@ -261,6 +297,9 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
                                 searcherSynced.set(true);
                                 searcherTargetInfo.set(searcherResponse.getCustomInfo());
                                 searcherSignature.set(searcherResponse.getSignature());
+                                lastSyncedSearcherTarget.set(searcherTargetRequest.getTargetInfo());
+                                searcherSyncs.inc();
+                                searcherChangedTables.inc(changedTables.size());
                                 syncTimes = 0;
                                 return;
                             } else {
@@ -272,8 +311,14 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
                             }
                         } catch (Throwable e) {
                             LOGGER.info("update searcher heartbeat target failed", e);
+                            // 异常时无法确认配置是否拷贝完整, 下次同步重新拷贝全部配置
+                            resetConfigSignatures();
+                        } finally {
+                            searcherSyncTimeInNanos.inc(System.nanoTime() - start);
                         }
 
+                        searcherSyncFailures.inc();
+
                         searcherSynced.set(false);
                     } else {
                         syncTimes++;
@@ -298,6 +343,7 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
                             qrsSyncTimes
                         );
 
+                        long start = System.nanoTime();
                         try {
                             UpdateHeartbeatTargetRequest qrsTargetRequest = createQrsUpdateHeartbeatTargetRequest(clusterState);
                             HeartbeatTargetResponse qrsResponse = qrsClient.updateHeartbeatTarget(qrsTargetRequest);
@@ -309,6 +355,7 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
 
                                 LOGGER.info("update qrs heartbeat target success");
                                 qrsSynced.set(true);
+                                qrsSyncs.inc();
                                 qrsSyncTimes = 0;
                                 return;
                             } else {
@@ -321,8 +368,12 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
 
                         } catch (Throwable e) {
                             LOGGER.info("update qrs heartbeat target failed, ", e);
+                            resetConfigSignatures();
+                        } finally {
+                            qrsSyncTimeInNanos.inc(System.nanoTime() - start);
                         }
 
+                        qrsSyncFailures.inc();
                         qrsSynced.set(false);
                     } else {
                         qrsSyncTimes++;
@@ -417,7 +468,7 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
         qrsTargetInfo.service_info = new TargetInfo.ServiceInfo(QRS_ZONE_NAME, DEFAULT_PART_ID, DEFAULT_PART_COUNT);
         qrsTargetInfo.table_info = new HashMap<>();
         qrsTargetInfo.biz_info = new TargetInfo.BizInfo(defaultBizsPath);
-        createConfigLink(HAVENASK_QRS_HOME, "biz", "default", defaultBizsPath, env.getDataPath());
+        maybeCreateBizConfigLink(HAVENASK_QRS_HOME);
         qrsTargetInfo.catalog_address = ip + ":" + qrsTcpPort;
 
         List<TargetInfo.ServiceInfo.Cm2Config> cm2ConfigLocalVal = new ArrayList<>();
@@ -451,8 +502,17 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
         return new UpdateHeartbeatTargetRequest(qrsTargetInfo);
     }
 
+    /**
+     * 已被engine注册监听的partition直接读取内存中的最新version, 其余partition扫描目录
+     */
+    private long getIndexMaxVersionNum(Path versionPath) throws IOException {
+        if (versionFileWatcher != null) {
+            return versionFileWatcher.getIndexMaxVersionNum(versionPath);
+        }
+        return Utils.getIndexMaxVersionNum(versionPath);
+    }
+
     public UpdateHeartbeatTargetRequest createSearcherUpdateHeartbeatTargetRequest(ClusterState clusterState) throws IOException {
-        createConfigLink(HAVENASK_SEARCHER_HOME, "biz", "default", defaultBizsPath, env.getDataPath());
         Path indexRootPath = env.getDataPath().resolve(HAVENASK_WORKSPACCE).resolve(HAVENASK_SEARCHER_HOME).resolve(INDEX_ROOT_POSTFIX);
 
         TargetInfo searcherTargetInfo = new TargetInfo();
@@ -466,14 +526,29 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
         );
         searcherTargetInfo.biz_info = new TargetInfo.BizInfo(defaultBizsPath);
 
-        Set<String> localHavenaskIndexNames = getLocalHavenaskIndexNames(clusterState);
-        for (String tableName : localHavenaskIndexNames) {
+        // 只为新增、重建或mapping更新后重新生成配置的table拷贝配置, 依赖的table集合变化时才重写default biz
+        Map<String, String> localHavenaskIndexUUIDs = getLocalHavenaskIndexUUIDs(clusterState);
+        tableConfigSignatures.keySet().retainAll(localHavenaskIndexUUIDs.keySet());
+        for (Map.Entry<String, String> entry : localHavenaskIndexUUIDs.entrySet()) {
+            String tableName = entry.getKey();
+            String signature = tableConfigSignature(tableName, entry.getValue());
+            if (signature.equals(tableConfigSignatures.get(tableName))) {
+                configCopySkips.inc();
+                continue;
+            }
             createConfigLink(HAVENASK_SEARCHER_HOME, "table", tableName, defaultTablePath, env.getDataPath());
+            configCopies.inc();
+            tableConfigSignatures.put(tableName, signature);
         }
+        Set<String> localHavenaskIndexNames = new HashSet<>(localHavenaskIndexUUIDs.keySet());
         localHavenaskIndexNames.add(TABLE_NAME_IN0);
 
         // update table info
-        generateDefaultBizConfig(localHavenaskIndexNames);
+        if (false == localHavenaskIndexNames.equals(syncedDependencyTables)) {
+            generateDefaultBizConfig(localHavenaskIndexNames);
+            syncedDependencyTables = Set.copyOf(localHavenaskIndexNames);
+        }
+        maybeCreateBizConfigLink(HAVENASK_SEARCHER_HOME);
 
         searcherTargetInfo.table_groups = getTableGroups(clusterState);
 
@@ -493,7 +568,7 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
                 {
                     Path versionPath = defaultRuntimeDataPath.resolve(index).resolve(INDEX_SUB_PATH0);
                     TargetInfo.TableInfo.Partition curPartition = new TargetInfo.TableInfo.Partition();
-                    Long inc_version = Utils.getIndexMaxVersionNum(versionPath);
+                    Long inc_version = getIndexMaxVersionNum(versionPath);
                     if (inc_version == -1L) {
                         throw new FileNotFoundException(
                             String.format(Locale.ROOT, "inc_version does not exist under directory [%s]", versionPath)
@@ -506,7 +581,7 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
                 {
                     Path versionPath = defaultRuntimeDataPath.resolve(index).resolve(INDEX_SUB_PATH1);
                     TargetInfo.TableInfo.Partition curPartition = new TargetInfo.TableInfo.Partition();
-                    Long inc_version = Utils.getIndexMaxVersionNum(versionPath);
+                    Long inc_version = getIndexMaxVersionNum(versionPath);
                     if (inc_version == -1L) {
                         throw new FileNotFoundException(
                             String.format(Locale.ROOT, "inc_version does not exist under directory [%s]", versionPath)
@@ -529,7 +604,7 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
                     TargetInfo.TableInfo.Partition curPartition = new TargetInfo.TableInfo.Partition();
                     Path versionPath = defaultRuntimeDataPath.resolve(index).resolve("generation_0").resolve(partitionName);
                     try {
-                        Long inc_version = Utils.getIndexMaxVersionNum(versionPath);
+                        Long inc_version = getIndexMaxVersionNum(versionPath);
                         if (inc_version == -1L) {
                             throw new FileNotFoundException(
                                 String.format(Locale.ROOT, "inc_version does not exist under directory [%s]", versionPath)
@@ -555,6 +630,101 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
         return new UpdateHeartbeatTargetRequest(searcherTargetInfo);
     }
 
+    /**
+     * biz配置目录未变化时跳过拷贝
+     */
+    private void maybeCreateBizConfigLink(String zoneName) throws IOException {
+        long fingerprint = configFingerprint(defaultBizsPath);
+        Long synced = bizConfigSignatures.get(zoneName);
+        if (synced != null && synced == fingerprint) {
+            configCopySkips.inc();
+            return;
+        }
+        createConfigLink(zoneName, "biz", "default", defaultBizsPath, env.getDataPath());
+        configCopies.inc();
+        bizConfigSignatures.put(zoneName, fingerprint);
+    }
+
+    private void resetConfigSignatures() {
+        tableConfigSignatures.clear();
+        bizConfigSignatures.clear();
+        syncedDependencyTables = null;
+    }
+
+    /**
+     * table配置的签名, 由index uuid和该table的cluster/schema/data_table配置文件内容的hash组成,
+     * mapping更新后配置重新生成, 签名随之变化
+     */
+    private String tableConfigSignature(String tableName, String indexUUID) throws IOException {
+        StringBuilder signature = new StringBuilder(indexUUID);
+        for (Path path : List.of(
+            defaultTablePath.resolve(CLUSTER_DIR).resolve(tableName + CLUSTER_FILE_SUFFIX),
+            defaultTablePath.resolve(SCHEMAS_DIR).resolve(tableName + SCHEMAS_FILE_SUFFIX),
+            defaultTablePath.resolve(DATA_TABLES_DIR).resolve(tableName + DATA_TABLES_FILE_SUFFIX)
+        )) {
+            signature.append(':').append(Files.isRegularFile(path) ? Arrays.hashCode(Files.readAllBytes(path)) : 0);
+        }
+        return signature.toString();
+    }
+
+    /**
+     * 根据目录下所有文件的相对路径、大小和修改时间计算指纹, 与遍历顺序无关
+     */
+    static long configFingerprint(Path configPath) throws IOException {
+        long fingerprint = 0;
+        try (Stream<Path> paths = Files.walk(configPath)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (Files.isRegularFile(path)) {
+                    fingerprint += Objects.hash(
+                        configPath.relativize(path).toString(),
+                        Files.size(path),
+                        Files.getLastModifiedTime(path).toMillis()
+                    );
+                }
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * 返回table_info或table_group相对上一次同步发生变化的table, 包括新增和删除的table
+     */
+    static Set<String> diffTables(TargetInfo previous, TargetInfo current) {
+        Set<String> tableNames = new TreeSet<>();
+        Map<String, Map<String, TargetInfo.TableInfo>> previousTables = previous == null || previous.table_info == null
+            ? Map.of()
+            : previous.table_info;
+        Map<String, Map<String, TargetInfo.TableInfo>> currentTables = current.table_info == null ? Map.of() : current.table_info;
+        tableNames.addAll(previousTables.keySet());
+        tableNames.addAll(currentTables.keySet());
+        tableNames.removeIf(
+            tableName -> Objects.equals(previousTables.get(tableName), currentTables.get(tableName))
+                && Objects.equals(getTableGroup(previous, tableName), getTableGroup(current, tableName))
+        );
+        return tableNames;
+    }
+
+    private static TargetInfo.TableGroup getTableGroup(TargetInfo targetInfo, String tableName) {
+        if (targetInfo == null || targetInfo.table_groups == null) {
+            return null;
+        }
+        return targetInfo.table_groups.get(SEARCHER_ZONE_NAME + ".table_group." + tableName);
+    }
+
+    public MetaDataSyncStats stats() {
+        return new MetaDataSyncStats(
+            searcherSyncs.count(),
+            searcherSyncFailures.count(),
+            TimeUnit.NANOSECONDS.toMillis(searcherSyncTimeInNanos.count()),
+            searcherChangedTables.count(),
+            qrsSyncs.count(),
+            qrsSyncFailures.count(),
+            TimeUnit.NANOSECONDS.toMillis(qrsSyncTimeInNanos.count()),
+            configCopies.count(),
+            configCopySkips.count()
+        );
+    }
+
     private static void createConfigLink(String zoneName, String prefix, String bizName, Path configPath, Path dataPath)
         throws IOException {
         final String zoneConfig = "zone_config";
@@ -613,8 +783,11 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
         return String.valueOf(maxId);
     }
 
-    private static Set<String> getLocalHavenaskIndexNames(ClusterState clusterState) {
-        Set<String> indexNames = new HashSet<>();
+    /**
+     * 返回本节点上havenask table name到index uuid的映射
+     */
+    private static Map<String, String> getLocalHavenaskIndexUUIDs(ClusterState clusterState) {
+        Map<String, String> indexUUIDs = new HashMap<>();
         RoutingNode localRoutingNode = clusterState.getRoutingNodes().node(clusterState.nodes().getLocalNodeId());
         if (localRoutingNode == null) {
             throw new RuntimeException("localRoutingNode is null");
@@ -624,10 +797,10 @@ public class MetaDataSyncer extends AbstractLifecycleComponent implements Cluste
             IndexMetadata indexMetadata = clusterState.metadata().index(shardRouting.getIndexName());
             if (EngineSettings.isHavenaskEngine(indexMetadata.getSettings())) {
                 String tableName = Utils.getHavenaskTableName(shardRouting.shardId());
-                indexNames.add(tableName);
+                indexUUIDs.put(tableName, indexMetadata.getIndexUUID());
             }
         }
-        return indexNames;
+        return indexUUIDs;
     }
 
     private Map<String, TargetInfo.TableGroup> getTableGroups(ClusterState clusterState) {
@@ -23,6 +23,7 @@ import org.havenask.cluster.node.DiscoveryNode;
 import org.havenask.cluster.service.ClusterService;
 import org.havenask.common.Strings;
 import org.havenask.common.component.AbstractLifecycleComponent;
+import org.havenask.common.metrics.CounterMetric;
 import org.havenask.common.settings.Setting;
 import org.havenask.common.settings.Setting.Property;
 import org.havenask.common.settings.Settings;
@@ -36,16 +37,25 @@ import org.havenask.threadpool.ThreadPool;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public class NativeProcessControlService extends AbstractLifecycleComponent {
     private static final Logger LOGGER = LogManager.getLogger(NativeProcessControlService.class);
@@ -63,12 +73,7 @@ public class NativeProcessControlService extends AbstractLifecycleComponent {
         + "%s -c %s -T in0 -p 30468,30480 --role qrs >> qrs.log 2>> qrs.error.log";
     private static final String STOP_HAVENASK_COMMAND = "cd %s;python %s/havenask-command/general_search_stop.py"
         + " -c /ha3_install/usr/local/etc/sql/sql_alog.conf >> search.log 2>> search.error.log";
-    private static final String CHECK_HAVENASK_ALIVE_COMMAND =
-        "ps aux | grep ha_sql | grep 'roleType=%s' | grep -v grep | awk '{print $2}'";
-
-    private static final String CHECK_HAVENASK_ALIVE_WITH_HTTP_PORT_COMMAND =
-        "ps aux | grep ha_sql | grep 'roleType=%s' | grep 'httpPort=%s' | grep -v grep | awk '{print $2}'";
-    private static final String GET_TABLE_SIZE_COMMAND = "du -sk %s | awk '{print $1}'";
+    private static final String HAVENASK_PROCESS_NAME = "ha_sql";
 
     public static final Setting<Integer> HAVENASK_SEARCHER_HTTP_PORT_SETTING = Setting.intSetting(
         "node.attr.havenask.searcher.http.port",
@@ -112,6 +117,14 @@ public class NativeProcessControlService extends AbstractLifecycleComponent {
         Property.Dynamic
     );
 
+    // table size缓存的刷新间隔, 间隔内重复获取同一个table的size直接返回缓存结果
+    public static final Setting<TimeValue> HAVENASK_TABLE_SIZE_REFRESH_INTERVAL_SETTING = Setting.timeSetting(
+        "havenask.table_size.refresh_interval",
+        TimeValue.timeValueSeconds(30),
+        TimeValue.ZERO,
+        Property.NodeScope
+    );
+
     private final ClusterService clusterService;
     private final ThreadPool threadPool;
     private final boolean enabled;
@@ -132,9 +145,21 @@ public class NativeProcessControlService extends AbstractLifecycleComponent {
     protected String stopHavenaskCommand;
     private ProcessControlTask processControlTask;
     private boolean running;
-    private final Set<HavenaskEngine> havenaskEngines = new HashSet<>();
+    private final Set<HavenaskEngine> havenaskEngines = ConcurrentHashMap.newKeySet();
     private Client client;
 
+    // searcher/qrs进程由python脚本以daemon方式拉起, 首次检测时找到对应的ProcessHandle并缓存, 之后只检查handle是否存活
+    private final Map<String, ProcessHandle> supervisedProcesses = new ConcurrentHashMap<>();
+    private final Map<Path, TableSize> tableSizeCache = new ConcurrentHashMap<>();
+    private final TimeValue tableSizeRefreshInterval;
+    private final CounterMetric processChecks = new CounterMetric();
+    private final CounterMetric processScans = new CounterMetric();
+    private final CounterMetric processCheckTimeInNanos = new CounterMetric();
+    private final CounterMetric processExits = new CounterMetric();
+    private final CounterMetric tableSizeWalks = new CounterMetric();
+    private final CounterMetric tableSizeCacheHits = new CounterMetric();
+    private final CounterMetric tableSizeWalkTimeInNanos = new CounterMetric();
+
     public NativeProcessControlService(
         Client client,
         ClusterService clusterService,
@@ -195,6 +220,7 @@ public class NativeProcessControlService extends AbstractLifecycleComponent {
             binFilePath
         );
         this.commandTimeout = HAVENASK_COMMAND_TIMEOUT_SETTING.get(settings);
+        this.tableSizeRefreshInterval = HAVENASK_TABLE_SIZE_REFRESH_INTERVAL_SETTING.get(settings);
         clusterService.getClusterSettings().addSettingsUpdateConsumer(HAVENASK_COMMAND_TIMEOUT_SETTING, this::setCommandTimeout);
     }
 
@@ -218,6 +244,7 @@ public class NativeProcessControlService extends AbstractLifecycleComponent {
             processControlTask.close();
             processControlTask = null;
         }
+        supervisedProcesses.clear();
 
         if (enabled && (isDataNode || isIngestNode)) {
             LOGGER.info("stop local searcher, qrs process");
@@ -264,40 +291,7 @@ public class NativeProcessControlService extends AbstractLifecycleComponent {
 
         @Override
         public void runInternal() {
-            if (false == running) {
-                return;
-            }
-
-            if (isDataNode) {
-                if (false == checkProcessAlive(SEARCHER_ROLE, searcherHttpPort)) {
-                    havenaskEngines.forEach((havenaskEngine) -> {
-                        LOGGER.warn(
-                            "havenask searcher process is not alive, failed engine, shardId: {}",
-                            havenaskEngine.config().getShardId()
-                        );
-                        EngineException e = new EngineException(
-                            havenaskEngine.config().getShardId(),
-                            "havenask searcher process is not alive"
-                        );
-                        havenaskEngine.failEngine("havenask searcher process is not alive", e);
-                    });
-                    LOGGER.info("start searcher process...");
-                    // 启动searcher
-                    boolean isRestart = runCommand(startSearcherCommand, commandTimeout);
-                    if (isRestart) {
-                        LOGGER.info("reroute cluster, set retryFailed to true");
-                        client.admin().cluster().reroute(Requests.clusterRerouteRequest().setRetryFailed(true)).actionGet();
-                    }
-                }
-            }
-
-            if (isIngestNode) {
-                if (false == checkProcessAlive(QRS_ROLE, qrsHttpPort)) {
-                    LOGGER.info("start qrs process...");
-                    // 启动qrs
-                    runCommand(startQrsCommand, commandTimeout);
-                }
-            }
+            checkProcesses();
         }
 
         @Override
@@ -311,13 +305,105 @@ public class NativeProcessControlService extends AbstractLifecycleComponent {
         }
     }
 
+    /**
+     * 检测searcher\qrs进程, 不存活则重启; 定时任务和进程退出回调都会调用
+     */
+    private synchronized void checkProcesses() {
+        if (false == running) {
+            return;
+        }
+
+        if (isDataNode) {
+            if (false == isProcessAlive(SEARCHER_ROLE, searcherHttpPort)) {
+                havenaskEngines.forEach((havenaskEngine) -> {
+                    LOGGER.warn("havenask searcher process is not alive, failed engine, shardId: {}", havenaskEngine.config().getShardId());
+                    EngineException e = new EngineException(havenaskEngine.config().getShardId(), "havenask searcher process is not alive");
+                    havenaskEngine.failEngine("havenask searcher process is not alive", e);
+                });
+                LOGGER.info("start searcher process...");
+                // 启动searcher
+                boolean isRestart = runCommand(startSearcherCommand, commandTimeout);
+                if (isRestart) {
+                    LOGGER.info("reroute cluster, set retryFailed to true");
+                    client.admin().cluster().reroute(Requests.clusterRerouteRequest().setRetryFailed(true)).actionGet();
+                }
+            }
+        }
+
+        if (isIngestNode) {
+            if (false == isProcessAlive(QRS_ROLE, qrsHttpPort)) {
+                LOGGER.info("start qrs process...");
+                // 启动qrs
+                runCommand(startQrsCommand, commandTimeout);
+            }
+        }
+    }
+
+    /**
+     * 检测本节点启动的进程是否存活, 已找到的进程只检查缓存的ProcessHandle, 不再扫描进程列表
+     *
+     * @param role 进程角色: searcher 或者 qrs
+     * @param httpPort 进程的http端口
+     * @return 返回进程存活状态
+     */
+    boolean isProcessAlive(String role, int httpPort) {
+        long start = System.nanoTime();
+        try {
+            ProcessHandle handle = supervisedProcesses.get(role);
+            if (handle != null && handle.isAlive()) {
+                return true;
+            }
+
+            processScans.inc();
+            List<ProcessHandle> handles = findProcesses(role, httpPort);
+            if (handles == null) {
+                // 无法获取进程列表, 不确定进程状态
+                return true;
+            }
+            if (handles.size() != 1) {
+                if (handles.size() > 1) {
+                    LOGGER.warn("found [{}] [{}] processes, pids: {}", handles.size(), role, handles);
+                } else {
+                    LOGGER.info("[{}] pid not found, the process is not alive", role);
+                }
+                supervisedProcesses.remove(role);
+                return false;
+            }
+
+            ProcessHandle found = handles.get(0);
+            supervisedProcesses.put(role, found);
+            found.onExit().thenAccept(exited -> onProcessExit(role, exited));
+            LOGGER.info("supervise [{}] process, pid [{}]", role, found.pid());
+            return found.isAlive();
+        } finally {
+            processChecks.inc();
+            processCheckTimeInNanos.inc(System.nanoTime() - start);
+        }
+    }
+
+    private void onProcessExit(String role, ProcessHandle exited) {
+        if (false == supervisedProcesses.remove(role, exited)) {
+            return;
+        }
+        processExits.inc();
+        if (false == running) {
+            return;
+        }
+        LOGGER.warn("[{}] process exited, pid [{}], check and restart it", role, exited.pid());
+        try {
+            threadPool.executor(ThreadPool.Names.GENERIC).execute(this::checkProcesses);
+        } catch (Exception e) {
+            LOGGER.warn(() -> new ParameterizedMessage("schedule [{}] process check failed", role), e);
+        }
+    }
+
     /**
      * 启动searcher\qrs进程
      */
     private void startProcess() {
         if (isDataNode) {
             LOGGER.info("start searcher process...");
-            while (false == checkProcessAlive(SEARCHER_ROLE, searcherHttpPort)) {
+            while (false == isProcessAlive(SEARCHER_ROLE, searcherHttpPort)) {
                 // 启动searcher
                 boolean runSearcherState = runCommand(startSearcherCommand, commandTimeout);
                 if (!runSearcherState) {
@@ -332,7 +418,7 @@ public class NativeProcessControlService extends AbstractLifecycleComponent {
 
         if (isIngestNode) {
             LOGGER.info("start qrs process...");
-            while (false == checkProcessAlive(QRS_ROLE, qrsHttpPort)) {
+            while (false == isProcessAlive(QRS_ROLE, qrsHttpPort)) {
                 // 启动qrs
                 boolean runQrsState = runCommand(startQrsCommand, commandTimeout);
                 if (!runQrsState) {
@@ -358,54 +444,43 @@ public class NativeProcessControlService extends AbstractLifecycleComponent {
      * @return 返回进程存活状态
      */
     public static boolean checkProcessAlive(String role, Integer httpPort) {
-        Process process = null;
-
-        String command = Objects.isNull(httpPort)
-            ? String.format(Locale.ROOT, CHECK_HAVENASK_ALIVE_COMMAND, role)
-            : String.format(Locale.ROOT, CHECK_HAVENASK_ALIVE_WITH_HTTP_PORT_COMMAND, role, httpPort);
+        List<ProcessHandle> handles = findProcesses(role, httpPort);
+        if (handles == null) {
+            LOGGER.warn("list processes error, don't know the process [{}] status", role);
+            return true;
+        }
+        if (handles.isEmpty()) {
+            LOGGER.info("[{}] pid not found, the process is not alive", role);
+            return false;
+        }
+        if (handles.size() > 1) {
+            LOGGER.warn("found more than one process [{}], pids: {}", role, handles);
+            return false;
+        }
+        return true;
+    }
 
+    /**
+     * 在进程内遍历进程列表, 按命令行参数查找havenask进程, 不再fork ps/grep
+     *
+     * @return 匹配的进程, 获取进程列表失败时返回null
+     */
+    private static List<ProcessHandle> findProcesses(String role, Integer httpPort) {
+        final String roleArg = "roleType=" + role;
+        final String httpPortArg = Objects.isNull(httpPort) ? null : "httpPort=" + httpPort;
         try {
-            process = AccessController.doPrivileged((PrivilegedAction<Process>) () -> {
-                try {
-                    return Runtime.getRuntime().exec(new String[] { "sh", "-c", command });
-                } catch (IOException e) {
-                    LOGGER.warn(() -> new ParameterizedMessage("run check command error, command [{}]", command), e);
-                    return null;
-                }
-            });
-            if (process == null) {
-                LOGGER.warn("run check command error, the process is null, don't know the process [{}] status", role);
-                return true;
-            }
-
-            try (InputStream inputStream = process.getInputStream()) {
-                byte[] bytes = inputStream.readAllBytes();
-                String result = new String(bytes, StandardCharsets.UTF_8);
-                if (result.trim().equals("")) {
-                    LOGGER.info("[{}] pid not found, the process is not alive", role);
-                    return false;
-                }
-
-                try {
-                    if (Integer.valueOf(result.trim()) > 0) {
-                        return true;
-                    } else {
-                        LOGGER.warn("check command get the process [{}] pid error, check result is [{}]", role, result);
-                        return false;
-                    }
-                } catch (NumberFormatException e) {
-                    LOGGER.warn("check command get the process [{}] result format error, check result is [{}]", role, result);
-                    return false;
-                }
-            }
-        } catch (IOException e) {
-            LOGGER.warn(() -> new ParameterizedMessage("check command get the process [{}] input error", role), e);
-        } finally {
-            if (process != null) {
-                process.destroy();
-            }
+            return AccessController.doPrivileged(
+                (PrivilegedAction<List<ProcessHandle>>) () -> ProcessHandle.allProcesses().filter(handle -> {
+                    String commandLine = handle.info().commandLine().orElse("");
+                    return commandLine.contains(HAVENASK_PROCESS_NAME)
+                        && commandLine.contains(roleArg)
+                        && (httpPortArg == null || commandLine.contains(httpPortArg));
+                }).collect(Collectors.toList())
+            );
+        } catch (Exception e) {
+            LOGGER.warn(() -> new ParameterizedMessage("list processes error, role [{}]", role), e);
+            return null;
         }
-        return true;
     }
 
     /**
@@ -443,57 +518,86 @@ public class NativeProcessControlService extends AbstractLifecycleComponent {
         return qrsTcpPort;
     }
 
+    /**
+     * 获取table的磁盘占用, 单位Byte. 结果按table path缓存, 刷新间隔内直接返回缓存
+     */
     public long getTableSize(Path tablePath) {
-        if (isDataNode) {
-            // 获取table size, 获取的size大小单位是KB
-            final String finalGetTableSizeCommand = String.format(Locale.ROOT, GET_TABLE_SIZE_COMMAND, tablePath);
-            String result = runCommandWithResult(finalGetTableSizeCommand);
-            try {
-                if (result != null && false == result.isEmpty()) {
-                    // table size 单位由KB转为Byte
-                    long sizeValue = Long.parseLong(result.trim()) * 1024;
-                    return sizeValue;
-                } else {
-                    return 0;
-                }
-            } catch (Exception e) {
-                LOGGER.info(() -> new ParameterizedMessage("get table size error, table path [{}]", tablePath), e);
-                return 0;
-            }
+        if (false == isDataNode) {
+            return 0;
+        }
+        long now = threadPool.relativeTimeInNanos();
+        TableSize cached = tableSizeCache.get(tablePath);
+        if (cached != null && now - cached.computedAtNanos < tableSizeRefreshInterval.nanos()) {
+            tableSizeCacheHits.inc();
+            return cached.sizeInBytes;
+        }
+
+        long start = System.nanoTime();
+        try {
+            long size = AccessController.doPrivileged((PrivilegedAction<Long>) () -> walkTableSize(tablePath));
+            tableSizeCache.put(tablePath, new TableSize(size, now));
+            return size;
+        } catch (Exception e) {
+            LOGGER.info(() -> new ParameterizedMessage("get table size error, table path [{}]", tablePath), e);
+            return 0;
+        } finally {
+            tableSizeWalks.inc();
+            tableSizeWalkTimeInNanos.inc(System.nanoTime() - start);
         }
-        return 0;
     }
 
-    private String runCommandWithResult(String command) {
-        return AccessController.doPrivileged((PrivilegedAction<String>) () -> {
-            try {
-                LOGGER.debug("run command: {}", command);
-                long start = System.currentTimeMillis();
-                Process process = Runtime.getRuntime().exec(new String[] { "sh", "-c", command });
-                boolean timeout = process.waitFor(commandTimeout.seconds(), TimeUnit.SECONDS);
-                if (false == timeout) {
-                    LOGGER.warn("run command timeout, command: {}", command);
-                    process.destroy();
-                    return null;
-                }
-                if (process.exitValue() != 0) {
-                    return null;
+    /**
+     * 删除index时清理table path及其子目录的缓存
+     */
+    public void removeTableSize(Path tablePath) {
+        tableSizeCache.keySet().removeIf(path -> path.startsWith(tablePath));
+    }
+
+    private static long walkTableSize(Path tablePath) {
+        if (false == Files.exists(tablePath)) {
+            return 0;
+        }
+        final long[] size = new long[1];
+        try {
+            Files.walkFileTree(tablePath, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    size[0] += attrs.size();
+                    return FileVisitResult.CONTINUE;
                 }
-                try (InputStream inputStream = process.getInputStream()) {
-                    byte[] bytes = inputStream.readAllBytes();
-                    // logger success
-                    LOGGER.debug(
-                        "run command success, cost [{}], command: [{}]",
-                        TimeValue.timeValueMillis(System.currentTimeMillis() - start),
-                        command
-                    );
-                    return new String(bytes, StandardCharsets.UTF_8);
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    // 遍历过程中segment可能被合并删除, 忽略
+                    return FileVisitResult.CONTINUE;
                 }
-            } catch (Exception e) {
-                LOGGER.warn(() -> new ParameterizedMessage("run command {} unexpected failed", command), e);
-            }
-            return null;
-        });
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return size[0];
+    }
+
+    private static class TableSize {
+        private final long sizeInBytes;
+        private final long computedAtNanos;
+
+        TableSize(long sizeInBytes, long computedAtNanos) {
+            this.sizeInBytes = sizeInBytes;
+            this.computedAtNanos = computedAtNanos;
+        }
+    }
+
+    public ProcessControlStats stats() {
+        return new ProcessControlStats(
+            processChecks.count(),
+            processScans.count(),
+            TimeUnit.NANOSECONDS.toMillis(processCheckTimeInNanos.count()),
+            processExits.count(),
+            tableSizeWalks.count(),
+            tableSizeCacheHits.count(),
+            TimeUnit.NANOSECONDS.toMillis(tableSizeWalkTimeInNanos.count())
+        );
     }
 
     public static boolean runCommand(String command, TimeValue commandTimeout) {
@@ -552,4 +656,11 @@ public class NativeProcessControlService extends AbstractLifecycleComponent {
         LOGGER.debug("remove havenask engine, shardId: [{}]", engine.config().getShardId());
         havenaskEngines.remove(engine);
     }
+
+    /**
+     * @return 当前节点上启动的engine
+     */
+    public Set<HavenaskEngine> getHavenaskEngines() {
+        return Collections.unmodifiableSet(havenaskEngines);
+    }
 }
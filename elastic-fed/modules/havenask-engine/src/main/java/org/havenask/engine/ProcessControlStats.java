@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.havenask.engine;
+
+import java.io.IOException;
+
+import org.havenask.common.io.stream.StreamInput;
+import org.havenask.common.io.stream.StreamOutput;
+import org.havenask.common.io.stream.Writeable;
+import org.havenask.common.unit.TimeValue;
+import org.havenask.common.xcontent.ToXContentFragment;
+import org.havenask.common.xcontent.XContentBuilder;
+
+/**
+ * {@link NativeProcessControlService}的进程检测和table size统计信息
+ */
+public class ProcessControlStats implements Writeable, ToXContentFragment {
+    private final long processChecks;
+    private final long processScans;
+    private final long processCheckTimeInMillis;
+    private final long processExits;
+    private final long tableSizeWalks;
+    private final long tableSizeCacheHits;
+    private final long tableSizeWalkTimeInMillis;
+
+    public ProcessControlStats(
+        long processChecks,
+        long processScans,
+        long processCheckTimeInMillis,
+        long processExits,
+        long tableSizeWalks,
+        long tableSizeCacheHits,
+        long tableSizeWalkTimeInMillis
+    ) {
+        this.processChecks = processChecks;
+        this.processScans = processScans;
+        this.processCheckTimeInMillis = processCheckTimeInMillis;
+        this.processExits = processExits;
+        this.tableSizeWalks = tableSizeWalks;
+        this.tableSizeCacheHits = tableSizeCacheHits;
+        this.tableSizeWalkTimeInMillis = tableSizeWalkTimeInMillis;
+    }
+
+    public ProcessControlStats(StreamInput in) throws IOException {
+        processChecks = in.readVLong();
+        processScans = in.readVLong();
+        processCheckTimeInMillis = in.readVLong();
+        processExits = in.readVLong();
+        tableSizeWalks = in.readVLong();
+        tableSizeCacheHits = in.readVLong();
+        tableSizeWalkTimeInMillis = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(processChecks);
+        out.writeVLong(processScans);
+        out.writeVLong(processCheckTimeInMillis);
+        out.writeVLong(processExits);
+        out.writeVLong(tableSizeWalks);
+        out.writeVLong(tableSizeCacheHits);
+        out.writeVLong(tableSizeWalkTimeInMillis);
+    }
+
+    public long getProcessChecks() {
+        return processChecks;
+    }
+
+    public long getProcessScans() {
+        return processScans;
+    }
+
+    public long getProcessCheckTimeInMillis() {
+        return processCheckTimeInMillis;
+    }
+
+    public long getProcessExits() {
+        return processExits;
+    }
+
+    public long getTableSizeWalks() {
+        return tableSizeWalks;
+    }
+
+    public long getTableSizeCacheHits() {
+        return tableSizeCacheHits;
+    }
+
+    public long getTableSizeWalkTimeInMillis() {
+        return tableSizeWalkTimeInMillis;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("process_control");
+        builder.field("process_checks", processChecks);
+        builder.field("process_scans", processScans);
+        builder.humanReadableField("process_check_time_in_millis", "process_check_time", new TimeValue(processCheckTimeInMillis));
+        builder.field("process_exits", processExits);
+        builder.field("table_size_walks", tableSizeWalks);
+        builder.field("table_size_cache_hits", tableSizeCacheHits);
+        builder.humanReadableField("table_size_walk_time_in_millis", "table_size_walk_time", new TimeValue(tableSizeWalkTimeInMillis));
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.havenask.engine.admission.action;
+
+import org.havenask.action.support.nodes.BaseNodeResponse;
+import org.havenask.cluster.node.DiscoveryNode;
+import org.havenask.common.io.stream.StreamInput;
+import org.havenask.common.io.stream.StreamOutput;
+import org.havenask.common.xcontent.ToXContentFragment;
+import org.havenask.common.xcontent.XContentBuilder;
+import org.havenask.engine.index.engine.WriteAdmissionStats;
+
+import java.io.IOException;
+
+public class HavenaskWriteAdmissionStatsNodeResponse extends BaseNodeResponse implements ToXContentFragment {
+    private final WriteAdmissionStats stats;
+
+    public HavenaskWriteAdmissionStatsNodeResponse(StreamInput in) throws IOException {
+        super(in);
+        stats = new WriteAdmissionStats(in);
+    }
+
+    public HavenaskWriteAdmissionStatsNodeResponse(DiscoveryNode node, WriteAdmissionStats stats) {
+        super(node);
+        this.stats = stats;
+    }
+
+    public WriteAdmissionStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        stats.writeTo(out);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("name", getNode().getName());
+        stats.toXContent(builder, params);
+        return builder;
+    }
+}
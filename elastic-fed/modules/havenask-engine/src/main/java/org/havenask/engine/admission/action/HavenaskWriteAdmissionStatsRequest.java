@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.havenask.engine.admission.action;
+
+import org.havenask.action.support.nodes.BaseNodesRequest;
+import org.havenask.common.io.stream.StreamInput;
+
+import java.io.IOException;
+
+public class HavenaskWriteAdmissionStatsRequest extends BaseNodesRequest<HavenaskWriteAdmissionStatsRequest> {
+
+    public HavenaskWriteAdmissionStatsRequest(StreamInput in) throws IOException {
+        super(in);
+    }
+
+    /**
+     * Get write admission stats for nodes based on the specified nodes ids.
+     * If none ids are passed, stats of all nodes will be returned.
+     */
+    public HavenaskWriteAdmissionStatsRequest(String... nodesIds) {
+        super(nodesIds);
+    }
+}
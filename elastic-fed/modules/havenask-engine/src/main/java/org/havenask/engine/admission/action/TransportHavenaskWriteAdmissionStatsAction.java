@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.havenask.engine.admission.action;
+
+import org.havenask.action.FailedNodeException;
+import org.havenask.action.support.ActionFilters;
+import org.havenask.action.support.nodes.TransportNodesAction;
+import org.havenask.cluster.service.ClusterService;
+import org.havenask.common.inject.Inject;
+import org.havenask.common.io.stream.StreamInput;
+import org.havenask.engine.index.engine.WriteAdmissionController;
+import org.havenask.threadpool.ThreadPool;
+import org.havenask.transport.TransportService;
+
+import java.io.IOException;
+import java.util.List;
+
+public class TransportHavenaskWriteAdmissionStatsAction extends TransportNodesAction<
+    HavenaskWriteAdmissionStatsRequest,
+    HavenaskWriteAdmissionStatsResponse,
+    HavenaskWriteAdmissionStatsNodeRequest,
+    HavenaskWriteAdmissionStatsNodeResponse> {
+
+    private final WriteAdmissionController writeAdmissionController;
+
+    @Inject
+    public TransportHavenaskWriteAdmissionStatsAction(
+        ThreadPool threadPool,
+        ClusterService clusterService,
+        TransportService transportService,
+        ActionFilters actionFilters,
+        WriteAdmissionController writeAdmissionController
+    ) {
+        super(
+            HavenaskWriteAdmissionStatsAction.NAME,
+            threadPool,
+            clusterService,
+            transportService,
+            actionFilters,
+            HavenaskWriteAdmissionStatsRequest::new,
+            HavenaskWriteAdmissionStatsNodeRequest::new,
+            ThreadPool.Names.MANAGEMENT,
+            HavenaskWriteAdmissionStatsNodeResponse.class
+        );
+        this.writeAdmissionController = writeAdmissionController;
+    }
+
+    @Override
+    protected HavenaskWriteAdmissionStatsResponse newResponse(
+        HavenaskWriteAdmissionStatsRequest request,
+        List<HavenaskWriteAdmissionStatsNodeResponse> responses,
+        List<FailedNodeException> failures
+    ) {
+        return new HavenaskWriteAdmissionStatsResponse(clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected HavenaskWriteAdmissionStatsNodeRequest newNodeRequest(HavenaskWriteAdmissionStatsRequest request) {
+        return new HavenaskWriteAdmissionStatsNodeRequest();
+    }
+
+    @Override
+    protected HavenaskWriteAdmissionStatsNodeResponse newNodeResponse(StreamInput in) throws IOException {
+        return new HavenaskWriteAdmissionStatsNodeResponse(in);
+    }
+
+    @Override
+    protected HavenaskWriteAdmissionStatsNodeResponse nodeOperation(HavenaskWriteAdmissionStatsNodeRequest request) {
+        return new HavenaskWriteAdmissionStatsNodeResponse(clusterService.localNode(), writeAdmissionController.stats());
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.havenask.engine.admission.rest;
+
+import org.havenask.client.node.NodeClient;
+import org.havenask.engine.admission.action.HavenaskWriteAdmissionStatsAction;
+import org.havenask.engine.admission.action.HavenaskWriteAdmissionStatsRequest;
+import org.havenask.rest.BaseRestHandler;
+import org.havenask.rest.RestRequest;
+import org.havenask.rest.RestRequest.Method;
+import org.havenask.rest.action.RestActions.NodesResponseRestListener;
+
+import java.util.List;
+
+public class RestHavenaskWriteAdmissionStats extends BaseRestHandler {
+
+    @Override
+    public String getName() {
+        return "havenask_write_admission_stats_action";
+    }
+
+    @Override
+    public List<Route> routes() {
+        return List.of(new Route(Method.GET, "/_havenask/write_admission/stats"));
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) {
+        String[] nodeIds = request.paramAsStringArray("node", null);
+        HavenaskWriteAdmissionStatsRequest statsRequest = new HavenaskWriteAdmissionStatsRequest(nodeIds);
+        return channel -> client.admin()
+            .cluster()
+            .execute(HavenaskWriteAdmissionStatsAction.INSTANCE, statsRequest, new NodesResponseRestListener<>(channel));
+    }
+}
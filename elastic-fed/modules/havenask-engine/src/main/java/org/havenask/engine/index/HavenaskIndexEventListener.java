@@ -19,22 +19,32 @@ import org.apache.logging.log4j.Logger;
 import org.havenask.HavenaskException;
 import org.havenask.engine.HavenaskEngineEnvironment;
 import org.havenask.engine.MetaDataSyncer;
+import org.havenask.engine.NativeProcessControlService;
 import org.havenask.engine.index.config.generator.BizConfigGenerator;
 import org.havenask.engine.index.config.generator.RuntimeSegmentGenerator;
 import org.havenask.engine.index.config.generator.TableConfigGenerator;
+import org.havenask.index.Index;
 import org.havenask.index.IndexService;
+import org.havenask.index.IndexSettings;
 import org.havenask.index.shard.IndexEventListener;
 import org.havenask.index.shard.IndexShard;
+import org.havenask.indices.cluster.IndicesClusterStateService.AllocatedIndices.IndexRemovalReason;
 
 public class HavenaskIndexEventListener implements IndexEventListener {
     private static final Logger LOGGER = LogManager.getLogger(HavenaskIndexEventListener.class);
 
     private final HavenaskEngineEnvironment env;
     private final MetaDataSyncer metaDataSyncer;
+    private final NativeProcessControlService nativeProcessControlService;
 
-    public HavenaskIndexEventListener(HavenaskEngineEnvironment env, MetaDataSyncer metaDataSyncer) {
+    public HavenaskIndexEventListener(
+        HavenaskEngineEnvironment env,
+        MetaDataSyncer metaDataSyncer,
+        NativeProcessControlService nativeProcessControlService
+    ) {
         this.env = env;
         this.metaDataSyncer = metaDataSyncer;
+        this.nativeProcessControlService = nativeProcessControlService;
     }
 
     @Override
@@ -76,6 +86,11 @@ public class HavenaskIndexEventListener implements IndexEventListener {
         }
     }
 
+    @Override
+    public void afterIndexRemoved(Index index, IndexSettings indexSettings, IndexRemovalReason reason) {
+        nativeProcessControlService.removeTableSize(env.getRuntimedataPath().resolve(index.getName()));
+    }
+
     private void checkIndexIsDeleted(IndexShard indexShard) {
         int loopCount = 60;
         int sleepTime = 1000;
@@ -17,6 +17,9 @@ package org.havenask.engine.index.engine;
 import org.havenask.common.settings.Setting;
 import org.havenask.common.settings.Setting.Property;
 import org.havenask.common.settings.Settings;
+import org.havenask.common.unit.ByteSizeUnit;
+import org.havenask.common.unit.ByteSizeValue;
+import org.havenask.common.unit.TimeValue;
 
 import java.util.Iterator;
 import java.util.List;
@@ -169,6 +172,30 @@ public class EngineSettings {
         Property.Dynamic
     );
 
+    // index.havenask.write.batch_size, 单次writeTable请求最多合并的doc数, 为1时每条doc单独写入
+    public static final Setting<Integer> HAVENASK_WRITE_BATCH_SIZE = Setting.intSetting(
+        "index.havenask.write.batch_size",
+        128,
+        1,
+        10000,
+        Setting.Property.IndexScope
+    );
+
+    // index.havenask.write.linger, 未凑满batch_size的写入最多等待的时间
+    public static final Setting<TimeValue> HAVENASK_WRITE_LINGER = Setting.timeSetting(
+        "index.havenask.write.linger",
+        TimeValue.timeValueMillis(10),
+        TimeValue.timeValueMillis(0),
+        Setting.Property.IndexScope
+    );
+
+    // index.havenask.realtime_get_cache.size, 每个shard缓存最近写入doc的最大字节数, 0表示不缓存
+    public static final Setting<ByteSizeValue> HAVENASK_REALTIME_GET_CACHE_SIZE = Setting.byteSizeSetting(
+        "index.havenask.realtime_get_cache.size",
+        new ByteSizeValue(4, ByteSizeUnit.MB),
+        Setting.Property.IndexScope
+    );
+
     public static boolean isHavenaskEngine(Settings indexSettings) {
         return ENGINE_HAVENASK.equals(ENGINE_TYPE_SETTING.get(indexSettings));
     }
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.index.engine;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.util.BytesRef;
+import org.havenask.common.bytes.BytesArray;
+import org.havenask.common.xcontent.XContentHelper;
+import org.havenask.common.xcontent.XContentType;
+import org.havenask.engine.index.config.Schema;
+import org.havenask.engine.index.mapper.VectorField;
+import org.havenask.index.engine.Engine.Operation;
+import org.havenask.index.mapper.IdFieldMapper;
+import org.havenask.index.mapper.ParseContext;
+import org.havenask.index.mapper.ParsedDocument;
+import org.havenask.index.mapper.RoutingFieldMapper;
+import org.havenask.index.mapper.SourceFieldMapper;
+
+/**
+ * 将ParsedDocument直接编码为ha3格式的utf-8消息, 与{@link HavenaskEngine#toHaIndex}加
+ * {@link HavenaskEngine#buildWriteRequest}的结果等价, 但不创建中间的map和字符串.
+ *
+ * 编码使用线程本地的可复用缓冲区, 每篇文档只在最后拷贝一次结果.
+ */
+public final class Ha3DocEncoder {
+    private static final byte FIELD_SEPARATOR = 0x1F;
+    private static final byte DOC_SEPARATOR = 0x1E;
+    private static final byte NEW_LINE = '\n';
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+    // 超过该大小的缓冲区在编码后释放, 避免大文档长期占用内存
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<Ha3DocEncoder> ENCODER = ThreadLocal.withInitial(Ha3DocEncoder::new);
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int length = 0;
+    private final Set<String> writtenFields = new HashSet<>();
+    // 格式化向量分量, StringBuilder.append(float)与Float.toString输出一致, 但不创建字符串
+    private final StringBuilder floatBuilder = new StringBuilder(16);
+
+    private Ha3DocEncoder() {}
+
+    /**
+     * 编码一篇写入的文档
+     */
+    public static byte[] encode(ParsedDocument parsedDocument, Operation.TYPE type) throws IOException {
+        Ha3DocEncoder encoder = ENCODER.get();
+        try {
+            encoder.writeCommand(type);
+            encoder.writeDocument(parsedDocument);
+            encoder.writeDocEnd();
+            return encoder.toBytes();
+        } finally {
+            encoder.reset();
+        }
+    }
+
+    /**
+     * 编码一篇删除的文档, 只包含_id
+     */
+    public static byte[] encodeDelete(String id) {
+        Ha3DocEncoder encoder = ENCODER.get();
+        try {
+            encoder.writeCommand(Operation.TYPE.DELETE);
+            encoder.writeField(IdFieldMapper.NAME, id);
+            encoder.writeDocEnd();
+            return encoder.toBytes();
+        } finally {
+            encoder.reset();
+        }
+    }
+
+    private void writeCommand(Operation.TYPE type) {
+        switch (type) {
+            case INDEX:
+                writeString("CMD=add");
+                break;
+            case DELETE:
+                writeString("CMD=delete");
+                break;
+            default:
+                throw new IllegalArgumentException("invalid operation type!");
+        }
+        writeFieldEnd();
+    }
+
+    private void writeDocument(ParsedDocument parsedDocument) throws IOException {
+        writeField(IdFieldMapper.NAME, parsedDocument.id());
+        writeField(RoutingFieldMapper.NAME, parsedDocument.routing() != null ? parsedDocument.routing() : parsedDocument.id());
+        writtenFields.add(IdFieldMapper.NAME);
+        writtenFields.add(RoutingFieldMapper.NAME);
+        if (parsedDocument.rootDoc() == null) {
+            return;
+        }
+
+        ParseContext.Document rootDoc = parsedDocument.rootDoc();
+        for (IndexableField field : rootDoc.getFields()) {
+            String fieldName = field.name();
+            // multi field index
+            if (fieldName.contains(".") || fieldName.contains("@")) {
+                fieldName = Schema.encodeFieldWithDot(fieldName);
+            }
+
+            // 与toHaIndex一致, 同名字段只保留第一个
+            if (false == writtenFields.add(fieldName)) {
+                continue;
+            }
+
+            // for string or number
+            String stringVal = field.stringValue();
+            if (stringVal != null) {
+                writeField(fieldName, stringVal);
+                continue;
+            }
+            Number numericVal = field.numericValue();
+            if (numericVal != null) {
+                writeFieldName(fieldName);
+                if (numericVal instanceof Long
+                    || numericVal instanceof Integer
+                    || numericVal instanceof Short
+                    || numericVal instanceof Byte) {
+                    writeLong(numericVal.longValue());
+                } else {
+                    writeString(numericVal.toString());
+                }
+                writeFieldEnd();
+                continue;
+            }
+
+            BytesRef binaryVal = field.binaryValue();
+            if (binaryVal == null) {
+                throw new IOException("invalid field value!");
+            }
+            writeFieldName(fieldName);
+            if (fieldName.equals(SourceFieldMapper.NAME)) {
+                if (parsedDocument.getXContentType() == XContentType.JSON) {
+                    // json的_source直接拷贝
+                    writeBytes(binaryVal);
+                } else {
+                    writeString(XContentHelper.convertToJson(new BytesArray(binaryVal), false, parsedDocument.getXContentType()));
+                }
+            } else if (field instanceof VectorField) {
+                writeVector(binaryVal, ((VectorField) field).getDelimiter());
+            } else { // TODO other special fields support.
+                writeBytes(binaryVal);
+            }
+            writeFieldEnd();
+        }
+    }
+
+    private void writeField(String name, String value) {
+        writeFieldName(name);
+        writeString(value);
+        writeFieldEnd();
+    }
+
+    private void writeFieldName(String name) {
+        writeString(name);
+        ensureCapacity(1);
+        buffer[length++] = '=';
+    }
+
+    private void writeFieldEnd() {
+        ensureCapacity(2);
+        buffer[length++] = FIELD_SEPARATOR;
+        buffer[length++] = NEW_LINE;
+    }
+
+    private void writeDocEnd() {
+        ensureCapacity(2);
+        buffer[length++] = DOC_SEPARATOR;
+        buffer[length++] = NEW_LINE;
+    }
+
+    private void writeBytes(BytesRef bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes.bytes, bytes.offset, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    /**
+     * 直接从little-endian的float字节写出向量, 不创建float[]
+     */
+    private void writeVector(BytesRef bytes, String delimiter) {
+        int end = bytes.offset + bytes.length;
+        for (int pos = bytes.offset; pos + Float.BYTES <= end; pos += Float.BYTES) {
+            if (pos > bytes.offset) {
+                writeString(delimiter);
+            }
+            int bits = (bytes.bytes[pos] & 0xFF) | ((bytes.bytes[pos + 1] & 0xFF) << 8) | ((bytes.bytes[pos + 2] & 0xFF) << 16)
+                | (bytes.bytes[pos + 3] << 24);
+            floatBuilder.setLength(0);
+            floatBuilder.append(Float.intBitsToFloat(bits));
+            writeString(floatBuilder);
+        }
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeString(Long.toString(value));
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        int pos = length + digits;
+        do {
+            buffer[--pos] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value > 0);
+        length += digits;
+    }
+
+    /**
+     * utf-8编码, 与String.getBytes(UTF_8)一致, 不成对的代理字符写为'?'
+     */
+    private void writeString(CharSequence value) {
+        int len = value.length();
+        ensureCapacity(len * 3);
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xC0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    buffer[length++] = '?';
+                }
+            } else {
+                buffer[length++] = (byte) (0xE0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        int required = length + extra;
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length << 1));
+        }
+    }
+
+    private byte[] toBytes() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private void reset() {
+        length = 0;
+        writtenFields.clear();
+        if (buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+            buffer = new byte[INITIAL_BUFFER_SIZE];
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.havenask.engine.index.engine;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.havenask.action.ActionListener;
+import org.havenask.common.metrics.CounterMetric;
+import org.havenask.index.shard.ShardId;
+
+/**
+ * 异步统计shard的doc数量, docStats只读取内存中最近一次的统计结果, 不再阻塞等待count(*)返回.
+ *
+ * 只有shard的写入或commit状态相比上次统计发生变化时才会重新发起count, 同一shard同时最多只有一个count请求.
+ */
+class HavenaskDocCounter {
+    private static final Logger LOGGER = LogManager.getLogger(HavenaskDocCounter.class);
+
+    private final ShardId shardId;
+    private final Consumer<ActionListener<Long>> countFunction;
+    private final AtomicBoolean inFlight = new AtomicBoolean();
+    private final CounterMetric counts = new CounterMetric();
+    private volatile long docCount = -1;
+    private volatile Object countedState;
+
+    HavenaskDocCounter(ShardId shardId, Consumer<ActionListener<Long>> countFunction) {
+        this.shardId = shardId;
+        this.countFunction = countFunction;
+    }
+
+    /**
+     * @return 最近一次统计到的doc数量, 还没有统计成功时返回-1
+     */
+    long getDocCount() {
+        return docCount;
+    }
+
+    long getCountTimes() {
+        return counts.count();
+    }
+
+    /**
+     * state与上次发起统计时不同, 或者还没有统计成功时, 异步发起一次count
+     *
+     * @param state shard当前的写入及commit状态, 需实现equals
+     * @return 是否发起了新的count
+     */
+    boolean maybeCount(Object state) {
+        if (docCount >= 0 && Objects.equals(state, countedState)) {
+            return false;
+        }
+        if (false == inFlight.compareAndSet(false, true)) {
+            // 已有count在执行, 结束后下一次docStats会根据state判断是否需要再次统计
+            return false;
+        }
+        countedState = state;
+        counts.inc();
+        try {
+            countFunction.accept(ActionListener.runAfter(ActionListener.wrap(count -> docCount = count, e -> {
+                countedState = null;
+                LOGGER.debug(() -> new ParameterizedMessage("[{}] havenask engine count docs failed", shardId), e);
+            }), () -> inFlight.set(false)));
+        } catch (Exception e) {
+            countedState = null;
+            inFlight.set(false);
+            LOGGER.debug(() -> new ParameterizedMessage("[{}] havenask engine count docs failed", shardId), e);
+        }
+        return true;
+    }
+}
@@ -24,9 +24,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
@@ -37,6 +39,7 @@ import java.util.function.Function;
 import java.util.function.LongConsumer;
 import java.util.function.LongSupplier;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import javax.management.MBeanTrustPermission;
 
@@ -61,7 +64,9 @@ import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.util.BytesRef;
 import org.havenask.HavenaskException;
+import org.havenask.action.ActionListener;
 import org.havenask.action.bulk.BackoffPolicy;
+import org.havenask.action.support.PlainActionFuture;
 import org.havenask.client.Client;
 import org.havenask.client.OriginSettingClient;
 import org.havenask.common.Nullable;
@@ -69,6 +74,8 @@ import org.havenask.common.Strings;
 import org.havenask.common.bytes.BytesArray;
 import org.havenask.common.bytes.BytesReference;
 import org.havenask.common.collect.Tuple;
+import org.havenask.common.lease.Releasable;
+import org.havenask.common.lease.Releasables;
 import org.havenask.common.lucene.index.HavenaskDirectoryReader;
 import org.havenask.common.lucene.uid.VersionsAndSeqNoResolver.DocIdAndVersion;
 import org.havenask.common.metrics.CounterMetric;
@@ -80,22 +87,21 @@ import org.havenask.common.xcontent.XContentHelper;
 import org.havenask.common.xcontent.XContentParser;
 import org.havenask.common.xcontent.XContentType;
 import org.havenask.engine.HavenaskEngineEnvironment;
+import org.havenask.engine.HavenaskEnginePlugin;
 import org.havenask.engine.MetaDataSyncer;
 import org.havenask.engine.NativeProcessControlService;
 import org.havenask.engine.index.config.EntryTable;
 import org.havenask.engine.index.config.Schema;
 import org.havenask.engine.index.mapper.VectorField;
+import org.havenask.engine.index.store.VersionFileWatcher;
 import org.havenask.engine.rpc.ArpcResponse;
 import org.havenask.engine.rpc.QueryTableRequest;
 import org.havenask.engine.rpc.QueryTableResponse;
-import org.havenask.engine.rpc.SearcherClient;
 import org.havenask.engine.rpc.TargetInfo;
 import org.havenask.engine.rpc.WriteRequest;
-import org.havenask.engine.rpc.WriteResponse;
 import org.havenask.engine.rpc.arpc.SearcherArpcClient;
 import org.havenask.engine.search.action.HavenaskSqlAction;
 import org.havenask.engine.search.action.HavenaskSqlRequest;
-import org.havenask.engine.search.action.HavenaskSqlResponse;
 import org.havenask.engine.util.JsonPrettyFormatter;
 import org.havenask.engine.util.RangeUtil;
 import org.havenask.engine.util.Utils;
@@ -135,6 +141,8 @@ public class HavenaskEngine extends InternalEngine {
 
     private final Client client;
     private final SearcherArpcClient searcherClient;
+    private final HavenaskWriteBatcher writeBatcher;
+    private final HavenaskRealtimeGetCache realtimeGetCache;
     private final HavenaskEngineEnvironment env;
     private final NativeProcessControlService nativeProcessControlService;
     private final MetaDataSyncer metaDataSyncer;
@@ -144,13 +152,18 @@ public class HavenaskEngine extends InternalEngine {
     private final String kafkaTopic;
     private int kafkaPartition;
     private KafkaProducer<String, String> producer = null;
+    private HavenaskRealtimeSender realtimeSender = null;
     private volatile HavenaskCommitInfo lastCommitInfo = null;
     private CheckpointCalc checkpointCalc = null;
     private long lastFedCheckpoint = -1;
     private long lastFedCheckpointTimestamp = -1;
     private final String partitionName;
     private final RangeUtil.PartitionRange partitionRange;
+    private final Path shardPath;
+    private final Releasable versionWatcherRegistration;
+    private volatile Tuple<Long, Long> latestVersion;
     private final SingleObjectCache<DocsStats> docsStatsCache;
+    private final HavenaskDocCounter docCounter;
     private final CounterMetric numDocDeletes = new CounterMetric();
     private final CounterMetric numDocIndexes = new CounterMetric();
     private volatile boolean running;
@@ -162,7 +175,9 @@ public class HavenaskEngine extends InternalEngine {
         int searcherPort,
         HavenaskEngineEnvironment env,
         NativeProcessControlService nativeProcessControlService,
-        MetaDataSyncer metaDataSyncer
+        MetaDataSyncer metaDataSyncer,
+        WriteAdmissionController writeAdmissionController,
+        VersionFileWatcher versionFileWatcher
     ) {
         super(engineConfig);
 
@@ -175,13 +190,35 @@ public class HavenaskEngine extends InternalEngine {
         this.tableName = Utils.getHavenaskTableName(shardId);
         this.partitionName = RangeUtil.getRangePartition(engineConfig.getIndexSettings().getNumberOfShards(), shardId.id());
         this.partitionRange = RangeUtil.getRange(engineConfig.getIndexSettings().getNumberOfShards(), shardId.id());
+        this.shardPath = env.getRuntimedataPath().resolve(tableName).resolve("generation_0").resolve(partitionName);
         this.realTimeEnable = EngineSettings.HAVENASK_REALTIME_ENABLE.get(engineConfig.getIndexSettings().getSettings());
+        this.writeBatcher = new HavenaskWriteBatcher(
+            shardId,
+            tableName,
+            searcherClient,
+            engineConfig.getThreadPool(),
+            EngineSettings.HAVENASK_WRITE_BATCH_SIZE.get(engineConfig.getIndexSettings().getSettings()),
+            EngineSettings.HAVENASK_WRITE_LINGER.get(engineConfig.getIndexSettings().getSettings()),
+            writeAdmissionController,
+            e -> failEngine("havenask bulk write failed", e)
+        );
+        this.realtimeGetCache = new HavenaskRealtimeGetCache(
+            EngineSettings.HAVENASK_REALTIME_GET_CACHE_SIZE.get(engineConfig.getIndexSettings().getSettings()).getBytes()
+        );
         this.kafkaTopic = realTimeEnable
             ? EngineSettings.HAVENASK_REALTIME_TOPIC_NAME.get(engineConfig.getIndexSettings().getSettings())
             : null;
         try {
             this.producer = realTimeEnable ? initKafkaProducer(engineConfig.getIndexSettings().getSettings()) : null;
             this.kafkaPartition = realTimeEnable ? getKafkaPartition(engineConfig.getIndexSettings().getSettings(), kafkaTopic) : -1;
+            if (realTimeEnable) {
+                this.realtimeSender = new HavenaskRealtimeSender(
+                    shardId,
+                    producer,
+                    engineConfig.getThreadPool().executor(HavenaskEnginePlugin.HAVENASK_THREAD_POOL_NAME),
+                    e -> failEngine("havenask realtime send failed", e)
+                );
+            }
         } catch (Exception e) {
             if (realTimeEnable && producer != null) {
                 producer.close();
@@ -228,6 +265,11 @@ public class HavenaskEngine extends InternalEngine {
         }
 
         nativeProcessControlService.addHavenaskEngine(this);
+        // version文件变化由节点级别的watcher推送, refresh时直接读取内存中的最新version
+        this.versionWatcherRegistration = versionFileWatcher != null
+            ? versionFileWatcher.register(shardPath, version -> latestVersion = version)
+            : null;
+        this.docCounter = new HavenaskDocCounter(shardId, this::countDocs);
         final TimeValue refreshInterval = engineConfig.getIndexSettings().getRefreshInterval();
         docsStatsCache = new SingleObjectCache<>(refreshInterval, new DocsStats()) {
             private long lastRefreshTime = 0;
@@ -244,8 +286,9 @@ public class HavenaskEngine extends InternalEngine {
                 lastRefreshTime = lastCommitInfo.getCommitTimestamp();
                 checkpoint = getProcessedLocalCheckpoint();
 
-                // get doc count from havenask
-                this.newDocCount = getDocCount();
+                // 异步从havenask统计doc数量, 这里只读取上一次统计的结果
+                docCounter.maybeCount(List.of(indexes, deletes, lastRefreshTime, lastCommitInfo.getCommitVersion(), checkpoint));
+                this.newDocCount = docCounter.getDocCount();
                 if (newDocCount >= 0) {
                     lastDocCount = newDocCount;
                 }
@@ -261,7 +304,7 @@ public class HavenaskEngine extends InternalEngine {
                     return false;
                 }
 
-                if (newDocCount <= 0) {
+                if (newDocCount <= 0 || newDocCount != docCounter.getDocCount()) {
                     return true;
                 }
 
@@ -296,11 +339,19 @@ public class HavenaskEngine extends InternalEngine {
         };
     }
 
-    static KafkaProducer<String, String> initKafkaProducer(Settings settings) {
+    static Map<String, Object> kafkaProducerConfig(Settings settings) {
         Map<String, Object> props = new HashMap<>();
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, EngineSettings.HAVENASK_REALTIME_BOOTSTRAP_SERVERS.get(settings));
         props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
         props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        // 异步发送时有多个in-flight请求, 开启幂等保证重试的batch不会越过之后的batch, 同一个_id的index/delete在topic中保持顺序
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        return props;
+    }
+
+    static KafkaProducer<String, String> initKafkaProducer(Settings settings) {
+        Map<String, Object> props = kafkaProducerConfig(settings);
         Thread.currentThread().setContextClassLoader(null);
         return AccessController.doPrivileged(
             (PrivilegedAction<KafkaProducer<String, String>>) () -> { return new KafkaProducer<>(props); },
@@ -314,11 +365,24 @@ public class HavenaskEngine extends InternalEngine {
         super.close();
         logger.info("[{}] close havenask engine", shardId);
         running = false;
+        if (realtimeSender != null) {
+            try {
+                realtimeSender.close();
+            } catch (Exception e) {
+                logger.warn("[{}] flush pending havenask realtime sends on close failed", shardId, e);
+            }
+        }
         if (realTimeEnable && producer != null) {
             producer.close();
         }
 
+        try {
+            writeBatcher.close();
+        } catch (Exception e) {
+            logger.warn("[{}] flush pending havenask writes on close failed", shardId, e);
+        }
         searcherClient.close();
+        Releasables.close(versionWatcherRegistration);
         nativeProcessControlService.removeHavenaskEngine(this);
     }
 
@@ -490,17 +554,10 @@ public class HavenaskEngine extends InternalEngine {
                 haDoc.put(fieldName, src);
             } else if (field instanceof VectorField) {
                 VectorField vectorField = (VectorField) field;
-                float[] array = (float[]) VectorField.readValue(vectorField.binaryValue().bytes);
-                int iMax = array.length - 1;
-                StringBuilder b = new StringBuilder();
-                for (int i = 0;; i++) {
-                    b.append(array[i]);
-                    if (i == iMax) {
-                        break;
-                    }
-                    b.append(",");
-                }
-                haDoc.put(fieldName, b.toString());
+                float[] array = VectorField.toVector(binaryVal);
+                // 每一维约占10个字符
+                StringBuilder b = new StringBuilder(array.length * 10);
+                haDoc.put(fieldName, VectorField.appendVector(array, vectorField.getDelimiter(), b).toString());
             } else { // TODO other special fields support.
                 haDoc.put(fieldName, binaryVal.utf8ToString());
             }
@@ -757,8 +814,8 @@ public class HavenaskEngine extends InternalEngine {
         if (setUpBySchemaJson) {
             return getIndexResult(index.source(), index.parsedDoc(), index.operationType(), index, start);
         }
-        Map<String, String> haDoc = toHaIndex(index.parsedDoc());
         if (realTimeEnable) {
+            Map<String, String> haDoc = toHaIndex(index.parsedDoc());
             ProducerRecord<String, String> record = buildProducerRecord(
                 index.id(),
                 index.operationType(),
@@ -767,23 +824,23 @@ public class HavenaskEngine extends InternalEngine {
                 haDoc
             );
             try {
-                producer.send(record).get();
-            } catch (Exception e) {
-                throw new HavenaskException("havenask realtime index exception", e);
+                realtimeSender.send(index.id(), index.seqNo(), record);
+            } catch (IOException e) {
+                logger.warn("havenask realtime index exception", e);
+                failEngine(e.getMessage(), e);
+                throw e;
             }
+            cacheIndexedDoc(index);
             return new IndexResult(index.version(), index.primaryTerm(), index.seqNo(), true);
         } else {
             try {
-                WriteRequest writeRequest = buildWriteRequest(tableName, partitionRange.first, index.operationType(), haDoc);
-                WriteResponse writeResponse = retryWrite(shardId, searcherClient, writeRequest);
-                if (writeResponse.getErrorCode() != null) {
-                    throw new IOException(
-                        "havenask index exception, error code: "
-                            + writeResponse.getErrorCode()
-                            + ", error message:"
-                            + writeResponse.getErrorMessage()
-                    );
-                }
+                WriteRequest writeRequest = new WriteRequest(
+                    tableName,
+                    partitionRange.first,
+                    Ha3DocEncoder.encode(index.parsedDoc(), index.operationType())
+                );
+                writeBatcher.add(index.id(), index.seqNo(), writeRequest);
+                cacheIndexedDoc(index);
                 if (logger.isTraceEnabled()) {
                     logger.trace(
                         "[{}] index into lucene, id: {}, version: {}, primaryTerm: {}, seqNo: {}, cost: {} us",
@@ -819,24 +876,19 @@ public class HavenaskEngine extends InternalEngine {
             long partition = HashAlgorithm.getPartitionId(hashId, kafkaPartition);
             ProducerRecord<String, String> record = new ProducerRecord<>(kafkaTopic, (int) partition, parsedDocument.id(), message);
             try {
-                producer.send(record).get();
-            } catch (Exception e) {
-                throw new HavenaskException("havenask realtime index exception", e);
+                realtimeSender.send(index.id(), index.seqNo(), record);
+            } catch (IOException e) {
+                logger.warn("havenask realtime index exception", e);
+                failEngine(e.getMessage(), e);
+                throw e;
             }
+            cacheIndexedDoc(index);
             return new IndexResult(index.version(), index.primaryTerm(), index.seqNo(), true);
         } else {
             try {
                 WriteRequest writeRequest = new WriteRequest(tableName, partitionRange.first, message.toString());
-
-                WriteResponse writeResponse = retryWrite(shardId, searcherClient, writeRequest);
-                if (writeResponse.getErrorCode() != null) {
-                    throw new IOException(
-                        "havenask index exception, error code: "
-                            + writeResponse.getErrorCode()
-                            + ", error message:"
-                            + writeResponse.getErrorMessage()
-                    );
-                }
+                writeBatcher.add(index.id(), index.seqNo(), writeRequest);
+                cacheIndexedDoc(index);
                 if (logger.isTraceEnabled()) {
                     logger.trace(
                         "[{}] index into lucene, id: {}, version: {}, primaryTerm: {}, seqNo: {}, cost: {} us",
@@ -859,11 +911,26 @@ public class HavenaskEngine extends InternalEngine {
         }
     }
 
+    /**
+     * 记录最近写入的doc, 供realtime get使用
+     */
+    private void cacheIndexedDoc(Index index) {
+        realtimeGetCache.put(
+            index.id(),
+            index.seqNo(),
+            index.primaryTerm(),
+            index.parsedDoc().version().numericValue().longValue(),
+            index.source(),
+            index.routing()
+        );
+    }
+
     @Override
     protected DeleteResult deleteInLucene(Delete delete, DeletionStrategy plan) throws IOException {
-        Map<String, String> haDoc = new HashMap<>();
-        haDoc.put(IdFieldMapper.NAME, delete.id());
+        realtimeGetCache.invalidate(delete.id());
         if (realTimeEnable) {
+            Map<String, String> haDoc = new HashMap<>();
+            haDoc.put(IdFieldMapper.NAME, delete.id());
             ProducerRecord<String, String> record = buildProducerRecord(
                 delete.id(),
                 delete.operationType(),
@@ -872,23 +939,17 @@ public class HavenaskEngine extends InternalEngine {
                 haDoc
             );
             try {
-                producer.send(record).get();
-            } catch (Exception e) {
-                throw new HavenaskException("havenask realtime delete exception", e);
+                realtimeSender.send(delete.id(), delete.seqNo(), record);
+            } catch (IOException e) {
+                logger.warn("havenask realtime delete exception", e);
+                failEngine(e.getMessage(), e);
+                throw e;
             }
             return new DeleteResult(delete.version(), delete.primaryTerm(), delete.seqNo(), true);
         } else {
             try {
-                WriteRequest writeRequest = buildWriteRequest(tableName, partitionRange.first, delete.operationType(), haDoc);
-                WriteResponse writeResponse = retryWrite(shardId, searcherClient, writeRequest);
-                if (writeResponse.getErrorCode() != null) {
-                    throw new IOException(
-                        "havenask delete exception, error code: "
-                            + writeResponse.getErrorCode()
-                            + ", error message:"
-                            + writeResponse.getErrorMessage()
-                    );
-                }
+                WriteRequest writeRequest = new WriteRequest(tableName, partitionRange.first, Ha3DocEncoder.encodeDelete(delete.id()));
+                writeBatcher.add(delete.id(), delete.seqNo(), writeRequest);
 
                 numDocDeletes.inc();
                 return new DeleteResult(delete.version(), delete.primaryTerm(), delete.seqNo(), true);
@@ -905,23 +966,35 @@ public class HavenaskEngine extends InternalEngine {
     static final int MAX_RETRY = 10;
     private static final Logger LOGGER = LogManager.getLogger(HavenaskEngine.class);
 
-    static WriteResponse retryWrite(ShardId shardId, SearcherClient searcherClient, WriteRequest writeRequest) {
-        return retryWrite(shardId, searcherClient, writeRequest, DEFAULT_TIMEOUT, DEFAULT_RETRY_INIT_TIMEOUT, MAX_RETRY);
+    /**
+     * 将攒批中的写入发送给searcher, 实时表等待kafka确认所有已发送的写入, 失败时fail engine
+     */
+    private void flushPendingWrites() throws IOException {
+        try {
+            if (realtimeSender != null) {
+                realtimeSender.flush();
+            }
+            writeBatcher.flush();
+        } catch (IOException e) {
+            logger.warn("havenask flush pending writes exception", e);
+            failEngine(e.getMessage(), e);
+            throw e;
+        }
     }
 
-    static WriteResponse retryWrite(
-        ShardId shardId,
-        SearcherClient searcherClient,
-        WriteRequest writeRequest,
-        TimeValue initialDelay,
-        TimeValue retryDelay,
-        int maxNumberOfRetries
-    ) {
-        WriteResponse writeResponse = retryRpc(shardId, () -> searcherClient.write(writeRequest), initialDelay, maxNumberOfRetries);
-        while (isDocQueueFull(writeResponse)) {
-            writeResponse = retryRpc(shardId, () -> searcherClient.write(writeRequest), retryDelay, maxNumberOfRetries);
-        }
-        return writeResponse;
+    /**
+     * ack之前会sync translog, 先保证攒批中的写入已经被searcher接收
+     */
+    @Override
+    public boolean ensureTranslogSynced(Stream<Translog.Location> locations) throws IOException {
+        flushPendingWrites();
+        return super.ensureTranslogSynced(locations);
+    }
+
+    @Override
+    public void syncTranslog() throws IOException {
+        flushPendingWrites();
+        super.syncTranslog();
     }
 
     static <Response extends ArpcResponse> Response retryRpc(
@@ -967,7 +1040,7 @@ public class HavenaskEngine extends InternalEngine {
         return response;
     }
 
-    private static boolean isWriteRetry(ArpcResponse arpcResponse) {
+    static boolean isWriteRetry(ArpcResponse arpcResponse) {
         if ((arpcResponse.getErrorCode() == ErrorCode.TBS_ERROR_UNKOWN && arpcResponse.getErrorMessage().contains("response is null"))
             || (arpcResponse.getErrorCode() == ErrorCode.TBS_ERROR_OTHERS
                 && (arpcResponse.getErrorMessage().contains("doc queue is full")
@@ -983,7 +1056,7 @@ public class HavenaskEngine extends InternalEngine {
         }
     }
 
-    private static boolean isDocQueueFull(ArpcResponse arpcResponse) {
+    static boolean isDocQueueFull(ArpcResponse arpcResponse) {
         if (arpcResponse.getErrorMessage() != null && arpcResponse.getErrorMessage().contains("doc queue is full")) {
             LOGGER.debug("havenask write doc queue full, retry again");
             return true;
@@ -995,6 +1068,14 @@ public class HavenaskEngine extends InternalEngine {
     @Override
     public GetResult get(Get get, BiFunction<String, SearcherScope, Searcher> searcherFactory) throws EngineException {
         try {
+            GetResult cached = getFromCache(get);
+            if (cached != null) {
+                return cached;
+            }
+            // realtime get需要读到攒批中尚未发送的写入
+            if (get.realtime()) {
+                flushPendingWrites();
+            }
             QueryTableRequest queryTableRequest = new QueryTableRequest(tableName, partitionRange, get.id());
             QueryTableResponse queryTableResponse = retryRpc(
                 shardId,
@@ -1002,74 +1083,144 @@ public class HavenaskEngine extends InternalEngine {
                 DEFAULT_TIMEOUT,
                 MAX_RETRY
             );
+            return toGetResult(get, queryTableResponse);
+        } catch (Exception e) {
+            throw new EngineException(shardId, e.getMessage());
+        }
+    }
 
-            if (queryTableResponse.getErrorCode() != null) {
-                if (queryTableResponse.getErrorCode().equals(ErrorCode.TBS_ERROR_NO_RECORD)) {
-                    return GetResult.NOT_EXISTS;
+    /**
+     * 一次flush后并发发送所有id的queryTable请求, 延迟为一次rpc而不是n次.
+     * searcher的queryTable只支持单个pk, 因此不能合并为一个请求. 需要重试或者失败的id返回null, 由调用方逐个get
+     */
+    @Override
+    public GetResult[] multiGet(List<Get> gets, BiFunction<String, SearcherScope, Searcher> searcherFactory) throws EngineException {
+        GetResult[] results = new GetResult[gets.size()];
+        List<PlainActionFuture<QueryTableResponse>> futures = new ArrayList<>(gets.size());
+        boolean flushed = false;
+        for (int i = 0; i < gets.size(); i++) {
+            Get get = gets.get(i);
+            results[i] = getFromCache(get);
+            if (results[i] != null) {
+                futures.add(null);
+                continue;
+            }
+            if (get.realtime() && false == flushed) {
+                try {
+                    flushPendingWrites();
+                } catch (IOException e) {
+                    throw new EngineException(shardId, "havenask flush pending writes failed", e);
                 }
-                throw new IOException(
-                    "havenask get exception, error code: "
-                        + queryTableResponse.getErrorCode()
-                        + ", error message:"
-                        + queryTableResponse.getErrorMessage()
-                );
+                flushed = true;
             }
+            PlainActionFuture<QueryTableResponse> future = PlainActionFuture.newFuture();
+            searcherClient.queryTable(new QueryTableRequest(tableName, partitionRange, get.id()), future);
+            futures.add(future);
+        }
 
-            if (queryTableResponse.getDocValues().size() == 0) {
-                return GetResult.NOT_EXISTS;
+        for (int i = 0; i < gets.size(); i++) {
+            PlainActionFuture<QueryTableResponse> future = futures.get(i);
+            if (future == null) {
+                continue;
             }
-
-            assert queryTableResponse.getDocValues().size() == 1;
-            DocValue docValue = queryTableResponse.getDocValues().get(0);
-            String routing = null;
-            long seqNo = 0;
-            long primaryTerm = 0;
-            long version = 0;
-            String source = null;
-            for (SingleAttrValue attrValue : docValue.getAttrValueList()) {
-                switch (attrValue.getAttrName()) {
-                    case "_seq_no":
-                        seqNo = attrValue.getIntValue();
-                        break;
-                    case "_primary_term":
-                        primaryTerm = attrValue.getIntValue();
-                        break;
-                    case "_version":
-                        version = attrValue.getIntValue();
-                        break;
+            try {
+                QueryTableResponse response = future.actionGet();
+                if (false == isWriteRetry(response)) {
+                    results[i] = toGetResult(gets.get(i), response);
                 }
+            } catch (Exception e) {
+                String id = gets.get(i).id();
+                logger.debug(() -> new ParameterizedMessage("[{}] havenask multi get exception, id: {}", shardId, id), e);
             }
-            for (SummaryValue summaryValue : docValue.getSummaryValuesList()) {
-                switch (summaryValue.getFieldName()) {
-                    case "_source":
-                        source = summaryValue.getValue();
-                        break;
-                    case "_routing":
-                        routing = summaryValue.getValue();
-                        if (get.id().equals(routing)) {
-                            routing = null;
-                        } else {
-                            routing = routing == null || routing.isEmpty() ? null : routing;
-                        }
-                        break;
-                }
+        }
+        return results;
+    }
+
+    /**
+     * realtime get优先读最近写入的缓存, 未命中时返回null
+     */
+    private GetResult getFromCache(Get get) {
+        if (false == get.realtime()) {
+            return null;
+        }
+        HavenaskRealtimeGetCache.CachedDoc cachedDoc = realtimeGetCache.get(get.id());
+        if (cachedDoc == null) {
+            return null;
+        }
+        return buildGetResult(
+            get,
+            cachedDoc.getSeqNo(),
+            cachedDoc.getPrimaryTerm(),
+            cachedDoc.getVersion(),
+            cachedDoc.getSource(),
+            cachedDoc.getRouting()
+        );
+    }
+
+    private static GetResult toGetResult(Get get, QueryTableResponse queryTableResponse) throws IOException {
+        if (queryTableResponse.getErrorCode() != null) {
+            if (queryTableResponse.getErrorCode().equals(ErrorCode.TBS_ERROR_NO_RECORD)) {
+                return GetResult.NOT_EXISTS;
             }
-            Translog.Index operation = new Translog.Index(
-                get.type(),
-                get.id(),
-                seqNo,
-                primaryTerm,
-                version,
-                source.getBytes(StandardCharsets.UTF_8),
-                routing,
-                -1L
+            throw new IOException(
+                "havenask get exception, error code: "
+                    + queryTableResponse.getErrorCode()
+                    + ", error message:"
+                    + queryTableResponse.getErrorMessage()
             );
-            TranslogLeafReader reader = new TranslogLeafReader(operation);
-            DocIdAndVersion docIdAndVersion = new DocIdAndVersion(0, version, seqNo, primaryTerm, reader, 0);
-            return new GetResult(null, docIdAndVersion, false);
-        } catch (Exception e) {
-            throw new EngineException(shardId, e.getMessage());
         }
+
+        if (queryTableResponse.getDocValues().size() == 0) {
+            return GetResult.NOT_EXISTS;
+        }
+
+        assert queryTableResponse.getDocValues().size() == 1;
+        DocValue docValue = queryTableResponse.getDocValues().get(0);
+        String routing = null;
+        long seqNo = 0;
+        long primaryTerm = 0;
+        long version = 0;
+        String source = null;
+        for (SingleAttrValue attrValue : docValue.getAttrValueList()) {
+            switch (attrValue.getAttrName()) {
+                case "_seq_no":
+                    seqNo = attrValue.getIntValue();
+                    break;
+                case "_primary_term":
+                    primaryTerm = attrValue.getIntValue();
+                    break;
+                case "_version":
+                    version = attrValue.getIntValue();
+                    break;
+            }
+        }
+        for (SummaryValue summaryValue : docValue.getSummaryValuesList()) {
+            switch (summaryValue.getFieldName()) {
+                case "_source":
+                    source = summaryValue.getValue();
+                    break;
+                case "_routing":
+                    routing = summaryValue.getValue();
+                    if (get.id().equals(routing)) {
+                        routing = null;
+                    } else {
+                        routing = routing == null || routing.isEmpty() ? null : routing;
+                    }
+                    break;
+            }
+        }
+        return buildGetResult(get, seqNo, primaryTerm, version, source.getBytes(StandardCharsets.UTF_8), routing);
+    }
+
+    private static GetResult buildGetResult(Get get, long seqNo, long primaryTerm, long version, byte[] source, String routing) {
+        Translog.Index operation = new Translog.Index(get.type(), get.id(), seqNo, primaryTerm, version, source, routing, -1L);
+        TranslogLeafReader reader = new TranslogLeafReader(operation);
+        DocIdAndVersion docIdAndVersion = new DocIdAndVersion(0, version, seqNo, primaryTerm, reader, 0);
+        return new GetResult(null, docIdAndVersion, false);
+    }
+
+    public RealtimeGetCacheStats realtimeGetCacheStats() {
+        return realtimeGetCache.stats();
     }
 
     /**
@@ -1133,12 +1284,18 @@ public class HavenaskEngine extends InternalEngine {
      */
     @Override
     public boolean maybeRefresh(String source) throws EngineException {
+        try {
+            flushPendingWrites();
+        } catch (IOException e) {
+            throw new EngineException(shardId, "havenask flush pending writes failed", e);
+        }
         long time = System.currentTimeMillis();
         long fedCheckpoint = getPersistedLocalCheckpoint();
         checkpointCalc.addCheckpoint(time, fedCheckpoint);
+        // flush之后checkpoint之前的写入都已经被searcher接收, 不再需要缓存
+        realtimeGetCache.evictUpTo(fedCheckpoint);
 
-        Path shardPath = env.getRuntimedataPath().resolve(tableName).resolve("generation_0").resolve(partitionName);
-        Tuple<Long, Long> tuple = Utils.getVersionAndIndexCheckpoint(shardPath);
+        Tuple<Long, Long> tuple = versionWatcherRegistration != null ? latestVersion : Utils.getVersionAndIndexCheckpoint(shardPath);
         if (tuple == null) {
             logger.debug(
                 "havenask engine maybeRefresh failed, fedCheckpoint not found, source: {}, time: {}, fedCheckpoint: {}, "
@@ -1297,6 +1454,13 @@ public class HavenaskEngine extends InternalEngine {
         return lastCommitInfo.getCommitCheckpoint();
     }
 
+    /**
+     * @return 内存中最新的commit信息, havenask有新的数据可见时会更新, 不需要等待fed元数据flush
+     */
+    public HavenaskCommitInfo getLastCommitInfo() {
+        return lastCommitInfo;
+    }
+
     /**
      * add custom commit data to the commit data map
      *
@@ -1341,36 +1505,35 @@ public class HavenaskEngine extends InternalEngine {
         return docsStatsCache.getOrRefresh();
     }
 
-    long getDocCount() {
-        long docCount = -1;
-        try {
-            String sql = String.format(
-                Locale.ROOT,
-                "select /*+ SCAN_ATTR(partitionIds='%d')*/ count(*) from `%s`",
-                shardId.id(),
-                tableName
-            );
-            String kvpair = "format:full_json;timeout:10000;databaseName:" + SQL_DATABASE;
-            HavenaskSqlResponse response = client.execute(HavenaskSqlAction.INSTANCE, new HavenaskSqlRequest(sql, kvpair)).actionGet();
-            JSONObject jsonObject = JsonPrettyFormatter.fromString(response.getResult());
-            JSONObject sqlResult = jsonObject.getJSONObject("sql_result");
-            JSONArray datas = sqlResult.getJSONArray("data");
-            if (datas.size() != 0) {
-                assert datas.size() == 1;
-                JSONArray row = datas.getJSONArray(0);
-                assert row.size() == 1;
-                docCount = row.getLongValue(0);
-            } else {
-                docCount = 0;
-            }
-        } catch (Exception e) {
-            logger.debug("havenask engine get doc stats count error", e);
+    void countDocs(ActionListener<Long> listener) {
+        String sql = String.format(
+            Locale.ROOT,
+            "select /*+ SCAN_ATTR(partitionIds='%d')*/ count(*) from `%s`",
+            shardId.id(),
+            tableName
+        );
+        String kvpair = "format:full_json;timeout:10000;databaseName:" + SQL_DATABASE;
+        client.execute(
+            HavenaskSqlAction.INSTANCE,
+            new HavenaskSqlRequest(sql, kvpair),
+            ActionListener.map(listener, response -> parseDocCount(response.getResult()))
+        );
+    }
+
+    static long parseDocCount(String result) {
+        JSONObject jsonObject = JsonPrettyFormatter.fromString(result);
+        JSONObject sqlResult = jsonObject.getJSONObject("sql_result");
+        JSONArray datas = sqlResult.getJSONArray("data");
+        if (datas.size() == 0) {
+            return 0;
         }
-        return docCount;
+        assert datas.size() == 1;
+        JSONArray row = datas.getJSONArray(0);
+        assert row.size() == 1;
+        return row.getLongValue(0);
     }
 
     long getTableVersionSize() {
-        Path shardPath = env.getRuntimedataPath().resolve(tableName).resolve("generation_0").resolve(partitionName);
         return getTableVersionSize(shardPath);
     }
 
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.havenask.engine.index.engine;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.lucene.util.RamUsageEstimator;
+import org.havenask.common.bytes.BytesReference;
+import org.havenask.common.metrics.CounterMetric;
+
+/**
+ * 单个shard上最近写入的doc缓存, 用于realtime get.
+ *
+ * 写入在searcher接收之前只在攒批队列或kafka中, realtime get需要先flush再queryTable; 缓存命中时两者都可以省掉,
+ * update(get + index)也因此只需要一次rpc. 缓存按字节数做LRU淘汰, delete时失效,
+ * refresh后searcher已经接收的写入(seqNo不超过checkpoint)也会被淘汰.
+ */
+public class HavenaskRealtimeGetCache {
+    private static final long ENTRY_OVERHEAD = RamUsageEstimator.shallowSizeOfInstance(CachedDoc.class) + 64;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, CachedDoc> docs = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private long evictedCheckpoint = -1;
+
+    private final CounterMetric hits = new CounterMetric();
+    private final CounterMetric misses = new CounterMetric();
+
+    public HavenaskRealtimeGetCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * 记录一次写入, 同一个id只保留seqNo最大的一条
+     */
+    public void put(String id, long seqNo, long primaryTerm, long version, BytesReference source, String routing) {
+        if (false == isEnabled()) {
+            return;
+        }
+        CachedDoc doc = new CachedDoc(id, seqNo, primaryTerm, version, BytesReference.toBytes(source), routing);
+        if (doc.ramBytesUsed() > maxBytes) {
+            invalidate(id);
+            return;
+        }
+        synchronized (docs) {
+            CachedDoc previous = docs.get(id);
+            if (previous != null) {
+                if (previous.seqNo > seqNo) {
+                    return;
+                }
+                bytes -= previous.ramBytesUsed();
+            }
+            docs.put(id, doc);
+            bytes += doc.ramBytesUsed();
+            Iterator<CachedDoc> iterator = docs.values().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                bytes -= iterator.next().ramBytesUsed();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 查询缓存, 统计命中率
+     */
+    public CachedDoc get(String id) {
+        if (false == isEnabled()) {
+            return null;
+        }
+        CachedDoc doc;
+        synchronized (docs) {
+            doc = docs.get(id);
+        }
+        if (doc != null) {
+            hits.inc();
+        } else {
+            misses.inc();
+        }
+        return doc;
+    }
+
+    /**
+     * doc被删除, 缓存失效
+     */
+    public void invalidate(String id) {
+        if (false == isEnabled()) {
+            return;
+        }
+        synchronized (docs) {
+            CachedDoc previous = docs.remove(id);
+            if (previous != null) {
+                bytes -= previous.ramBytesUsed();
+            }
+        }
+    }
+
+    /**
+     * 淘汰seqNo不超过checkpoint的写入, 这些写入已经可以从searcher查到
+     */
+    public void evictUpTo(long checkpoint) {
+        if (false == isEnabled()) {
+            return;
+        }
+        synchronized (docs) {
+            if (checkpoint <= evictedCheckpoint) {
+                return;
+            }
+            evictedCheckpoint = checkpoint;
+            Iterator<Map.Entry<String, CachedDoc>> iterator = docs.entrySet().iterator();
+            while (iterator.hasNext()) {
+                CachedDoc doc = iterator.next().getValue();
+                if (doc.seqNo <= checkpoint) {
+                    bytes -= doc.ramBytesUsed();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (docs) {
+            docs.clear();
+            bytes = 0;
+        }
+    }
+
+    public int size() {
+        synchronized (docs) {
+            return docs.size();
+        }
+    }
+
+    public long ramBytesUsed() {
+        synchronized (docs) {
+            return bytes;
+        }
+    }
+
+    public RealtimeGetCacheStats stats() {
+        synchronized (docs) {
+            return new RealtimeGetCacheStats(hits.count(), misses.count(), docs.size(), bytes);
+        }
+    }
+
+    public static class CachedDoc {
+        private final String id;
+        private final long seqNo;
+        private final long primaryTerm;
+        private final long version;
+        private final byte[] source;
+        private final String routing;
+
+        CachedDoc(String id, long seqNo, long primaryTerm, long version, byte[] source, String routing) {
+            this.id = id;
+            this.seqNo = seqNo;
+            this.primaryTerm = primaryTerm;
+            this.version = version;
+            this.source = source;
+            this.routing = routing;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getSeqNo() {
+            return seqNo;
+        }
+
+        public long getPrimaryTerm() {
+            return primaryTerm;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public byte[] getSource() {
+            return source;
+        }
+
+        public String getRouting() {
+            return routing;
+        }
+
+        long ramBytesUsed() {
+            return ENTRY_OVERHEAD + source.length + 2L * id.length() + (routing == null ? 0 : 2L * routing.length());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.index.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.havenask.common.metrics.CounterMetric;
+import org.havenask.index.seqno.LocalCheckpointTracker;
+import org.havenask.index.seqno.SequenceNumbers;
+import org.havenask.index.shard.ShardId;
+
+/**
+ * 实时表写入kafka时异步发送, 不再对每条写入等待kafka返回.
+ *
+ * 发送后立即返回, 由producer按linger.ms/batch.size攒批; engine在translog sync之前调用{@link #flush},
+ * 一次等待flush开始前发送的所有写入被kafka确认, 之后新发送的写入不影响本次flush. 任意写入发送失败时fail engine.
+ */
+public class HavenaskRealtimeSender implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(HavenaskRealtimeSender.class);
+
+    private final ShardId shardId;
+    private final Producer<String, String> producer;
+    private final Executor failureExecutor;
+    private final Consumer<Exception> failureHandler;
+
+    private final Object mutex = new Object();
+    private long pending = 0;
+    // 按发送顺序为每条写入分配序号, 不同kafka partition的确认可能乱序, processed checkpoint表示之前的写入都已确认
+    private final LocalCheckpointTracker sendTracker = new LocalCheckpointTracker(
+        SequenceNumbers.NO_OPS_PERFORMED,
+        SequenceNumbers.NO_OPS_PERFORMED
+    );
+    private Exception failure = null;
+    private boolean closed = false;
+
+    private final CounterMetric sentCount = new CounterMetric();
+    private final CounterMetric ackedCount = new CounterMetric();
+
+    public HavenaskRealtimeSender(
+        ShardId shardId,
+        Producer<String, String> producer,
+        Executor failureExecutor,
+        Consumer<Exception> failureHandler
+    ) {
+        this.shardId = shardId;
+        this.producer = producer;
+        this.failureExecutor = failureExecutor;
+        this.failureHandler = failureHandler;
+    }
+
+    /**
+     * 异步发送一条写入, 不等待kafka确认
+     *
+     * @param id    doc id, 仅用于错误信息
+     * @param seqNo doc seqNo, 仅用于错误信息
+     */
+    public void send(String id, long seqNo, ProducerRecord<String, String> record) throws IOException {
+        final long sendSeqNo;
+        synchronized (mutex) {
+            if (closed) {
+                throw new AlreadyClosedException("[" + shardId + "] havenask realtime sender is closed");
+            }
+            if (failure != null) {
+                throw new IOException("[" + shardId + "] havenask realtime send failed before", failure);
+            }
+            pending++;
+            sendSeqNo = sendTracker.generateSeqNo();
+        }
+        sentCount.inc();
+        try {
+            producer.send(record, (metadata, e) -> onAck(sendSeqNo, id, seqNo, e));
+        } catch (Exception e) {
+            // send本身抛出异常时不会回调
+            synchronized (mutex) {
+                pending--;
+                sendTracker.markSeqNoAsProcessed(sendSeqNo);
+                mutex.notifyAll();
+            }
+            throw new IOException("[" + shardId + "] havenask realtime send exception, id: " + id + ", seqNo: " + seqNo, e);
+        }
+    }
+
+    private void onAck(long sendSeqNo, String id, long seqNo, Exception e) {
+        Exception sendFailure = null;
+        synchronized (mutex) {
+            pending--;
+            sendTracker.markSeqNoAsProcessed(sendSeqNo);
+            if (e != null) {
+                sendFailure = new IOException("havenask realtime send exception, failed doc: [id=" + id + ", seqNo=" + seqNo + "]", e);
+                if (failure == null) {
+                    failure = sendFailure;
+                } else {
+                    failure.addSuppressed(sendFailure);
+                }
+            }
+            mutex.notifyAll();
+        }
+
+        if (sendFailure == null) {
+            ackedCount.inc();
+        } else {
+            LOGGER.warn(() -> new ParameterizedMessage("[{}] havenask realtime send exception", shardId), sendFailure);
+            // 回调在kafka的io线程中执行, fail engine放到其他线程中
+            Exception toFail = sendFailure;
+            failureExecutor.execute(() -> failureHandler.accept(toFail));
+        }
+    }
+
+    /**
+     * 等待flush开始前已发送的写入被kafka确认
+     */
+    public void flush() throws IOException {
+        final long target;
+        synchronized (mutex) {
+            target = sendTracker.getMaxSeqNo();
+            if (sendTracker.getProcessedCheckpoint() >= target) {
+                if (failure != null) {
+                    throw new IOException("[" + shardId + "] havenask realtime send failed", failure);
+                }
+                return;
+            }
+        }
+
+        // 不再等待linger.ms, 立即发送producer中攒批的数据
+        producer.flush();
+
+        synchronized (mutex) {
+            while (sendTracker.getProcessedCheckpoint() < target && failure == null) {
+                try {
+                    mutex.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("[" + shardId + "] interrupted while waiting for havenask realtime send", e);
+                }
+            }
+            if (failure != null) {
+                throw new IOException("[" + shardId + "] havenask realtime send failed", failure);
+            }
+        }
+    }
+
+    /**
+     * 已发送但尚未被kafka确认的写入数
+     */
+    public long getPendingCount() {
+        synchronized (mutex) {
+            return pending;
+        }
+    }
+
+    public long getSentCount() {
+        return sentCount.count();
+    }
+
+    public long getAckedCount() {
+        return ackedCount.count();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (mutex) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flush();
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.index.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.havenask.action.ActionListener;
+import org.havenask.action.bulk.BackoffPolicy;
+import org.havenask.common.metrics.CounterMetric;
+import org.havenask.common.unit.TimeValue;
+import org.havenask.engine.HavenaskEnginePlugin;
+import org.havenask.engine.rpc.BulkWriteRequest;
+import org.havenask.engine.rpc.BulkWriteResponse;
+import org.havenask.engine.rpc.SearcherClient;
+import org.havenask.engine.rpc.WriteRequest;
+import org.havenask.index.shard.ShardId;
+import org.havenask.threadpool.ThreadPool;
+
+/**
+ * 将一个shard上的写入合并为一次writeTable请求异步发送给searcher.
+ *
+ * 写入线程调用{@link #add}后即返回, 不等待rpc. 同一时刻每个shard只有一个在途的writeTable请求,
+ * 保证searcher收到的写入顺序与add的顺序一致; 请求在途期间到达的写入在请求返回后合并为下一个批次发送.
+ * 没有在途请求时, 凑满batchSize或者等待超过linger后发送.
+ * 所有写入都已经记录在translog中, engine在translog sync之前调用{@link #flush}等待写入被searcher接收.
+ * 尚未被searcher接收的写入字节数、写入延迟以及doc queue is full都会反馈给节点级别的{@link WriteAdmissionController}.
+ */
+public class HavenaskWriteBatcher implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(HavenaskWriteBatcher.class);
+
+    private final ShardId shardId;
+    private final String tableName;
+    private final SearcherClient searcherClient;
+    private final ThreadPool threadPool;
+    private final int batchSize;
+    private final TimeValue linger;
+    private final Consumer<Exception> failureHandler;
+    private final WriteAdmissionController admissionController;
+
+    private final Object mutex = new Object();
+    private List<PendingWrite> pending = new ArrayList<>();
+    private boolean inFlight = false;
+    private boolean flushScheduled = false;
+    private long addedDocs = 0;
+    private long completedDocs = 0;
+    private long queuedBytes = 0;
+    private Exception failure = null;
+    private boolean closed = false;
+
+    private final CounterMetric batchCount = new CounterMetric();
+    private final CounterMetric docCount = new CounterMetric();
+    private final CounterMetric retryCount = new CounterMetric();
+
+    public HavenaskWriteBatcher(
+        ShardId shardId,
+        String tableName,
+        SearcherClient searcherClient,
+        ThreadPool threadPool,
+        int batchSize,
+        TimeValue linger,
+        WriteAdmissionController admissionController,
+        Consumer<Exception> failureHandler
+    ) {
+        this.shardId = shardId;
+        this.tableName = tableName;
+        this.searcherClient = searcherClient;
+        this.threadPool = threadPool;
+        this.batchSize = batchSize;
+        this.linger = linger;
+        this.failureHandler = failureHandler;
+        this.admissionController = admissionController;
+    }
+
+    /**
+     * 添加一条写入, 不等待searcher返回
+     *
+     * @param id    doc id, 仅用于错误信息
+     * @param seqNo doc seqNo, 仅用于错误信息
+     */
+    public void add(String id, long seqNo, WriteRequest request) throws IOException {
+        Batch batch = null;
+        boolean scheduleFlush = false;
+        synchronized (mutex) {
+            if (closed) {
+                throw new AlreadyClosedException("[" + shardId + "] havenask write batcher is closed");
+            }
+            if (failure != null) {
+                throw new IOException("[" + shardId + "] havenask bulk write failed before", failure);
+            }
+            PendingWrite write = new PendingWrite(id, seqNo, request);
+            pending.add(write);
+            addedDocs++;
+            queuedBytes += write.bytes;
+            admissionController.onQueued(write.bytes);
+            if (false == inFlight) {
+                if (pending.size() >= batchSize || linger.millis() <= 0) {
+                    batch = nextBatch();
+                } else if (false == flushScheduled) {
+                    flushScheduled = true;
+                    scheduleFlush = true;
+                }
+            }
+        }
+
+        if (batch != null) {
+            send(batch);
+        } else if (scheduleFlush) {
+            threadPool.schedule(this::flushOnLinger, linger, HavenaskEnginePlugin.HAVENASK_THREAD_POOL_NAME);
+        }
+    }
+
+    /**
+     * 等待所有已经add的写入被searcher接收
+     */
+    public void flush() throws IOException {
+        long target;
+        synchronized (mutex) {
+            target = addedDocs;
+        }
+
+        while (true) {
+            Batch batch;
+            synchronized (mutex) {
+                if (failure != null) {
+                    throw new IOException("[" + shardId + "] havenask bulk write failed", failure);
+                }
+                if (completedDocs >= target) {
+                    return;
+                }
+                if (inFlight || pending.isEmpty()) {
+                    try {
+                        mutex.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("[" + shardId + "] interrupted while waiting for havenask bulk write", e);
+                    }
+                    continue;
+                }
+                batch = nextBatch();
+            }
+            send(batch);
+        }
+    }
+
+    private void flushOnLinger() {
+        Batch batch = null;
+        synchronized (mutex) {
+            flushScheduled = false;
+            if (false == inFlight && false == pending.isEmpty() && failure == null) {
+                batch = nextBatch();
+            }
+        }
+        if (batch != null) {
+            send(batch);
+        }
+    }
+
+    /**
+     * 取出最多batchSize条写入作为下一个批次, 需要持有mutex
+     */
+    private Batch nextBatch() {
+        assert Thread.holdsLock(mutex);
+        assert inFlight == false;
+        List<PendingWrite> writes;
+        if (pending.size() <= batchSize) {
+            writes = pending;
+            pending = new ArrayList<>();
+        } else {
+            writes = new ArrayList<>(pending.subList(0, batchSize));
+            pending = new ArrayList<>(pending.subList(batchSize, pending.size()));
+        }
+        inFlight = true;
+        return new Batch(writes);
+    }
+
+    private void send(Batch batch) {
+        searcherClient.bulkWrite(batch.request, new ActionListener<BulkWriteResponse>() {
+            @Override
+            public void onResponse(BulkWriteResponse response) {
+                onBatchResponse(batch, response);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                onBatchFailure(e);
+            }
+        });
+    }
+
+    private void onBatchResponse(Batch batch, BulkWriteResponse response) {
+        if (HavenaskEngine.isWriteRetry(response)) {
+            boolean docQueueFull = HavenaskEngine.isDocQueueFull(response);
+            if (docQueueFull) {
+                admissionController.onQueueFull();
+            }
+            TimeValue delay = batch.nextRetryDelay(docQueueFull);
+            if (delay != null) {
+                retryCount.inc();
+                threadPool.schedule(() -> send(batch), delay, HavenaskEnginePlugin.HAVENASK_THREAD_POOL_NAME);
+                return;
+            }
+            LOGGER.info(
+                "[{}] havenask bulk write retry, retry count: {}, cost: {} ms, final result: {}",
+                shardId,
+                batch.retries,
+                System.currentTimeMillis() - batch.startTime,
+                response
+            );
+        }
+
+        if (response.getErrorCode() != null) {
+            onBatchFailure(
+                new IOException(
+                    "havenask bulk write exception, docs: "
+                        + batch.writes.size()
+                        + ", error code: "
+                        + response.getErrorCode()
+                        + ", error message:"
+                        + response.getErrorMessage()
+                )
+            );
+            return;
+        }
+
+        List<String> failures = new ArrayList<>();
+        for (int i = 0; i < batch.writes.size(); i++) {
+            if (response.isFailed(i)) {
+                failures.add(batch.writes.get(i).toString());
+            }
+        }
+        if (false == failures.isEmpty()) {
+            onBatchFailure(new IOException("havenask bulk write exception, failed docs: " + failures));
+            return;
+        }
+
+        batchCount.inc();
+        docCount.inc(batch.writes.size());
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace(
+                "[{}] havenask bulk write, docs: {}, retries: {}, cost: {} ms",
+                shardId,
+                batch.writes.size(),
+                batch.retries,
+                System.currentTimeMillis() - batch.startTime
+            );
+        }
+
+        Batch next = null;
+        long released;
+        synchronized (mutex) {
+            inFlight = false;
+            completedDocs += batch.writes.size();
+            released = takeQueuedBytes(batch.bytes);
+            if (false == pending.isEmpty()) {
+                next = nextBatch();
+            }
+            mutex.notifyAll();
+        }
+        admissionController.onCompleted(released, System.nanoTime() - batch.startNanos);
+        if (next != null) {
+            send(next);
+        }
+    }
+
+    /**
+     * 从未被searcher接收的字节数中扣除, 需要持有mutex. 关闭时已经全部释放的不会重复释放
+     */
+    private long takeQueuedBytes(long bytes) {
+        assert Thread.holdsLock(mutex);
+        long taken = Math.min(bytes, queuedBytes);
+        queuedBytes -= taken;
+        return taken;
+    }
+
+    private void onBatchFailure(Exception e) {
+        synchronized (mutex) {
+            if (failure == null) {
+                failure = e;
+            } else {
+                failure.addSuppressed(e);
+            }
+            inFlight = false;
+            mutex.notifyAll();
+        }
+        LOGGER.warn(() -> new ParameterizedMessage("[{}] havenask bulk write exception", shardId), e);
+        // 回调可能在arpc的io线程中执行, fail engine放到havenask线程池中
+        threadPool.executor(HavenaskEnginePlugin.HAVENASK_THREAD_POOL_NAME).execute(() -> failureHandler.accept(e));
+    }
+
+    /**
+     * 已发送成功的writeTable请求数
+     */
+    public long getBatchCount() {
+        return batchCount.count();
+    }
+
+    /**
+     * 已发送成功的doc数
+     */
+    public long getDocCount() {
+        return docCount.count();
+    }
+
+    /**
+     * writeTable请求的重试次数
+     */
+    public long getRetryCount() {
+        return retryCount.count();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (mutex) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            flush();
+        } finally {
+            // 失败时还没有被searcher接收的写入不再发送, 归还给准入控制
+            long released;
+            synchronized (mutex) {
+                released = takeQueuedBytes(queuedBytes);
+            }
+            admissionController.onReleased(released);
+        }
+    }
+
+    private class Batch {
+        private final List<PendingWrite> writes;
+        private final BulkWriteRequest request;
+        private final long startTime = System.currentTimeMillis();
+        private final long startNanos = System.nanoTime();
+        private final long bytes;
+        private Iterator<TimeValue> backoff = BackoffPolicy.exponentialBackoff(HavenaskEngine.DEFAULT_TIMEOUT, HavenaskEngine.MAX_RETRY)
+            .iterator();
+        private int retries = 0;
+
+        Batch(List<PendingWrite> writes) {
+            this.writes = writes;
+            List<WriteRequest> requests = new ArrayList<>(writes.size());
+            long bytes = 0;
+            for (PendingWrite write : writes) {
+                requests.add(write.request);
+                bytes += write.bytes;
+            }
+            this.bytes = bytes;
+            this.request = new BulkWriteRequest(tableName, requests);
+        }
+
+        /**
+         * 下一次重试前等待的时间, 返回null表示不再重试. doc queue满时一直重试
+         */
+        TimeValue nextRetryDelay(boolean docQueueFull) {
+            if (false == backoff.hasNext() && docQueueFull) {
+                backoff = BackoffPolicy.exponentialBackoff(HavenaskEngine.DEFAULT_RETRY_INIT_TIMEOUT, HavenaskEngine.MAX_RETRY)
+                    .iterator();
+            }
+            if (backoff.hasNext()) {
+                retries++;
+                return backoff.next();
+            }
+            return null;
+        }
+    }
+
+    private static class PendingWrite {
+        private final String id;
+        private final long seqNo;
+        private final WriteRequest request;
+        private final long bytes;
+
+        PendingWrite(String id, long seqNo, WriteRequest request) {
+            this.id = id;
+            this.seqNo = seqNo;
+            this.request = request;
+            this.bytes = request.getSourceLength();
+        }
+
+        @Override
+        public String toString() {
+            return "[id=" + id + ", seqNo=" + seqNo + "]";
+        }
+    }
+}
@@ -18,6 +18,7 @@ import java.io.IOException;
 import java.util.Locale;
 
 import org.havenask.engine.index.mapper.DenseVectorFieldMapper;
+import org.havenask.engine.index.mapper.VectorField;
 import org.havenask.engine.index.query.ProximaQueryBuilder;
 import org.havenask.index.mapper.MapperService;
 import org.havenask.index.query.MatchAllQueryBuilder;
@@ -71,12 +72,7 @@ public class QueryTransformer {
                 selectParams.append(getScoreComputeStr(fieldName, similarity));
 
                 where.append("MATCHINDEX('" + fieldName + "', '");
-                for (int i = 0; i < knnSearchBuilder.getQueryVector().length; i++) {
-                    where.append(knnSearchBuilder.getQueryVector()[i]);
-                    if (i < knnSearchBuilder.getQueryVector().length - 1) {
-                        where.append(",");
-                    }
-                }
+                VectorField.appendVector(knnSearchBuilder.getQueryVector(), denseVectorFieldMapper.getEmbeddingDelimiter(), where);
                 where.append("&n=" + knnSearchBuilder.k() + "')");
             }
             selectParams.append(") as _score");
@@ -98,13 +94,7 @@ public class QueryTransformer {
 
                 selectParams.append(", ").append(getScoreComputeStr(fieldName, similarity)).append(" as _score");
                 where.append(" where MATCHINDEX('" + proximaQueryBuilder.getFieldName() + "', '");
-                for (int i = 0; i < proximaQueryBuilder.getVector().length; i++) {
-
-                    where.append(proximaQueryBuilder.getVector()[i]);
-                    if (i < proximaQueryBuilder.getVector().length - 1) {
-                        where.append(",");
-                    }
-                }
+                VectorField.appendVector(proximaQueryBuilder.getVector(), denseVectorFieldMapper.getEmbeddingDelimiter(), where);
                 where.append("&n=" + proximaQueryBuilder.getSize() + "')");
                 orderBy.append(" order by _score desc");
             } else if (queryBuilder instanceof TermQueryBuilder) {
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.index.engine;
+
+import java.io.IOException;
+
+import org.havenask.common.io.stream.StreamInput;
+import org.havenask.common.io.stream.StreamOutput;
+import org.havenask.common.io.stream.Writeable;
+import org.havenask.common.unit.ByteSizeValue;
+import org.havenask.common.xcontent.ToXContentFragment;
+import org.havenask.common.xcontent.XContentBuilder;
+
+/**
+ * {@link HavenaskRealtimeGetCache}的统计信息, 节点级别按shard累加
+ */
+public class RealtimeGetCacheStats implements Writeable, ToXContentFragment {
+    private long hitCount;
+    private long missCount;
+    private long docCount;
+    private long sizeInBytes;
+
+    public RealtimeGetCacheStats() {}
+
+    public RealtimeGetCacheStats(long hitCount, long missCount, long docCount, long sizeInBytes) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.docCount = docCount;
+        this.sizeInBytes = sizeInBytes;
+    }
+
+    public RealtimeGetCacheStats(StreamInput in) throws IOException {
+        hitCount = in.readVLong();
+        missCount = in.readVLong();
+        docCount = in.readVLong();
+        sizeInBytes = in.readVLong();
+    }
+
+    public void add(RealtimeGetCacheStats stats) {
+        hitCount += stats.hitCount;
+        missCount += stats.missCount;
+        docCount += stats.docCount;
+        sizeInBytes += stats.sizeInBytes;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(hitCount);
+        out.writeVLong(missCount);
+        out.writeVLong(docCount);
+        out.writeVLong(sizeInBytes);
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getDocCount() {
+        return docCount;
+    }
+
+    public long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("realtime_get_cache");
+        builder.field("hit_count", hitCount);
+        builder.field("miss_count", missCount);
+        builder.field("doc_count", docCount);
+        builder.humanReadableField("size_in_bytes", "size", new ByteSizeValue(sizeInBytes));
+        return builder.endObject();
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.havenask.engine.index.engine;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.havenask.action.ActionListener;
+import org.havenask.common.metrics.CounterMetric;
+import org.havenask.common.settings.Setting;
+import org.havenask.common.settings.Setting.Property;
+import org.havenask.common.settings.Settings;
+import org.havenask.common.unit.ByteSizeUnit;
+import org.havenask.common.unit.ByteSizeValue;
+import org.havenask.common.unit.TimeValue;
+import org.havenask.common.util.concurrent.HavenaskRejectedExecutionException;
+import org.havenask.index.IndexingPressure;
+import org.havenask.threadpool.Scheduler;
+import org.havenask.threadpool.ThreadPool;
+
+/**
+ * 节点级别的havenask写入准入控制.
+ *
+ * searcher是节点上所有havenask shard共享的, 这里统计已经交给{@link HavenaskWriteBatcher}但searcher还没有接收的写入字节数,
+ * 并按AIMD调整允许的上限: searcher返回doc queue is full时上限减半, 写入延迟低于target_latency时上限线性增长,
+ * 上限不超过indexing_pressure.memory.limit. 超过上限时新的primary shard bulk先等待, 等待超过max_wait后被拒绝.
+ *
+ * 准入时按bulk请求大小预留字节数, 请求处理完成后由调用方释放; 等待的请求按FIFO逐个放行, 放行后不超过上限.
+ * 处理期间batcher中的字节与预留重复计算, 偏保守.
+ */
+public class WriteAdmissionController {
+    private static final Logger LOGGER = LogManager.getLogger(WriteAdmissionController.class);
+
+    public static final Setting<Boolean> HAVENASK_WRITE_ADMISSION_ENABLED = Setting.boolSetting(
+        "havenask.write_admission.enabled",
+        true,
+        Property.NodeScope
+    );
+
+    public static final Setting<ByteSizeValue> HAVENASK_WRITE_ADMISSION_MAX_LIMIT = Setting.memorySizeSetting(
+        "havenask.write_admission.max_limit",
+        IndexingPressure.MAX_INDEXING_BYTES::getRaw,
+        Property.NodeScope
+    );
+
+    public static final Setting<ByteSizeValue> HAVENASK_WRITE_ADMISSION_MIN_LIMIT = Setting.byteSizeSetting(
+        "havenask.write_admission.min_limit",
+        new ByteSizeValue(4, ByteSizeUnit.MB),
+        Property.NodeScope
+    );
+
+    public static final Setting<TimeValue> HAVENASK_WRITE_ADMISSION_TARGET_LATENCY = Setting.timeSetting(
+        "havenask.write_admission.target_latency",
+        TimeValue.timeValueMillis(500),
+        TimeValue.timeValueMillis(1),
+        Property.NodeScope
+    );
+
+    public static final Setting<TimeValue> HAVENASK_WRITE_ADMISSION_MAX_WAIT = Setting.timeSetting(
+        "havenask.write_admission.max_wait",
+        TimeValue.timeValueSeconds(1),
+        TimeValue.timeValueMillis(0),
+        Property.NodeScope
+    );
+
+    private final ThreadPool threadPool;
+    private final boolean enabled;
+    private final long maxLimit;
+    private final long minLimit;
+    private final long increment;
+    private final long targetLatencyNanos;
+    private final TimeValue maxWait;
+
+    private final AtomicLong outstandingBytes = new AtomicLong();
+    private final Object mutex = new Object();
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private volatile long limit;
+    private long lastDecreaseNanos;
+
+    private final CounterMetric admitted = new CounterMetric();
+    private final CounterMetric delayed = new CounterMetric();
+    private final CounterMetric rejected = new CounterMetric();
+    private final CounterMetric waitTimeNanos = new CounterMetric();
+    private final CounterMetric queueFull = new CounterMetric();
+    private final CounterMetric slowWrites = new CounterMetric();
+
+    public WriteAdmissionController(Settings settings, ThreadPool threadPool) {
+        this.threadPool = threadPool;
+        this.enabled = HAVENASK_WRITE_ADMISSION_ENABLED.get(settings);
+        this.maxLimit = HAVENASK_WRITE_ADMISSION_MAX_LIMIT.get(settings).getBytes();
+        this.minLimit = Math.min(HAVENASK_WRITE_ADMISSION_MIN_LIMIT.get(settings).getBytes(), maxLimit);
+        this.increment = Math.max(minLimit, maxLimit / 100);
+        this.targetLatencyNanos = HAVENASK_WRITE_ADMISSION_TARGET_LATENCY.get(settings).nanos();
+        this.maxWait = HAVENASK_WRITE_ADMISSION_MAX_WAIT.get(settings);
+        this.limit = maxLimit;
+        this.lastDecreaseNanos = System.nanoTime() - targetLatencyNanos;
+    }
+
+    /**
+     * 申请写入一个大小为bytes的primary shard bulk. 返回true表示可以立即执行, listener不会被调用;
+     * 否则等待到有空余或者超时, 通过listener通知放行或拒绝, listener可能在searcher的回调线程中执行.
+     * 放行后bytes计入outstanding, 请求处理完成后需要调用{@link #onReleased(long)}释放
+     */
+    public boolean admit(long bytes, ActionListener<Void> listener) {
+        if (false == enabled) {
+            outstandingBytes.addAndGet(bytes);
+            admitted.inc();
+            return true;
+        }
+
+        Waiter waiter = new Waiter(bytes, listener);
+        synchronized (mutex) {
+            // 已经有请求在等待时排到队尾, 保证FIFO
+            if (waiters.isEmpty() && tryReserve(bytes)) {
+                admitted.inc();
+                return true;
+            }
+            if (maxWait.nanos() > 0) {
+                waiters.add(waiter);
+            }
+        }
+
+        if (maxWait.nanos() <= 0) {
+            rejected.inc();
+            listener.onFailure(rejection(0));
+            return false;
+        }
+        delayed.inc();
+        waiter.timeout = threadPool.schedule(() -> onWaitTimeout(waiter), maxWait, ThreadPool.Names.SAME);
+        return false;
+    }
+
+    /**
+     * 写入交给batcher, 还没有被searcher接收
+     */
+    public void onQueued(long bytes) {
+        outstandingBytes.addAndGet(bytes);
+    }
+
+    /**
+     * 一批写入被searcher接收
+     */
+    public void onCompleted(long bytes, long latencyNanos) {
+        if (latencyNanos <= targetLatencyNanos) {
+            long current = limit;
+            if (current < maxLimit) {
+                limit = Math.min(maxLimit, current + increment);
+            }
+        } else {
+            slowWrites.inc();
+        }
+        onReleased(bytes);
+    }
+
+    /**
+     * 写入失败或者batcher关闭, 不再等待searcher接收
+     */
+    public void onReleased(long bytes) {
+        outstandingBytes.addAndGet(-bytes);
+        releaseWaiters();
+    }
+
+    /**
+     * searcher返回doc queue is full, 上限减半. 同一个target_latency周期内只减一次, 避免多个shard同时重试时上限被压到最低
+     */
+    public void onQueueFull() {
+        queueFull.inc();
+        long now = System.nanoTime();
+        synchronized (mutex) {
+            if (now - lastDecreaseNanos < targetLatencyNanos) {
+                return;
+            }
+            lastDecreaseNanos = now;
+            long current = limit;
+            limit = Math.max(minLimit, current / 2);
+            LOGGER.debug("havenask doc queue is full, decrease write admission limit from [{}] to [{}]", current, limit);
+        }
+    }
+
+    /**
+     * 预留bytes后不超过上限时预留成功. 没有任何outstanding时总是成功, 避免大于上限的请求永远无法执行
+     */
+    private boolean tryReserve(long bytes) {
+        while (true) {
+            long current = outstandingBytes.get();
+            if (current > 0 && current + bytes > limit) {
+                return false;
+            }
+            if (outstandingBytes.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    private void releaseWaiters() {
+        while (true) {
+            Waiter waiter;
+            synchronized (mutex) {
+                // 按FIFO逐个放行, 队首放不下时后面的请求继续等待
+                waiter = waiters.peek();
+                if (waiter == null || false == tryReserve(waiter.bytes)) {
+                    return;
+                }
+                waiters.poll();
+            }
+            if (waiter.complete()) {
+                admitted.inc();
+                waitTimeNanos.inc(System.nanoTime() - waiter.startNanos);
+                waiter.listener.onResponse(null);
+            } else {
+                // 已经超时被拒绝, 归还预留
+                outstandingBytes.addAndGet(-waiter.bytes);
+            }
+        }
+    }
+
+    private void onWaitTimeout(Waiter waiter) {
+        synchronized (mutex) {
+            Iterator<Waiter> iterator = waiters.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next() == waiter) {
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+        if (waiter.complete()) {
+            long waitNanos = System.nanoTime() - waiter.startNanos;
+            rejected.inc();
+            waitTimeNanos.inc(waitNanos);
+            waiter.listener.onFailure(rejection(waitNanos));
+        }
+        // 超时的请求可能在队首挡住了后面更小的请求
+        releaseWaiters();
+    }
+
+    private HavenaskRejectedExecutionException rejection(long waitNanos) {
+        return new HavenaskRejectedExecutionException(
+            "rejected execution of havenask write ["
+                + "outstanding_bytes="
+                + outstandingBytes.get()
+                + ", "
+                + "limit_bytes="
+                + limit
+                + ", "
+                + "max_limit_bytes="
+                + maxLimit
+                + ", "
+                + "waited="
+                + TimeValue.timeValueNanos(waitNanos)
+                + "]",
+            false
+        );
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getOutstandingBytes() {
+        return outstandingBytes.get();
+    }
+
+    public WriteAdmissionStats stats() {
+        int waiting;
+        synchronized (mutex) {
+            waiting = waiters.size();
+        }
+        return new WriteAdmissionStats(
+            limit,
+            maxLimit,
+            outstandingBytes.get(),
+            waiting,
+            admitted.count(),
+            delayed.count(),
+            rejected.count(),
+            TimeValue.nsecToMSec(waitTimeNanos.count()),
+            queueFull.count(),
+            slowWrites.count()
+        );
+    }
+
+    private static class Waiter {
+        private final long bytes;
+        private final ActionListener<Void> listener;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private volatile Scheduler.ScheduledCancellable timeout;
+
+        Waiter(long bytes, ActionListener<Void> listener) {
+            this.bytes = bytes;
+            this.listener = listener;
+        }
+
+        boolean complete() {
+            if (completed.compareAndSet(false, true)) {
+                Scheduler.ScheduledCancellable scheduled = timeout;
+                if (scheduled != null) {
+                    scheduled.cancel();
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.havenask.engine.index.engine;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.havenask.Version;
+import org.havenask.action.ActionListener;
+import org.havenask.action.bulk.BulkShardRequest;
+import org.havenask.action.bulk.TransportShardBulkAction;
+import org.havenask.action.support.replication.TransportReplicationAction.ConcreteShardRequest;
+import org.havenask.cluster.metadata.IndexMetadata;
+import org.havenask.cluster.service.ClusterService;
+import org.havenask.common.util.concurrent.AbstractRunnable;
+import org.havenask.threadpool.ThreadPool;
+import org.havenask.transport.TransportChannel;
+import org.havenask.transport.TransportInterceptor;
+import org.havenask.transport.TransportRequest;
+import org.havenask.transport.TransportRequestHandler;
+import org.havenask.transport.TransportResponse;
+
+/**
+ * 在primary shard bulk进入IndexingPressure和写线程之前, 通过{@link WriteAdmissionController}对havenask索引的写入做准入控制
+ */
+public class WriteAdmissionInterceptor implements TransportInterceptor {
+    private static final Logger LOGGER = LogManager.getLogger(WriteAdmissionInterceptor.class);
+
+    static final String SHARD_BULK_PRIMARY_ACTION = TransportShardBulkAction.ACTION_NAME + "[p]";
+
+    private final WriteAdmissionController controller;
+    private final ClusterService clusterService;
+    private final ThreadPool threadPool;
+
+    public WriteAdmissionInterceptor(WriteAdmissionController controller, ClusterService clusterService, ThreadPool threadPool) {
+        this.controller = controller;
+        this.clusterService = clusterService;
+        this.threadPool = threadPool;
+    }
+
+    @Override
+    public <T extends TransportRequest> TransportRequestHandler<T> interceptHandler(
+        String action,
+        String executor,
+        boolean forceExecution,
+        TransportRequestHandler<T> actualHandler
+    ) {
+        if (false == SHARD_BULK_PRIMARY_ACTION.equals(action)) {
+            return actualHandler;
+        }
+        return (request, originalChannel, task) -> {
+            BulkShardRequest bulkShardRequest = getHavenaskBulkShardRequest(request);
+            if (bulkShardRequest == null) {
+                actualHandler.messageReceived(request, originalChannel, task);
+                return;
+            }
+
+            // 准入时预留的字节数在返回response后释放
+            long bytes = bulkShardRequest.ramBytesUsed();
+            TransportChannel channel = new ReleasingChannel(originalChannel, () -> controller.onReleased(bytes));
+            AbstractRunnable handle = new AbstractRunnable() {
+                @Override
+                protected void doRun() throws Exception {
+                    actualHandler.messageReceived(request, channel, task);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    sendFailure(channel, e);
+                }
+            };
+            // 等待后在searcher回调线程或者scheduler线程中放行, primary bulk注册的executor是SAME, 需要fork到write线程池并恢复thread context
+            Runnable resume = threadPool.getThreadContext().preserveContext(handle);
+            boolean admitted = controller.admit(bytes, new ActionListener<Void>() {
+                @Override
+                public void onResponse(Void aVoid) {
+                    threadPool.executor(ThreadPool.Names.WRITE).execute(resume);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    // 没有放行, 不需要释放预留
+                    sendFailure(originalChannel, e);
+                }
+            });
+            if (admitted) {
+                handle.run();
+            }
+        };
+    }
+
+    private BulkShardRequest getHavenaskBulkShardRequest(TransportRequest request) {
+        if (false == request instanceof ConcreteShardRequest) {
+            return null;
+        }
+        TransportRequest shardRequest = ((ConcreteShardRequest<?>) request).getRequest();
+        if (false == shardRequest instanceof BulkShardRequest) {
+            return null;
+        }
+        BulkShardRequest bulkShardRequest = (BulkShardRequest) shardRequest;
+        IndexMetadata indexMetadata = clusterService.state().metadata().index(bulkShardRequest.shardId().getIndex());
+        if (indexMetadata == null || false == EngineSettings.isHavenaskEngine(indexMetadata.getSettings())) {
+            return null;
+        }
+        return bulkShardRequest;
+    }
+
+    private static void sendFailure(TransportChannel channel, Exception e) {
+        try {
+            channel.sendResponse(e);
+        } catch (Exception inner) {
+            inner.addSuppressed(e);
+            LOGGER.warn("failed to send havenask write admission failure", inner);
+        }
+    }
+
+    /**
+     * 第一次返回response时执行onResponse, 用于释放准入预留的字节数
+     */
+    static class ReleasingChannel implements TransportChannel {
+        private final TransportChannel delegate;
+        private final Runnable onResponse;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleasingChannel(TransportChannel delegate, Runnable onResponse) {
+            this.delegate = delegate;
+            this.onResponse = onResponse;
+        }
+
+        @Override
+        public String getProfileName() {
+            return delegate.getProfileName();
+        }
+
+        @Override
+        public String getChannelType() {
+            return delegate.getChannelType();
+        }
+
+        @Override
+        public Version getVersion() {
+            return delegate.getVersion();
+        }
+
+        @Override
+        public void sendResponse(TransportResponse response) throws IOException {
+            release();
+            delegate.sendResponse(response);
+        }
+
+        @Override
+        public void sendResponse(Exception exception) throws IOException {
+            release();
+            delegate.sendResponse(exception);
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                onResponse.run();
+            }
+        }
+    }
+}
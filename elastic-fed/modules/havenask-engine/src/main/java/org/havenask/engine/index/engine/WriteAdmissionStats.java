@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.havenask.engine.index.engine;
+
+import java.io.IOException;
+
+import org.havenask.common.io.stream.StreamInput;
+import org.havenask.common.io.stream.StreamOutput;
+import org.havenask.common.io.stream.Writeable;
+import org.havenask.common.unit.ByteSizeValue;
+import org.havenask.common.unit.TimeValue;
+import org.havenask.common.xcontent.ToXContentFragment;
+import org.havenask.common.xcontent.XContentBuilder;
+
+/**
+ * {@link WriteAdmissionController}的统计信息
+ */
+public class WriteAdmissionStats implements Writeable, ToXContentFragment {
+    private final long limitBytes;
+    private final long maxLimitBytes;
+    private final long outstandingBytes;
+    private final int waiting;
+    private final long admitted;
+    private final long delayed;
+    private final long rejected;
+    private final long waitTimeInMillis;
+    private final long queueFull;
+    private final long slowWrites;
+
+    public WriteAdmissionStats(
+        long limitBytes,
+        long maxLimitBytes,
+        long outstandingBytes,
+        int waiting,
+        long admitted,
+        long delayed,
+        long rejected,
+        long waitTimeInMillis,
+        long queueFull,
+        long slowWrites
+    ) {
+        this.limitBytes = limitBytes;
+        this.maxLimitBytes = maxLimitBytes;
+        this.outstandingBytes = outstandingBytes;
+        this.waiting = waiting;
+        this.admitted = admitted;
+        this.delayed = delayed;
+        this.rejected = rejected;
+        this.waitTimeInMillis = waitTimeInMillis;
+        this.queueFull = queueFull;
+        this.slowWrites = slowWrites;
+    }
+
+    public WriteAdmissionStats(StreamInput in) throws IOException {
+        limitBytes = in.readVLong();
+        maxLimitBytes = in.readVLong();
+        outstandingBytes = in.readVLong();
+        waiting = in.readVInt();
+        admitted = in.readVLong();
+        delayed = in.readVLong();
+        rejected = in.readVLong();
+        waitTimeInMillis = in.readVLong();
+        queueFull = in.readVLong();
+        slowWrites = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(limitBytes);
+        out.writeVLong(maxLimitBytes);
+        out.writeVLong(outstandingBytes);
+        out.writeVInt(waiting);
+        out.writeVLong(admitted);
+        out.writeVLong(delayed);
+        out.writeVLong(rejected);
+        out.writeVLong(waitTimeInMillis);
+        out.writeVLong(queueFull);
+        out.writeVLong(slowWrites);
+    }
+
+    public long getLimitBytes() {
+        return limitBytes;
+    }
+
+    public long getMaxLimitBytes() {
+        return maxLimitBytes;
+    }
+
+    public long getOutstandingBytes() {
+        return outstandingBytes;
+    }
+
+    public int getWaiting() {
+        return waiting;
+    }
+
+    public long getAdmitted() {
+        return admitted;
+    }
+
+    public long getDelayed() {
+        return delayed;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getWaitTimeInMillis() {
+        return waitTimeInMillis;
+    }
+
+    public long getQueueFull() {
+        return queueFull;
+    }
+
+    public long getSlowWrites() {
+        return slowWrites;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("write_admission");
+        builder.humanReadableField("limit_in_bytes", "limit", new ByteSizeValue(limitBytes));
+        builder.humanReadableField("max_limit_in_bytes", "max_limit", new ByteSizeValue(maxLimitBytes));
+        builder.humanReadableField("outstanding_in_bytes", "outstanding", new ByteSizeValue(outstandingBytes));
+        builder.field("waiting", waiting);
+        builder.field("admitted", admitted);
+        builder.field("delayed", delayed);
+        builder.field("rejected", rejected);
+        builder.humanReadableField("wait_time_in_millis", "wait_time", new TimeValue(waitTimeInMillis));
+        builder.field("queue_full", queueFull);
+        builder.field("slow_writes", slowWrites);
+        return builder.endObject();
+    }
+}
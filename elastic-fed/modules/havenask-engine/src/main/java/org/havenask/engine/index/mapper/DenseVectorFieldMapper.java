@@ -35,7 +35,6 @@ import org.havenask.index.query.QueryShardContext;
 import org.havenask.search.lookup.SearchLookup;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -1067,6 +1066,30 @@ public class DenseVectorFieldMapper extends ParametrizedFieldMapper {
         return similarity;
     }
 
+    /**
+     * 向量各维之间的分隔符, 写入和查询时都需要与schema中的embedding_delimiter一致
+     */
+    public String getEmbeddingDelimiter() {
+        return indexOptions != null && indexOptions.embeddingDelimiter != null
+            ? indexOptions.embeddingDelimiter
+            : VectorField.DEFAULT_DELIMITER;
+    }
+
+    /**
+     * 从字段的mapping中读取embedding_delimiter, 未配置时返回默认分隔符
+     */
+    @SuppressWarnings("unchecked")
+    public static String getEmbeddingDelimiter(Map<String, Object> fieldMapping) {
+        Object indexOptionsNode = fieldMapping != null ? fieldMapping.get(INDEX_OPTIONS) : null;
+        if (indexOptionsNode instanceof Map) {
+            Object embeddingDelimiterNode = ((Map<String, Object>) indexOptionsNode).get(EMBEDDING_DELIMITER);
+            if (embeddingDelimiterNode != null) {
+                return XContentMapValues.nodeStringValue(embeddingDelimiterNode);
+            }
+        }
+        return VectorField.DEFAULT_DELIMITER;
+    }
+
     @Override
     public boolean parsesArrayValue() {
         return true;
@@ -1080,34 +1103,38 @@ public class DenseVectorFieldMapper extends ParametrizedFieldMapper {
 
         context.path().add(simpleName);
 
-        ArrayList<Float> vector = new ArrayList<>();
+        // 直接解析到float数组, 避免装箱
+        float[] array = new float[dims];
+        int size = 0;
         XContentParser.Token token = context.parser().currentToken();
 
         if (token == XContentParser.Token.START_ARRAY) {
             token = context.parser().nextToken();
             while (token != XContentParser.Token.END_ARRAY) {
-                vector.add(context.parser().floatValue(false));
+                float value = context.parser().floatValue(false);
+                if (size < dims) {
+                    array[size] = value;
+                    squaredMagnitude += value * value;
+                }
+                size++;
                 token = context.parser().nextToken();
             }
         } else if (token == XContentParser.Token.VALUE_NUMBER) {
-            vector.add(context.parser().floatValue(false));
+            float value = context.parser().floatValue(false);
+            if (size < dims) {
+                array[size] = value;
+                squaredMagnitude += value * value;
+            }
+            size++;
             context.parser().nextToken();
         }
 
-        int size = vector.size();
         if (size != dims) {
             throw new IllegalArgumentException("vector length expects: " + dims + ", actually: " + size);
         }
-
-        float[] array = new float[size];
-
-        for (int i = 0; i < vector.size(); i++) {
-            array[i] = vector.get(i);
-            squaredMagnitude += array[i] * array[i];
-        }
         checkVectorMagnitude(this.getSimilarity(), squaredMagnitude);
 
-        VectorField point = new VectorField(fieldName, array, fieldType);
+        VectorField point = new VectorField(fieldName, array, getEmbeddingDelimiter(), fieldType);
         context.doc().add(point);
         context.path().remove();
     }
@@ -14,49 +14,63 @@
 
 package org.havenask.engine.index.mapper;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import org.apache.lucene.document.Field;
 import org.apache.lucene.index.IndexableFieldType;
 import org.apache.lucene.util.BytesRef;
-import org.apache.lucene.util.SuppressForbidden;
 
-@SuppressForbidden(reason = "We need to use serialization to convert the vector to byte array")
+/**
+ * 向量字段, 以little-endian的float字节保存向量, 避免java序列化的开销
+ */
 public class VectorField extends Field {
+    public static final String DEFAULT_DELIMITER = ",";
 
-    public <T> VectorField(String name, T value, IndexableFieldType type) {
-        super(name, new BytesRef(), type);
-        try {
-            this.setBytesValue(toByte(value));
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+    private final String delimiter;
+
+    public VectorField(String name, float[] value, IndexableFieldType type) {
+        this(name, value, DEFAULT_DELIMITER, type);
     }
 
-    public static <T> byte[] toByte(T values) throws Exception {
-        byte[] bytes;
-        try (
-            ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-            ObjectOutputStream objectStream = new ObjectOutputStream(byteStream)
-        ) {
-            objectStream.writeObject(values);
-            bytes = byteStream.toByteArray();
-        }
-        return bytes;
+    public VectorField(String name, float[] value, String delimiter, IndexableFieldType type) {
+        super(name, new BytesRef(toBytes(value)), type);
+        this.delimiter = delimiter == null ? DEFAULT_DELIMITER : delimiter;
+    }
+
+    /**
+     * 写入havenask时向量各维之间的分隔符, 与schema中的embedding_delimiter一致
+     */
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    public float[] getVector() {
+        return toVector(binaryValue());
+    }
+
+    public static byte[] toBytes(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    public static float[] toVector(BytesRef bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes.bytes, bytes.offset, bytes.length).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
     }
 
-    public static Object readValue(byte[] value) throws IOException {
-        try (
-            ByteArrayInputStream byteStream = new ByteArrayInputStream(value);
-            ObjectInputStream objectStream = new ObjectInputStream(byteStream)
-        ) {
-            return objectStream.readObject();
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
+    /**
+     * 将向量以文本形式追加到builder中, 避免为每一维创建临时字符串
+     */
+    public static StringBuilder appendVector(float[] vector, String delimiter, StringBuilder builder) {
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                builder.append(delimiter);
+            }
+            builder.append(vector[i]);
         }
+        return builder;
     }
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.havenask.engine.index.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.havenask.common.lease.Releasable;
+import org.havenask.common.metrics.CounterMetric;
+import org.havenask.common.util.concurrent.ConcurrentCollections;
+import org.havenask.index.store.Store;
+
+/**
+ * 缓存havenask索引文件的CRC32, 供recovery时比较源和目标文件的内容.
+ *
+ * havenask的segment文件seal后不再修改, 以文件长度和修改时间作为缓存是否有效的依据, 每个文件只需要完整读取一次.
+ * 没有缓存的文件在后台线程中计算, 不阻塞获取metadata, 计算完成前返回null.
+ */
+class HavenaskFileChecksums {
+    private static final Logger LOGGER = LogManager.getLogger(HavenaskFileChecksums.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Executor executor;
+    private final Supplier<Releasable> guard;
+    private final Map<String, Entry> checksums = ConcurrentCollections.newConcurrentMap();
+    private final Map<String, PendingFile> pendingFiles = ConcurrentCollections.newConcurrentMap();
+    private final AtomicBoolean computing = new AtomicBoolean();
+    private final CounterMetric computes = new CounterMetric();
+
+    /**
+     * @param executor 计算checksum的线程池
+     * @param guard    计算每个文件前获取, 返回null表示store已经关闭, 停止计算
+     */
+    HavenaskFileChecksums(Executor executor, Supplier<Releasable> guard) {
+        this.executor = executor;
+        this.guard = guard;
+    }
+
+    /**
+     * @param root     partition目录
+     * @param name     相对partition目录的文件名
+     * @param length   entry table中记录的文件长度
+     * @return 文件内容的checksum, 文件不存在、长度与entry table不一致或者还没有计算完成时返回null
+     */
+    String checksum(Path root, String name, long length) {
+        String checksum = cachedChecksum(root.resolve(name), name, length);
+        if (checksum != null) {
+            return checksum;
+        }
+        pendingFiles.put(name, new PendingFile(root, length));
+        maybeCompute();
+        // executor可能直接在当前线程中执行
+        return cachedChecksum(root.resolve(name), name, length);
+    }
+
+    private String cachedChecksum(Path file, String name, long length) {
+        Entry entry = checksums.get(name);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (attributes.size() == length && entry.length == length && entry.lastModified == attributes.lastModifiedTime().toMillis()) {
+                return entry.checksum;
+            }
+        } catch (IOException e) {
+            // 文件不存在
+        }
+        return null;
+    }
+
+    private void maybeCompute() {
+        if (pendingFiles.isEmpty() || false == computing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::computePendingFiles);
+        } catch (Exception e) {
+            computing.set(false);
+            LOGGER.debug("schedule havenask file checksum computation failed", e);
+        }
+    }
+
+    private void computePendingFiles() {
+        try {
+            Iterator<Map.Entry<String, PendingFile>> iterator = pendingFiles.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, PendingFile> pendingFile = iterator.next();
+                iterator.remove();
+                try (Releasable ref = guard.get()) {
+                    if (ref == null) {
+                        pendingFiles.clear();
+                        return;
+                    }
+                    compute(pendingFile.getKey(), pendingFile.getValue());
+                }
+            }
+        } finally {
+            computing.set(false);
+        }
+        // 计算期间新加入的文件
+        maybeCompute();
+    }
+
+    private void compute(String name, PendingFile pendingFile) {
+        Path file = pendingFile.root.resolve(name);
+        if (cachedChecksum(file, name, pendingFile.length) != null) {
+            return;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (attributes.size() != pendingFile.length) {
+                return;
+            }
+            // 读取前记录修改时间, 读取期间文件被修改时下次获取会重新计算
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            String checksum = Store.digestToString(crc32(file));
+            computes.inc();
+            checksums.put(name, new Entry(pendingFile.length, lastModified, checksum));
+        } catch (IOException e) {
+            LOGGER.debug(() -> new ParameterizedMessage("compute checksum of havenask file [{}] failed", file), e);
+        }
+    }
+
+    /**
+     * 清理不在names中的文件的缓存
+     */
+    void retainAll(Set<String> names) {
+        checksums.keySet().retainAll(names);
+        pendingFiles.keySet().retainAll(names);
+    }
+
+    int size() {
+        return checksums.size();
+    }
+
+    long getComputeCount() {
+        return computes.count();
+    }
+
+    static long crc32(Path file) throws IOException {
+        CRC32 crc32 = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc32.update(buffer, 0, read);
+            }
+        }
+        return crc32.getValue();
+    }
+
+    private static class PendingFile {
+        private final Path root;
+        private final long length;
+
+        PendingFile(Path root, long length) {
+            this.root = root;
+            this.length = length;
+        }
+    }
+
+    private static class Entry {
+        private final long length;
+        private final long lastModified;
+        private final String checksum;
+
+        Entry(long length, long lastModified, String checksum) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.store.OutputStreamIndexOutput;
 import org.apache.lucene.util.Version;
 import org.havenask.common.Strings;
+import org.havenask.common.lease.Releasable;
 import org.havenask.engine.index.config.EntryTable;
 import org.havenask.engine.index.engine.EngineSettings;
 import org.havenask.engine.index.engine.HavenaskEngine.HavenaskCommitInfo;
@@ -42,7 +43,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -52,6 +53,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
 
@@ -67,6 +69,8 @@ public class HavenaskStore extends Store {
     private static final int CHUNK_SIZE = 8192;
 
     private final Path shardPath;
+    private final VersionFileWatcher versionFileWatcher;
+    private final HavenaskFileChecksums fileChecksums;
 
     public HavenaskStore(
         ShardId shardId,
@@ -75,9 +79,28 @@ public class HavenaskStore extends Store {
         ShardLock shardLock,
         OnClose onClose,
         Path shardPath
+    ) {
+        this(shardId, indexSettings, directory, shardLock, onClose, shardPath, null, Runnable::run);
+    }
+
+    public HavenaskStore(
+        ShardId shardId,
+        IndexSettings indexSettings,
+        Directory directory,
+        ShardLock shardLock,
+        OnClose onClose,
+        Path shardPath,
+        VersionFileWatcher versionFileWatcher,
+        Executor checksumExecutor
     ) {
         super(shardId, indexSettings, new HavenaskDirectory(directory, shardPath), shardLock, onClose);
         this.shardPath = shardPath;
+        this.versionFileWatcher = versionFileWatcher;
+        // 计算每个文件的checksum时持有store的引用, store关闭后停止计算
+        this.fileChecksums = new HavenaskFileChecksums(
+            checksumExecutor,
+            () -> false == isClosing() && tryIncRef() ? (Releasable) this::decRef : null
+        );
     }
 
     @Override
@@ -94,7 +117,10 @@ public class HavenaskStore extends Store {
         long commitVersion = 0;
         if (commit == null) {
             try {
-                Long maxIndexVersionFileNum = Utils.getIndexMaxVersionNum(shardPath);
+                // engine已注册version监听时直接读取内存中的最新version, 避免每次都扫描目录
+                Long maxIndexVersionFileNum = versionFileWatcher != null
+                    ? versionFileWatcher.getIndexMaxVersionNum(shardPath)
+                    : Utils.getIndexMaxVersionNum(shardPath);
                 if (maxIndexVersionFileNum != -1L) {
                     commitVersion = maxIndexVersionFileNum;
                 }
@@ -124,46 +150,47 @@ public class HavenaskStore extends Store {
             if (false == Strings.isEmpty(fenceName) && name.equals("")) {
                 fileMap.forEach((fileName, file) -> {
                     String realPath = fenceName + "/" + fileName;
-                    StoreFileMetadata storeFileMetadata = new StoreFileMetadata(realPath, file.length, file.type.name(), HAVENASK_VERSION);
                     // version文件需要拷贝到最外层目录
                     if (fileName.startsWith("version.")) {
-                        metadata.put(fileName, new StoreFileMetadata(fileName, file.length, file.type.name(), HAVENASK_VERSION));
+                        metadata.put(fileName, havenaskFileMetadata(fileName, file.length, file.type));
                     }
-                    metadata.put(realPath, storeFileMetadata);
+                    metadata.put(realPath, havenaskFileMetadata(realPath, file.length, file.type));
                 });
             } else if (name.contains("__FENCE__")) {
                 fileMap.forEach((fileName, file) -> {
                     String parentFenceName = name.substring(name.indexOf("__FENCE__"));
                     String parentRealPath = parentFenceName + "/" + fileName;
-                    StoreFileMetadata storeFileMetadata = new StoreFileMetadata(
-                        parentRealPath,
-                        file.length,
-                        file.type.name(),
-                        HAVENASK_VERSION
-                    );
                     // version文件需要拷贝到最外层目录
                     if (fileName.startsWith("version.")) {
-                        metadata.put(fileName, new StoreFileMetadata(fileName, file.length, file.type.name(), HAVENASK_VERSION));
+                        metadata.put(fileName, havenaskFileMetadata(fileName, file.length, file.type));
                     }
-                    metadata.put(parentRealPath, storeFileMetadata);
+                    metadata.put(parentRealPath, havenaskFileMetadata(parentRealPath, file.length, file.type));
                 });
             } else {
-                fileMap.forEach((fileName, file) -> {
-                    StoreFileMetadata storeFileMetadata = new StoreFileMetadata(fileName, file.length, file.type.name(), HAVENASK_VERSION);
-                    metadata.put(fileName, storeFileMetadata);
-                });
+                fileMap.forEach((fileName, file) -> metadata.put(fileName, havenaskFileMetadata(fileName, file.length, file.type)));
             }
         });
 
         // add entry_table file
-        metadata.put(
-            entryTablePathStr,
-            new StoreFileMetadata(entryTablePathStr, entryTableContent.length(), EntryTable.Type.FILE.name(), HAVENASK_VERSION)
-        );
+        metadata.put(entryTablePathStr, havenaskFileMetadata(entryTablePathStr, entryTableContent.length(), EntryTable.Type.FILE));
 
+        fileChecksums.retainAll(metadata.keySet());
         return metadata;
     }
 
+    /**
+     * 文件的checksum为内容的CRC32, 使recovery时可以复用目标端内容相同的文件;
+     * 目录、无法读取的文件以及后台还没有计算完成的文件仍使用类型名作为checksum
+     */
+    private StoreFileMetadata havenaskFileMetadata(String name, long length, EntryTable.Type type) {
+        String checksum = type == EntryTable.Type.FILE ? fileChecksums.checksum(shardPath, name, length) : null;
+        return new StoreFileMetadata(name, length, checksum != null ? checksum : type.name(), HAVENASK_VERSION);
+    }
+
+    HavenaskFileChecksums getFileChecksums() {
+        return fileChecksums;
+    }
+
     @Override
     public IndexOutput createVerifyingOutput(String fileName, final StoreFileMetadata metadata, final IOContext context)
         throws IOException {
@@ -220,42 +247,43 @@ public class HavenaskStore extends Store {
     public IndexInput openInput(StoreFileMetadata metadata, IOContext context) throws IOException {
         if (isHavenaskFile(metadata.writtenBy())) {
             Path filePath = shardPath.resolve(metadata.name());
-            SeekableByteChannel channel = Files.newByteChannel(filePath, StandardOpenOption.READ);
+            FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ);
 
-            return new SimpleFSIndexInput("SimpleFSIndexInput(path=\"" + filePath + "\")", channel, context);
+            return new HavenaskFileIndexInput("HavenaskFileIndexInput(path=\"" + filePath + "\")", channel, context);
         } else {
             return super.openInput(metadata, context);
         }
     }
 
     /**
-     * 迁移lucene的SimpleFSIndexInput到HavenaskStore类
+     * 参考lucene的NIOFSIndexInput, 通过FileChannel的positional read读取havenask文件.
+     *
+     * recovery时每次读取一个完整的chunk, 大块读取会绕过BufferedIndexInput的buffer直接写入目标数组;
+     * positional read不修改channel的position, clone和slice之间并发读取不需要加锁.
      */
-    static final class SimpleFSIndexInput extends BufferedIndexInput {
+    static final class HavenaskFileIndexInput extends BufferedIndexInput {
         /**
-         * The maximum chunk size for reads of 16384 bytes.
+         * 单次read的最大长度, heap buffer读取时jdk会按读取长度分配临时的direct buffer, 需要限制单次读取的大小
          */
-        private static final int CHUNK_SIZE = 16384;
+        static final int CHUNK_SIZE = 256 * 1024;
 
         /** the channel we will read from */
-        protected final SeekableByteChannel channel;
+        private final FileChannel channel;
         /** is this instance a clone and hence does not own the file to close it */
         boolean isClone = false;
         /** start offset: non-zero in the slice case */
-        protected final long off;
+        private final long off;
         /** end offset (start+length) */
-        protected final long end;
+        private final long end;
 
-        private ByteBuffer byteBuf; // wraps the buffer for NIO
-
-        SimpleFSIndexInput(String resourceDesc, SeekableByteChannel channel, IOContext context) throws IOException {
+        HavenaskFileIndexInput(String resourceDesc, FileChannel channel, IOContext context) throws IOException {
             super(resourceDesc, context);
             this.channel = channel;
             this.off = 0L;
             this.end = channel.size();
         }
 
-        SimpleFSIndexInput(String resourceDesc, SeekableByteChannel channel, long off, long length, int bufferSize) {
+        HavenaskFileIndexInput(String resourceDesc, FileChannel channel, long off, long length, int bufferSize) {
             super(resourceDesc, bufferSize);
             this.channel = channel;
             this.off = off;
@@ -271,8 +299,8 @@ public class HavenaskStore extends Store {
         }
 
         @Override
-        public SimpleFSIndexInput clone() {
-            SimpleFSIndexInput clone = (SimpleFSIndexInput) super.clone();
+        public HavenaskFileIndexInput clone() {
+            HavenaskFileIndexInput clone = (HavenaskFileIndexInput) super.clone();
             clone.isClone = true;
             return clone;
         }
@@ -293,7 +321,7 @@ public class HavenaskStore extends Store {
                         + this
                 );
             }
-            return new SimpleFSIndexInput(getFullSliceDescription(sliceDescription), channel, off + offset, length, getBufferSize());
+            return new HavenaskFileIndexInput(getFullSliceDescription(sliceDescription), channel, off + offset, length, getBufferSize());
         }
 
         @Override
@@ -303,34 +331,30 @@ public class HavenaskStore extends Store {
 
         @Override
         protected void readInternal(ByteBuffer b) throws IOException {
-            synchronized (channel) {
-                long pos = getFilePointer() + off;
+            long pos = getFilePointer() + off;
 
-                if (pos + b.remaining() > end) {
-                    throw new EOFException("read past EOF: " + this);
-                }
+            if (pos + b.remaining() > end) {
+                throw new EOFException("read past EOF: " + this);
+            }
 
-                try {
-                    channel.position(pos);
-
-                    int readLength = b.remaining();
-                    while (readLength > 0) {
-                        final int toRead = Math.min(CHUNK_SIZE, readLength);
-                        b.limit(b.position() + toRead);
-                        assert b.remaining() == toRead;
-                        final int i = channel.read(b);
-                        if (i < 0) { // be defensive here, even though we checked before hand, something could have changed
-                            throw new EOFException("read past EOF: " + this + " buffer: " + b + " chunkLen: " + toRead + " end: " + end);
-                        }
-                        assert i > 0 : "SeekableByteChannel.read with non zero-length bb.remaining() must always read at least"
-                            + " one byte (Channel is in blocking mode, see spec of ReadableByteChannel)";
-                        pos += i;
-                        readLength -= i;
+            try {
+                int readLength = b.remaining();
+                while (readLength > 0) {
+                    final int toRead = Math.min(CHUNK_SIZE, readLength);
+                    b.limit(b.position() + toRead);
+                    assert b.remaining() == toRead;
+                    final int i = channel.read(b, pos);
+                    if (i < 0) { // be defensive here, even though we checked before hand, something could have changed
+                        throw new EOFException("read past EOF: " + this + " buffer: " + b + " chunkLen: " + toRead + " end: " + end);
                     }
-                    assert readLength == 0;
-                } catch (IOException ioe) {
-                    throw new IOException(ioe.getMessage() + ": " + this, ioe);
+                    assert i > 0 : "FileChannel.read with non zero-length bb.remaining() must always read at least one byte "
+                        + "(FileChannel is in blocking mode, see spec of ReadableByteChannel)";
+                    pos += i;
+                    readLength -= i;
                 }
+                assert readLength == 0;
+            } catch (IOException ioe) {
+                throw new IOException(ioe.getMessage() + ": " + this, ioe);
             }
         }
 
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.havenask.engine.index.store;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.havenask.common.collect.Tuple;
+import org.havenask.common.component.AbstractLifecycleComponent;
+import org.havenask.common.lease.Releasable;
+import org.havenask.common.settings.Setting;
+import org.havenask.common.settings.Settings;
+import org.havenask.common.unit.TimeValue;
+import org.havenask.common.util.concurrent.AbstractAsyncTask;
+import org.havenask.common.util.concurrent.ConcurrentCollections;
+import org.havenask.core.internal.io.IOUtils;
+import org.havenask.engine.util.Utils;
+import org.havenask.threadpool.ThreadPool;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * 节点级别的havenask version文件监听, 在内存中维护每个partition目录最新的version号及locator中的checkpoint.
+ *
+ * 优先通过WatchService(linux下为inotify)监听partition目录, 只有version文件发生变化时才重新扫描目录;
+ * WatchService不可用或目录尚未创建时退化为按interval定时扫描. 最新version变化后推送给注册的listener.
+ */
+public class VersionFileWatcher extends AbstractLifecycleComponent {
+    private static final Logger LOGGER = LogManager.getLogger(VersionFileWatcher.class);
+    private static final Pattern VERSION_FILE_PATTERN = Pattern.compile("version\\.\\d+");
+
+    public static final Setting<TimeValue> HAVENASK_VERSION_WATCHER_INTERVAL = Setting.positiveTimeSetting(
+        "havenask.engine.version_watcher.interval",
+        TimeValue.timeValueMillis(500),
+        Setting.Property.NodeScope
+    );
+
+    public static final Setting<Boolean> HAVENASK_VERSION_WATCHER_WATCH_SERVICE_ENABLED = Setting.boolSetting(
+        "havenask.engine.version_watcher.watch_service.enabled",
+        true,
+        Setting.Property.NodeScope
+    );
+
+    private final ThreadPool threadPool;
+    private final TimeValue interval;
+    private final boolean watchServiceEnabled;
+    private final Map<Path, WatchedPartition> partitions = ConcurrentCollections.newConcurrentMap();
+    private volatile WatchService watchService;
+    private WatchTask watchTask;
+
+    public VersionFileWatcher(Settings settings, ThreadPool threadPool) {
+        this.threadPool = threadPool;
+        this.interval = HAVENASK_VERSION_WATCHER_INTERVAL.get(settings);
+        this.watchServiceEnabled = HAVENASK_VERSION_WATCHER_WATCH_SERVICE_ENABLED.get(settings);
+    }
+
+    @Override
+    protected void doStart() {
+        openWatchService();
+        watchTask = new WatchTask(threadPool, interval);
+        watchTask.rescheduleIfNecessary();
+    }
+
+    @Override
+    protected void doStop() {
+        if (watchTask != null) {
+            watchTask.close();
+            watchTask = null;
+        }
+    }
+
+    @Override
+    protected void doClose() throws IOException {
+        WatchService service = watchService;
+        watchService = null;
+        IOUtils.close(service);
+    }
+
+    void openWatchService() {
+        if (false == watchServiceEnabled || watchService != null) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.warn("create version file watch service failed, fallback to polling", e);
+        }
+    }
+
+    boolean isWatchServiceOpened() {
+        return watchService != null;
+    }
+
+    /**
+     * 注册partition目录, 注册时以及之后最新version变化时会调用listener, 参数为(version, checkpoint)
+     *
+     * @return 用于取消注册的Releasable
+     */
+    public synchronized Releasable register(Path partitionPath, Consumer<Tuple<Long, Long>> listener) {
+        Path key = normalize(partitionPath);
+        WatchedPartition partition = partitions.computeIfAbsent(key, WatchedPartition::new);
+        maybeWatch(partition);
+        refresh(partition);
+        synchronized (partition) {
+            partition.listeners.add(listener);
+            if (partition.latest != null) {
+                notifyListener(partition, listener, partition.latest);
+            }
+        }
+        return () -> unregister(key, listener);
+    }
+
+    private synchronized void unregister(Path key, Consumer<Tuple<Long, Long>> listener) {
+        WatchedPartition partition = partitions.get(key);
+        if (partition == null) {
+            return;
+        }
+        partition.listeners.remove(listener);
+        if (partition.listeners.isEmpty()) {
+            partitions.remove(key);
+            WatchKey watchKey = partition.watchKey;
+            if (watchKey != null) {
+                watchKey.cancel();
+            }
+        }
+    }
+
+    /**
+     * 返回(version, checkpoint), 目录未注册或内存中还没有version时退化为扫描目录, 语义与Utils.getVersionAndIndexCheckpoint一致
+     */
+    public Tuple<Long, Long> getVersionAndIndexCheckpoint(Path partitionPath) {
+        WatchedPartition partition = partitions.get(normalize(partitionPath));
+        Tuple<Long, Long> latest = partition == null ? null : partition.latest;
+        return latest != null ? latest : Utils.getVersionAndIndexCheckpoint(partitionPath);
+    }
+
+    /**
+     * 返回最大的version号, 目录未注册或内存中还没有version时退化为扫描目录, 语义与Utils.getIndexMaxVersionNum一致
+     */
+    public long getIndexMaxVersionNum(Path partitionPath) throws IOException {
+        WatchedPartition partition = partitions.get(normalize(partitionPath));
+        Tuple<Long, Long> latest = partition == null ? null : partition.latest;
+        return latest != null ? latest.v1() : Utils.getIndexMaxVersionNum(partitionPath);
+    }
+
+    int getWatchedPartitionCount() {
+        return partitions.size();
+    }
+
+    /**
+     * 处理WatchService中积累的事件, 并重新扫描没有被WatchService监听的目录
+     */
+    void poll() {
+        WatchService service = watchService;
+        if (service != null) {
+            WatchKey watchKey;
+            while ((watchKey = service.poll()) != null) {
+                WatchedPartition partition = partitions.get((Path) watchKey.watchable());
+                boolean changed = false;
+                for (WatchEvent<?> event : watchKey.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        changed = true;
+                    } else if (event.context() instanceof Path && isVersionFile((Path) event.context())) {
+                        changed = true;
+                    }
+                }
+                if (false == watchKey.reset() && partition != null && partition.watchKey == watchKey) {
+                    // 目录被删除, 退化为轮询直到目录重新创建
+                    partition.watchKey = null;
+                }
+                if (changed && partition != null) {
+                    refresh(partition);
+                }
+            }
+        }
+
+        for (WatchedPartition partition : partitions.values()) {
+            if (partition.watchKey == null) {
+                maybeWatch(partition);
+                refresh(partition);
+            }
+        }
+    }
+
+    private void maybeWatch(WatchedPartition partition) {
+        WatchService service = watchService;
+        if (service == null || partition.watchKey != null || false == Files.isDirectory(partition.path)) {
+            return;
+        }
+        try {
+            partition.watchKey = partition.path.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        } catch (IOException e) {
+            LOGGER.debug(() -> new ParameterizedMessage("watch version directory [{}] failed, fallback to polling", partition.path), e);
+        }
+    }
+
+    private void refresh(WatchedPartition partition) {
+        Tuple<Long, Long> latest = Files.isDirectory(partition.path) ? Utils.getVersionAndIndexCheckpoint(partition.path) : null;
+        synchronized (partition) {
+            if (latest == null || Objects.equals(latest, partition.latest)) {
+                return;
+            }
+            partition.latest = latest;
+            for (Consumer<Tuple<Long, Long>> listener : partition.listeners) {
+                notifyListener(partition, listener, latest);
+            }
+        }
+    }
+
+    private static void notifyListener(WatchedPartition partition, Consumer<Tuple<Long, Long>> listener, Tuple<Long, Long> latest) {
+        try {
+            listener.accept(latest);
+        } catch (Exception e) {
+            LOGGER.warn(() -> new ParameterizedMessage("notify version change of [{}] failed", partition.path), e);
+        }
+    }
+
+    private static boolean isVersionFile(Path fileName) {
+        return VERSION_FILE_PATTERN.matcher(fileName.getFileName().toString()).matches();
+    }
+
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    private static class WatchedPartition {
+        private final Path path;
+        private final List<Consumer<Tuple<Long, Long>>> listeners = new CopyOnWriteArrayList<>();
+        private volatile Tuple<Long, Long> latest;
+        private volatile WatchKey watchKey;
+
+        WatchedPartition(Path path) {
+            this.path = path;
+        }
+    }
+
+    private class WatchTask extends AbstractAsyncTask {
+        WatchTask(ThreadPool threadPool, TimeValue interval) {
+            super(LOGGER, threadPool, interval, true);
+        }
+
+        @Override
+        protected boolean mustReschedule() {
+            return true;
+        }
+
+        @Override
+        protected void runInternal() {
+            poll();
+        }
+
+        @Override
+        protected String getThreadPool() {
+            return ThreadPool.Names.GENERIC;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.rpc;
+
+import java.util.List;
+
+/**
+ * 一次writeTable调用中包含的多条写入, 所有写入属于同一张表
+ */
+public class BulkWriteRequest {
+    private final String table;
+    private final List<WriteRequest> writes;
+
+    public BulkWriteRequest(String table, List<WriteRequest> writes) {
+        this.table = table;
+        this.writes = writes;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public List<WriteRequest> getWrites() {
+        return writes;
+    }
+
+    public int size() {
+        return writes.size();
+    }
+}
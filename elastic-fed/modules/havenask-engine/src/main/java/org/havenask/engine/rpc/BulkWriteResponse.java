@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.rpc;
+
+import java.util.Collections;
+import java.util.List;
+
+import suez.service.proto.DocWriteState;
+import suez.service.proto.ErrorCode;
+
+public class BulkWriteResponse extends ArpcResponse {
+    private final long checkpoint;
+    private final List<DocWriteState> docWriteStates;
+
+    public BulkWriteResponse(long checkpoint, List<DocWriteState> docWriteStates) {
+        super(null, "");
+        this.checkpoint = checkpoint;
+        this.docWriteStates = docWriteStates;
+    }
+
+    public BulkWriteResponse(ErrorCode errorCode, String errorMessage) {
+        super(errorCode, errorMessage);
+        this.checkpoint = -1L;
+        this.docWriteStates = Collections.emptyList();
+    }
+
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * 每条写入的状态, 顺序与请求中的写入一致, searcher未返回时为空
+     */
+    public List<DocWriteState> getDocWriteStates() {
+        return docWriteStates;
+    }
+
+    /**
+     * 判断第index条写入是否失败
+     */
+    public boolean isFailed(int index) {
+        return index < docWriteStates.size() && docWriteStates.get(index) == DocWriteState.ERROR;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkWriteResponse{"
+            + "checkpoint="
+            + checkpoint
+            + ", docWriteStates="
+            + docWriteStates.size()
+            + ", errorCode="
+            + errorCode
+            + ", errorMessage='"
+            + errorMessage
+            + '\''
+            + '}';
+    }
+}
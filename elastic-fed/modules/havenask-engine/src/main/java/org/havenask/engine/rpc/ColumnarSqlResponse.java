@@ -0,0 +1,603 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.rpc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.UnicodeUtil;
+import org.havenask.client.ha.SqlResponse;
+import org.havenask.common.bytes.BytesReference;
+import org.havenask.common.io.stream.BytesStreamOutput;
+import org.havenask.common.xcontent.DeprecationHandler;
+import org.havenask.common.xcontent.NamedXContentRegistry;
+import org.havenask.common.xcontent.XContentParser;
+import org.havenask.common.xcontent.XContentType;
+
+/**
+ * 按列解析的qrs full_json sql结果, 直接从http响应流中解析.
+ * 数值列保存为double[]/long[], 字符串列的utf-8字节写入同一块buffer, 按行返回{@link BytesReference}切片,
+ * 避免像{@link SqlResponse}那样为每个单元格创建String和装箱对象
+ */
+public class ColumnarSqlResponse {
+    private final double totalTime;
+    private final boolean hasSoftFailure;
+    private final double coveredPercent;
+    private final int rowCount;
+    private final int errorCode;
+    private final String error;
+    private final String message;
+    private final String[] columnNames;
+    private final String[] columnTypes;
+    private final Column[] columns;
+
+    public ColumnarSqlResponse(
+        double totalTime,
+        boolean hasSoftFailure,
+        double coveredPercent,
+        int rowCount,
+        int errorCode,
+        String error,
+        String message,
+        String[] columnNames,
+        String[] columnTypes,
+        Column[] columns
+    ) {
+        this.totalTime = totalTime;
+        this.hasSoftFailure = hasSoftFailure;
+        this.coveredPercent = coveredPercent;
+        this.rowCount = rowCount;
+        this.errorCode = errorCode;
+        this.error = error;
+        this.message = message;
+        this.columnNames = columnNames;
+        this.columnTypes = columnTypes;
+        this.columns = columns;
+    }
+
+    public double getTotalTime() {
+        return totalTime;
+    }
+
+    public boolean hasSoftFailure() {
+        return hasSoftFailure;
+    }
+
+    public double getCoveredPercent() {
+        return coveredPercent;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    public String[] getColumnTypes() {
+        return columnTypes;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public Column getColumn(int index) {
+        return columns[index];
+    }
+
+    /**
+     * @return 列名对应的下标, 不存在时返回-1
+     */
+    public int getColumnIndex(String name) {
+        if (columnNames != null) {
+            for (int i = 0; i < columnNames.length; i++) {
+                if (columnNames[i].equals(name)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 转换为按行保存的{@link SqlResponse}, 只用于结果行数较少的场景, 比如聚合
+     */
+    public SqlResponse toSqlResponse() {
+        Object[][] data = new Object[rowCount][];
+        for (int row = 0; row < rowCount; row++) {
+            Object[] values = new Object[columns.length];
+            for (int col = 0; col < columns.length; col++) {
+                values[col] = columns[col].get(row);
+            }
+            data[row] = values;
+        }
+        return new SqlResponse(
+            totalTime,
+            hasSoftFailure,
+            coveredPercent,
+            rowCount,
+            new SqlResponse.SqlResult(data, columnNames, columnTypes),
+            new SqlResponse.ErrorInfo(errorCode, error, message)
+        );
+    }
+
+    public static ColumnarSqlResponse parse(InputStream in) throws IOException {
+        try (
+            XContentParser parser = XContentType.JSON.xContent()
+                .createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.IGNORE_DEPRECATIONS, in)
+        ) {
+            return fromXContent(parser);
+        }
+    }
+
+    public static ColumnarSqlResponse parse(BytesReference bytes) throws IOException {
+        return parse(bytes.streamInput());
+    }
+
+    public static ColumnarSqlResponse fromXContent(XContentParser parser) throws IOException {
+        XContentParser.Token token = parser.currentToken() == null ? parser.nextToken() : parser.currentToken();
+        if (token != XContentParser.Token.START_OBJECT) {
+            throw new IOException("failed to parse sql response, expected START_OBJECT but got " + token);
+        }
+        double totalTime = 0;
+        boolean hasSoftFailure = false;
+        double coveredPercent = 0;
+        int rowCount = 0;
+        int errorCode = 0;
+        String error = "";
+        String message = "";
+        String[] columnNames = null;
+        String[] columnTypes = null;
+        Column[] columns = new Column[0];
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token != XContentParser.Token.FIELD_NAME) {
+                continue;
+            }
+            String fieldName = parser.currentName();
+            parser.nextToken();
+            switch (fieldName) {
+                case "total_time":
+                    totalTime = parser.doubleValue();
+                    break;
+                case "has_soft_failure":
+                    hasSoftFailure = parser.booleanValue();
+                    break;
+                case "covered_percent":
+                    coveredPercent = parser.doubleValue();
+                    break;
+                case "row_count":
+                    rowCount = parser.intValue();
+                    break;
+                case "sql_result":
+                    while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                        if (token != XContentParser.Token.FIELD_NAME) {
+                            continue;
+                        }
+                        String sqlResultFieldName = parser.currentName();
+                        parser.nextToken();
+                        switch (sqlResultFieldName) {
+                            case "data":
+                                columns = parseData(parser);
+                                break;
+                            case "column_name":
+                                columnNames = parser.list().toArray(new String[0]);
+                                break;
+                            case "column_type":
+                                columnTypes = parser.list().toArray(new String[0]);
+                                break;
+                            default:
+                                parser.skipChildren();
+                                break;
+                        }
+                    }
+                    break;
+                case "error_info":
+                    while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                        if (token != XContentParser.Token.FIELD_NAME) {
+                            continue;
+                        }
+                        String errorInfoFieldName = parser.currentName();
+                        parser.nextToken();
+                        switch (errorInfoFieldName) {
+                            case "ErrorCode":
+                                errorCode = parser.intValue();
+                                break;
+                            case "Error":
+                                error = parser.text();
+                                break;
+                            case "Message":
+                                message = parser.text();
+                                break;
+                            default:
+                                parser.skipChildren();
+                                break;
+                        }
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        return new ColumnarSqlResponse(
+            totalTime,
+            hasSoftFailure,
+            coveredPercent,
+            rowCount,
+            errorCode,
+            error,
+            message,
+            columnNames,
+            columnTypes,
+            columns
+        );
+    }
+
+    private static Column[] parseData(XContentParser parser) throws IOException {
+        List<ColumnBuilder> builders = new ArrayList<>();
+        int rows = 0;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+            if (token != XContentParser.Token.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            int col = 0;
+            while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                if (col == builders.size()) {
+                    builders.add(new ColumnBuilder(rows));
+                }
+                builders.get(col).add(parser, token);
+                col++;
+            }
+            // 行内列数不足时补null
+            for (; col < builders.size(); col++) {
+                builders.get(col).addNull();
+            }
+            rows++;
+        }
+        Column[] columns = new Column[builders.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = builders.get(i).build(rows);
+        }
+        return columns;
+    }
+
+    /**
+     * 单列数据, 下标为行号
+     */
+    public abstract static class Column {
+        protected final BitSet nulls;
+
+        Column(BitSet nulls) {
+            this.nulls = nulls;
+        }
+
+        public boolean isNull(int row) {
+            return nulls.get(row);
+        }
+
+        /**
+         * @return 装箱后的值, 只用于少量行或调试, 大结果集应使用具体列类型的访问方法
+         */
+        public abstract Object get(int row);
+    }
+
+    public static final class LongColumn extends Column {
+        private final long[] values;
+
+        LongColumn(long[] values, BitSet nulls) {
+            super(nulls);
+            this.values = values;
+        }
+
+        public long getLong(int row) {
+            return values[row];
+        }
+
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+    }
+
+    public static final class DoubleColumn extends Column {
+        private final double[] values;
+
+        DoubleColumn(double[] values, BitSet nulls) {
+            super(nulls);
+            this.values = values;
+        }
+
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+    }
+
+    public static final class BytesColumn extends Column {
+        private final BytesReference bytes;
+        // offsets[row]为第row行的起始位置, offsets[row + 1]为结束位置
+        private final int[] offsets;
+
+        BytesColumn(BytesReference bytes, int[] offsets, BitSet nulls) {
+            super(nulls);
+            this.bytes = bytes;
+            this.offsets = offsets;
+        }
+
+        /**
+         * @return utf-8编码的值, 与整列共享底层buffer, 不做拷贝
+         */
+        public BytesReference getBytes(int row) {
+            return isNull(row) ? null : bytes.slice(offsets[row], offsets[row + 1] - offsets[row]);
+        }
+
+        public String getString(int row) {
+            return isNull(row) ? null : getBytes(row).utf8ToString();
+        }
+
+        @Override
+        public Object get(int row) {
+            return getString(row);
+        }
+    }
+
+    public static final class ObjectColumn extends Column {
+        private final Object[] values;
+
+        ObjectColumn(Object[] values, BitSet nulls) {
+            super(nulls);
+            this.values = values;
+        }
+
+        @Override
+        public Object get(int row) {
+            return values[row];
+        }
+    }
+
+    /**
+     * 按遇到的第一个非null值确定列类型, long列遇到浮点数时升级为double列, 类型不一致时退化为Object列
+     */
+    private static final class ColumnBuilder {
+        private enum Type {
+            UNKNOWN,
+            LONG,
+            DOUBLE,
+            BYTES,
+            OBJECT
+        }
+
+        private Type type = Type.UNKNOWN;
+        private int size;
+        private final BitSet nulls = new BitSet();
+        private long[] longs;
+        private double[] doubles;
+        private BytesStreamOutput bytes;
+        private int[] offsets;
+        private byte[] scratch;
+        private Object[] objects;
+
+        ColumnBuilder(int leadingNulls) {
+            for (int i = 0; i < leadingNulls; i++) {
+                addNull();
+            }
+        }
+
+        void addNull() {
+            nulls.set(size);
+            switch (type) {
+                case LONG:
+                    longs = ArrayUtil.grow(longs, size + 1);
+                    break;
+                case DOUBLE:
+                    doubles = ArrayUtil.grow(doubles, size + 1);
+                    break;
+                case BYTES:
+                    appendOffset();
+                    break;
+                case OBJECT:
+                    objects = ArrayUtil.grow(objects, size + 1);
+                    break;
+                default:
+                    break;
+            }
+            size++;
+        }
+
+        void add(XContentParser parser, XContentParser.Token token) throws IOException {
+            switch (token) {
+                case VALUE_NULL:
+                    addNull();
+                    return;
+                case VALUE_NUMBER:
+                    XContentParser.NumberType numberType = parser.numberType();
+                    if (numberType == XContentParser.NumberType.INT || numberType == XContentParser.NumberType.LONG) {
+                        if (type == Type.UNKNOWN || type == Type.LONG) {
+                            ensureType(Type.LONG);
+                            longs = ArrayUtil.grow(longs, size + 1);
+                            longs[size++] = parser.longValue();
+                            return;
+                        }
+                        if (type == Type.DOUBLE) {
+                            doubles = ArrayUtil.grow(doubles, size + 1);
+                            doubles[size++] = parser.longValue();
+                            return;
+                        }
+                    } else if (numberType == XContentParser.NumberType.FLOAT || numberType == XContentParser.NumberType.DOUBLE) {
+                        if (type == Type.UNKNOWN || type == Type.LONG || type == Type.DOUBLE) {
+                            ensureType(Type.DOUBLE);
+                            doubles = ArrayUtil.grow(doubles, size + 1);
+                            doubles[size++] = parser.doubleValue();
+                            return;
+                        }
+                    }
+                    addObject(parser.numberValue());
+                    return;
+                case VALUE_STRING:
+                    if (type == Type.UNKNOWN || type == Type.BYTES) {
+                        ensureType(Type.BYTES);
+                        appendText(parser);
+                        size++;
+                        return;
+                    }
+                    addObject(parser.text());
+                    return;
+                case VALUE_BOOLEAN:
+                    addObject(parser.booleanValue());
+                    return;
+                case START_ARRAY:
+                    addObject(parser.list());
+                    return;
+                case START_OBJECT:
+                    addObject(parser.map());
+                    return;
+                default:
+                    addObject(parser.objectText());
+            }
+        }
+
+        private void addObject(Object value) {
+            ensureType(Type.OBJECT);
+            objects = ArrayUtil.grow(objects, size + 1);
+            objects[size++] = value;
+        }
+
+        private void appendText(XContentParser parser) throws IOException {
+            char[] chars = parser.textCharacters();
+            int offset = parser.textOffset();
+            int length = parser.textLength();
+            int maxLength = UnicodeUtil.maxUTF8Length(length);
+            if (scratch == null || scratch.length < maxLength) {
+                scratch = new byte[ArrayUtil.oversize(maxLength, Byte.BYTES)];
+            }
+            int utf8Length = UnicodeUtil.UTF16toUTF8(chars, offset, length, scratch);
+            bytes.writeBytes(scratch, 0, utf8Length);
+            appendOffset();
+        }
+
+        private void appendOffset() {
+            offsets = ArrayUtil.grow(offsets, size + 2);
+            offsets[size + 1] = (int) bytes.position();
+        }
+
+        /**
+         * 切换列类型, 已有的值按新类型转换
+         */
+        private void ensureType(Type target) {
+            if (type == target) {
+                return;
+            }
+            if (type == Type.UNKNOWN) {
+                // 之前的值全部为null
+                type = target;
+                switch (target) {
+                    case LONG:
+                        longs = new long[Math.max(size, 8)];
+                        break;
+                    case DOUBLE:
+                        doubles = new double[Math.max(size, 8)];
+                        break;
+                    case BYTES:
+                        bytes = new BytesStreamOutput();
+                        offsets = new int[Math.max(size + 1, 8)];
+                        break;
+                    default:
+                        objects = new Object[Math.max(size, 8)];
+                        break;
+                }
+                return;
+            }
+            if (type == Type.LONG && target == Type.DOUBLE) {
+                doubles = new double[Math.max(longs.length, 8)];
+                for (int i = 0; i < size; i++) {
+                    doubles[i] = longs[i];
+                }
+                longs = null;
+                type = Type.DOUBLE;
+                return;
+            }
+            assert target == Type.OBJECT : "unexpected column type conversion from " + type + " to " + target;
+            Column current = build(size);
+            objects = new Object[Math.max(size, 8)];
+            for (int i = 0; i < size; i++) {
+                objects[i] = current.get(i);
+            }
+            longs = null;
+            doubles = null;
+            bytes = null;
+            offsets = null;
+            type = Type.OBJECT;
+        }
+
+        Column build(int rows) {
+            assert size == rows : "column size [" + size + "] does not match row count [" + rows + "]";
+            switch (type) {
+                case LONG:
+                    return new LongColumn(longs, nulls);
+                case DOUBLE:
+                    return new DoubleColumn(doubles, nulls);
+                case BYTES:
+                    return new BytesColumn(bytes.bytes(), offsets, nulls);
+                case OBJECT:
+                    return new ObjectColumn(objects, nulls);
+                default:
+                    // 整列都是null
+                    return new ObjectColumn(new Object[size], nulls);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarSqlResponse{rowCount="
+            + rowCount
+            + ", errorCode="
+            + errorCode
+            + ", columnNames="
+            + Arrays.toString(columnNames)
+            + ", columns="
+            + columns.length
+            + "}";
+    }
+}
@@ -15,6 +15,9 @@
 package org.havenask.engine.rpc;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import org.havenask.action.ActionListener;
 
 public interface QrsClient extends HavenaskClient {
 
@@ -27,6 +30,24 @@ public interface QrsClient extends HavenaskClient {
      */
     QrsSqlResponse executeSql(QrsSqlRequest request) throws IOException;
 
+    /**
+     * Execute havenask sql asynchronously, the listener is called on the http client io thread
+     *
+     * @param request havenask sql request
+     * @param listener havenask sql response listener
+     */
+    void executeSql(QrsSqlRequest request, ActionListener<QrsSqlResponse> listener);
+
+    /**
+     * Execute havenask sql asynchronously and parse the full_json result column by column straight from the response body,
+     * the result is parsed and the listener is called on the given executor
+     *
+     * @param request havenask sql request
+     * @param executor executor to parse the result on
+     * @param listener columnar sql response listener
+     */
+    void executeSqlColumnar(QrsSqlRequest request, Executor executor, ActionListener<ColumnarSqlResponse> listener);
+
     /**
      * Execute havenask sql client info api
      *
@@ -14,9 +14,33 @@
 
 package org.havenask.engine.rpc;
 
+import org.havenask.action.ActionListener;
+
 public interface SearcherClient extends HavenaskClient {
 
     QueryTableResponse queryTable(QueryTableRequest request);
 
+    /**
+     * 异步查询, rpc失败时也通过onResponse返回带错误码的响应
+     */
+    void queryTable(QueryTableRequest request, ActionListener<QueryTableResponse> listener);
+
     WriteResponse write(WriteRequest request);
+
+    /**
+     * 异步写入, rpc失败时也通过onResponse返回带错误码的响应
+     */
+    void write(WriteRequest request, ActionListener<WriteResponse> listener);
+
+    /**
+     * 在一次rpc中写入多条doc
+     * @param request 批量写入请求
+     * @return 批量写入的响应结果, 包含每条doc的写入状态
+     */
+    BulkWriteResponse bulkWrite(BulkWriteRequest request);
+
+    /**
+     * 异步批量写入, rpc失败时也通过onResponse返回带错误码的响应
+     */
+    void bulkWrite(BulkWriteRequest request, ActionListener<BulkWriteResponse> listener);
 }
@@ -14,10 +14,14 @@
 
 package org.havenask.engine.rpc;
 
+import java.nio.charset.StandardCharsets;
+
 public class WriteRequest {
     private String table;
     private int hashid;
     private String source;
+    // utf-8编码的文档, 由Ha3DocEncoder生成时不再转换为字符串
+    private byte[] sourceBytes;
 
     public WriteRequest(String table, int hashid, String source) {
         this.table = table;
@@ -25,6 +29,12 @@ public class WriteRequest {
         this.source = source;
     }
 
+    public WriteRequest(String table, int hashid, byte[] sourceBytes) {
+        this.table = table;
+        this.hashid = hashid;
+        this.sourceBytes = sourceBytes;
+    }
+
     public String getTable() {
         return table;
     }
@@ -34,6 +44,20 @@ public class WriteRequest {
     }
 
     public String getSource() {
+        if (source == null && sourceBytes != null) {
+            return new String(sourceBytes, StandardCharsets.UTF_8);
+        }
         return source;
     }
+
+    /**
+     * @return utf-8编码的文档, 以字符串构造时返回null
+     */
+    public byte[] getSourceBytes() {
+        return sourceBytes;
+    }
+
+    public int getSourceLength() {
+        return sourceBytes != null ? sourceBytes.length : source.length();
+    }
 }
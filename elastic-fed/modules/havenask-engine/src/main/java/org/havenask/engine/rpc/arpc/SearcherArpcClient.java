@@ -17,9 +17,21 @@ package org.havenask.engine.rpc.arpc;
 import java.io.IOException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.havenask.action.ActionListener;
+import org.havenask.action.support.PlainActionFuture;
+import org.havenask.common.util.concurrent.HavenaskRejectedExecutionException;
+import org.havenask.engine.rpc.BulkWriteRequest;
+import org.havenask.engine.rpc.BulkWriteResponse;
 import org.havenask.engine.rpc.HeartbeatTargetResponse;
 import org.havenask.engine.rpc.QueryTableRequest;
 import org.havenask.engine.rpc.QueryTableResponse;
@@ -32,7 +44,9 @@ import com.alibaba.search.common.arpc.ANetRPCChannel;
 import com.alibaba.search.common.arpc.ANetRPCChannelManager;
 import com.alibaba.search.common.arpc.ANetRPCController;
 import com.alibaba.search.common.arpc.exceptions.ArpcException;
-import com.google.protobuf.ServiceException;
+import com.alibaba.search.common.arpc.util.ErrorDefine;
+import com.google.protobuf.RpcCallback;
+import com.google.protobuf.UnsafeByteOperations;
 
 import suez.service.proto.ErrorCode;
 import suez.service.proto.ErrorInfo;
@@ -41,18 +55,45 @@ import suez.service.proto.TableQueryResponse;
 import suez.service.proto.TableService;
 import suez.service.proto.Write;
 
+/**
+ * searcher的arpc客户端.
+ *
+ * 所有请求都通过{@link ANetRPCChannel#callMethod}异步发送, 每个请求使用独立的{@link ANetRPCController},
+ * 同时在途的请求数不超过maxInFlight, 超出的请求排队等待在途请求返回后再发送, 排队的请求超过maxWaiting时直接拒绝.
+ * 请求分散在connections个连接上发送, 不同连接上的请求到达searcher的顺序不保证与发送顺序一致.
+ * 同步接口基于异步接口实现. 异步接口的listener在arpc的io线程中回调, 不能在listener中执行阻塞操作.
+ */
 public class SearcherArpcClient implements SearcherClient {
     private static final Logger logger = LogManager.getLogger(SearcherArpcClient.class);
+    public static final int DEFAULT_MAX_IN_FLIGHT = 32;
+    public static final int DEFAULT_CONNECTIONS = 2;
+    public static final int DEFAULT_MAX_WAITING = 1024;
+
     private final ANetRPCChannelManager manager;
     private volatile ANetRPCChannel channel;
-    private volatile TableService.BlockingInterface blockingStub;
-    private final ANetRPCController controller = new ANetRPCController();
+    private volatile TableService.Stub stub;
     private final String host = "127.0.0.1";
     private final int port;
+    private final int maxInFlight;
+    private final int connections;
+    private final int maxWaiting;
+    private final Semaphore inFlight;
+    private final Queue<Runnable> waitingCalls = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size()需要遍历队列, 单独计数
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    private final ThreadLocal<Boolean> dispatching = ThreadLocal.withInitial(() -> false);
 
     public SearcherArpcClient(int port) {
+        this(port, DEFAULT_MAX_IN_FLIGHT, DEFAULT_CONNECTIONS, DEFAULT_MAX_WAITING);
+    }
+
+    public SearcherArpcClient(int port, int maxInFlight, int connections, int maxWaiting) {
         this.manager = new ANetRPCChannelManager();
         this.port = port;
+        this.maxInFlight = maxInFlight;
+        this.connections = connections;
+        this.maxWaiting = maxWaiting;
+        this.inFlight = new Semaphore(maxInFlight);
     }
 
     @Override
@@ -67,6 +108,13 @@ public class SearcherArpcClient implements SearcherClient {
 
     @Override
     public QueryTableResponse queryTable(QueryTableRequest request) {
+        PlainActionFuture<QueryTableResponse> future = PlainActionFuture.newFuture();
+        queryTable(request, future);
+        return future.actionGet();
+    }
+
+    @Override
+    public void queryTable(QueryTableRequest request, ActionListener<QueryTableResponse> listener) {
         long start = System.nanoTime();
         TableQueryRequest tableQueryRequest = TableQueryRequest.newBuilder()
             .setTable(request.getTableName())
@@ -74,121 +122,276 @@ public class SearcherArpcClient implements SearcherClient {
             .addPartition(request.getPartitionRange().second)
             .setPk(request.getPkey())
             .build();
-        try {
-            if (blockingStub == null) {
-                init();
-            }
-            TableQueryResponse tableQueryResponse = blockingStub.queryTable(controller, tableQueryRequest);
-            if (logger.isTraceEnabled()) {
-                long end = System.nanoTime();
-                logger.trace("queryTable {}, _id: {}, cost: {} us", request.getTableName(), request.getPkey(), (end - start) / 1000);
-            }
-
-            if (tableQueryResponse == null) {
-                resetChannel();
-                return new QueryTableResponse(ErrorCode.TBS_ERROR_UNKOWN, "queryTable response is null, channel reset");
-            }
-
-            if (tableQueryResponse.getErrorInfo() == null || tableQueryResponse.getErrorInfo().getErrorCode() == ErrorCode.TBS_ERROR_NONE) {
-                return new QueryTableResponse(tableQueryResponse.getRes().getDocValueSetList());
-            } else {
-                return new QueryTableResponse(
-                    tableQueryResponse.getErrorInfo().getErrorCode(),
-                    tableQueryResponse.getErrorInfo().getErrorMsg()
-                );
-            }
-        } catch (ServiceException e) {
-            logger.warn("queryTable service error", e);
-            resetChannel();
-            return new QueryTableResponse(ErrorCode.TBS_ERROR_UNKOWN, "service error:" + e.getMessage());
-        } catch (Exception e) {
-            logger.warn("queryTable upexpect error", e);
-            resetChannel();
-            return new QueryTableResponse(ErrorCode.TBS_ERROR_UNKOWN, "upexpect error:" + e.getMessage());
-        }
+        this.<TableQueryResponse, QueryTableResponse>call(
+            "queryTable",
+            (tableService, controller, done) -> tableService.queryTable(controller, tableQueryRequest, done),
+            tableQueryResponse -> {
+                if (logger.isTraceEnabled()) {
+                    logger.trace(
+                        "queryTable {}, _id: {}, cost: {} us",
+                        request.getTableName(),
+                        request.getPkey(),
+                        (System.nanoTime() - start) / 1000
+                    );
+                }
+                if (isSuccess(tableQueryResponse.getErrorInfo())) {
+                    return new QueryTableResponse(tableQueryResponse.getRes().getDocValueSetList());
+                } else {
+                    return new QueryTableResponse(
+                        tableQueryResponse.getErrorInfo().getErrorCode(),
+                        tableQueryResponse.getErrorInfo().getErrorMsg()
+                    );
+                }
+            },
+            QueryTableResponse::new,
+            listener
+        );
     }
 
     @Override
     public WriteResponse write(WriteRequest request) {
+        PlainActionFuture<WriteResponse> future = PlainActionFuture.newFuture();
+        write(request, future);
+        return future.actionGet();
+    }
+
+    @Override
+    public void write(WriteRequest request, ActionListener<WriteResponse> listener) {
         long start = System.nanoTime();
-        Write write = Write.newBuilder().setHashId(request.getHashid()).setStr(request.getSource()).build();
+        Write write = toWrite(request);
         suez.service.proto.WriteRequest writeRequest = suez.service.proto.WriteRequest.newBuilder()
             .setTableName(request.getTable())
             .setFormat("ha3")
             .addWrites(write)
             .build();
-        try {
-            if (blockingStub == null) {
-                init();
-            }
-            suez.service.proto.WriteResponse writeResponse = blockingStub.writeTable(controller, writeRequest);
-            if (logger.isTraceEnabled()) {
-                long end = System.nanoTime();
-                logger.trace("write {}, length: {}, cost: {} us", request.getTable(), request.getSource().length(), (end - start) / 1000);
-            }
+        this.<suez.service.proto.WriteResponse, WriteResponse>call(
+            "write",
+            (tableService, controller, done) -> tableService.writeTable(controller, writeRequest, done),
+            writeResponse -> {
+                if (logger.isTraceEnabled()) {
+                    logger.trace(
+                        "write {}, length: {}, cost: {} us",
+                        request.getTable(),
+                        request.getSourceLength(),
+                        (System.nanoTime() - start) / 1000
+                    );
+                }
+                if (isSuccess(writeResponse.getErrorInfo())) {
+                    return new WriteResponse(writeResponse.getCheckpoint());
+                } else {
+                    return new WriteResponse(writeResponse.getErrorInfo().getErrorCode(), writeResponse.getErrorInfo().getErrorMsg());
+                }
+            },
+            WriteResponse::new,
+            listener
+        );
+    }
 
-            if (writeResponse == null) {
+    @Override
+    public BulkWriteResponse bulkWrite(BulkWriteRequest request) {
+        PlainActionFuture<BulkWriteResponse> future = PlainActionFuture.newFuture();
+        bulkWrite(request, future);
+        return future.actionGet();
+    }
+
+    @Override
+    public void bulkWrite(BulkWriteRequest request, ActionListener<BulkWriteResponse> listener) {
+        long start = System.nanoTime();
+        suez.service.proto.WriteRequest.Builder builder = suez.service.proto.WriteRequest.newBuilder()
+            .setTableName(request.getTable())
+            .setFormat("ha3");
+        for (WriteRequest writeRequest : request.getWrites()) {
+            builder.addWrites(toWrite(writeRequest));
+        }
+        suez.service.proto.WriteRequest writeRequest = builder.build();
+        this.<suez.service.proto.WriteResponse, BulkWriteResponse>call(
+            "bulk write",
+            (tableService, controller, done) -> tableService.writeTable(controller, writeRequest, done),
+            writeResponse -> {
+                if (logger.isTraceEnabled()) {
+                    logger.trace(
+                        "bulk write {}, docs: {}, cost: {} us",
+                        request.getTable(),
+                        request.size(),
+                        (System.nanoTime() - start) / 1000
+                    );
+                }
+                if (isSuccess(writeResponse.getErrorInfo())) {
+                    return new BulkWriteResponse(writeResponse.getCheckpoint(), writeResponse.getDocWriteStateList());
+                } else {
+                    return new BulkWriteResponse(writeResponse.getErrorInfo().getErrorCode(), writeResponse.getErrorInfo().getErrorMsg());
+                }
+            },
+            BulkWriteResponse::new,
+            listener
+        );
+    }
+
+    /**
+     * 当前在途的请求数
+     */
+    public int getInFlightCount() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * 等待发送的请求数
+     */
+    public int getWaitingCount() {
+        return waitingCount.get();
+    }
+
+    private static boolean isSuccess(ErrorInfo errorInfo) {
+        return errorInfo == null || errorInfo.getErrorCode() == ErrorCode.TBS_ERROR_NONE;
+    }
+
+    private interface RpcInvoker<ProtoResponse> {
+        void invoke(TableService.Stub tableService, ANetRPCController controller, RpcCallback<ProtoResponse> done);
+    }
+
+    private <ProtoResponse, Response> void call(
+        String action,
+        RpcInvoker<ProtoResponse> invoker,
+        Function<ProtoResponse, Response> onSuccess,
+        BiFunction<ErrorCode, String, Response> onError,
+        ActionListener<Response> listener
+    ) {
+        if (waitingCount.incrementAndGet() > maxWaiting) {
+            waitingCount.decrementAndGet();
+            listener.onFailure(
+                new HavenaskRejectedExecutionException(
+                    "rejected execution of searcher arpc " + action + " [max_in_flight=" + maxInFlight + ", max_waiting=" + maxWaiting + "]"
+                )
+            );
+            return;
+        }
+        waitingCalls.add(() -> {
+            ANetRPCController controller = new ANetRPCController();
+            AtomicBoolean completed = new AtomicBoolean(false);
+            RpcCallback<ProtoResponse> done = protoResponse -> {
+                if (false == completed.compareAndSet(false, true)) {
+                    return;
+                }
+                releaseAndDispatch();
+                Response response;
+                try {
+                    if (protoResponse == null) {
+                        if (isChannelBroken(controller)) {
+                            resetChannel();
+                        }
+                        response = onError.apply(
+                            ErrorCode.TBS_ERROR_UNKOWN,
+                            action + " response is null, " + controller.errorText()
+                        );
+                    } else {
+                        response = onSuccess.apply(protoResponse);
+                    }
+                } catch (Exception e) {
+                    logger.warn(action + " upexpect error", e);
+                    response = onError.apply(ErrorCode.TBS_ERROR_UNKOWN, "upexpect error:" + e.getMessage());
+                }
+                listener.onResponse(response);
+            };
+
+            try {
+                // 并发的resetChannel会将stub置空, 每个请求只读取一次stub
+                TableService.Stub tableService = ensureStub();
+                invoker.invoke(tableService, controller, done);
+            } catch (Exception e) {
+                logger.warn(action + " service error", e);
                 resetChannel();
-                return new WriteResponse(ErrorCode.TBS_ERROR_UNKOWN, "write response is null, channel reset");
+                if (completed.compareAndSet(false, true)) {
+                    releaseAndDispatch();
+                    listener.onResponse(onError.apply(ErrorCode.TBS_ERROR_UNKOWN, "service error:" + e.getMessage()));
+                }
             }
+        });
+        dispatch();
+    }
 
-            if (writeResponse.getErrorInfo() == null || writeResponse.getErrorInfo().getErrorCode() == ErrorCode.TBS_ERROR_NONE) {
-                return new WriteResponse(writeResponse.getCheckpoint());
-            } else {
-                return new WriteResponse(writeResponse.getErrorInfo().getErrorCode(), writeResponse.getErrorInfo().getErrorMsg());
+    /**
+     * 在途请求数未达到上限时, 发送排队的请求
+     */
+    private void dispatch() {
+        // 请求失败时会在当前线程中同步回调, 避免回调中再次dispatch导致递归
+        if (dispatching.get()) {
+            return;
+        }
+        dispatching.set(true);
+        try {
+            while (false == waitingCalls.isEmpty() && inFlight.tryAcquire()) {
+                Runnable call = waitingCalls.poll();
+                if (call == null) {
+                    inFlight.release();
+                    continue;
+                }
+                waitingCount.decrementAndGet();
+                call.run();
             }
-        } catch (ServiceException e) {
-            logger.warn("write service error", e);
-            resetChannel();
-            return new WriteResponse(ErrorCode.TBS_ERROR_UNKOWN, "service error:" + e.getMessage());
-        } catch (Exception e) {
-            logger.warn("write upexpect error", e);
-            resetChannel();
-            return new WriteResponse(ErrorCode.TBS_ERROR_UNKOWN, "upexpect error:" + e.getMessage());
+        } finally {
+            dispatching.set(false);
         }
     }
 
-    private boolean isWriteQueueFull(ErrorInfo errorInfo) {
-        if (errorInfo != null
-            && errorInfo.getErrorCode() == ErrorCode.TBS_ERROR_OTHERS
-            && errorInfo.getErrorMsg().contains("doc queue is full")) {
-            return true;
-        } else {
-            return false;
-        }
+    private void releaseAndDispatch() {
+        inFlight.release();
+        dispatch();
+    }
+
+    private static boolean isChannelBroken(ANetRPCController controller) {
+        int errorCode = controller.getErrorCode();
+        return errorCode == ErrorDefine.ErrorCode.ARPC_ERROR_CONNECTION_CLOSED
+            || errorCode == ErrorDefine.ErrorCode.ARPC_ERROR_POST_PACKET
+            || errorCode == ErrorDefine.ErrorCode.ARPC_ERROR_BAD_PACKET;
     }
 
-    private void resetChannel() {
+    private synchronized void resetChannel() {
         logger.info("searcher arpc client reset");
         try {
             manager.closeChannel(host, port);
         } catch (ArpcException e) {
             logger.warn("reset channel error", e);
         }
-        channel = AccessController.doPrivileged((PrivilegedAction<ANetRPCChannel>) () -> manager.openChannel(host, port));
-        blockingStub = TableService.newBlockingStub(channel);
-        logger.info("searcher arpc client reset, reset BlockingStub success");
-        controller.reset();
-        logger.info("searcher arpc client reset, reset RpcController success");
+        channel = null;
+        stub = null;
     }
 
-    private void closeChannel() {
-        logger.info("searcher arpc client close channel");
-        channel = null;
-        blockingStub = null;
-        try {
-            manager.closeChannel(host, port);
-        } catch (ArpcException e) {
-            logger.warn("close channel error", e);
+    private static Write toWrite(WriteRequest request) {
+        Write.Builder builder = Write.newBuilder().setHashId(request.getHashid());
+        if (request.getSourceBytes() != null) {
+            // 已经是utf-8编码, 直接引用不再拷贝
+            builder.setStrBytes(UnsafeByteOperations.unsafeWrap(request.getSourceBytes()));
+        } else {
+            builder.setStr(request.getSource());
         }
+        return builder.build();
     }
 
-    private void init() {
+    private TableService.Stub ensureStub() {
+        TableService.Stub current = stub;
+        ANetRPCChannel currentChannel = channel;
+        if (current == null || currentChannel == null || false == currentChannel.isOpened()) {
+            return init();
+        }
+        return current;
+    }
+
+    private synchronized TableService.Stub init() {
+        if (stub != null && channel != null && channel.isOpened()) {
+            return stub;
+        }
         logger.info("searcher arpc client init");
-        channel = AccessController.doPrivileged((PrivilegedAction<ANetRPCChannel>) () -> manager.openChannel(host, port));
+        channel = AccessController.doPrivileged(
+            (PrivilegedAction<ANetRPCChannel>) () -> manager.openChannel(host, port, true, maxInFlight, connections)
+        );
+        if (channel == null) {
+            throw new IllegalStateException("open searcher arpc channel failed, port: " + port);
+        }
         logger.info("Open Channel");
-        blockingStub = TableService.newBlockingStub(channel);
-        logger.info("Open BlockingStub");
+        TableService.Stub newStub = TableService.newStub(channel);
+        stub = newStub;
+        logger.info("Open Stub");
+        return newStub;
     }
 
     @Override
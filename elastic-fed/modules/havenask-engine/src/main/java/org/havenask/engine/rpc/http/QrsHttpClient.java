@@ -15,6 +15,8 @@
 package org.havenask.engine.rpc.http;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
 
 import org.apache.http.Consts;
 import org.apache.http.entity.ContentType;
@@ -23,7 +25,11 @@ import org.apache.http.util.EntityUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.havenask.client.Request;
+import org.havenask.action.ActionListener;
+import org.havenask.action.ActionRunnable;
 import org.havenask.client.Response;
+import org.havenask.client.ResponseListener;
+import org.havenask.engine.rpc.ColumnarSqlResponse;
 import org.havenask.engine.rpc.QrsClient;
 import org.havenask.engine.rpc.QrsSqlRequest;
 import org.havenask.engine.rpc.QrsSqlResponse;
@@ -47,17 +53,73 @@ public class QrsHttpClient extends HavenaskHttpClient implements QrsClient {
     @Override
     public QrsSqlResponse executeSql(QrsSqlRequest qrsSqlRequest) throws IOException {
         long start = System.nanoTime();
+        Request request = buildSqlRequest(qrsSqlRequest);
+        Response response = getClient().performRequest(request);
+        long end = System.nanoTime();
+        logger.debug("execute sql: {} cost: {} us", qrsSqlRequest.getSql(), (end - start) / 1000);
+        String responseString = EntityUtils.toString(response.getEntity(), Consts.UTF_8);
+        return new QrsSqlResponse(responseString, response.getStatusLine().getStatusCode());
+    }
+
+    @Override
+    public void executeSql(QrsSqlRequest qrsSqlRequest, ActionListener<QrsSqlResponse> listener) {
+        long start = System.nanoTime();
+        Request request = buildSqlRequest(qrsSqlRequest);
+        getClient().performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                QrsSqlResponse qrsSqlResponse;
+                try {
+                    long end = System.nanoTime();
+                    logger.debug("execute sql: {} cost: {} us", qrsSqlRequest.getSql(), (end - start) / 1000);
+                    String responseString = EntityUtils.toString(response.getEntity(), Consts.UTF_8);
+                    qrsSqlResponse = new QrsSqlResponse(responseString, response.getStatusLine().getStatusCode());
+                } catch (Exception e) {
+                    listener.onFailure(e);
+                    return;
+                }
+                listener.onResponse(qrsSqlResponse);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                listener.onFailure(exception);
+            }
+        });
+    }
+
+    @Override
+    public void executeSqlColumnar(QrsSqlRequest qrsSqlRequest, Executor executor, ActionListener<ColumnarSqlResponse> listener) {
+        long start = System.nanoTime();
+        Request request = buildSqlRequest(qrsSqlRequest);
+        getClient().performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                long end = System.nanoTime();
+                logger.debug("execute sql: {} cost: {} us", qrsSqlRequest.getSql(), (end - start) / 1000);
+                // 响应体已经缓存在内存中, 解析放到executor上执行, 不占用http io线程
+                executor.execute(ActionRunnable.supply(listener, () -> {
+                    try (InputStream in = response.getEntity().getContent()) {
+                        return ColumnarSqlResponse.parse(in);
+                    }
+                }));
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                listener.onFailure(exception);
+            }
+        });
+    }
+
+    private static Request buildSqlRequest(QrsSqlRequest qrsSqlRequest) {
         Request request = new Request("POST", SQL_URL);
         String query = qrsSqlRequest.getSql();
         if (qrsSqlRequest.getKvpair() != null) {
             query += "&&kvpair=" + qrsSqlRequest.getKvpair();
         }
         request.setEntity(new NStringEntity(query, ContentType.create("text/plain", Consts.UTF_8)));
-        Response response = getClient().performRequest(request);
-        long end = System.nanoTime();
-        logger.debug("execute sql: {} cost: {} us", qrsSqlRequest.getSql(), (end - start) / 1000);
-        String responseString = EntityUtils.toString(response.getEntity(), Consts.UTF_8);
-        return new QrsSqlResponse(responseString, response.getStatusLine().getStatusCode());
+        return request;
     }
 
     @Override
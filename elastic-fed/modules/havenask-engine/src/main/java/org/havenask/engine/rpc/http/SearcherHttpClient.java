@@ -14,6 +14,9 @@
 
 package org.havenask.engine.rpc.http;
 
+import org.havenask.action.ActionListener;
+import org.havenask.engine.rpc.BulkWriteRequest;
+import org.havenask.engine.rpc.BulkWriteResponse;
 import org.havenask.engine.rpc.QueryTableRequest;
 import org.havenask.engine.rpc.QueryTableResponse;
 import org.havenask.engine.rpc.SearcherClient;
@@ -30,8 +33,28 @@ public class SearcherHttpClient extends HavenaskHttpClient implements SearcherCl
         throw new UnsupportedOperationException("Not implemented yet");
     }
 
+    @Override
+    public void queryTable(QueryTableRequest request, ActionListener<QueryTableResponse> listener) {
+        listener.onFailure(new UnsupportedOperationException("Not implemented yet"));
+    }
+
     @Override
     public WriteResponse write(WriteRequest request) {
         throw new UnsupportedOperationException("Not implemented yet");
     }
+
+    @Override
+    public void write(WriteRequest request, ActionListener<WriteResponse> listener) {
+        listener.onFailure(new UnsupportedOperationException("Not implemented yet"));
+    }
+
+    @Override
+    public BulkWriteResponse bulkWrite(BulkWriteRequest request) {
+        throw new UnsupportedOperationException("Not implemented yet");
+    }
+
+    @Override
+    public void bulkWrite(BulkWriteRequest request, ActionListener<BulkWriteResponse> listener) {
+        listener.onFailure(new UnsupportedOperationException("Not implemented yet"));
+    }
 }
@@ -19,11 +19,13 @@ import org.apache.logging.log4j.Logger;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TotalHits;
+import org.havenask.action.ActionListener;
 import org.havenask.client.ha.SqlResponse;
-import org.havenask.common.bytes.BytesArray;
 import org.havenask.common.document.DocumentField;
 import org.havenask.common.lucene.search.TopDocsAndMaxScore;
 import org.havenask.common.text.Text;
+import org.havenask.common.util.concurrent.HavenaskExecutors;
+import org.havenask.engine.rpc.ColumnarSqlResponse;
 import org.havenask.engine.rpc.QrsClient;
 import org.havenask.engine.rpc.QrsSqlRequest;
 import org.havenask.engine.rpc.QrsSqlResponse;
@@ -38,6 +40,7 @@ import org.havenask.search.aggregations.InternalAggregations;
 import org.havenask.search.builder.SearchSourceBuilder;
 import org.havenask.search.fetch.subphase.FetchSourceContext;
 import org.havenask.search.internal.InternalSearchResponse;
+import org.havenask.threadpool.ThreadPool;
 
 import java.io.IOException;
 import java.sql.SQLException;
@@ -48,6 +51,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
 
 import static org.havenask.engine.search.rest.RestHavenaskSqlAction.SQL_DATABASE;
 
@@ -60,9 +65,18 @@ public class HavenaskSearchFetchProcessor {
     private static final Object SOURCE_NOT_FOUND = "{\n" + "\"warn\":\"source not found\"\n" + "}";
     QrsClient qrsClient;
     private final List<HavenaskFetchSubPhase> havenaskFetchSubPhases;
+    private final ThreadPool threadPool;
 
     public HavenaskSearchFetchProcessor(QrsClient qrsClient) {
+        this(qrsClient, null);
+    }
+
+    /**
+     * @param threadPool 不为空时, 异步fetch的结果切换到search线程池处理, 避免占用http io线程
+     */
+    public HavenaskSearchFetchProcessor(QrsClient qrsClient, ThreadPool threadPool) {
         this.qrsClient = qrsClient;
+        this.threadPool = threadPool;
         // TODO 目前仅支持source过滤，未来增加更多的subPhase并考虑以plugin形式去支持
         this.havenaskFetchSubPhases = new ArrayList<>();
         this.havenaskFetchSubPhases.add(new HavenaskFetchSourcePhase());
@@ -120,6 +134,92 @@ public class HavenaskSearchFetchProcessor {
         );
     }
 
+    /**
+     * 异步执行fetch, 不阻塞等待qrs返回
+     */
+    public void executeFetchHits(
+        ColumnarSqlResponse queryPhaseSqlResponse,
+        String tableName,
+        SearchSourceBuilder searchSourceBuilder,
+        Boolean sourceEnabled,
+        ActionListener<SearchHits> listener
+    ) {
+        if (searchSourceBuilder == null) {
+            listener.onFailure(new IllegalArgumentException("request source can not be null!"));
+            return;
+        }
+        List<String> idList = new ArrayList<>(queryPhaseSqlResponse.getRowCount());
+        TopDocsAndMaxScore topDocsAndMaxScore;
+        try {
+            topDocsAndMaxScore = buildQuerySearchResult(queryPhaseSqlResponse, idList, searchSourceBuilder.from());
+        } catch (Exception e) {
+            listener.onFailure(e);
+            return;
+        }
+
+        if (true == sourceEnabled
+            && (searchSourceBuilder.fetchSource() == null || true == searchSourceBuilder.fetchSource().fetchSource())) {
+            havenaskFetchWithSql(
+                idList,
+                tableName,
+                qrsClient,
+                ActionListener.map(
+                    listener,
+                    fetchPhaseSqlResponse -> transferColumnarResponse2SearchHits(
+                        tableName,
+                        idList,
+                        fetchPhaseSqlResponse,
+                        topDocsAndMaxScore,
+                        searchSourceBuilder,
+                        sourceEnabled
+                    )
+                )
+            );
+        } else {
+            ActionListener.completeWith(
+                listener,
+                () -> transferColumnarResponse2SearchHits(tableName, idList, null, topDocsAndMaxScore, searchSourceBuilder, sourceEnabled)
+            );
+        }
+    }
+
+    /**
+     * 单阶段查询: query结果中已经join了summary表的_source和_routing, 直接构建hits, 不再发起fetch
+     */
+    public SearchHits executeSinglePhaseHits(
+        ColumnarSqlResponse singlePhaseSqlResponse,
+        String tableName,
+        SearchSourceBuilder searchSourceBuilder,
+        Boolean sourceEnabled
+    ) throws IOException {
+        if (searchSourceBuilder == null) {
+            throw new IllegalArgumentException("request source can not be null!");
+        }
+        int columnCount = singlePhaseSqlResponse.getColumnCount();
+        if (singlePhaseSqlResponse.getRowCount() > 0 && (columnCount < 3 || columnCount > 4)) {
+            throw new IOException("unknow sqlResponse:" + singlePhaseSqlResponse);
+        }
+        // 最后两列为_source和_routing, 其余为query阶段的_id和分数
+        int scorePos = columnCount == 4 ? SCORE_POS : -1;
+        List<String> idList = new ArrayList<>(singlePhaseSqlResponse.getRowCount());
+        TopDocsAndMaxScore topDocsAndMaxScore = buildQuerySearchResult(
+            singlePhaseSqlResponse,
+            scorePos,
+            idList,
+            searchSourceBuilder.from()
+        );
+        return transferColumnarResponse2SearchHits(
+            tableName,
+            idList,
+            singlePhaseSqlResponse,
+            columnCount - 2,
+            columnCount - 1,
+            topDocsAndMaxScore,
+            searchSourceBuilder,
+            sourceEnabled
+        );
+    }
+
     public TopDocsAndMaxScore buildQuerySearchResult(SqlResponse queryPhaseSqlResponse, List<String> idList, int from) throws IOException {
         ScoreDoc[] queryScoreDocs = new ScoreDoc[queryPhaseSqlResponse.getRowCount()];
         // TODO: 当前通过sql没有较好的方法来获取totalHits的准确值，后续可能考虑优化
@@ -144,6 +244,51 @@ public class HavenaskSearchFetchProcessor {
         return new TopDocsAndMaxScore(topDocs, maxScore);
     }
 
+    public TopDocsAndMaxScore buildQuerySearchResult(ColumnarSqlResponse queryPhaseSqlResponse, List<String> idList, int from)
+        throws IOException {
+        if (queryPhaseSqlResponse.getRowCount() > 0 && queryPhaseSqlResponse.getColumnCount() > 2) {
+            throw new IOException("unknow sqlResponse:" + queryPhaseSqlResponse);
+        }
+        int scorePos = queryPhaseSqlResponse.getColumnCount() == 2 ? SCORE_POS : -1;
+        return buildQuerySearchResult(queryPhaseSqlResponse, scorePos, idList, from);
+    }
+
+    /**
+     * @param scorePos 分数所在列, 小于0时分数固定为1
+     */
+    private static TopDocsAndMaxScore buildQuerySearchResult(
+        ColumnarSqlResponse queryPhaseSqlResponse,
+        int scorePos,
+        List<String> idList,
+        int from
+    ) {
+        int rowCount = queryPhaseSqlResponse.getRowCount();
+        ScoreDoc[] queryScoreDocs = new ScoreDoc[rowCount];
+        int offset = Math.max(from, 0);
+        int totalHitsValue = rowCount > 0 ? rowCount + offset : 0;
+        float maxScore = 0;
+        ColumnarSqlResponse.Column idColumn = rowCount > 0 ? queryPhaseSqlResponse.getColumn(ID_POS) : null;
+        ColumnarSqlResponse.Column scoreColumn = rowCount > 0 && scorePos >= 0 ? queryPhaseSqlResponse.getColumn(scorePos) : null;
+        for (int i = 0; i < rowCount; i++) {
+            float curScore = scoreColumn == null ? 1 : (float) doubleValue(scoreColumn, i);
+            queryScoreDocs[i] = new ScoreDoc(i, curScore);
+            maxScore = Math.max(maxScore, curScore);
+            idList.add(String.valueOf(idColumn.get(i)));
+        }
+        TopDocs topDocs = new TopDocs(new TotalHits(totalHitsValue, TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO), queryScoreDocs);
+        return new TopDocsAndMaxScore(topDocs, maxScore);
+    }
+
+    private static double doubleValue(ColumnarSqlResponse.Column column, int row) {
+        if (column instanceof ColumnarSqlResponse.DoubleColumn) {
+            return ((ColumnarSqlResponse.DoubleColumn) column).getDouble(row);
+        } else if (column instanceof ColumnarSqlResponse.LongColumn) {
+            return ((ColumnarSqlResponse.LongColumn) column).getDouble(row);
+        }
+        Object value = column.get(row);
+        return value == null ? 0 : ((Number) value).doubleValue();
+    }
+
     public SqlResponse havenaskFetchWithSql(
         List<String> idList,
         String tableName,
@@ -152,6 +297,48 @@ public class HavenaskSearchFetchProcessor {
     ) throws Exception {
         QrsSqlRequest qrsFetchPhaseSqlRequest = getQrsFetchPhaseSqlRequest(idList, tableName);
         QrsSqlResponse qrsFetchPhaseSqlResponse = qrsClient.executeSql(qrsFetchPhaseSqlRequest);
+        return parseFetchPhaseSqlResponse(idList, qrsFetchPhaseSqlResponse);
+    }
+
+    public void havenaskFetchWithSql(
+        List<String> idList,
+        String tableName,
+        QrsClient qrsClient,
+        ActionListener<ColumnarSqlResponse> listener
+    ) {
+        QrsSqlRequest qrsFetchPhaseSqlRequest = getQrsFetchPhaseSqlRequest(idList, tableName);
+        Executor executor = threadPool != null
+            ? threadPool.executor(ThreadPool.Names.SEARCH)
+            : HavenaskExecutors.newDirectExecutorService();
+        qrsClient.executeSqlColumnar(
+            qrsFetchPhaseSqlRequest,
+            executor,
+            ActionListener.map(listener, fetchPhaseSqlResponse -> {
+                if (fetchPhaseSqlResponse.getErrorCode() != 0) {
+                    throw new SQLException(
+                        String.format(
+                            Locale.ROOT,
+                            "execute fetch phase sql failed after transfer dsl to sql: errorCode: %s, error: %s, message: %s",
+                            fetchPhaseSqlResponse.getErrorCode(),
+                            fetchPhaseSqlResponse.getError(),
+                            fetchPhaseSqlResponse.getMessage()
+                        )
+                    );
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug(
+                        "fetch idList length: {}, havenask sqlResponse took: {} ms",
+                        idList.size(),
+                        fetchPhaseSqlResponse.getTotalTime()
+                    );
+                }
+                return fetchPhaseSqlResponse;
+            })
+        );
+    }
+
+    private static SqlResponse parseFetchPhaseSqlResponse(List<String> idList, QrsSqlResponse qrsFetchPhaseSqlResponse)
+        throws Exception {
         SqlResponse fetchPhaseSqlResponse = SqlResponse.parse(qrsFetchPhaseSqlResponse.getResult());
         if (fetchPhaseSqlResponse.getErrorInfo().getErrorCode() != 0) {
             throw new SQLException(
@@ -211,6 +398,114 @@ public class HavenaskSearchFetchProcessor {
         TopDocsAndMaxScore topDocsAndMaxScore,
         SearchSourceBuilder searchSourceBuilder,
         Boolean sourceEnabled
+    ) throws IOException {
+        // 记录fetch结果的_id和index的映射关系, query阶段查到的idList是根据_score值排序好的，但fetch结果非有序
+        Map<String, Integer> fetchResIdListMap = new HashMap<>();
+        if (fetchPhaseSqlResponse == null) {
+            return buildSearchHits(
+                tableName,
+                idList,
+                fetchResIdListMap,
+                null,
+                null,
+                topDocsAndMaxScore,
+                searchSourceBuilder,
+                sourceEnabled
+            );
+        }
+        Object[][] data = fetchPhaseSqlResponse.getSqlResult().getData();
+        for (int i = 0; i < fetchPhaseSqlResponse.getRowCount(); i++) {
+            fetchResIdListMap.put((String) data[i][ID_POS], i);
+        }
+        return buildSearchHits(
+            tableName,
+            idList,
+            fetchResIdListMap,
+            row -> data[row][SOURCE_POS],
+            row -> data[row][ROUTING_POS],
+            topDocsAndMaxScore,
+            searchSourceBuilder,
+            sourceEnabled
+        );
+    }
+
+    public SearchHits transferColumnarResponse2SearchHits(
+        String tableName,
+        List<String> idList,
+        ColumnarSqlResponse fetchPhaseSqlResponse,
+        TopDocsAndMaxScore topDocsAndMaxScore,
+        SearchSourceBuilder searchSourceBuilder,
+        Boolean sourceEnabled
+    ) throws IOException {
+        return transferColumnarResponse2SearchHits(
+            tableName,
+            idList,
+            fetchPhaseSqlResponse,
+            SOURCE_POS,
+            ROUTING_POS,
+            topDocsAndMaxScore,
+            searchSourceBuilder,
+            sourceEnabled
+        );
+    }
+
+    private SearchHits transferColumnarResponse2SearchHits(
+        String tableName,
+        List<String> idList,
+        ColumnarSqlResponse fetchPhaseSqlResponse,
+        int sourcePos,
+        int routingPos,
+        TopDocsAndMaxScore topDocsAndMaxScore,
+        SearchSourceBuilder searchSourceBuilder,
+        Boolean sourceEnabled
+    ) throws IOException {
+        Map<String, Integer> fetchResIdListMap = new HashMap<>();
+        if (fetchPhaseSqlResponse == null || fetchPhaseSqlResponse.getRowCount() == 0) {
+            return buildSearchHits(
+                tableName,
+                idList,
+                fetchResIdListMap,
+                null,
+                null,
+                topDocsAndMaxScore,
+                searchSourceBuilder,
+                sourceEnabled
+            );
+        }
+        ColumnarSqlResponse.Column idColumn = fetchPhaseSqlResponse.getColumn(ID_POS);
+        ColumnarSqlResponse.Column sourceColumn = fetchPhaseSqlResponse.getColumn(sourcePos);
+        ColumnarSqlResponse.Column routingColumn = fetchPhaseSqlResponse.getColumn(routingPos);
+        for (int i = 0; i < fetchPhaseSqlResponse.getRowCount(); i++) {
+            // join summary未命中时_source为空, 按数据丢失处理
+            if (false == sourceColumn.isNull(i)) {
+                fetchResIdListMap.put(String.valueOf(idColumn.get(i)), i);
+            }
+        }
+        // _source直接引用响应buffer的切片, 不再转成String
+        IntFunction<Object> sourceAt = sourceColumn instanceof ColumnarSqlResponse.BytesColumn
+            ? ((ColumnarSqlResponse.BytesColumn) sourceColumn)::getBytes
+            : sourceColumn::get;
+        return buildSearchHits(
+            tableName,
+            idList,
+            fetchResIdListMap,
+            sourceAt,
+            routingColumn::get,
+            topDocsAndMaxScore,
+            searchSourceBuilder,
+            sourceEnabled
+        );
+    }
+
+    private SearchHits buildSearchHits(
+        String tableName,
+        List<String> idList,
+        Map<String, Integer> fetchResIdListMap,
+        IntFunction<Object> sourceAt,
+        IntFunction<Object> routingAt,
+        TopDocsAndMaxScore topDocsAndMaxScore,
+        SearchSourceBuilder searchSourceBuilder,
+        Boolean sourceEnabled
     ) throws IOException {
         int loadSize = idList.size();
         TotalHits totalHits = topDocsAndMaxScore.topDocs.totalHits;
@@ -218,28 +513,18 @@ public class HavenaskSearchFetchProcessor {
         FetchSourceContext fetchSourceContext = searchSourceBuilder.fetchSource();
         List<HavenaskFetchSubPhaseProcessor> processors = getProcessors(tableName, searchSourceBuilder);
 
-        // 记录fetch结果的_id和index的映射关系, query阶段查到的idList是根据_score值排序好的，但fetch结果非有序
-        Map<String, Integer> fetchResIdListMap = new HashMap<>();
-        if (fetchPhaseSqlResponse != null) {
-            for (int i = 0; i < fetchPhaseSqlResponse.getRowCount(); i++) {
-                fetchResIdListMap.put((String) fetchPhaseSqlResponse.getSqlResult().getData()[i][ID_POS], i);
-            }
-        }
-
         for (int i = 0; i < loadSize; i++) {
             // 根据idList的顺序从fetch结果获取相对应的_source, 如果数据丢失则返回_source not found
             Integer fetchResIndex = fetchResIdListMap.get(idList.get(i));
             Object source = null;
             if (true == sourceEnabled && (fetchSourceContext == null || true == fetchSourceContext.fetchSource())) {
-                source = fetchResIndex != null
-                    ? fetchPhaseSqlResponse.getSqlResult().getData()[fetchResIndex][SOURCE_POS]
-                    : SOURCE_NOT_FOUND;
+                source = fetchResIndex != null ? sourceAt.apply(fetchResIndex) : SOURCE_NOT_FOUND;
             }
 
             Map<String, DocumentField> metaFields = new HashMap<>();
             // set routing when routing is not equal to id
-            if (fetchPhaseSqlResponse != null && fetchResIndex != null) {
-                Object routing = fetchPhaseSqlResponse.getSqlResult().getData()[fetchResIndex][ROUTING_POS];
+            if (fetchResIndex != null) {
+                Object routing = routingAt.apply(fetchResIndex);
                 if (routing != null && idList.get(i).equals(routing) == false) {
                     metaFields.put(RoutingFieldMapper.NAME, new DocumentField(RoutingFieldMapper.NAME, Collections.singletonList(routing)));
                 }
@@ -264,7 +549,7 @@ public class HavenaskSearchFetchProcessor {
                 hits[i] = hit.getHit();
             } else {
                 hits[i] = hit.getHit();
-                hits[i].sourceRef(new BytesArray((String) source));
+                hits[i].sourceRef(HavenaskFetchSourcePhase.toSourceRef(source));
             }
         }
         return new SearchHits(hits, totalHits, topDocsAndMaxScore.maxScore);
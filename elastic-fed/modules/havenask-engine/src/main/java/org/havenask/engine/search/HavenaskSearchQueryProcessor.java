@@ -28,6 +28,7 @@ import org.havenask.client.ha.SqlResponse;
 import org.havenask.common.Strings;
 import org.havenask.engine.index.config.Schema;
 import org.havenask.engine.index.mapper.DenseVectorFieldMapper;
+import org.havenask.engine.index.mapper.VectorField;
 import org.havenask.engine.index.query.ProximaQueryBuilder;
 import org.havenask.engine.rpc.QrsClient;
 import org.havenask.engine.rpc.QrsSqlRequest;
@@ -127,12 +128,7 @@ public class HavenaskSearchQueryProcessor {
                 selectParams.append(getScoreComputeStr(fieldName, similarity));
 
                 where.append("MATCHINDEX('").append(fieldName).append("', '");
-                for (int i = 0; i < knnSearchBuilder.getQueryVector().length; i++) {
-                    where.append(knnSearchBuilder.getQueryVector()[i]);
-                    if (i < knnSearchBuilder.getQueryVector().length - 1) {
-                        where.append(",");
-                    }
-                }
+                VectorField.appendVector(knnSearchBuilder.getQueryVector(), getEmbeddingDelimiter(fieldName, indexMapping), where);
                 where.append("&n=").append(knnSearchBuilder.k()).append("')");
             }
             selectParams.append(") as _score");
@@ -156,13 +152,7 @@ public class HavenaskSearchQueryProcessor {
 
                 selectParams.append(", ").append(getScoreComputeStr(fieldName, similarity)).append(" as _score");
                 where.append(" where MATCHINDEX('").append(fieldName).append("', '");
-                for (int i = 0; i < proximaQueryBuilder.getVector().length; i++) {
-
-                    where.append(proximaQueryBuilder.getVector()[i]);
-                    if (i < proximaQueryBuilder.getVector().length - 1) {
-                        where.append(",");
-                    }
-                }
+                VectorField.appendVector(proximaQueryBuilder.getVector(), getEmbeddingDelimiter(fieldName, indexMapping), where);
                 where.append("&n=").append(proximaQueryBuilder.getSize()).append("')");
                 orderBy.append(" order by _score desc");
             } else if (queryBuilder instanceof TermQueryBuilder) {
@@ -350,6 +340,13 @@ public class HavenaskSearchQueryProcessor {
         return null;
     }
 
+    @SuppressWarnings("unchecked")
+    private String getEmbeddingDelimiter(String fieldName, Map<String, Object> indexMapping) {
+        Map<String, Object> flattenFields = flattenFields(Map.of(PROPERTIES_FIELD, indexMapping), null);
+        Object properties = flattenFields.get("properties_" + fieldName);
+        return DenseVectorFieldMapper.getEmbeddingDelimiter(properties instanceof Map ? (Map<String, Object>) properties : null);
+    }
+
     private static Map<String, Object> flattenFields(Map<String, Object> map, String parentPath) {
         Map<String, Object> flatMap = new HashMap<>();
         String prefix = parentPath != null ? parentPath + "_" : "";
@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.havenask.action.ActionListener;
+import org.havenask.action.search.SearchRequest;
+import org.havenask.action.search.SearchResponse;
+import org.havenask.client.Client;
+import org.havenask.cluster.ClusterChangedEvent;
+import org.havenask.cluster.ClusterStateListener;
+import org.havenask.cluster.metadata.IndexMetadata;
+import org.havenask.common.breaker.CircuitBreaker;
+import org.havenask.common.breaker.CircuitBreakingException;
+import org.havenask.common.bytes.BytesReference;
+import org.havenask.common.cache.Cache;
+import org.havenask.common.cache.CacheBuilder;
+import org.havenask.common.cache.RemovalNotification;
+import org.havenask.common.component.AbstractLifecycleComponent;
+import org.havenask.common.io.stream.BytesStreamOutput;
+import org.havenask.common.io.stream.NamedWriteableAwareStreamInput;
+import org.havenask.common.io.stream.NamedWriteableRegistry;
+import org.havenask.common.io.stream.StreamInput;
+import org.havenask.common.metrics.CounterMetric;
+import org.havenask.common.settings.Setting;
+import org.havenask.common.settings.Settings;
+import org.havenask.common.unit.ByteSizeValue;
+import org.havenask.common.unit.TimeValue;
+import org.havenask.common.util.concurrent.ConcurrentCollections;
+import org.havenask.engine.search.action.HavenaskTableVersionAction;
+import org.havenask.engine.search.action.HavenaskTableVersionNodeResponse;
+import org.havenask.engine.search.action.HavenaskTableVersionRequest;
+import org.havenask.engine.search.action.HavenaskTableVersionResponse;
+import org.havenask.index.Index;
+import org.havenask.index.cache.request.RequestCacheStats;
+import org.havenask.threadpool.Scheduler;
+import org.havenask.threadpool.ThreadPool;
+
+/**
+ * 协调节点上havenask dsl查询的结果缓存.
+ *
+ * havenask查询不经过shard级别的IndicesRequestCache, 这里按index、mapping version、dsl和表版本缓存序列化后的查询结果.
+ * 表版本由各数据节点上shard内存中的commit version和commit checkpoint组成, 定时拉取, 发生变化时该表的缓存全部失效.
+ * 版本第一次拉取成功之前不缓存, 拉取失败时同样失效并暂停缓存. 内存按LRU淘汰, 并计入havenask_request_cache熔断器.
+ *
+ * 失效依赖定时拉取, refresh之后最长一个version_check_interval内仍可能返回旧结果, 因此只缓存显式设置request_cache=true的请求.
+ */
+public class HavenaskSearchRequestCache extends AbstractLifecycleComponent implements ClusterStateListener {
+    private static final Logger logger = LogManager.getLogger(HavenaskSearchRequestCache.class);
+
+    public static final String CIRCUIT_BREAKER_NAME = "havenask_request_cache";
+
+    // 缓存占用的最大内存, 0表示关闭缓存; 只有显式设置request_cache=true的请求会被缓存
+    public static final Setting<ByteSizeValue> HAVENASK_REQUEST_CACHE_SIZE = Setting.memorySizeSetting(
+        "havenask.search.request_cache.size",
+        "1%",
+        Setting.Property.NodeScope
+    );
+
+    // 拉取表版本的间隔, 即缓存结果的最长过期时间: refresh之后最多这么久仍可能命中旧结果
+    public static final Setting<TimeValue> HAVENASK_REQUEST_CACHE_VERSION_CHECK_INTERVAL = Setting.timeSetting(
+        "havenask.search.request_cache.version_check_interval",
+        TimeValue.timeValueSeconds(1),
+        TimeValue.timeValueMillis(100),
+        Setting.Property.NodeScope
+    );
+
+    private final Client client;
+    private final ThreadPool threadPool;
+    private final NamedWriteableRegistry namedWriteableRegistry;
+    private final CircuitBreaker breaker;
+    private final TimeValue versionCheckInterval;
+    private final Cache<Key, BytesReference> cache;
+    private final Map<String, TableState> tables = ConcurrentCollections.newConcurrentMap();
+    private final AtomicBoolean checking = new AtomicBoolean();
+    private volatile Scheduler.Cancellable versionChecker;
+
+    private final CounterMetric hits = new CounterMetric();
+    private final CounterMetric misses = new CounterMetric();
+    private final CounterMetric evictions = new CounterMetric();
+
+    public HavenaskSearchRequestCache(
+        Settings settings,
+        Client client,
+        ThreadPool threadPool,
+        NamedWriteableRegistry namedWriteableRegistry,
+        CircuitBreaker breaker
+    ) {
+        this.client = client;
+        this.threadPool = threadPool;
+        this.namedWriteableRegistry = namedWriteableRegistry;
+        this.breaker = breaker;
+        this.versionCheckInterval = HAVENASK_REQUEST_CACHE_VERSION_CHECK_INTERVAL.get(settings);
+        long maxBytes = HAVENASK_REQUEST_CACHE_SIZE.get(settings).getBytes();
+        this.cache = maxBytes > 0
+            ? CacheBuilder.<Key, BytesReference>builder()
+                .setMaximumWeight(maxBytes)
+                .weigher((key, value) -> key.ramBytesUsed() + value.length())
+                .removalListener(this::onRemoval)
+                .build()
+            : null;
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * 缓存可能滞后于refresh, 与IndicesRequestCache默认缓存size为0的请求不同, 这里只缓存显式设置request_cache=true的请求,
+     * scroll请求不缓存
+     */
+    public boolean canCache(SearchRequest request) {
+        if (false == isEnabled() || request.scroll() != null || request.source() == null) {
+            return false;
+        }
+        return Boolean.TRUE.equals(request.requestCache());
+    }
+
+    /**
+     * 命中缓存时直接返回, 否则通过loader执行查询并缓存成功的结果
+     */
+    public void execute(
+        IndexMetadata indexMetadata,
+        SearchRequest request,
+        Consumer<ActionListener<SearchResponse>> loader,
+        ActionListener<SearchResponse> listener
+    ) {
+        if (false == canCache(request)) {
+            loader.accept(listener);
+            return;
+        }
+
+        long startTime = threadPool.relativeTimeInMillis();
+        TableState state = tables.computeIfAbsent(indexMetadata.getIndexUUID(), k -> new TableState(indexMetadata.getIndex()));
+        state.accessed = true;
+        long generation = state.generation;
+        if (false == state.isReady()) {
+            misses.inc();
+            loader.accept(listener);
+            return;
+        }
+
+        Key key;
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            request.source().writeTo(out);
+            key = new Key(indexMetadata.getIndexUUID(), generation, indexMetadata.getMappingVersion(), out.bytes());
+        } catch (IOException e) {
+            loader.accept(listener);
+            return;
+        }
+
+        BytesReference cached = cache.get(key);
+        if (cached != null) {
+            SearchResponse response;
+            try {
+                response = readResponse(cached, threadPool.relativeTimeInMillis() - startTime);
+            } catch (IOException e) {
+                logger.warn("failed to read cached havenask search response, index: " + indexMetadata.getIndex(), e);
+                cache.invalidate(key);
+                loader.accept(listener);
+                return;
+            }
+            hits.inc();
+            listener.onResponse(response);
+            return;
+        }
+
+        misses.inc();
+        loader.accept(ActionListener.wrap(response -> {
+            put(state, key, response);
+            listener.onResponse(response);
+        }, listener::onFailure));
+    }
+
+    private void put(TableState state, Key key, SearchResponse response) {
+        // 部分失败或超时的结果不缓存; 查询期间表版本变化时结果可能已经过期, 同样不缓存
+        if (response.getFailedShards() > 0 || response.isTimedOut() || response.getScrollId() != null) {
+            return;
+        }
+        if (state.generation != key.generation || tables.get(key.indexUUID) != state) {
+            return;
+        }
+
+        BytesReference value;
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            response.writeTo(out);
+            value = out.bytes();
+        } catch (IOException e) {
+            logger.debug("failed to serialize havenask search response", e);
+            return;
+        }
+
+        long bytes = key.ramBytesUsed() + value.length();
+        try {
+            breaker.addEstimateBytesAndMaybeBreak(bytes, CIRCUIT_BREAKER_NAME);
+        } catch (CircuitBreakingException e) {
+            logger.debug("skip caching havenask search response, {}", e.getMessage());
+            return;
+        }
+        state.entries.incrementAndGet();
+        cache.put(key, value);
+    }
+
+    private SearchResponse readResponse(BytesReference bytes, long tookInMillis) throws IOException {
+        try (StreamInput in = new NamedWriteableAwareStreamInput(bytes.streamInput(), namedWriteableRegistry)) {
+            SearchResponse cached = new SearchResponse(in);
+            return new SearchResponse(
+                cached.getInternalResponse(),
+                null,
+                cached.getTotalShards(),
+                cached.getSuccessfulShards(),
+                cached.getSkippedShards(),
+                tookInMillis,
+                cached.getShardFailures(),
+                cached.getClusters()
+            );
+        }
+    }
+
+    private void onRemoval(RemovalNotification<Key, BytesReference> notification) {
+        breaker.addWithoutBreaking(-(notification.getKey().ramBytesUsed() + notification.getValue().length()));
+        if (notification.getRemovalReason() == RemovalNotification.RemovalReason.EVICTED) {
+            evictions.inc();
+        }
+        TableState state = tables.get(notification.getKey().indexUUID);
+        if (state != null) {
+            state.entries.decrementAndGet();
+        }
+    }
+
+    /**
+     * 拉取所有数据节点上被缓存的表的版本, 版本变化或拉取失败时失效对应的缓存
+     */
+    void checkVersions() {
+        if (tables.isEmpty() || false == checking.compareAndSet(false, true)) {
+            return;
+        }
+
+        // 上个周期没有被访问且没有缓存的表不再跟踪
+        Iterator<TableState> iterator = tables.values().iterator();
+        while (iterator.hasNext()) {
+            TableState state = iterator.next();
+            if (false == state.accessed && state.entries.get() <= 0) {
+                iterator.remove();
+            }
+            state.accessed = false;
+        }
+        if (tables.isEmpty()) {
+            checking.set(false);
+            return;
+        }
+
+        String[] indexUUIDs = tables.keySet().toArray(new String[0]);
+        HavenaskTableVersionRequest request = new HavenaskTableVersionRequest(indexUUIDs, "data:true");
+        client.execute(HavenaskTableVersionAction.INSTANCE, request, ActionListener.wrap(response -> {
+            try {
+                onVersions(indexUUIDs, response);
+            } finally {
+                checking.set(false);
+            }
+        }, e -> {
+            logger.debug("failed to get havenask table versions", e);
+            try {
+                for (String indexUUID : indexUUIDs) {
+                    updateVersions(indexUUID, null);
+                }
+            } finally {
+                checking.set(false);
+            }
+        }));
+    }
+
+    private void onVersions(String[] indexUUIDs, HavenaskTableVersionResponse response) {
+        Map<String, Set<HavenaskTableVersionNodeResponse.ShardVersion>> versions = new HashMap<>();
+        for (HavenaskTableVersionNodeResponse nodeResponse : response.getNodes()) {
+            for (HavenaskTableVersionNodeResponse.ShardVersion shardVersion : nodeResponse.getShardVersions()) {
+                versions.computeIfAbsent(shardVersion.getIndexUUID(), k -> new HashSet<>()).add(shardVersion);
+            }
+        }
+        for (String indexUUID : indexUUIDs) {
+            // 有节点失败时无法确认表版本
+            updateVersions(indexUUID, response.hasFailures() ? null : versions.get(indexUUID));
+        }
+    }
+
+    private void updateVersions(String indexUUID, Set<HavenaskTableVersionNodeResponse.ShardVersion> versions) {
+        TableState state = tables.get(indexUUID);
+        if (state == null) {
+            return;
+        }
+        if (versions != null && versions.equals(state.versions)) {
+            return;
+        }
+        state.versions = versions;
+        state.generation++;
+        invalidate(indexUUID);
+    }
+
+    private void invalidate(String indexUUID) {
+        if (false == isEnabled()) {
+            return;
+        }
+        List<Key> keys = new ArrayList<>();
+        for (Key key : cache.keys()) {
+            if (key.indexUUID.equals(indexUUID)) {
+                keys.add(key);
+            }
+        }
+        keys.forEach(cache::invalidate);
+    }
+
+    @Override
+    public void clusterChanged(ClusterChangedEvent event) {
+        if (tables.isEmpty()) {
+            return;
+        }
+        for (Index index : event.indicesDeleted()) {
+            if (tables.remove(index.getUUID()) != null) {
+                invalidate(index.getUUID());
+            }
+        }
+    }
+
+    public RequestCacheStats stats() {
+        return new RequestCacheStats(isEnabled() ? cache.weight() : 0, evictions.count(), hits.count(), misses.count());
+    }
+
+    @Override
+    protected void doStart() {
+        if (isEnabled()) {
+            versionChecker = threadPool.scheduleWithFixedDelay(this::checkVersions, versionCheckInterval, ThreadPool.Names.SAME);
+        }
+    }
+
+    @Override
+    protected void doStop() {
+        if (versionChecker != null) {
+            versionChecker.cancel();
+        }
+    }
+
+    @Override
+    protected void doClose() {
+        tables.clear();
+        if (isEnabled()) {
+            cache.invalidateAll();
+        }
+    }
+
+    private static class TableState {
+        private final Index index;
+        private final AtomicLong entries = new AtomicLong();
+        // 第一次拉取成功之前为null, 此时不缓存
+        private volatile Set<HavenaskTableVersionNodeResponse.ShardVersion> versions;
+        private volatile long generation;
+        private volatile boolean accessed;
+
+        TableState(Index index) {
+            this.index = index;
+        }
+
+        boolean isReady() {
+            return versions != null && false == versions.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return index.toString();
+        }
+    }
+
+    static class Key implements Accountable {
+        private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Key.class);
+
+        private final String indexUUID;
+        private final long generation;
+        private final long mappingVersion;
+        private final BytesReference source;
+
+        Key(String indexUUID, long generation, long mappingVersion, BytesReference source) {
+            this.indexUUID = indexUUID;
+            this.generation = generation;
+            this.mappingVersion = mappingVersion;
+            this.source = source;
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(indexUUID) + source.length();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return generation == key.generation
+                && mappingVersion == key.mappingVersion
+                && indexUUID.equals(key.indexUUID)
+                && source.equals(key.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(indexUUID, generation, mappingVersion, source);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search.action;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Base64;
+
+import org.havenask.common.bytes.BytesArray;
+import org.havenask.common.bytes.BytesReference;
+import org.havenask.common.io.stream.BytesStreamOutput;
+import org.havenask.common.io.stream.StreamInput;
+
+/**
+ * 导出的进度, 记录每个slice最后导出的_id、_id上界, 以及该slice是否已经导出完成.
+ * _id上界只在slice数大于分区数时使用, 同一分区内的slice按导出开始时划分的_id区间拆分, 之后不再变化.
+ */
+public class HavenaskExportCursor {
+    private final String[] lastIds;
+    private final String[] endIds;
+    private final boolean[] finished;
+
+    private HavenaskExportCursor(String[] lastIds, String[] endIds, boolean[] finished) {
+        this.lastIds = lastIds;
+        this.endIds = endIds;
+        this.finished = finished;
+    }
+
+    public static HavenaskExportCursor start(int slices) {
+        return new HavenaskExportCursor(new String[slices], new String[slices], new boolean[slices]);
+    }
+
+    /**
+     * @param startIds 每个slice的_id下界(不包含), null表示不限
+     * @param endIds 每个slice的_id上界(包含), null表示不限
+     * @param empty 区间内没有doc的slice, 直接标记为导出完成
+     */
+    public static HavenaskExportCursor start(String[] startIds, String[] endIds, boolean[] empty) {
+        assert startIds.length == endIds.length && startIds.length == empty.length;
+        return new HavenaskExportCursor(startIds, endIds, empty);
+    }
+
+    public int getSlices() {
+        return lastIds.length;
+    }
+
+    public String getLastId(int slice) {
+        return lastIds[slice];
+    }
+
+    public String getEndId(int slice) {
+        return endIds[slice];
+    }
+
+    public boolean isFinished(int slice) {
+        return finished[slice];
+    }
+
+    /**
+     * @param lastId 本次导出的最后一个_id, 为null时表示该slice已经导出完成
+     */
+    public HavenaskExportCursor advance(int slice, String lastId) {
+        String[] newLastIds = Arrays.copyOf(lastIds, lastIds.length);
+        boolean[] newFinished = Arrays.copyOf(finished, finished.length);
+        if (lastId == null) {
+            newFinished[slice] = true;
+        } else {
+            newLastIds[slice] = lastId;
+        }
+        return new HavenaskExportCursor(newLastIds, endIds, newFinished);
+    }
+
+    public boolean isAllFinished() {
+        for (boolean sliceFinished : finished) {
+            if (false == sliceFinished) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String encode() {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.writeVInt(lastIds.length);
+            for (int i = 0; i < lastIds.length; i++) {
+                out.writeBoolean(finished[i]);
+                out.writeOptionalString(lastIds[i]);
+                out.writeOptionalString(endIds[i]);
+            }
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(BytesReference.toBytes(out.bytes()));
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to encode export cursor", e);
+        }
+    }
+
+    public static HavenaskExportCursor decode(String cursor) {
+        try (StreamInput in = new BytesArray(Base64.getUrlDecoder().decode(cursor)).streamInput()) {
+            int slices = in.readVInt();
+            if (slices <= 0 || slices > HavenaskExportRequest.MAX_SLICES) {
+                throw new IOException("illegal slices [" + slices + "]");
+            }
+            String[] lastIds = new String[slices];
+            String[] endIds = new String[slices];
+            boolean[] finished = new boolean[slices];
+            for (int i = 0; i < slices; i++) {
+                finished[i] = in.readBoolean();
+                lastIds[i] = in.readOptionalString();
+                endIds[i] = in.readOptionalString();
+            }
+            return new HavenaskExportCursor(lastIds, endIds, finished);
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("invalid export cursor [" + cursor + "]", e);
+        }
+    }
+}
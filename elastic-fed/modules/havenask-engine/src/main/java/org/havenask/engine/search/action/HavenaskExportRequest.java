@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search.action;
+
+import static org.havenask.action.ValidateActions.addValidationError;
+
+import java.io.IOException;
+import java.util.Objects;
+
+import org.havenask.action.ActionRequest;
+import org.havenask.action.ActionRequestValidationException;
+import org.havenask.action.CompositeIndicesRequest;
+import org.havenask.common.io.stream.StreamInput;
+import org.havenask.common.io.stream.StreamOutput;
+import org.havenask.search.builder.SearchSourceBuilder;
+
+/**
+ * 按分区并发导出havenask索引的全部数据, 每次请求返回一批数据和继续导出用的cursor
+ */
+public class HavenaskExportRequest extends ActionRequest implements CompositeIndicesRequest {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int MAX_BATCH_SIZE = 10000;
+    public static final int MAX_SLICES = 1024;
+
+    private final String index;
+    private SearchSourceBuilder source;
+    // 0表示按分区数切分
+    private int slices;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private String cursor;
+
+    public HavenaskExportRequest(String index) {
+        this.index = index;
+    }
+
+    public HavenaskExportRequest(StreamInput in) throws IOException {
+        super(in);
+        index = in.readString();
+        source = in.readOptionalWriteable(SearchSourceBuilder::new);
+        slices = in.readVInt();
+        batchSize = in.readVInt();
+        cursor = in.readOptionalString();
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public SearchSourceBuilder getSource() {
+        return source;
+    }
+
+    /**
+     * 只使用其中的query和_source过滤
+     */
+    public HavenaskExportRequest source(SearchSourceBuilder source) {
+        this.source = source;
+        return this;
+    }
+
+    public int getSlices() {
+        return slices;
+    }
+
+    public HavenaskExportRequest slices(int slices) {
+        this.slices = slices;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize 每个slice每次请求最多返回的文档数
+     */
+    public HavenaskExportRequest batchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public HavenaskExportRequest cursor(String cursor) {
+        this.cursor = cursor;
+        return this;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = null;
+        if (index == null) {
+            validationException = addValidationError("index is null", validationException);
+        }
+        if (slices < 0 || slices > MAX_SLICES) {
+            validationException = addValidationError("slices must be between 0 and " + MAX_SLICES, validationException);
+        }
+        if (batchSize < 1 || batchSize > MAX_BATCH_SIZE) {
+            validationException = addValidationError("size must be between 1 and " + MAX_BATCH_SIZE, validationException);
+        }
+        if (source != null && (source.aggregations() != null || source.sorts() != null || source.slice() != null)) {
+            validationException = addValidationError("export only supports query and _source", validationException);
+        }
+        return validationException;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(index);
+        out.writeOptionalWriteable(source);
+        out.writeVInt(slices);
+        out.writeVInt(batchSize);
+        out.writeOptionalString(cursor);
+    }
+
+    @Override
+    public String toString() {
+        return "HavenaskExportRequest{"
+            + "index='"
+            + index
+            + '\''
+            + ", slices="
+            + slices
+            + ", batchSize="
+            + batchSize
+            + ", cursor='"
+            + cursor
+            + '\''
+            + '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        HavenaskExportRequest that = (HavenaskExportRequest) o;
+        return slices == that.slices
+            && batchSize == that.batchSize
+            && Objects.equals(index, that.index)
+            && Objects.equals(source, that.source)
+            && Objects.equals(cursor, that.cursor);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(index, source, slices, batchSize, cursor);
+    }
+}
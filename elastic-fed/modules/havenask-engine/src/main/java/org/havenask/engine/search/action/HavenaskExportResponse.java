@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search.action;
+
+import java.io.IOException;
+
+import org.havenask.action.ActionResponse;
+import org.havenask.common.bytes.BytesReference;
+import org.havenask.common.io.stream.StreamInput;
+import org.havenask.common.io.stream.StreamOutput;
+
+public class HavenaskExportResponse extends ActionResponse {
+    // 每行一个文档的ndjson
+    private final BytesReference docs;
+    private final int docCount;
+    // 导出结束时为null
+    private final String cursor;
+
+    public HavenaskExportResponse(StreamInput in) throws IOException {
+        docs = in.readBytesReference();
+        docCount = in.readVInt();
+        cursor = in.readOptionalString();
+    }
+
+    public HavenaskExportResponse(BytesReference docs, int docCount, String cursor) {
+        this.docs = docs;
+        this.docCount = docCount;
+        this.cursor = cursor;
+    }
+
+    public BytesReference getDocs() {
+        return docs;
+    }
+
+    public int getDocCount() {
+        return docCount;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeBytesReference(docs);
+        out.writeVInt(docCount);
+        out.writeOptionalString(cursor);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search.action;
+
+import org.havenask.action.support.nodes.BaseNodeRequest;
+import org.havenask.common.io.stream.StreamInput;
+import org.havenask.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+
+public class HavenaskTableVersionNodeRequest extends BaseNodeRequest {
+    private final String[] indexUUIDs;
+
+    public HavenaskTableVersionNodeRequest(StreamInput in) throws IOException {
+        super(in);
+        indexUUIDs = in.readStringArray();
+    }
+
+    public HavenaskTableVersionNodeRequest(HavenaskTableVersionRequest request) {
+        this.indexUUIDs = request.getIndexUUIDs();
+    }
+
+    public String[] getIndexUUIDs() {
+        return indexUUIDs;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeStringArray(indexUUIDs);
+    }
+}
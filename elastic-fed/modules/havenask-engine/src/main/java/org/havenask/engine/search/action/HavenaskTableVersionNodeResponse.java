@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search.action;
+
+import org.havenask.action.support.nodes.BaseNodeResponse;
+import org.havenask.cluster.node.DiscoveryNode;
+import org.havenask.common.io.stream.StreamInput;
+import org.havenask.common.io.stream.StreamOutput;
+import org.havenask.common.io.stream.Writeable;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+
+public class HavenaskTableVersionNodeResponse extends BaseNodeResponse {
+    private final List<ShardVersion> shardVersions;
+
+    public HavenaskTableVersionNodeResponse(StreamInput in) throws IOException {
+        super(in);
+        shardVersions = in.readList(ShardVersion::new);
+    }
+
+    public HavenaskTableVersionNodeResponse(DiscoveryNode node, List<ShardVersion> shardVersions) {
+        super(node);
+        this.shardVersions = shardVersions;
+    }
+
+    public List<ShardVersion> getShardVersions() {
+        return shardVersions;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeList(shardVersions);
+    }
+
+    /**
+     * 单个shard在该节点上的commit version、commit checkpoint和processed checkpoint.
+     * 实时写入只推进processed checkpoint, 需要一起比较才能发现实时写入带来的变化
+     */
+    public static class ShardVersion implements Writeable {
+        private final String indexUUID;
+        private final String nodeId;
+        private final int shardId;
+        private final long commitVersion;
+        private final long commitCheckpoint;
+        private final long processedCheckpoint;
+
+        public ShardVersion(
+            String indexUUID,
+            String nodeId,
+            int shardId,
+            long commitVersion,
+            long commitCheckpoint,
+            long processedCheckpoint
+        ) {
+            this.indexUUID = indexUUID;
+            this.nodeId = nodeId;
+            this.shardId = shardId;
+            this.commitVersion = commitVersion;
+            this.commitCheckpoint = commitCheckpoint;
+            this.processedCheckpoint = processedCheckpoint;
+        }
+
+        public ShardVersion(StreamInput in) throws IOException {
+            indexUUID = in.readString();
+            nodeId = in.readString();
+            shardId = in.readVInt();
+            commitVersion = in.readZLong();
+            commitCheckpoint = in.readZLong();
+            processedCheckpoint = in.readZLong();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeString(indexUUID);
+            out.writeString(nodeId);
+            out.writeVInt(shardId);
+            out.writeZLong(commitVersion);
+            out.writeZLong(commitCheckpoint);
+            out.writeZLong(processedCheckpoint);
+        }
+
+        public String getIndexUUID() {
+            return indexUUID;
+        }
+
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        public int getShardId() {
+            return shardId;
+        }
+
+        public long getCommitVersion() {
+            return commitVersion;
+        }
+
+        public long getCommitCheckpoint() {
+            return commitCheckpoint;
+        }
+
+        public long getProcessedCheckpoint() {
+            return processedCheckpoint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ShardVersion that = (ShardVersion) o;
+            return shardId == that.shardId
+                && commitVersion == that.commitVersion
+                && commitCheckpoint == that.commitCheckpoint
+                && processedCheckpoint == that.processedCheckpoint
+                && indexUUID.equals(that.indexUUID)
+                && nodeId.equals(that.nodeId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(indexUUID, nodeId, shardId, commitVersion, commitCheckpoint, processedCheckpoint);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search.action;
+
+import org.havenask.action.FailedNodeException;
+import org.havenask.action.support.nodes.BaseNodesResponse;
+import org.havenask.cluster.ClusterName;
+import org.havenask.common.io.stream.StreamInput;
+import org.havenask.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.List;
+
+public class HavenaskTableVersionResponse extends BaseNodesResponse<HavenaskTableVersionNodeResponse> {
+
+    public HavenaskTableVersionResponse(StreamInput in) throws IOException {
+        super(in);
+    }
+
+    public HavenaskTableVersionResponse(
+        ClusterName clusterName,
+        List<HavenaskTableVersionNodeResponse> nodes,
+        List<FailedNodeException> failures
+    ) {
+        super(clusterName, nodes, failures);
+    }
+
+    @Override
+    protected List<HavenaskTableVersionNodeResponse> readNodesFrom(StreamInput in) throws IOException {
+        return in.readList(HavenaskTableVersionNodeResponse::new);
+    }
+
+    @Override
+    protected void writeNodesTo(StreamOutput out, List<HavenaskTableVersionNodeResponse> nodes) throws IOException {
+        out.writeList(nodes);
+    }
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search.action;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.havenask.action.ActionListener;
+import org.havenask.action.StepListener;
+import org.havenask.action.ingest.IngestActionForwarder;
+import org.havenask.action.search.SearchRequest;
+import org.havenask.action.search.SearchResponse;
+import org.havenask.action.support.ActionFilters;
+import org.havenask.action.support.GroupedActionListener;
+import org.havenask.action.support.HandledTransportAction;
+import org.havenask.cluster.metadata.IndexMetadata;
+import org.havenask.cluster.service.ClusterService;
+import org.havenask.common.bytes.BytesArray;
+import org.havenask.common.collect.Tuple;
+import org.havenask.common.document.DocumentField;
+import org.havenask.common.inject.Inject;
+import org.havenask.common.io.Streams;
+import org.havenask.common.io.stream.BytesStreamOutput;
+import org.havenask.common.settings.Setting;
+import org.havenask.common.unit.ByteSizeUnit;
+import org.havenask.common.unit.ByteSizeValue;
+import org.havenask.common.unit.TimeValue;
+import org.havenask.common.xcontent.NamedXContentRegistry;
+import org.havenask.common.xcontent.XContentBuilder;
+import org.havenask.common.xcontent.XContentType;
+import org.havenask.common.xcontent.json.JsonXContent;
+import org.havenask.engine.NativeProcessControlService;
+import org.havenask.engine.rpc.ColumnarSqlResponse;
+import org.havenask.engine.rpc.QrsClient;
+import org.havenask.engine.rpc.QrsSqlRequest;
+import org.havenask.engine.rpc.http.QrsHttpClient;
+import org.havenask.engine.search.dsl.DSLPlanCache;
+import org.havenask.engine.search.dsl.DSLSession;
+import org.havenask.engine.search.internal.HavenaskScroll;
+import org.havenask.index.mapper.RoutingFieldMapper;
+import org.havenask.search.SearchHit;
+import org.havenask.search.builder.SearchSourceBuilder;
+import org.havenask.search.slice.SliceBuilder;
+import org.havenask.tasks.Task;
+import org.havenask.threadpool.ThreadPool;
+import org.havenask.transport.TransportService;
+
+import static org.havenask.engine.search.rest.RestHavenaskSqlAction.SQL_DATABASE;
+
+/**
+ * 按slice并发执行havenask sql导出数据, 每个slice对应一个或多个分区. slice数大于分区数时, 导出开始时按_id的分位点
+ * 把每个分区切成连续的_id区间, 区间记录在cursor中不再变化, 因此doc更新后不会在slice之间移动.
+ *
+ * 每个slice按_id翻页, 结果按slice顺序拼接为ndjson. 拼接结果超过max_response_size时提前返回,
+ * 剩余的doc通过cursor在下一次请求中继续导出.
+ */
+public class TransportHavenaskExportAction extends HandledTransportAction<HavenaskExportRequest, HavenaskExportResponse> {
+    private static final Logger logger = LogManager.getLogger(TransportHavenaskExportAction.class);
+
+    // 单次导出返回的ndjson大小上限, 至少返回一个doc
+    public static final Setting<ByteSizeValue> HAVENASK_EXPORT_MAX_RESPONSE_SIZE = Setting.byteSizeSetting(
+        "havenask.export.max_response_size",
+        new ByteSizeValue(64, ByteSizeUnit.MB),
+        new ByteSizeValue(1, ByteSizeUnit.BYTES),
+        new ByteSizeValue(Integer.MAX_VALUE, ByteSizeUnit.BYTES),
+        Setting.Property.NodeScope,
+        Setting.Property.Dynamic
+    );
+
+    private final ClusterService clusterService;
+    private final ThreadPool threadPool;
+    private final NamedXContentRegistry namedXContentRegistry;
+    private final IngestActionForwarder ingestForwarder;
+    private final QrsClient qrsClient;
+    private final DSLPlanCache dslPlanCache;
+
+    @Inject
+    public TransportHavenaskExportAction(
+        ClusterService clusterService,
+        TransportService transportService,
+        ThreadPool threadPool,
+        NamedXContentRegistry namedXContentRegistry,
+        NativeProcessControlService nativeProcessControlService,
+        ActionFilters actionFilters,
+        DSLPlanCache dslPlanCache
+    ) {
+        super(HavenaskExportAction.NAME, transportService, actionFilters, HavenaskExportRequest::new, ThreadPool.Names.SEARCH);
+        this.clusterService = clusterService;
+        this.threadPool = threadPool;
+        this.namedXContentRegistry = namedXContentRegistry;
+        this.ingestForwarder = new IngestActionForwarder(transportService);
+        clusterService.addStateApplier(this.ingestForwarder);
+        this.qrsClient = new QrsHttpClient(nativeProcessControlService.getQrsHttpPort());
+        this.dslPlanCache = dslPlanCache;
+    }
+
+    @Override
+    protected void doExecute(Task task, HavenaskExportRequest request, ActionListener<HavenaskExportResponse> listener) {
+        if (false == clusterService.localNode().isIngestNode()) {
+            ingestForwarder.forwardIngestRequest(HavenaskExportAction.INSTANCE, request, listener);
+            return;
+        }
+
+        try {
+            List<IndexMetadata> indices = TransportHavenaskSearchAction.resolveHavenaskIndices(
+                clusterService.state().metadata(),
+                new String[] { request.getIndex() }
+            );
+            if (indices == null || indices.size() != 1) {
+                throw new IllegalArgumentException("export only supports a single havenask index, index: " + request.getIndex());
+            }
+            IndexMetadata indexMetadata = indices.get(0);
+
+            HavenaskExportCursor cursor;
+            if (request.getCursor() != null) {
+                cursor = HavenaskExportCursor.decode(request.getCursor());
+                if (request.getSlices() > 0 && request.getSlices() != cursor.getSlices()) {
+                    throw new IllegalArgumentException("slices [" + request.getSlices() + "] does not match the cursor");
+                }
+            } else {
+                int slices = request.getSlices() > 0 ? request.getSlices() : indexMetadata.getNumberOfShards();
+                if (slices > indexMetadata.getNumberOfShards()) {
+                    splitPartitions(indexMetadata, slices, ActionListener.wrap(splitCursor -> {
+                        executeSlices(indexMetadata, request, splitCursor, listener);
+                    }, listener::onFailure));
+                    return;
+                }
+                cursor = HavenaskExportCursor.start(slices);
+            }
+            executeSlices(indexMetadata, request, cursor, listener);
+        } catch (Exception e) {
+            logger.info("Failed to execute havenask export, ", e);
+            listener.onFailure(e);
+        }
+    }
+
+    /**
+     * @return 落在该分区上的slice个数, slice i查询分区i % shards, 是其中的第i / shards个子区间
+     */
+    static int subSliceCount(int slices, int shards, int partition) {
+        return (slices - partition + shards - 1) / shards;
+    }
+
+    private void splitPartitions(IndexMetadata indexMetadata, int slices, ActionListener<HavenaskExportCursor> listener) {
+        int shards = indexMetadata.getNumberOfShards();
+        GroupedActionListener<Tuple<Integer, PartitionSplit>> groupedListener = new GroupedActionListener<>(
+            ActionListener.map(listener, results -> {
+                PartitionSplit[] splits = new PartitionSplit[shards];
+                for (Tuple<Integer, PartitionSplit> result : results) {
+                    splits[result.v1()] = result.v2();
+                }
+                return buildSplitCursor(slices, splits);
+            }),
+            shards
+        );
+        for (int partition = 0; partition < shards; partition++) {
+            int p = partition;
+            splitPartition(
+                indexMetadata.getIndex().getName(),
+                p,
+                subSliceCount(slices, shards, p),
+                ActionListener.map(groupedListener, split -> new Tuple<>(p, split))
+            );
+        }
+    }
+
+    /**
+     * 先查询分区的doc数, 再按_id排序取各个分位点上的_id作为区间边界
+     */
+    private void splitPartition(String table, int partition, int subSlices, ActionListener<PartitionSplit> listener) {
+        if (subSlices <= 1) {
+            listener.onResponse(new PartitionSplit(0, new String[] { null, null }));
+            return;
+        }
+        StepListener<ColumnarSqlResponse> countStep = new StepListener<>();
+        executeSql(countSql(table, partition), countStep);
+        countStep.whenComplete(countResponse -> {
+            long count = ((Number) countResponse.getColumn(0).get(0)).longValue();
+            // bounds[j]为第j - 1个子区间的上界(包含), 也是第j个子区间的下界(不包含)
+            String[] bounds = new String[subSlices + 1];
+            List<Integer> boundIndices = new ArrayList<>();
+            for (int j = 1; j < subSlices; j++) {
+                if (count * j / subSlices > 0) {
+                    boundIndices.add(j);
+                }
+            }
+            if (boundIndices.isEmpty()) {
+                listener.onResponse(new PartitionSplit(count, bounds));
+                return;
+            }
+            GroupedActionListener<Tuple<Integer, String>> boundsListener = new GroupedActionListener<>(
+                ActionListener.map(listener, results -> {
+                    for (Tuple<Integer, String> result : results) {
+                        bounds[result.v1()] = result.v2();
+                    }
+                    return new PartitionSplit(count, bounds);
+                }),
+                boundIndices.size()
+            );
+            for (int j : boundIndices) {
+                String sql = boundSql(table, partition, count * j / subSlices - 1);
+                executeSql(sql, ActionListener.map(boundsListener, response -> {
+                    if (response.getRowCount() == 0) {
+                        throw new IllegalStateException("partition [" + partition + "] of [" + table + "] changed while splitting");
+                    }
+                    return new Tuple<>(j, (String) response.getColumn(0).get(0));
+                }));
+            }
+        }, listener::onFailure);
+    }
+
+    static String countSql(String table, int partition) {
+        return String.format(Locale.ROOT, "SELECT /*+ SCAN_ATTR(partitionIds='%d')*/ COUNT(*) FROM `%s`", partition, table);
+    }
+
+    static String boundSql(String table, int partition, long offset) {
+        return String.format(
+            Locale.ROOT,
+            "SELECT /*+ SCAN_ATTR(partitionIds='%d')*/ `_id` FROM `%s` %s LIMIT 1 OFFSET %d",
+            partition,
+            table,
+            HavenaskScroll.SCROLL_ORDER_BY,
+            offset
+        );
+    }
+
+    static HavenaskExportCursor buildSplitCursor(int slices, PartitionSplit[] splits) {
+        int shards = splits.length;
+        String[] startIds = new String[slices];
+        String[] endIds = new String[slices];
+        boolean[] empty = new boolean[slices];
+        for (int slice = 0; slice < slices; slice++) {
+            PartitionSplit split = splits[slice % shards];
+            int subSlice = slice / shards;
+            startIds[slice] = split.bounds[subSlice];
+            endIds[slice] = split.bounds[subSlice + 1];
+            empty[slice] = split.isEmpty(subSlice);
+        }
+        return HavenaskExportCursor.start(startIds, endIds, empty);
+    }
+
+    private void executeSql(String sql, ActionListener<ColumnarSqlResponse> listener) {
+        String kvpair = "format:full_json;timeout:10000;databaseName:" + SQL_DATABASE;
+        qrsClient.executeSqlColumnar(
+            new QrsSqlRequest(sql, kvpair),
+            threadPool.executor(ThreadPool.Names.SEARCH),
+            ActionListener.map(listener, response -> {
+                if (response.getErrorCode() != 0) {
+                    throw new IllegalStateException(
+                        "execute sql failed, sql: " + sql + ", error: " + response.getError() + ", message: " + response.getMessage()
+                    );
+                }
+                return response;
+            })
+        );
+    }
+
+    private void executeSlices(
+        IndexMetadata indexMetadata,
+        HavenaskExportRequest request,
+        HavenaskExportCursor cursor,
+        ActionListener<HavenaskExportResponse> listener
+    ) {
+        List<Integer> slices = new ArrayList<>();
+        for (int slice = 0; slice < cursor.getSlices(); slice++) {
+            if (false == cursor.isFinished(slice)) {
+                slices.add(slice);
+            }
+        }
+        if (slices.isEmpty()) {
+            listener.onResponse(new HavenaskExportResponse(BytesArray.EMPTY, 0, null));
+            return;
+        }
+
+        GroupedActionListener<Tuple<Integer, SearchResponse>> groupedListener = new GroupedActionListener<>(
+            ActionListener.map(
+                listener,
+                results -> buildResponse(
+                    indexMetadata.getIndex().getName(),
+                    request,
+                    cursor,
+                    results,
+                    clusterService.getClusterSettings().get(HAVENASK_EXPORT_MAX_RESPONSE_SIZE).getBytes()
+                )
+            ),
+            slices.size()
+        );
+        for (int slice : slices) {
+            DSLSession session = createSession(indexMetadata, request, cursor, slice);
+            session.execute(ActionListener.map(groupedListener, response -> new Tuple<>(slice, response)));
+        }
+    }
+
+    private DSLSession createSession(IndexMetadata indexMetadata, HavenaskExportRequest request, HavenaskExportCursor cursor, int slice) {
+        SearchSourceBuilder source = new SearchSourceBuilder().size(request.getBatchSize());
+        if (request.getSource() != null) {
+            source.query(request.getSource().query());
+            source.fetchSource(request.getSource().fetchSource());
+        }
+        int shards = indexMetadata.getNumberOfShards();
+        if (cursor.getSlices() > shards) {
+            // 每个slice只查一个分区, 分区内按cursor中的_id区间拆分
+            if (shards > 1) {
+                source.slice(new SliceBuilder(slice % shards, shards));
+            }
+        } else if (cursor.getSlices() > 1) {
+            source.slice(new SliceBuilder(slice, cursor.getSlices()));
+        }
+        // 借用scroll的按_id翻页, 不创建scroll context
+        SearchRequest searchRequest = new SearchRequest(new String[] { indexMetadata.getIndex().getName() }, source).scroll(
+            TimeValue.timeValueMinutes(1)
+        );
+        DSLSession session = new DSLSession(
+            qrsClient,
+            threadPool,
+            indexMetadata,
+            searchRequest,
+            clusterService.localNode().getId(),
+            namedXContentRegistry,
+            clusterService.getClusterSettings().get(TransportHavenaskSearchAction.HAVENASK_SEARCH_SINGLE_PHASE_MAX_SIZE),
+            dslPlanCache.getIndexPlan(indexMetadata)
+        );
+        session.getHavenaskScroll().setLastEmittedDocId(cursor.getLastId(slice));
+        session.getHavenaskScroll().setEndDocId(cursor.getEndId(slice));
+        return session;
+    }
+
+    static HavenaskExportResponse buildResponse(
+        String index,
+        HavenaskExportRequest request,
+        HavenaskExportCursor cursor,
+        Collection<Tuple<Integer, SearchResponse>> results,
+        long maxResponseBytes
+    ) throws IOException {
+        SearchResponse[] responses = new SearchResponse[cursor.getSlices()];
+        for (Tuple<Integer, SearchResponse> result : results) {
+            responses[result.v1()] = result.v2();
+        }
+
+        HavenaskExportCursor nextCursor = cursor;
+        int docCount = 0;
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            for (int slice = 0; slice < responses.length; slice++) {
+                if (responses[slice] == null) {
+                    continue;
+                }
+                SearchHit[] hits = responses[slice].getHits().getHits();
+                int written = 0;
+                while (written < hits.length && out.size() < maxResponseBytes) {
+                    writeDoc(index, hits[written++], out);
+                }
+                docCount += written;
+                String lastId;
+                if (written < hits.length) {
+                    // 超过大小上限, 从最后写出的doc继续; 后面的slice保持原来的cursor, 下次重新查询
+                    lastId = hits[written - 1].getId();
+                } else {
+                    // 不足一批说明该slice已经导出完成
+                    lastId = hits.length < request.getBatchSize() ? null : hits[hits.length - 1].getId();
+                }
+                nextCursor = nextCursor.advance(slice, lastId);
+                if (out.size() >= maxResponseBytes) {
+                    break;
+                }
+            }
+            return new HavenaskExportResponse(out.bytes(), docCount, nextCursor.isAllFinished() ? null : nextCursor.encode());
+        }
+    }
+
+    private static void writeDoc(String index, SearchHit hit, BytesStreamOutput out) throws IOException {
+        try (XContentBuilder builder = new XContentBuilder(JsonXContent.jsonXContent, Streams.flushOnCloseStream(out))) {
+            builder.startObject();
+            builder.field("_index", index);
+            builder.field("_id", hit.getId());
+            DocumentField routing = hit.field(RoutingFieldMapper.NAME);
+            if (routing != null) {
+                builder.field(RoutingFieldMapper.NAME, routing.getValue().toString());
+            }
+            if (hit.getSourceRef() != null) {
+                builder.rawField("_source", hit.getSourceRef().streamInput(), XContentType.JSON);
+            }
+            builder.endObject();
+        }
+        out.writeByte((byte) '\n');
+    }
+
+    /**
+     * 一个分区按_id拆分的结果, bounds[j]和bounds[j + 1]为第j个子区间的下界和上界, null表示不限
+     */
+    static final class PartitionSplit {
+        private final long count;
+        private final String[] bounds;
+
+        PartitionSplit(long count, String[] bounds) {
+            this.count = count;
+            this.bounds = bounds;
+        }
+
+        /**
+         * 导出开始时区间内没有doc; 最后一个子区间没有上界, 总是需要查询
+         */
+        boolean isEmpty(int subSlice) {
+            int subSlices = bounds.length - 1;
+            return subSlice < subSlices - 1 && count * (subSlice + 1) / subSlices == count * subSlice / subSlices;
+        }
+    }
+}
@@ -29,28 +29,49 @@ import org.havenask.cluster.metadata.IndexMetadata;
 import org.havenask.cluster.metadata.Metadata;
 import org.havenask.cluster.service.ClusterService;
 import org.havenask.common.inject.Inject;
+import org.havenask.common.regex.Regex;
+import org.havenask.common.settings.Setting;
 import org.havenask.common.xcontent.NamedXContentRegistry;
 import org.havenask.engine.HavenaskScrollService;
 import org.havenask.engine.NativeProcessControlService;
 import org.havenask.engine.rpc.QrsClient;
 import org.havenask.engine.rpc.http.QrsHttpClient;
+import org.havenask.engine.search.HavenaskSearchRequestCache;
+import org.havenask.engine.search.dsl.DSLPlanCache;
 import org.havenask.engine.search.dsl.DSLSession;
+import org.havenask.engine.search.dsl.plan.MultiTableExec;
 import org.havenask.engine.search.internal.HavenaskScrollContext;
 import org.havenask.index.shard.IndexShard;
 import org.havenask.tasks.Task;
 import org.havenask.threadpool.ThreadPool;
 import org.havenask.transport.TransportService;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
 
 public class TransportHavenaskSearchAction extends HandledTransportAction<SearchRequest, SearchResponse> {
     private static final Logger logger = LogManager.getLogger(TransportHavenaskSearchAction.class);
+
+    // size不超过该值时query和fetch合并为一次qrs请求, 0表示始终走两阶段
+    public static final Setting<Integer> HAVENASK_SEARCH_SINGLE_PHASE_MAX_SIZE = Setting.intSetting(
+        "havenask.search.single_phase.max_size",
+        100,
+        0,
+        Setting.Property.NodeScope,
+        Setting.Property.Dynamic
+    );
+
     private final ClusterService clusterService;
     private final IngestActionForwarder ingestForwarder;
     private final QrsClient qrsClient;
     private final HavenaskScrollService havenaskScrollService;
     private final NamedXContentRegistry namedXContentRegistry;
+    private final DSLPlanCache dslPlanCache;
+    private final HavenaskSearchRequestCache requestCache;
 
     @Inject
     public TransportHavenaskSearchAction(
@@ -59,7 +80,9 @@ public class TransportHavenaskSearchAction extends HandledTransportAction<Search
         NamedXContentRegistry namedXContentRegistry,
         NativeProcessControlService nativeProcessControlService,
         ActionFilters actionFilters,
-        HavenaskScrollService havenaskScrollService
+        HavenaskScrollService havenaskScrollService,
+        DSLPlanCache dslPlanCache,
+        HavenaskSearchRequestCache requestCache
     ) {
         super(HavenaskSearchAction.NAME, transportService, actionFilters, SearchRequest::new, ThreadPool.Names.SEARCH);
         this.clusterService = clusterService;
@@ -68,6 +91,8 @@ public class TransportHavenaskSearchAction extends HandledTransportAction<Search
         clusterService.addStateApplier(this.ingestForwarder);
         this.qrsClient = new QrsHttpClient(nativeProcessControlService.getQrsHttpPort());
         this.havenaskScrollService = havenaskScrollService;
+        this.dslPlanCache = dslPlanCache;
+        this.requestCache = requestCache;
 
         TransportSearchAction.transportSearchExecutor = (
             action,
@@ -84,7 +109,9 @@ public class TransportHavenaskSearchAction extends HandledTransportAction<Search
                 namedXContentRegistry,
                 ingestForwarder,
                 qrsClient,
-                havenaskScrollService
+                havenaskScrollService,
+                dslPlanCache,
+                requestCache
             );
     }
 
@@ -98,7 +125,9 @@ public class TransportHavenaskSearchAction extends HandledTransportAction<Search
             namedXContentRegistry,
             ingestForwarder,
             qrsClient,
-            havenaskScrollService
+            havenaskScrollService,
+            dslPlanCache,
+            requestCache
         );
     }
 
@@ -112,7 +141,9 @@ public class TransportHavenaskSearchAction extends HandledTransportAction<Search
         NamedXContentRegistry namedXContentRegistry,
         IngestActionForwarder ingestForwarder,
         QrsClient qrsClient,
-        HavenaskScrollService havenaskScrollService
+        HavenaskScrollService havenaskScrollService,
+        DSLPlanCache dslPlanCache,
+        HavenaskSearchRequestCache requestCache
     ) {
         if (isSearchHavenask(clusterService.state().metadata(), searchRequest)) {
             executeHavenaskSearch(
@@ -123,7 +154,9 @@ public class TransportHavenaskSearchAction extends HandledTransportAction<Search
                 namedXContentRegistry,
                 ingestForwarder,
                 qrsClient,
-                havenaskScrollService
+                havenaskScrollService,
+                dslPlanCache,
+                requestCache
             );
         } else {
             action.executeRequest(task, searchRequest, searchAsyncActionProvider, listener);
@@ -138,7 +171,9 @@ public class TransportHavenaskSearchAction extends HandledTransportAction<Search
         NamedXContentRegistry namedXContentRegistry,
         IngestActionForwarder ingestForwarder,
         QrsClient qrsClient,
-        HavenaskScrollService havenaskScrollService
+        HavenaskScrollService havenaskScrollService,
+        DSLPlanCache dslPlanCache,
+        HavenaskSearchRequestCache requestCache
     ) {
         if (false == clusterService.localNode().isIngestNode()) {
             ingestForwarder.forwardIngestRequest(HavenaskSearchAction.INSTANCE, request, listener);
@@ -146,84 +181,190 @@ public class TransportHavenaskSearchAction extends HandledTransportAction<Search
         }
 
         try {
-            String tableName = request.indices()[0];
             ClusterState clusterState = clusterService.state();
-            IndexAbstraction indexAbstraction = clusterState.metadata().getIndicesLookup().get(tableName);
-            if (indexAbstraction == null) {
-                throw new IllegalArgumentException("illegal index name! index name not exist.");
+            List<IndexMetadata> indices = resolveHavenaskIndices(clusterState.metadata(), request.indices());
+            if (indices == null || indices.isEmpty()) {
+                throw new IllegalArgumentException("illegal index name! index name not exist or not all indices are havenask indices.");
             }
 
-            IndexMetadata indexMetadata = indexAbstraction.getWriteIndex();
-            DSLSession session = new DSLSession(
-                qrsClient,
+            if (indices.size() > 1) {
+                if (false == MultiTableExec.supports(request)) {
+                    throw new IllegalArgumentException(
+                        "havenask search over multiple indices only supports _score sort without scroll and avg aggregation"
+                    );
+                }
+                executeMultiTableSearch(
+                    indices,
+                    request,
+                    listener,
+                    clusterService,
+                    namedXContentRegistry,
+                    qrsClient,
+                    havenaskScrollService,
+                    dslPlanCache,
+                    requestCache
+                );
+                return;
+            }
+
+            IndexMetadata indexMetadata = indices.get(0);
+            DSLSession session = createSession(
                 indexMetadata,
                 request,
-                clusterService.localNode().getId(),
-                namedXContentRegistry
+                clusterService,
+                namedXContentRegistry,
+                qrsClient,
+                havenaskScrollService,
+                dslPlanCache
             );
-            SearchResponse searchResponse = session.execute();
-
-            if (Objects.nonNull(request.scroll())) {
-                HavenaskScrollContext havenaskScrollContext = new HavenaskScrollContext(
-                    havenaskScrollService.getThreadPool(),
-                    session,
-                    request.scroll().keepAlive().getMillis()
-                );
-                havenaskScrollService.putScrollContext(havenaskScrollContext);
-            }
+            requestCache.execute(indexMetadata, request, session::execute, ActionListener.wrap(searchResponse -> {
+                if (Objects.nonNull(request.scroll())) {
+                    HavenaskScrollContext havenaskScrollContext = new HavenaskScrollContext(
+                        havenaskScrollService.getThreadPool(),
+                        session,
+                        request.scroll().keepAlive().getMillis(),
+                        havenaskScrollService.getPrefetchMemory()
+                    );
+                    havenaskScrollService.putScrollContext(havenaskScrollContext);
+                    havenaskScrollContext.prefetchIfNotExhausted(searchResponse);
+                }
 
-            listener.onResponse(searchResponse);
+                listener.onResponse(searchResponse);
+            }, e -> {
+                logger.info("Failed to execute havenask search, ", e);
+                listener.onFailure(e);
+            }));
         } catch (Exception e) {
             logger.info("Failed to execute havenask search, ", e);
             listener.onFailure(e);
         }
     }
 
-    public static boolean isSearchHavenask(Metadata metadata, SearchRequest searchRequest) {
-        // TODO: 目前的逻辑只有单havenask索引的查询会走到这里，后续如果有多索引的查询，这里需要做相应的修改
-        if (searchRequest.indices().length != 1) {
-            // 大于一个索引
-            return false;
+    /**
+     * 每个havenask表单独执行一次dsl查询, 在协调节点合并top-k和聚合结果
+     */
+    private static void executeMultiTableSearch(
+        List<IndexMetadata> indices,
+        SearchRequest request,
+        ActionListener<SearchResponse> listener,
+        ClusterService clusterService,
+        NamedXContentRegistry namedXContentRegistry,
+        QrsClient qrsClient,
+        HavenaskScrollService havenaskScrollService,
+        DSLPlanCache dslPlanCache,
+        HavenaskSearchRequestCache requestCache
+    ) {
+        MultiTableExec multiTableExec = new MultiTableExec(request.source());
+        List<Consumer<ActionListener<SearchResponse>>> tableSearches = new ArrayList<>(indices.size());
+        for (IndexMetadata indexMetadata : indices) {
+            SearchRequest tableRequest = new SearchRequest(
+                new String[] { indexMetadata.getIndex().getName() },
+                multiTableExec.buildTableSource()
+            ).requestCache(request.requestCache());
+            DSLSession session = createSession(
+                indexMetadata,
+                tableRequest,
+                clusterService,
+                namedXContentRegistry,
+                qrsClient,
+                havenaskScrollService,
+                dslPlanCache
+            );
+            tableSearches.add(tableListener -> requestCache.execute(indexMetadata, tableRequest, session::execute, tableListener));
         }
+        multiTableExec.execute(tableSearches, ActionListener.wrap(listener::onResponse, e -> {
+            logger.info("Failed to execute havenask multi table search, ", e);
+            listener.onFailure(e);
+        }));
+    }
+
+    private static DSLSession createSession(
+        IndexMetadata indexMetadata,
+        SearchRequest request,
+        ClusterService clusterService,
+        NamedXContentRegistry namedXContentRegistry,
+        QrsClient qrsClient,
+        HavenaskScrollService havenaskScrollService,
+        DSLPlanCache dslPlanCache
+    ) {
+        return new DSLSession(
+            qrsClient,
+            havenaskScrollService.getThreadPool(),
+            indexMetadata,
+            request,
+            clusterService.localNode().getId(),
+            namedXContentRegistry,
+            clusterService.getClusterSettings().get(HAVENASK_SEARCH_SINGLE_PHASE_MAX_SIZE),
+            dslPlanCache.getIndexPlan(indexMetadata)
+        );
+    }
 
-        String index = searchRequest.indices()[0];
-        if (index.contains("*")) {
-            // 包含通配符
+    public static boolean isSearchHavenask(Metadata metadata, SearchRequest searchRequest) {
+        List<IndexMetadata> indices = resolveHavenaskIndices(metadata, searchRequest.indices());
+        if (indices == null || indices.isEmpty()) {
+            // 未找到索引或包含非havenask索引
             return false;
         }
+        // 多表查询在协调节点合并结果, 不支持的查询仍走shard级别的查询
+        return indices.size() == 1 || MultiTableExec.supports(searchRequest);
+    }
 
-        IndexAbstraction indexAbstraction = metadata.getIndicesLookup().get(index);
-        if (indexAbstraction == null) {
-            // 未找到索引
-            return false;
+    /**
+     * 解析索引名, 通配符和别名展开为具体的索引, 去重后保持请求中的顺序.
+     *
+     * @return 所有索引都是havenask索引时返回对应的IndexMetadata, 否则返回null
+     */
+    static List<IndexMetadata> resolveHavenaskIndices(Metadata metadata, String[] expressions) {
+        if (expressions == null || expressions.length == 0) {
+            return null;
         }
 
-        if (indexAbstraction instanceof IndexAbstraction.Index) {
-            IndexMetadata indexMetadata = indexAbstraction.getWriteIndex();
-            if (IndexShard.isHavenaskIndex(indexMetadata.getSettings())) {
-                // havenask索引
-                return true;
-            } else {
-                // 非havenask索引
-                return false;
+        Map<String, IndexMetadata> indices = new LinkedHashMap<>();
+        for (String expression : expressions) {
+            if (expression.startsWith("-") || Metadata.ALL.equals(expression)) {
+                // 排除和_all交给shard级别的查询处理
+                return null;
             }
-        } else if (indexAbstraction instanceof IndexAbstraction.Alias) {
-            List<IndexMetadata> indices = indexAbstraction.getIndices();
-            if (indices.size() > 1) {
-                // 别名关联的索引大于1
-                return false;
+
+            if (Regex.isSimpleMatchPattern(expression)) {
+                for (Map.Entry<String, IndexAbstraction> entry : metadata.getIndicesLookup().entrySet()) {
+                    if (false == Regex.simpleMatch(expression, entry.getKey())) {
+                        continue;
+                    }
+                    for (IndexMetadata indexMetadata : entry.getValue().getIndices()) {
+                        // 通配符只匹配open且非hidden的索引
+                        if (indexMetadata.getState() == IndexMetadata.State.OPEN
+                            && false == IndexMetadata.INDEX_HIDDEN_SETTING.get(indexMetadata.getSettings())) {
+                            indices.putIfAbsent(indexMetadata.getIndexUUID(), indexMetadata);
+                        }
+                    }
+                }
+                continue;
             }
 
-            IndexMetadata indexMetadata = indexAbstraction.getWriteIndex();
-            if (IndexShard.isHavenaskIndex(indexMetadata.getSettings())) {
-                // havenask索引
-                return true;
+            IndexAbstraction indexAbstraction = metadata.getIndicesLookup().get(expression);
+            if (indexAbstraction == null) {
+                // 未找到索引
+                return null;
+            }
+            if (indexAbstraction instanceof IndexAbstraction.Index) {
+                IndexMetadata indexMetadata = indexAbstraction.getWriteIndex();
+                indices.putIfAbsent(indexMetadata.getIndexUUID(), indexMetadata);
+            } else if (indexAbstraction instanceof IndexAbstraction.Alias) {
+                for (IndexMetadata indexMetadata : indexAbstraction.getIndices()) {
+                    indices.putIfAbsent(indexMetadata.getIndexUUID(), indexMetadata);
+                }
             } else {
+                return null;
+            }
+        }
+
+        for (IndexMetadata indexMetadata : indices.values()) {
+            if (indexMetadata.getState() != IndexMetadata.State.OPEN || false == IndexShard.isHavenaskIndex(indexMetadata.getSettings())) {
                 // 非havenask索引
-                return false;
+                return null;
             }
-        } else {
-            return false;
         }
+        return new ArrayList<>(indices.values());
     }
 }
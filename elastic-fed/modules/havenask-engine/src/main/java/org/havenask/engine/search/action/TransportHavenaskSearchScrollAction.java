@@ -31,7 +31,6 @@ import org.havenask.engine.HavenaskScrollService;
 import org.havenask.engine.NativeProcessControlService;
 import org.havenask.engine.rpc.QrsClient;
 import org.havenask.engine.rpc.http.QrsHttpClient;
-import org.havenask.engine.search.dsl.DSLSession;
 import org.havenask.engine.search.internal.HavenaskScrollContext;
 import org.havenask.tasks.Task;
 import org.havenask.threadpool.ThreadPool;
@@ -83,14 +82,11 @@ public class TransportHavenaskSearchScrollAction extends HandledTransportAction<
         if (Objects.isNull(havenaskScrollContext)) {
             throw new HavenaskException("no havenask scroll context found, sessionId: " + havenaskScrollId.getScrollSessionId());
         }
-        DSLSession session = havenaskScrollContext.getDSLSession();
-        try (Releasable ignored = havenaskScrollContext.markAsUsed(havenaskScrollService.getScrollKeepAlive(request.scroll()))) {
-            SearchResponse searchResponse = session.execute();
-            listener.onResponse(searchResponse);
-        } catch (Exception e) {
+        Releasable releasable = havenaskScrollContext.markAsUsed(havenaskScrollService.getScrollKeepAlive(request.scroll()));
+        havenaskScrollContext.executeNextPage(ActionListener.runAfter(ActionListener.wrap(listener::onResponse, e -> {
             logger.error("Failed to execute havenask scroll search, ", e);
             listener.onFailure(e);
-        }
+        }), releasable::close));
 
     }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search.action;
+
+import org.havenask.action.FailedNodeException;
+import org.havenask.action.support.ActionFilters;
+import org.havenask.action.support.nodes.TransportNodesAction;
+import org.havenask.cluster.service.ClusterService;
+import org.havenask.common.inject.Inject;
+import org.havenask.common.io.stream.StreamInput;
+import org.havenask.engine.NativeProcessControlService;
+import org.havenask.engine.index.engine.HavenaskEngine;
+import org.havenask.index.shard.ShardId;
+import org.havenask.threadpool.ThreadPool;
+import org.havenask.transport.TransportService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 获取本节点上havenask shard内存中的commit信息, 协调节点据此判断结果缓存是否失效
+ */
+public class TransportHavenaskTableVersionAction extends TransportNodesAction<
+    HavenaskTableVersionRequest,
+    HavenaskTableVersionResponse,
+    HavenaskTableVersionNodeRequest,
+    HavenaskTableVersionNodeResponse> {
+
+    private final NativeProcessControlService nativeProcessControlService;
+
+    @Inject
+    public TransportHavenaskTableVersionAction(
+        ThreadPool threadPool,
+        ClusterService clusterService,
+        TransportService transportService,
+        ActionFilters actionFilters,
+        NativeProcessControlService nativeProcessControlService
+    ) {
+        super(
+            HavenaskTableVersionAction.NAME,
+            threadPool,
+            clusterService,
+            transportService,
+            actionFilters,
+            HavenaskTableVersionRequest::new,
+            HavenaskTableVersionNodeRequest::new,
+            ThreadPool.Names.MANAGEMENT,
+            HavenaskTableVersionNodeResponse.class
+        );
+        this.nativeProcessControlService = nativeProcessControlService;
+    }
+
+    @Override
+    protected HavenaskTableVersionResponse newResponse(
+        HavenaskTableVersionRequest request,
+        List<HavenaskTableVersionNodeResponse> responses,
+        List<FailedNodeException> failures
+    ) {
+        return new HavenaskTableVersionResponse(clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected HavenaskTableVersionNodeRequest newNodeRequest(HavenaskTableVersionRequest request) {
+        return new HavenaskTableVersionNodeRequest(request);
+    }
+
+    @Override
+    protected HavenaskTableVersionNodeResponse newNodeResponse(StreamInput in) throws IOException {
+        return new HavenaskTableVersionNodeResponse(in);
+    }
+
+    @Override
+    protected HavenaskTableVersionNodeResponse nodeOperation(HavenaskTableVersionNodeRequest request) {
+        Set<String> indexUUIDs = Set.of(request.getIndexUUIDs());
+        String nodeId = clusterService.localNode().getId();
+        List<HavenaskTableVersionNodeResponse.ShardVersion> shardVersions = new ArrayList<>();
+        for (HavenaskEngine engine : nativeProcessControlService.getHavenaskEngines()) {
+            ShardId shardId = engine.config().getShardId();
+            if (false == indexUUIDs.contains(shardId.getIndex().getUUID())) {
+                continue;
+            }
+            HavenaskEngine.HavenaskCommitInfo commitInfo = engine.getLastCommitInfo();
+            shardVersions.add(
+                new HavenaskTableVersionNodeResponse.ShardVersion(
+                    shardId.getIndex().getUUID(),
+                    nodeId,
+                    shardId.id(),
+                    commitInfo.getCommitVersion(),
+                    commitInfo.getCommitCheckpoint(),
+                    engine.getProcessedLocalCheckpoint()
+                )
+            );
+        }
+        return new HavenaskTableVersionNodeResponse(clusterService.localNode(), shardVersions);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search.dsl;
+
+import java.util.Map;
+
+import org.havenask.cluster.ClusterChangedEvent;
+import org.havenask.cluster.ClusterStateListener;
+import org.havenask.cluster.metadata.IndexMetadata;
+import org.havenask.common.metrics.CounterMetric;
+import org.havenask.common.util.concurrent.ConcurrentCollections;
+import org.havenask.engine.search.dsl.expression.SourceExpression;
+import org.havenask.index.Index;
+
+/**
+ * 按index缓存dsl转sql时依赖的mapping信息, 避免每次查询都解压解析mapping并展开所有字段.
+ *
+ * 以index uuid为key, mapping version变化时重建, index删除后清理.
+ */
+public class DSLPlanCache implements ClusterStateListener {
+    private final Map<String, IndexPlan> plans = ConcurrentCollections.newConcurrentMap();
+
+    private final CounterMetric hits = new CounterMetric();
+    private final CounterMetric misses = new CounterMetric();
+    private final CounterMetric evictions = new CounterMetric();
+
+    public IndexPlan getIndexPlan(IndexMetadata indexMetadata) {
+        String indexUUID = indexMetadata.getIndexUUID();
+        IndexPlan plan = plans.get(indexUUID);
+        if (plan != null && plan.getMappingVersion() == indexMetadata.getMappingVersion()) {
+            hits.inc();
+            return plan;
+        }
+
+        misses.inc();
+        IndexPlan newPlan = IndexPlan.build(indexMetadata);
+        // 并发查询可能持有不同版本的metadata, 只保留mapping version较新的plan
+        plans.merge(
+            indexUUID,
+            newPlan,
+            (previous, current) -> current.getMappingVersion() >= previous.getMappingVersion() ? current : previous
+        );
+        return newPlan;
+    }
+
+    @Override
+    public void clusterChanged(ClusterChangedEvent event) {
+        if (plans.isEmpty()) {
+            return;
+        }
+        for (Index index : event.indicesDeleted()) {
+            if (plans.remove(index.getUUID()) != null) {
+                evictions.inc();
+            }
+        }
+    }
+
+    public int size() {
+        return plans.size();
+    }
+
+    public DSLPlanCacheStats stats() {
+        return new DSLPlanCacheStats(plans.size(), hits.count(), misses.count(), evictions.count());
+    }
+
+    /**
+     * 单个index的mapping信息, 创建后不再修改, 可以在多个查询间共享
+     */
+    public static class IndexPlan {
+        private final long mappingVersion;
+        private final Map<String, Object> flattenFields;
+        private final boolean sourceEnabled;
+
+        public IndexPlan(long mappingVersion, Map<String, Object> indexMapping) {
+            this.mappingVersion = mappingVersion;
+            this.flattenFields = SourceExpression.flattenMappings(indexMapping);
+            this.sourceEnabled = parseSourceEnabled(indexMapping);
+        }
+
+        public static IndexPlan build(IndexMetadata indexMetadata) {
+            Map<String, Object> indexMapping = indexMetadata.mapping() != null ? indexMetadata.mapping().getSourceAsMap() : null;
+            return new IndexPlan(indexMetadata.getMappingVersion(), indexMapping);
+        }
+
+        private static boolean parseSourceEnabled(Map<String, Object> indexMapping) {
+            if (indexMapping != null && indexMapping.get("_source") instanceof Map) {
+                Object sourceEnabledValue = ((Map<?, ?>) indexMapping.get("_source")).get("enabled");
+                if (sourceEnabledValue instanceof Boolean) {
+                    return (Boolean) sourceEnabledValue;
+                }
+            }
+            return true;
+        }
+
+        public long getMappingVersion() {
+            return mappingVersion;
+        }
+
+        /**
+         * @return 展开后的字段mapping, key为"properties_"加上以"_"连接的字段路径
+         */
+        public Map<String, Object> getFlattenFields() {
+            return flattenFields;
+        }
+
+        public boolean isSourceEnabled() {
+            return sourceEnabled;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search.dsl;
+
+import java.io.IOException;
+
+import org.havenask.common.io.stream.StreamInput;
+import org.havenask.common.io.stream.StreamOutput;
+import org.havenask.common.io.stream.Writeable;
+import org.havenask.common.xcontent.ToXContentFragment;
+import org.havenask.common.xcontent.XContentBuilder;
+
+/**
+ * {@link DSLPlanCache}的命中统计信息
+ */
+public class DSLPlanCacheStats implements Writeable, ToXContentFragment {
+    private final long count;
+    private final long hitCount;
+    private final long missCount;
+    private final long evictions;
+
+    public DSLPlanCacheStats(long count, long hitCount, long missCount, long evictions) {
+        this.count = count;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictions = evictions;
+    }
+
+    public DSLPlanCacheStats(StreamInput in) throws IOException {
+        count = in.readVLong();
+        hitCount = in.readVLong();
+        missCount = in.readVLong();
+        evictions = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(count);
+        out.writeVLong(hitCount);
+        out.writeVLong(missCount);
+        out.writeVLong(evictions);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("search_plan_cache");
+        builder.field("count", count);
+        builder.field("hit_count", hitCount);
+        builder.field("miss_count", missCount);
+        builder.field("evictions", evictions);
+        builder.endObject();
+        return builder;
+    }
+}
@@ -17,40 +17,71 @@ package org.havenask.engine.search.dsl;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.havenask.action.ActionListener;
 import org.havenask.action.search.SearchRequest;
 import org.havenask.action.search.SearchResponse;
+import org.havenask.action.support.ThreadedActionListener;
 import org.havenask.cluster.metadata.IndexMetadata;
 import org.havenask.common.UUIDs;
 import org.havenask.common.xcontent.NamedXContentRegistry;
+import org.havenask.engine.rpc.ColumnarSqlResponse;
 import org.havenask.engine.rpc.QrsClient;
+import org.havenask.engine.rpc.QrsSqlRequest;
+import org.havenask.engine.rpc.QrsSqlResponse;
 import org.havenask.engine.search.dsl.expression.ExpressionContext;
 import org.havenask.engine.search.dsl.plan.DSLExec;
 import org.havenask.engine.search.internal.HavenaskScroll;
 import org.havenask.search.builder.SearchSourceBuilder;
+import org.havenask.threadpool.ThreadPool;
 
-import java.util.Map;
 import java.util.Objects;
 
 public class DSLSession {
     protected Logger logger = LogManager.getLogger(DSLSession.class);
 
     private final QrsClient client;
+    private final ThreadPool threadPool;
     private final IndexMetadata indexMetadata;
     private final NamedXContentRegistry namedXContentRegistry;
     private long startTime;
     private final String sessionId;
     private SearchSourceBuilder query;
     private HavenaskScroll havenaskScroll;
-    private final boolean sourceEnabled;
+    private final DSLPlanCache.IndexPlan indexPlan;
+    private final int singlePhaseMaxSize;
 
     public DSLSession(
         QrsClient client,
+        ThreadPool threadPool,
         IndexMetadata indexMetadata,
         SearchRequest searchRequest,
         String nodeId,
         NamedXContentRegistry namedXContentRegistry
+    ) {
+        this(
+            client,
+            threadPool,
+            indexMetadata,
+            searchRequest,
+            nodeId,
+            namedXContentRegistry,
+            0,
+            DSLPlanCache.IndexPlan.build(indexMetadata)
+        );
+    }
+
+    public DSLSession(
+        QrsClient client,
+        ThreadPool threadPool,
+        IndexMetadata indexMetadata,
+        SearchRequest searchRequest,
+        String nodeId,
+        NamedXContentRegistry namedXContentRegistry,
+        int singlePhaseMaxSize,
+        DSLPlanCache.IndexPlan indexPlan
     ) {
         this.client = client;
+        this.threadPool = threadPool;
         this.indexMetadata = indexMetadata;
         this.startTime = System.currentTimeMillis();
         this.sessionId = UUIDs.randomBase64UUID();
@@ -59,33 +90,50 @@ public class DSLSession {
             this.havenaskScroll = new HavenaskScroll(nodeId, searchRequest.scroll());
         }
         this.namedXContentRegistry = namedXContentRegistry;
-        this.sourceEnabled = setSourceEnabled();
-    }
-
-    private boolean setSourceEnabled() {
-        Map<String, Object> indexMapping = indexMetadata.mapping() != null ? indexMetadata.mapping().getSourceAsMap() : null;
-        Boolean sourceEnabled = true;
-        if (indexMapping != null && indexMapping.containsKey("_source")) {
-            Object sourceValue = indexMapping.get("_source");
-            if (sourceValue instanceof Map) {
-                @SuppressWarnings("unchecked")
-                Object sourceEnabledValue = ((Map<String, Object>) sourceValue).get("enabled");
-                if (sourceEnabledValue instanceof Boolean) {
-                    sourceEnabled = (Boolean) sourceEnabledValue;
-                }
-            }
-        }
-        return sourceEnabled;
+        this.indexPlan = indexPlan;
+        this.singlePhaseMaxSize = singlePhaseMaxSize;
     }
 
     public boolean isSourceEnabled() {
-        return sourceEnabled;
+        return indexPlan.isSourceEnabled();
+    }
+
+    /**
+     * @return index的mapping信息, 由{@link DSLPlanCache}在多个查询间共享
+     */
+    public DSLPlanCache.IndexPlan getIndexPlan() {
+        return indexPlan;
+    }
+
+    /**
+     * @return size不超过该值时query和fetch合并为一条sql, 0表示关闭
+     */
+    public int getSinglePhaseMaxSize() {
+        return singlePhaseMaxSize;
     }
 
     public QrsClient getClient() {
         return client;
     }
 
+    public ThreadPool getThreadPool() {
+        return threadPool;
+    }
+
+    /**
+     * 异步执行sql, 结果切换到search线程池处理, 避免在http io线程上解析结果
+     */
+    public void executeSql(QrsSqlRequest request, ActionListener<QrsSqlResponse> listener) {
+        client.executeSql(request, new ThreadedActionListener<>(logger, threadPool, ThreadPool.Names.SEARCH, listener, false));
+    }
+
+    /**
+     * 异步执行sql并按列解析结果, 解析和回调都在search线程池中执行
+     */
+    public void executeSqlColumnar(QrsSqlRequest request, ActionListener<ColumnarSqlResponse> listener) {
+        client.executeSqlColumnar(request, threadPool.executor(ThreadPool.Names.SEARCH), listener);
+    }
+
     public String getIndex() {
         return indexMetadata.getIndex().getName();
     }
@@ -110,19 +158,31 @@ public class DSLSession {
         return sessionId;
     }
 
-    public SearchResponse execute() throws Exception {
+    /**
+     * @return scroll的翻页位置, 非scroll查询时为null
+     */
+    public HavenaskScroll getHavenaskScroll() {
+        return havenaskScroll;
+    }
+
+    public void execute(ActionListener<SearchResponse> listener) {
+        ActionListener<SearchResponse> sessionListener = ActionListener.wrap(searchResponse -> {
+            logger.debug("DSLSession [{}] executed in [{}] ms", sessionId, System.currentTimeMillis() - startTime);
+            listener.onResponse(searchResponse);
+        }, e -> {
+            if (logger.isDebugEnabled()) {
+                logger.debug(() -> new ParameterizedMessage("DSLSession [{}] executed fail, dsl:{}", sessionId, query.toString()), e);
+            }
+            listener.onFailure(e);
+        });
+
         try {
             startTime = System.currentTimeMillis();
             ExpressionContext context = new ExpressionContext(namedXContentRegistry, havenaskScroll, indexMetadata.getNumberOfShards());
             DSLExec exec = new DSLExec(query, context);
-            SearchResponse searchResponse = exec.execute(this);
-            logger.debug("DSLSession [{}] executed in [{}] ms", sessionId, System.currentTimeMillis() - startTime);
-            return searchResponse;
+            exec.execute(this, sessionListener);
         } catch (Exception e) {
-            if (logger.isDebugEnabled()) {
-                logger.debug(() -> new ParameterizedMessage("DSLSession [{}] executed fail, dsl:{}", sessionId, query.toString()), e);
-            }
-            throw e;
+            sessionListener.onFailure(e);
         }
     }
 }
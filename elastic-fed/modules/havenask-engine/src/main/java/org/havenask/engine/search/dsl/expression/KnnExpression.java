@@ -16,6 +16,7 @@ package org.havenask.engine.search.dsl.expression;
 
 import org.havenask.engine.index.config.Schema;
 import org.havenask.engine.index.mapper.DenseVectorFieldMapper;
+import org.havenask.engine.index.mapper.VectorField;
 import org.havenask.engine.search.dsl.expression.query.BoolExpression;
 import org.havenask.search.builder.KnnSearchBuilder;
 
@@ -35,6 +36,7 @@ public class KnnExpression extends Expression {
     final int k;
     final BoolExpression filterQueries;
     final String similarity;
+    final String embeddingDelimiter;
 
     public KnnExpression(KnnSearchBuilder knnSearchBuilder, BoolExpression filterQueries, Map<String, Object> flattenMappings) {
         this.field = Schema.encodeFieldWithDot(knnSearchBuilder.getField());
@@ -51,6 +53,7 @@ public class KnnExpression extends Expression {
             throw new IllegalArgumentException(String.format(Locale.ROOT, "field: %s is not a vector type field", field));
         }
         checkVectorMagnitude(similarity, queryVector);
+        embeddingDelimiter = getEmbeddingDelimiter(field, flattenMappings);
     }
 
     public String getSortField() {
@@ -65,12 +68,7 @@ public class KnnExpression extends Expression {
     public String translate() {
         StringBuilder where = new StringBuilder();
         where.append("MATCHINDEX('").append(field).append("', '");
-        for (int i = 0; i < queryVector.length; i++) {
-            where.append(queryVector[i]);
-            if (i < queryVector.length - 1) {
-                where.append(",");
-            }
-        }
+        VectorField.appendVector(queryVector, embeddingDelimiter, where);
         where.append("&n=").append(k).append("')");
         String filterStr = filterQueries != null ? filterQueries.translate() : "";
         if (filterStr.length() > 0) {
@@ -110,6 +108,12 @@ public class KnnExpression extends Expression {
         return null;
     }
 
+    @SuppressWarnings("unchecked")
+    private static String getEmbeddingDelimiter(String fieldName, Map<String, Object> flattenFields) {
+        Object properties = flattenFields.get("properties_" + fieldName);
+        return DenseVectorFieldMapper.getEmbeddingDelimiter(properties instanceof Map ? (Map<String, Object>) properties : null);
+    }
+
     private void checkVectorMagnitude(String similarity, float[] queryVector) {
         if (similarity.equals(VECTOR_SIMILARITY_TYPE_DOT_PRODUCT) && Math.abs(computeSquaredMagnitude(queryVector) - 1.0f) > 1e-4f) {
             throw new IllegalArgumentException(
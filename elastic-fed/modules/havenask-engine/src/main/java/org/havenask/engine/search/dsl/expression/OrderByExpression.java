@@ -34,6 +34,27 @@ public class OrderByExpression extends Expression {
         return hasScoreSort;
     }
 
+    /**
+     * @return 排序为空或只按_score排序时返回true
+     */
+    public boolean isEmptyOrScoreOnly() {
+        return sorts == null || sorts.isEmpty() || (sorts.size() == 1 && sorts.get(0) instanceof ScoreSortBuilder);
+    }
+
+    /**
+     * @return _score排序的方向, 没有_score排序时返回null
+     */
+    public String scoreSortOrder() {
+        if (sorts != null) {
+            for (SortBuilder<?> sort : sorts) {
+                if (sort instanceof ScoreSortBuilder) {
+                    return sort.order().toString().toUpperCase(Locale.ROOT);
+                }
+            }
+        }
+        return null;
+    }
+
     @Override
     public String translate() {
         if (sorts == null || sorts.isEmpty()) {
@@ -125,19 +125,19 @@ public class QuerySQLExpression extends Expression {
                 } else {
                     sb.append("AND ").append(knnWhere).append(" ");
                 }
-                if (HavenaskScroll.hasLastEmittedDoc(havenaskScroll)) {
-                    sb.append("AND ").append(havenaskScroll.translateLastEmittedDoc()).append(" ");
+                if (HavenaskScroll.hasDocIdRange(havenaskScroll)) {
+                    sb.append("AND ").append(havenaskScroll.translateDocIdRange()).append(" ");
                 }
             } else {
                 sb.append("WHERE ").append(knnWhere).append(" ");
             }
         }
 
-        if (HavenaskScroll.hasLastEmittedDoc(havenaskScroll)) {
+        if (HavenaskScroll.hasDocIdRange(havenaskScroll)) {
             if ((Objects.nonNull(where) && !where.translate().isEmpty()) || !knnExpressions.isEmpty()) {
-                sb.append("AND ").append(havenaskScroll.translateLastEmittedDoc()).append(" ");
+                sb.append("AND ").append(havenaskScroll.translateDocIdRange()).append(" ");
             } else {
-                sb.append("WHERE ").append(havenaskScroll.translateLastEmittedDoc()).append(" ");
+                sb.append("WHERE ").append(havenaskScroll.translateDocIdRange()).append(" ");
             }
         }
 
@@ -168,6 +168,48 @@ public class QuerySQLExpression extends Expression {
         return sb.toString();
     }
 
+    /**
+     * 能否合并query和fetch为一条sql: join后的结果需要在外层重新排序, 只支持无排序或按分数排序, scroll只支持按_id排序
+     */
+    public boolean supportsSinglePhase() {
+        if (Objects.nonNull(havenaskScroll)) {
+            String orderByStr = orderBy.translate();
+            return knnExpressions.isEmpty() && (orderByStr.isEmpty() || orderByStr.equals(HavenaskScroll.SCROLL_ORDER_BY));
+        }
+        return orderBy.isEmptyOrScoreOnly();
+    }
+
+    /**
+     * 单阶段查询, 以query sql作为子查询与summary表join, 一次返回_id, 分数, _source和_routing
+     */
+    public String translateSinglePhase() {
+        String querySql = translate().trim();
+        String scoreField = null;
+        String scoreOrder = null;
+        if (orderBy.scoreSortOrder() != null) {
+            scoreField = "_score";
+            scoreOrder = orderBy.scoreSortOrder();
+        } else if (false == knnExpressions.isEmpty()) {
+            scoreField = "_knn_score";
+            scoreOrder = "DESC";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("SELECT q.`").append(IdFieldMapper.NAME).append("`");
+        if (scoreField != null) {
+            sb.append(", q.`").append(scoreField).append("`");
+        }
+        sb.append(", s.`_source`, s.`_routing` FROM (").append(querySql).append(") AS q ");
+        sb.append("LEFT JOIN `").append(from).append("_summary_` AS s ON q.`_id` = s.`_id` ");
+        if (scoreField != null) {
+            sb.append("ORDER BY q.`").append(scoreField).append("` ").append(scoreOrder).append(" ");
+        } else if (Objects.nonNull(havenaskScroll)) {
+            // scroll按_id翻页, 外层同样按_id排序
+            sb.append("ORDER BY q.`").append(IdFieldMapper.NAME).append("` ASC ");
+        }
+        return sb.toString();
+    }
+
     public String generateKnnSelect(List<KnnExpression> knnExpressions) {
         if (knnExpressions.isEmpty()) {
             return null;
@@ -19,7 +19,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import org.havenask.engine.search.dsl.expression.aggregation.AvgExpression;
 import org.havenask.engine.search.dsl.expression.aggregation.BucketExpression;
@@ -46,6 +47,8 @@ import org.havenask.search.builder.SearchSourceBuilder;
 public class SourceExpression extends Expression {
     private static final int DEFAULT_SEARCH_SIZE = 10;
     private static final String PROPERTIES_FIELD = "properties";
+    // 单条聚合sql返回的最大行数, 与search.max_buckets的默认值一致
+    private static final long MAX_AGGREGATION_ROWS = 65535;
 
     private final SearchSourceBuilder searchSourceBuilder;
 
@@ -84,16 +87,20 @@ public class SourceExpression extends Expression {
     }
 
     public synchronized List<KnnExpression> getKnnExpressions(Map<String, Object> indexMappings) {
-        if (knnExpressions.size() > 0) {
+        return getKnnExpressions(() -> flattenMappings(indexMappings));
+    }
+
+    private List<KnnExpression> getKnnExpressions(Supplier<Map<String, Object>> flattenFields) {
+        if (knnExpressions.size() > 0 || searchSourceBuilder.knnSearch().isEmpty()) {
             return knnExpressions;
         }
 
-        Map<String, Object> flattenFields = flattenFields(Map.of(PROPERTIES_FIELD, indexMappings), null);
+        Map<String, Object> flattenMappings = flattenFields.get();
         for (KnnSearchBuilder knnSearchBuilder : searchSourceBuilder.knnSearch()) {
             BoolQueryBuilder boolQueryBuilder = QueryBuilders.boolQuery();
             knnSearchBuilder.getFilterQueries().forEach(boolQueryBuilder::filter);
             knnExpressions.add(
-                new KnnExpression(knnSearchBuilder, QueryExpression.visitBoolQuery(boolQueryBuilder, context), flattenFields)
+                new KnnExpression(knnSearchBuilder, QueryExpression.visitBoolQuery(boolQueryBuilder, context), flattenMappings)
             );
         }
 
@@ -101,11 +108,18 @@ public class SourceExpression extends Expression {
     }
 
     public synchronized QuerySQLExpression getQuerySQLExpression(String index, Map<String, Object> indexMappings) {
+        return getQuerySQLExpression(index, () -> flattenMappings(indexMappings));
+    }
+
+    /**
+     * @param flattenFields 展开后的字段mapping, 只在包含knn查询时使用
+     */
+    public synchronized QuerySQLExpression getQuerySQLExpression(String index, Supplier<Map<String, Object>> flattenFields) {
         if (querySQLExpression == null || Objects.nonNull(havenaskScroll)) {
             querySQLExpression = new QuerySQLExpression(
                 index,
                 where,
-                getKnnExpressions(indexMappings),
+                getKnnExpressions(flattenFields),
                 orderBy,
                 slice,
                 size,
@@ -139,13 +153,15 @@ public class SourceExpression extends Expression {
                 List<GroupByExpression> groupByExpressions = visitAggregation(aggregationBuilder);
                 for (GroupByExpression groupByExpression : groupByExpressions) {
                     List<BucketExpression> groupBy = new ArrayList<>();
-                    AtomicInteger limit = new AtomicInteger(1);
+                    AtomicLong limit = new AtomicLong(1);
                     groupByExpression.getAggregationBuilders().forEach(agg -> {
                         if (agg instanceof TermsAggregationBuilder) {
                             groupBy.add(new TermsExpression(((TermsAggregationBuilder) agg)));
-                            limit.updateAndGet(v -> v * ((TermsAggregationBuilder) agg).size());
+                            limit.updateAndGet(v -> Math.min(MAX_AGGREGATION_ROWS, v * ((TermsAggregationBuilder) agg).size()));
                         } else if (agg instanceof DateHistogramAggregationBuilder) {
                             groupBy.add(new DateHistogramExpression(((DateHistogramAggregationBuilder) agg)));
+                            // date_histogram的bucket数量无法预估
+                            limit.set(MAX_AGGREGATION_ROWS);
                         } else {
                             throw new IllegalArgumentException("Unsupported aggregation type: " + agg.getClass().getName());
                         }
@@ -159,11 +175,10 @@ public class SourceExpression extends Expression {
 
                         inMetrics.add(visitMetricExpression(subAgg));
                     });
-                    if (inMetrics.size() == 0) {
-                        inMetrics.add(new CountExpression());
-                    }
+                    // 最后一列固定为COUNT(*), 作为bucket的doc count
+                    inMetrics.add(new CountExpression());
 
-                    aggregationSQLExpressions.add(new AggregationSQLExpression(groupBy, inMetrics, index, where, limit.get()));
+                    aggregationSQLExpressions.add(new AggregationSQLExpression(groupBy, inMetrics, index, where, (int) limit.get()));
                 }
             }
         }
@@ -219,6 +234,16 @@ public class SourceExpression extends Expression {
         return "";
     }
 
+    /**
+     * 展开index mapping中的所有字段, mapping为空时返回空map
+     */
+    public static Map<String, Object> flattenMappings(Map<String, Object> indexMappings) {
+        if (indexMappings == null) {
+            return Map.of();
+        }
+        return flattenFields(Map.of(PROPERTIES_FIELD, indexMappings), null);
+    }
+
     public static Map<String, Object> flattenFields(Map<String, Object> map, String parentPath) {
         Map<String, Object> flatMap = new HashMap<>();
         String prefix = parentPath != null ? parentPath + "_" : "";
@@ -14,7 +14,6 @@
 
 package org.havenask.engine.search.dsl.expression.aggregation;
 
-import org.havenask.common.collect.Map;
 import org.havenask.search.DocValueFormat;
 import org.havenask.search.aggregations.InternalAggregation;
 import org.havenask.search.aggregations.metrics.AvgAggregationBuilder;
@@ -38,6 +37,10 @@ public class AvgExpression extends MetricExpression {
 
     @Override
     public InternalAggregation buildInternalAggregation(Object value) {
-        return new InternalAvg(avgAggregationBuilder.getName(), (Double) value, 1, DocValueFormat.RAW, Map.of());
+        if (value == null) {
+            return new InternalAvg(avgAggregationBuilder.getName(), 0, 0, DocValueFormat.RAW, avgAggregationBuilder.getMetadata());
+        }
+        double avg = ((Number) value).doubleValue();
+        return new InternalAvg(avgAggregationBuilder.getName(), avg, 1, DocValueFormat.RAW, avgAggregationBuilder.getMetadata());
     }
 }
@@ -15,7 +15,45 @@
 package org.havenask.engine.search.dsl.expression.aggregation;
 
 import org.havenask.engine.search.dsl.expression.Expression;
+import org.havenask.search.aggregations.AggregationBuilder;
+import org.havenask.search.aggregations.InternalAggregation;
+import org.havenask.search.aggregations.InternalAggregations;
+
+import java.util.List;
 
 public abstract class BucketExpression extends Expression {
     public abstract String getField();
+
+    public abstract AggregationBuilder getAggregationBuilder();
+
+    /**
+     * 根据group by的结果构建bucket聚合
+     *
+     * @param buckets 每个group by key对应的doc count和子聚合, 顺序与sql返回的顺序一致
+     */
+    public abstract InternalAggregation buildInternalAggregation(List<BucketResult> buckets);
+
+    public static class BucketResult {
+        private final Object key;
+        private final long docCount;
+        private final InternalAggregations aggregations;
+
+        public BucketResult(Object key, long docCount, InternalAggregations aggregations) {
+            this.key = key;
+            this.docCount = docCount;
+            this.aggregations = aggregations;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+
+        public long getDocCount() {
+            return docCount;
+        }
+
+        public InternalAggregations getAggregations() {
+            return aggregations;
+        }
+    }
 }
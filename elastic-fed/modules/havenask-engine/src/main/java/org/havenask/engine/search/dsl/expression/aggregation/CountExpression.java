@@ -23,6 +23,9 @@ public class CountExpression extends MetricExpression {
         return "COUNT(*)";
     }
 
+    /**
+     * COUNT(*)作为bucket的doc count, 不单独生成聚合结果
+     */
     @Override
     public InternalAggregation buildInternalAggregation(Object value) {
         return null;
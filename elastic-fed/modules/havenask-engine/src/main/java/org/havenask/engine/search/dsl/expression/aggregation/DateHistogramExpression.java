@@ -14,22 +14,107 @@
 
 package org.havenask.engine.search.dsl.expression.aggregation;
 
+import org.havenask.common.Rounding;
+import org.havenask.common.time.DateFormatter;
+import org.havenask.index.mapper.DateFieldMapper;
+import org.havenask.search.DocValueFormat;
+import org.havenask.search.aggregations.AggregationBuilder;
+import org.havenask.search.aggregations.BucketOrder;
+import org.havenask.search.aggregations.InternalAggregation;
 import org.havenask.search.aggregations.bucket.histogram.DateHistogramAggregationBuilder;
+import org.havenask.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.havenask.search.aggregations.bucket.histogram.InternalDateHistogram;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class DateHistogramExpression extends BucketExpression {
+    // 1970-01-01是周四, 按周聚合时以周一为bucket起点
+    private static final long EPOCH_WEEK_OFFSET = TimeUnit.DAYS.toMillis(4);
+
     private final DateHistogramAggregationBuilder dateHistogramAggregationBuilder;
+    private final long interval;
+    private final long offset;
 
     public DateHistogramExpression(DateHistogramAggregationBuilder dateHistogramAggregationBuilder) {
         this.dateHistogramAggregationBuilder = dateHistogramAggregationBuilder;
+        if (dateHistogramAggregationBuilder.timeZone() != null
+            && false == dateHistogramAggregationBuilder.timeZone().normalized().equals(ZoneOffset.UTC)) {
+            throw new IllegalArgumentException("date_histogram only supports UTC time_zone");
+        }
+        DateHistogramInterval fixedInterval = dateHistogramAggregationBuilder.getFixedInterval();
+        DateHistogramInterval calendarInterval = dateHistogramAggregationBuilder.getCalendarInterval();
+        if (fixedInterval != null) {
+            this.interval = fixedInterval.estimateMillis();
+            this.offset = dateHistogramAggregationBuilder.offset();
+        } else if (calendarInterval != null) {
+            // date字段在havenask中以毫秒时间戳存储, 只支持固定长度的calendar interval
+            Rounding.DateTimeUnit unit = DateHistogramAggregationBuilder.DATE_FIELD_UNITS.get(calendarInterval.toString());
+            if (unit == null
+                || unit == Rounding.DateTimeUnit.MONTH_OF_YEAR
+                || unit == Rounding.DateTimeUnit.QUARTER_OF_YEAR
+                || unit == Rounding.DateTimeUnit.YEAR_OF_CENTURY) {
+                throw new IllegalArgumentException("Unsupported date_histogram calendar_interval: " + calendarInterval);
+            }
+            this.interval = calendarInterval.estimateMillis();
+            this.offset = dateHistogramAggregationBuilder.offset() + (unit == Rounding.DateTimeUnit.WEEK_OF_WEEKYEAR
+                ? EPOCH_WEEK_OFFSET
+                : 0);
+        } else {
+            throw new IllegalArgumentException("date_histogram requires fixed_interval or calendar_interval");
+        }
     }
 
     @Override
     public String translate() {
-        return "`" + dateHistogramAggregationBuilder.field() + "`";
+        String field = "`" + dateHistogramAggregationBuilder.field() + "`";
+        String shifted = offset == 0 ? field : field + " - " + offset;
+        // MOD的结果与被除数同号, 需要转为非负数, 否则负的时间戳会被分到后一个bucket
+        return "(" + field + " - MOD(MOD(" + shifted + ", " + interval + ") + " + interval + ", " + interval + "))";
     }
 
     @Override
     public String getField() {
-        return "`" + dateHistogramAggregationBuilder.field() + "` AS `" + dateHistogramAggregationBuilder.getName() + "`";
+        return translate() + " AS `" + dateHistogramAggregationBuilder.getName() + "`";
+    }
+
+    @Override
+    public AggregationBuilder getAggregationBuilder() {
+        return dateHistogramAggregationBuilder;
+    }
+
+    @Override
+    public InternalAggregation buildInternalAggregation(List<BucketResult> buckets) {
+        DateFormatter formatter = dateHistogramAggregationBuilder.format() != null
+            ? DateFormatter.forPattern(dateHistogramAggregationBuilder.format())
+            : DateFieldMapper.DEFAULT_DATE_TIME_FORMATTER;
+        DocValueFormat format = new DocValueFormat.DateTime(formatter, ZoneOffset.UTC, DateFieldMapper.Resolution.MILLISECONDS);
+        boolean keyed = dateHistogramAggregationBuilder.keyed();
+        // sql只返回有数据的bucket, 不补齐空bucket
+        long minDocCount = Math.max(1, dateHistogramAggregationBuilder.minDocCount());
+
+        List<InternalDateHistogram.Bucket> histogramBuckets = new ArrayList<>(buckets.size());
+        for (BucketResult bucket : buckets) {
+            if (bucket.getKey() != null && bucket.getDocCount() >= minDocCount) {
+                long key = ((Number) bucket.getKey()).longValue();
+                histogramBuckets.add(new InternalDateHistogram.Bucket(key, bucket.getDocCount(), keyed, format, bucket.getAggregations()));
+            }
+        }
+        BucketOrder order = dateHistogramAggregationBuilder.order();
+        histogramBuckets.sort(order.comparator());
+
+        return new InternalDateHistogram(
+            dateHistogramAggregationBuilder.getName(),
+            histogramBuckets,
+            order,
+            minDocCount,
+            dateHistogramAggregationBuilder.offset(),
+            null,
+            format,
+            keyed,
+            dateHistogramAggregationBuilder.getMetadata()
+        );
     }
 }
@@ -14,7 +14,6 @@
 
 package org.havenask.engine.search.dsl.expression.aggregation;
 
-import org.havenask.common.collect.Map;
 import org.havenask.search.DocValueFormat;
 import org.havenask.search.aggregations.InternalAggregation;
 import org.havenask.search.aggregations.metrics.InternalSum;
@@ -33,7 +32,8 @@ public class SumExpression extends MetricExpression {
 
     @Override
     public InternalAggregation buildInternalAggregation(Object value) {
-        return new InternalSum(sumAggregationBuilder.getName(), (Double) value, DocValueFormat.RAW, Map.of());
+        double sum = value == null ? 0 : ((Number) value).doubleValue();
+        return new InternalSum(sumAggregationBuilder.getName(), sum, DocValueFormat.RAW, sumAggregationBuilder.getMetadata());
     }
 
     @Override
@@ -14,8 +14,20 @@
 
 package org.havenask.engine.search.dsl.expression.aggregation;
 
+import org.apache.lucene.util.BytesRef;
+import org.havenask.search.DocValueFormat;
+import org.havenask.search.aggregations.AggregationBuilder;
+import org.havenask.search.aggregations.BucketOrder;
+import org.havenask.search.aggregations.InternalAggregation;
+import org.havenask.search.aggregations.bucket.terms.DoubleTerms;
+import org.havenask.search.aggregations.bucket.terms.InternalTerms;
+import org.havenask.search.aggregations.bucket.terms.LongTerms;
+import org.havenask.search.aggregations.bucket.terms.StringTerms;
 import org.havenask.search.aggregations.bucket.terms.TermsAggregationBuilder;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class TermsExpression extends BucketExpression {
     private final TermsAggregationBuilder termsAggregationBuilder;
 
@@ -32,4 +44,115 @@ public class TermsExpression extends BucketExpression {
     public String getField() {
         return "`" + termsAggregationBuilder.field() + "` AS `" + termsAggregationBuilder.getName() + "`";
     }
+
+    @Override
+    public AggregationBuilder getAggregationBuilder() {
+        return termsAggregationBuilder;
+    }
+
+    @Override
+    public InternalAggregation buildInternalAggregation(List<BucketResult> buckets) {
+        String name = termsAggregationBuilder.getName();
+        BucketOrder order = termsAggregationBuilder.order();
+        int size = termsAggregationBuilder.size();
+        long minDocCount = termsAggregationBuilder.minDocCount();
+
+        // 整数类型的key构建LongTerms, 浮点类型的key构建DoubleTerms, 其他类型的key按字符串处理
+        boolean longKeys = buckets.stream().allMatch(bucket -> bucket.getKey() instanceof Long || bucket.getKey() instanceof Integer);
+        boolean numberKeys = buckets.stream().allMatch(bucket -> bucket.getKey() instanceof Number);
+        if (longKeys) {
+            List<LongTerms.Bucket> termBuckets = new ArrayList<>(buckets.size());
+            for (BucketResult bucket : buckets) {
+                if (bucket.getDocCount() >= minDocCount) {
+                    long term = ((Number) bucket.getKey()).longValue();
+                    termBuckets.add(
+                        new LongTerms.Bucket(term, bucket.getDocCount(), bucket.getAggregations(), false, 0, DocValueFormat.RAW)
+                    );
+                }
+            }
+            long otherDocCount = sortAndTrim(termBuckets, order, size);
+            return new LongTerms(
+                name,
+                order,
+                order,
+                size,
+                minDocCount,
+                termsAggregationBuilder.getMetadata(),
+                DocValueFormat.RAW,
+                size,
+                false,
+                otherDocCount,
+                termBuckets,
+                0
+            );
+        } else if (numberKeys) {
+            List<DoubleTerms.Bucket> termBuckets = new ArrayList<>(buckets.size());
+            for (BucketResult bucket : buckets) {
+                if (bucket.getDocCount() >= minDocCount) {
+                    double term = ((Number) bucket.getKey()).doubleValue();
+                    termBuckets.add(
+                        new DoubleTerms.Bucket(term, bucket.getDocCount(), bucket.getAggregations(), false, 0, DocValueFormat.RAW)
+                    );
+                }
+            }
+            long otherDocCount = sortAndTrim(termBuckets, order, size);
+            return new DoubleTerms(
+                name,
+                order,
+                order,
+                size,
+                minDocCount,
+                termsAggregationBuilder.getMetadata(),
+                DocValueFormat.RAW,
+                size,
+                false,
+                otherDocCount,
+                termBuckets,
+                0
+            );
+        } else {
+            List<StringTerms.Bucket> termBuckets = new ArrayList<>(buckets.size());
+            for (BucketResult bucket : buckets) {
+                if (bucket.getKey() != null && bucket.getDocCount() >= minDocCount) {
+                    BytesRef term = new BytesRef(bucket.getKey().toString());
+                    termBuckets.add(
+                        new StringTerms.Bucket(term, bucket.getDocCount(), bucket.getAggregations(), false, 0, DocValueFormat.RAW)
+                    );
+                }
+            }
+            long otherDocCount = sortAndTrim(termBuckets, order, size);
+            return new StringTerms(
+                name,
+                order,
+                order,
+                size,
+                minDocCount,
+                termsAggregationBuilder.getMetadata(),
+                DocValueFormat.RAW,
+                size,
+                false,
+                otherDocCount,
+                termBuckets,
+                0
+            );
+        }
+    }
+
+    /**
+     * 按terms的order排序并截取前size个bucket
+     *
+     * @return 被截掉的bucket的doc count之和
+     */
+    private static <B extends InternalTerms.Bucket<B>> long sortAndTrim(
+        List<B> buckets,
+        BucketOrder order,
+        int size
+    ) {
+        buckets.sort(order.comparator());
+        long otherDocCount = 0;
+        while (buckets.size() > size) {
+            otherDocCount += buckets.remove(buckets.size() - 1).getDocCount();
+        }
+        return otherDocCount;
+    }
 }
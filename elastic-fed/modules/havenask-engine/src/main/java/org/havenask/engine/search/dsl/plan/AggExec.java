@@ -16,19 +16,31 @@ package org.havenask.engine.search.dsl.plan;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.havenask.action.ActionListener;
+import org.havenask.action.support.GroupedActionListener;
 import org.havenask.client.ha.SqlResponse;
 import org.havenask.common.collect.Tuple;
+import org.havenask.engine.rpc.ColumnarSqlResponse;
 import org.havenask.engine.rpc.QrsSqlRequest;
-import org.havenask.engine.rpc.QrsSqlResponse;
 import org.havenask.engine.search.dsl.DSLSession;
 import org.havenask.engine.search.dsl.expression.AggregationSQLExpression;
+import org.havenask.engine.search.dsl.expression.aggregation.BucketExpression;
+import org.havenask.engine.search.dsl.expression.aggregation.BucketExpression.BucketResult;
 import org.havenask.engine.search.dsl.expression.aggregation.MetricExpression;
+import org.havenask.search.aggregations.AggregationBuilder;
+import org.havenask.search.aggregations.AggregatorFactories;
 import org.havenask.search.aggregations.InternalAggregation;
 import org.havenask.search.aggregations.InternalAggregations;
+import org.havenask.search.aggregations.support.ValuesSourceAggregationBuilder;
 
-import java.io.IOException;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import static org.havenask.engine.search.rest.RestHavenaskSqlAction.SQL_DATABASE;
 
@@ -42,54 +54,163 @@ public class AggExec implements Executable<InternalAggregations> {
     }
 
     @Override
-    public InternalAggregations execute(DSLSession session) throws IOException {
-        // exec aggregation
-        List<Tuple<AggregationSQLExpression, SqlResponse>> aggResults = new ArrayList<>();
-        for (AggregationSQLExpression agg : aggregationSQLExpressions) {// exec aggregation
-            String sql = agg.translate();
+    public void execute(DSLSession session, ActionListener<InternalAggregations> listener) {
+        List<String> sqls = new ArrayList<>(aggregationSQLExpressions.size());
+        for (AggregationSQLExpression agg : aggregationSQLExpressions) {
+            sqls.add(agg.translate());
+        }
 
+        // 所有聚合sql并发执行, 全部返回后再组装聚合结果
+        AggregatorFactories.Builder aggregations = session.getQuery().aggregations();
+        GroupedActionListener<Tuple<AggregationSQLExpression, SqlResponse>> groupedListener = new GroupedActionListener<>(
+            ActionListener.map(listener, aggResults -> buildAggregations(aggregations, aggResults)),
+            aggregationSQLExpressions.size()
+        );
+        for (int i = 0; i < aggregationSQLExpressions.size(); i++) {
+            AggregationSQLExpression agg = aggregationSQLExpressions.get(i);
+            String sql = sqls.get(i);
             logger.debug("query exec, session: {}, exec sql: {}", session.getSessionId(), sql);
             String kvpair = "format:full_json;timeout:10000;databaseName:" + SQL_DATABASE;
 
-            QrsSqlResponse qrsSqlResponse = session.getClient().executeSql(new QrsSqlRequest(sql, kvpair));
-            SqlResponse sqlResponse = SqlResponse.parse(qrsSqlResponse.getResult());
-            aggResults.add(new Tuple<>(agg, sqlResponse));
+            session.executeSqlColumnar(
+                new QrsSqlRequest(sql, kvpair),
+                ActionListener.map(groupedListener, sqlResponse -> new Tuple<>(agg, checkAggSqlResponse(sql, sqlResponse)))
+            );
+        }
+    }
+
+    private static SqlResponse checkAggSqlResponse(String sql, ColumnarSqlResponse columnarSqlResponse) throws SQLException {
+        // 聚合结果行数有限, 转为按行保存便于按bucket分组
+        SqlResponse sqlResponse = columnarSqlResponse.toSqlResponse();
+        if (sqlResponse.getErrorInfo().getErrorCode() != 0) {
+            throw new SQLException(
+                String.format(
+                    Locale.ROOT,
+                    "execute aggregation sql failed after transfer dsl to sql. "
+                        + "aggregation sql: '%s', "
+                        + "errorCode: %s, error: %s, message: %s ",
+                    sql,
+                    sqlResponse.getErrorInfo().getErrorCode(),
+                    sqlResponse.getErrorInfo().getError(),
+                    sqlResponse.getErrorInfo().getMessage()
+                )
+            );
         }
+        return sqlResponse;
+    }
 
-        // fetch aggregation results
-        List<InternalAggregation> aggregations = new ArrayList<>();
-        aggResults.forEach(aggResult -> {
+    static InternalAggregations buildAggregations(
+        AggregatorFactories.Builder aggregations,
+        Collection<Tuple<AggregationSQLExpression, SqlResponse>> aggResults
+    ) {
+        // 不带group by的sql返回顶层的metric聚合, 带group by的sql按bucket聚合的路径保存
+        Map<String, InternalAggregation> metricAggregations = new HashMap<>();
+        Map<List<String>, GroupByResult> groupByResults = new HashMap<>();
+        for (Tuple<AggregationSQLExpression, SqlResponse> aggResult : aggResults) {
             AggregationSQLExpression agg = aggResult.v1();
             SqlResponse sqlResponse = aggResult.v2();
+            Object[][] sqlData = sqlResponse.getRowCount() > 0 ? sqlResponse.getSqlResult().getData() : new Object[0][];
+
+            if (agg.getGroupBy().isEmpty()) {
+                Object[] row = sqlData.length > 0 ? sqlData[0] : new Object[agg.getMetrics().size()];
+                for (int i = 0; i < agg.getMetrics().size(); i++) {
+                    InternalAggregation aggregation = agg.getMetrics().get(i).buildInternalAggregation(row[i]);
+                    if (aggregation != null) {
+                        metricAggregations.put(aggregation.getName(), aggregation);
+                    }
+                }
+            } else {
+                List<String> path = new ArrayList<>(agg.getGroupBy().size());
+                for (BucketExpression bucket : agg.getGroupBy()) {
+                    path.add(bucket.getAggregationBuilder().getName());
+                }
+                groupByResults.put(path, new GroupByResult(agg, sqlData));
+            }
+        }
 
-            InternalAggregation internalAggregation;
-
-            List<InternalAggregation> groupByAggregations = new ArrayList<>();
-            Object[][] sqlData = sqlResponse.getSqlResult().getData();
+        List<InternalAggregation> internalAggregations = new ArrayList<>();
+        for (AggregationBuilder aggregationBuilder : aggregations.getAggregatorFactories()) {
+            if (aggregationBuilder instanceof ValuesSourceAggregationBuilder.LeafOnly) {
+                InternalAggregation aggregation = metricAggregations.get(aggregationBuilder.getName());
+                if (aggregation != null) {
+                    internalAggregations.add(aggregation);
+                }
+            } else {
+                internalAggregations.add(buildBucketAggregation(aggregationBuilder, List.of(), List.of(), groupByResults));
+            }
+        }
+        return InternalAggregations.from(internalAggregations);
+    }
 
-            for (int i = 0; i < sqlData.length; i++) {
-                Object[] row = sqlData[i];
-                List<String> groupByValues = new ArrayList<>();
-                List<Object> metricValues = new ArrayList<>();
+    /**
+     * 递归构建bucket聚合, 每个bucket的子bucket聚合从下一层group by的结果中按父级key取出
+     */
+    private static InternalAggregation buildBucketAggregation(
+        AggregationBuilder aggregationBuilder,
+        List<String> parentPath,
+        List<Object> parentKeys,
+        Map<List<String>, GroupByResult> groupByResults
+    ) {
+        List<String> path = new ArrayList<>(parentPath);
+        path.add(aggregationBuilder.getName());
+        GroupByResult groupByResult = groupByResults.get(path);
+        if (groupByResult == null) {
+            throw new IllegalStateException("aggregation result not found, path: " + path);
+        }
 
-                int pos = 0;
-                for (int j = 0; j < agg.getGroupBy().size(); j++) {
-                    groupByValues.add(row[pos++].toString());
-                }
-                for (int j = 0; j < agg.getMetrics().size(); j++) {
-                    metricValues.add(row[pos++]);
+        int depth = path.size();
+        BucketExpression bucketExpression = groupByResult.expression.getGroupBy().get(depth - 1);
+        List<MetricExpression> metrics = groupByResult.expression.getMetrics();
+        List<BucketResult> buckets = new ArrayList<>();
+        for (Object[] row : groupByResult.rows(parentKeys)) {
+            Object key = row[depth - 1];
+            // 最后一列为COUNT(*)
+            long docCount = ((Number) row[row.length - 1]).longValue();
+
+            Map<String, InternalAggregation> metricAggregations = new HashMap<>();
+            for (int i = 0; i < metrics.size(); i++) {
+                InternalAggregation aggregation = metrics.get(i).buildInternalAggregation(row[depth + i]);
+                if (aggregation != null) {
+                    metricAggregations.put(aggregation.getName(), aggregation);
                 }
+            }
 
-                // parse sqlResponse and build aggregations
-                List<InternalAggregation> subAggregations = new ArrayList<>();
-                for (int j = 0; j < agg.getMetrics().size(); j++) {
-                    MetricExpression metric = agg.getMetrics().get(j);
-                    InternalAggregation aggregation = metric.buildInternalAggregation(metricValues.get(j));
-                    subAggregations.add(aggregation);
+            List<Object> keys = new ArrayList<>(parentKeys);
+            keys.add(key);
+            List<InternalAggregation> subAggregations = new ArrayList<>();
+            for (AggregationBuilder subAggregationBuilder : aggregationBuilder.getSubAggregations()) {
+                if (subAggregationBuilder instanceof ValuesSourceAggregationBuilder.LeafOnly) {
+                    InternalAggregation aggregation = metricAggregations.get(subAggregationBuilder.getName());
+                    if (aggregation != null) {
+                        subAggregations.add(aggregation);
+                    }
+                } else {
+                    subAggregations.add(buildBucketAggregation(subAggregationBuilder, path, keys, groupByResults));
                 }
             }
-        });
+            buckets.add(new BucketResult(key, docCount, InternalAggregations.from(subAggregations)));
+        }
+        return bucketExpression.buildInternalAggregation(buckets);
+    }
 
-        return InternalAggregations.EMPTY;
+    /**
+     * 一条group by sql的结果, 按父级bucket的key分组
+     */
+    private static class GroupByResult {
+        private final AggregationSQLExpression expression;
+        private final Map<List<Object>, List<Object[]>> rowsByParentKeys = new HashMap<>();
+
+        GroupByResult(AggregationSQLExpression expression, Object[][] sqlData) {
+            this.expression = expression;
+            int depth = expression.getGroupBy().size();
+            for (Object[] row : sqlData) {
+                List<Object> parentKeys = new ArrayList<>(Arrays.asList(row).subList(0, depth - 1));
+                rowsByParentKeys.computeIfAbsent(parentKeys, k -> new ArrayList<>()).add(row);
+            }
+        }
+
+        List<Object[]> rows(List<Object> parentKeys) {
+            return rowsByParentKeys.getOrDefault(parentKeys, List.of());
+        }
     }
 }
@@ -14,15 +14,19 @@
 
 package org.havenask.engine.search.dsl.plan;
 
-import java.util.Map;
+import java.util.List;
 import java.util.Objects;
 
+import org.havenask.action.ActionListener;
+import org.havenask.action.StepListener;
 import org.havenask.action.search.SearchResponse;
 import org.havenask.action.search.ShardSearchFailure;
 import org.havenask.cluster.metadata.IndexMetadata;
 import org.havenask.engine.search.action.TransportHavenaskSearchHelper;
 import org.havenask.engine.search.dsl.DSLSession;
+import org.havenask.engine.search.dsl.expression.AggregationSQLExpression;
 import org.havenask.engine.search.dsl.expression.ExpressionContext;
+import org.havenask.engine.search.dsl.expression.QuerySQLExpression;
 import org.havenask.engine.search.dsl.expression.SourceExpression;
 import org.havenask.engine.search.internal.HavenaskScroll;
 import org.havenask.search.SearchHits;
@@ -40,29 +44,61 @@ public class DSLExec implements Executable<SearchResponse> {
     }
 
     @Override
-    public SearchResponse execute(DSLSession session) throws Exception {
+    public void execute(DSLSession session, ActionListener<SearchResponse> listener) {
+        // 先完成dsl到sql的转换, 转换失败时不发出任何请求
+        List<AggregationSQLExpression> aggregationSQLExpressions = sourceExpression.getAggregationSQLExpressions(session.getIndex());
+
         // exec query
-        SearchHits searchHits = SearchHits.empty();
+        StepListener<SearchHits> queryStep = new StepListener<>();
         if (sourceExpression.size() > 0) {
-            IndexMetadata indexMetadata = session.getIndexMetadata();
-            Map<String, Object> indexMapping = indexMetadata.mapping() != null ? indexMetadata.mapping().getSourceAsMap() : null;
-            QueryExec queryExec = new QueryExec(sourceExpression.getQuerySQLExpression(session.getIndex(), indexMapping));
-            searchHits = queryExec.execute(session);
+            QuerySQLExpression querySQLExpression = sourceExpression.getQuerySQLExpression(
+                session.getIndex(),
+                session.getIndexPlan()::getFlattenFields
+            );
+            QueryExec queryExec = new QueryExec(querySQLExpression, useSinglePhase(session, querySQLExpression));
+            queryExec.execute(session, queryStep);
+        } else {
+            queryStep.onResponse(SearchHits.empty());
+        }
+
+        // exec aggregation, 与query并发执行
+        StepListener<InternalAggregations> aggStep = new StepListener<>();
+        if (aggregationSQLExpressions.size() > 0) {
+            AggExec aggExec = new AggExec(aggregationSQLExpressions);
+            aggExec.execute(session, aggStep);
+        } else {
+            aggStep.onResponse(InternalAggregations.EMPTY);
+        }
+
+        queryStep.whenComplete(searchHits -> {
             if (Objects.nonNull(sourceExpression.getHavenaskScroll())) {
                 int nextLastEmittedDocPos = searchHits.getHits().length - 1;
                 if (nextLastEmittedDocPos >= 0) {
                     sourceExpression.setLastEmittedDocId(searchHits.getHits()[nextLastEmittedDocPos].getId());
                 }
             }
-        }
+            aggStep.whenComplete(
+                aggregations -> listener.onResponse(buildSearchResponse(session, searchHits, aggregations)),
+                listener::onFailure
+            );
+        }, listener::onFailure);
+    }
 
-        // exec aggregation
-        InternalAggregations aggregations = InternalAggregations.EMPTY;
-        if (sourceExpression.getAggregationSQLExpressions(session.getIndex()).size() > 0) {
-            AggExec aggExec = new AggExec(sourceExpression.getAggregationSQLExpressions(session.getIndex()));
-            aggregations = aggExec.execute(session);
+    /**
+     * 小size且需要返回_source时, query和fetch合并为一次qrs请求; 大size时join代价较高, 仍走两阶段
+     */
+    private boolean useSinglePhase(DSLSession session, QuerySQLExpression querySQLExpression) {
+        if (sourceExpression.size() > session.getSinglePhaseMaxSize()) {
+            return false;
         }
+        // 不需要_source时两阶段也只有一次请求
+        if (false == session.isSourceEnabled() || (dsl.fetchSource() != null && false == dsl.fetchSource().fetchSource())) {
+            return false;
+        }
+        return querySQLExpression.supportsSinglePhase();
+    }
 
+    private SearchResponse buildSearchResponse(DSLSession session, SearchHits searchHits, InternalAggregations aggregations) {
         IndexMetadata indexMetadata = session.getIndexMetadata();
 
         // build scrollId
@@ -14,8 +14,9 @@
 
 package org.havenask.engine.search.dsl.plan;
 
+import org.havenask.action.ActionListener;
 import org.havenask.engine.search.dsl.DSLSession;
 
 public interface Executable<T> {
-    T execute(DSLSession session) throws Exception;
+    void execute(DSLSession session, ActionListener<T> listener);
 }
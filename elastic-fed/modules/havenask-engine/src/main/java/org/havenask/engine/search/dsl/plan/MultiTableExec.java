@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search.dsl.plan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+import org.apache.lucene.search.TotalHits;
+import org.havenask.action.ActionListener;
+import org.havenask.action.search.SearchRequest;
+import org.havenask.action.search.SearchResponse;
+import org.havenask.action.search.ShardSearchFailure;
+import org.havenask.action.support.GroupedActionListener;
+import org.havenask.common.collect.Tuple;
+import org.havenask.common.util.BigArrays;
+import org.havenask.search.SearchHit;
+import org.havenask.search.SearchHits;
+import org.havenask.search.aggregations.AggregationBuilder;
+import org.havenask.search.aggregations.InternalAggregation;
+import org.havenask.search.aggregations.InternalAggregations;
+import org.havenask.search.aggregations.metrics.AvgAggregationBuilder;
+import org.havenask.search.aggregations.pipeline.PipelineAggregator;
+import org.havenask.search.builder.SearchSourceBuilder;
+import org.havenask.search.internal.InternalSearchResponse;
+import org.havenask.search.sort.ScoreSortBuilder;
+import org.havenask.search.sort.SortBuilder;
+import org.havenask.search.sort.SortOrder;
+
+/**
+ * 多表查询: 每个havenask表各自执行一次dsl查询, 在协调节点上合并top-k的hits和聚合结果.
+ *
+ * 每个表查询前from+size条, 合并时用容量为from+size的优先队列按分数淘汰, 最后丢弃前from条.
+ */
+public class MultiTableExec {
+    private static final int DEFAULT_SEARCH_SIZE = 10;
+
+    private final SearchSourceBuilder dsl;
+    private final int from;
+    private final int size;
+    private final boolean scoreAscending;
+
+    public MultiTableExec(SearchSourceBuilder dsl) {
+        this.dsl = dsl != null ? dsl : new SearchSourceBuilder();
+        this.size = this.dsl.size() >= 0 ? this.dsl.size() : DEFAULT_SEARCH_SIZE;
+        this.from = this.dsl.from() >= 0 ? this.dsl.from() : 0;
+        this.scoreAscending = isScoreAscending(this.dsl.sorts());
+    }
+
+    /**
+     * 协调节点只能按分数合并hits, 且avg聚合的结果不能跨表合并, 不满足条件的多表查询仍走shard级别的查询
+     */
+    public static boolean supports(SearchRequest searchRequest) {
+        if (searchRequest.scroll() != null) {
+            return false;
+        }
+        SearchSourceBuilder source = searchRequest.source();
+        if (source == null) {
+            return true;
+        }
+        List<SortBuilder<?>> sorts = source.sorts();
+        if (sorts != null && false == sorts.isEmpty() && (sorts.size() > 1 || false == sorts.get(0) instanceof ScoreSortBuilder)) {
+            return false;
+        }
+        if (source.searchAfter() != null || source.collapse() != null) {
+            return false;
+        }
+        return source.aggregations() == null || supportsAggregations(source.aggregations().getAggregatorFactories());
+    }
+
+    private static boolean supportsAggregations(Collection<AggregationBuilder> aggregationBuilders) {
+        for (AggregationBuilder aggregationBuilder : aggregationBuilders) {
+            if (aggregationBuilder instanceof AvgAggregationBuilder) {
+                return false;
+            }
+            if (false == supportsAggregations(aggregationBuilder.getSubAggregations())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isScoreAscending(List<SortBuilder<?>> sorts) {
+        return sorts != null && sorts.size() == 1 && sorts.get(0) instanceof ScoreSortBuilder && sorts.get(0).order() == SortOrder.ASC;
+    }
+
+    /**
+     * @return 单表查询使用的dsl, 从第0条开始取from+size条
+     */
+    public SearchSourceBuilder buildTableSource() {
+        return dsl.shallowCopy().from(0).size(from + size);
+    }
+
+    /**
+     * 并发执行所有表的查询, 全部返回后合并结果, 任一表失败则整个查询失败
+     *
+     * @param tableSearches 每个表的查询, 顺序决定分数相同时hits的先后
+     */
+    public void execute(List<Consumer<ActionListener<SearchResponse>>> tableSearches, ActionListener<SearchResponse> listener) {
+        long startTime = System.currentTimeMillis();
+        GroupedActionListener<Tuple<Integer, SearchResponse>> groupedListener = new GroupedActionListener<>(
+            ActionListener.map(listener, results -> {
+                SearchResponse[] responses = new SearchResponse[results.size()];
+                for (Tuple<Integer, SearchResponse> result : results) {
+                    responses[result.v1()] = result.v2();
+                }
+                return merge(Arrays.asList(responses), System.currentTimeMillis() - startTime);
+            }),
+            tableSearches.size()
+        );
+        for (int i = 0; i < tableSearches.size(); i++) {
+            int tableIndex = i;
+            tableSearches.get(i).accept(ActionListener.map(groupedListener, response -> new Tuple<>(tableIndex, response)));
+        }
+    }
+
+    SearchResponse merge(List<SearchResponse> responses, long took) {
+        int topN = from + size;
+        // 队首为当前最差的hit, 超过topN时淘汰
+        Comparator<TableHit> comparator = TableHit.comparator(scoreAscending);
+        PriorityQueue<TableHit> queue = new PriorityQueue<>(Math.max(1, topN), comparator.reversed());
+
+        long totalHitsValue = 0;
+        TotalHits.Relation relation = TotalHits.Relation.EQUAL_TO;
+        float maxScore = Float.NaN;
+        int totalShards = 0;
+        int successfulShards = 0;
+        int skippedShards = 0;
+        List<InternalAggregations> aggregationsList = new ArrayList<>(responses.size());
+        for (int tableIndex = 0; tableIndex < responses.size(); tableIndex++) {
+            SearchResponse response = responses.get(tableIndex);
+            SearchHits hits = response.getHits();
+            if (hits.getTotalHits() != null) {
+                totalHitsValue += hits.getTotalHits().value;
+                if (hits.getTotalHits().relation == TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO) {
+                    relation = TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO;
+                }
+            }
+            if (false == Float.isNaN(hits.getMaxScore())) {
+                maxScore = Float.isNaN(maxScore) ? hits.getMaxScore() : Math.max(maxScore, hits.getMaxScore());
+            }
+            if (topN > 0) {
+                SearchHit[] tableHits = hits.getHits();
+                for (int i = 0; i < tableHits.length; i++) {
+                    queue.offer(new TableHit(tableIndex, i, tableHits[i]));
+                    if (queue.size() > topN) {
+                        queue.poll();
+                    }
+                }
+            }
+            if (response.getAggregations() != null) {
+                aggregationsList.add((InternalAggregations) response.getAggregations());
+            }
+            totalShards += response.getTotalShards();
+            successfulShards += response.getSuccessfulShards();
+            skippedShards += response.getSkippedShards();
+        }
+
+        // 按从差到好的顺序取出, 丢弃排名在from之前的hit
+        SearchHit[] mergedHits = new SearchHit[Math.max(0, queue.size() - from)];
+        for (int rank = queue.size() - 1; rank >= 0; rank--) {
+            TableHit tableHit = queue.poll();
+            if (rank >= from) {
+                mergedHits[rank - from] = tableHit.hit;
+            }
+        }
+        SearchHits searchHits = new SearchHits(mergedHits, new TotalHits(totalHitsValue, relation), maxScore);
+
+        InternalAggregations aggregations = reduceAggregations(aggregationsList);
+        InternalSearchResponse internalSearchResponse = new InternalSearchResponse(searchHits, aggregations, null, null, false, false, 1);
+        return new SearchResponse(
+            internalSearchResponse,
+            null,
+            totalShards,
+            successfulShards,
+            skippedShards,
+            took,
+            ShardSearchFailure.EMPTY_ARRAY,
+            SearchResponse.Clusters.EMPTY
+        );
+    }
+
+    private static InternalAggregations reduceAggregations(List<InternalAggregations> aggregationsList) {
+        if (aggregationsList.stream().allMatch(aggregations -> aggregations.asList().isEmpty())) {
+            return InternalAggregations.EMPTY;
+        }
+        InternalAggregation.ReduceContext reduceContext = InternalAggregation.ReduceContext.forFinalReduction(
+            BigArrays.NON_RECYCLING_INSTANCE,
+            null,
+            buckets -> {},
+            PipelineAggregator.PipelineTree.EMPTY
+        );
+        return InternalAggregations.topLevelReduce(aggregationsList, reduceContext);
+    }
+
+    private static class TableHit {
+        private final int tableIndex;
+        private final int position;
+        private final SearchHit hit;
+
+        TableHit(int tableIndex, int position, SearchHit hit) {
+            this.tableIndex = tableIndex;
+            this.position = position;
+            this.hit = hit;
+        }
+
+        /**
+         * 分数相同时按表的顺序和表内的顺序排列, 保证结果稳定
+         */
+        static Comparator<TableHit> comparator(boolean scoreAscending) {
+            Comparator<TableHit> byScore = Comparator.comparingDouble(tableHit -> tableHit.hit.getScore());
+            if (false == scoreAscending) {
+                byScore = byScore.reversed();
+            }
+            return byScore.thenComparingInt(tableHit -> tableHit.tableIndex).thenComparingInt(tableHit -> tableHit.position);
+        }
+    }
+}
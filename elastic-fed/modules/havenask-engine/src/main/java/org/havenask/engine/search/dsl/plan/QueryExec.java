@@ -16,9 +16,9 @@ package org.havenask.engine.search.dsl.plan;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.havenask.client.ha.SqlResponse;
+import org.havenask.action.ActionListener;
+import org.havenask.engine.rpc.ColumnarSqlResponse;
 import org.havenask.engine.rpc.QrsSqlRequest;
-import org.havenask.engine.rpc.QrsSqlResponse;
 import org.havenask.engine.search.HavenaskSearchFetchProcessor;
 import org.havenask.engine.search.dsl.DSLSession;
 import org.havenask.engine.search.dsl.expression.QuerySQLExpression;
@@ -33,21 +33,54 @@ public class QueryExec implements Executable<SearchHits> {
     protected Logger logger = LogManager.getLogger(QueryExec.class);
 
     private final QuerySQLExpression querySQLExpression;
+    private final boolean singlePhase;
 
     public QueryExec(QuerySQLExpression querySQLExpression) {
+        this(querySQLExpression, false);
+    }
+
+    /**
+     * @param singlePhase 为true时query和fetch合并为一条join summary表的sql, 只适用于小size的查询
+     */
+    public QueryExec(QuerySQLExpression querySQLExpression, boolean singlePhase) {
         this.querySQLExpression = querySQLExpression;
+        this.singlePhase = singlePhase;
     }
 
     @Override
-    public SearchHits execute(DSLSession session) throws Exception {
+    public void execute(DSLSession session, ActionListener<SearchHits> listener) {
         // exec query
-        String sql = querySQLExpression.translate();
-        logger.debug("query exec, session: {}, exec sql: {}", session.getSessionId(), sql);
+        String sql = singlePhase ? querySQLExpression.translateSinglePhase() : querySQLExpression.translate();
+        logger.debug("query exec, session: {}, single phase: {}, exec sql: {}", session.getSessionId(), singlePhase, sql);
         String kvpair = "format:full_json;timeout:10000;databaseName:" + SQL_DATABASE;
 
-        QrsSqlResponse qrsSqlResponse = session.getClient().executeSql(new QrsSqlRequest(sql, kvpair));
-        SqlResponse queryPhaseSqlResponse = SqlResponse.parse(qrsSqlResponse.getResult());
-        if (queryPhaseSqlResponse.getErrorInfo().getErrorCode() != 0) {
+        session.executeSqlColumnar(new QrsSqlRequest(sql, kvpair), ActionListener.wrap(queryPhaseSqlResponse -> {
+            checkQueryPhaseSqlResponse(sql, queryPhaseSqlResponse);
+            HavenaskSearchFetchProcessor fetchProcessor = new HavenaskSearchFetchProcessor(session.getClient(), session.getThreadPool());
+            if (singlePhase) {
+                listener.onResponse(
+                    fetchProcessor.executeSinglePhaseHits(
+                        queryPhaseSqlResponse,
+                        session.getIndex(),
+                        session.getQuery(),
+                        session.isSourceEnabled()
+                    )
+                );
+                return;
+            }
+            // fetch
+            fetchProcessor.executeFetchHits(
+                queryPhaseSqlResponse,
+                session.getIndex(),
+                session.getQuery(),
+                session.isSourceEnabled(),
+                listener
+            );
+        }, listener::onFailure));
+    }
+
+    private static void checkQueryPhaseSqlResponse(String sql, ColumnarSqlResponse queryPhaseSqlResponse) throws SQLException {
+        if (queryPhaseSqlResponse.getErrorCode() != 0) {
             throw new SQLException(
                 String.format(
                     Locale.ROOT,
@@ -55,14 +88,11 @@ public class QueryExec implements Executable<SearchHits> {
                         + "query phase sql: '%s', "
                         + "errorCode: %s, error: %s, message: %s ",
                     sql,
-                    queryPhaseSqlResponse.getErrorInfo().getErrorCode(),
-                    queryPhaseSqlResponse.getErrorInfo().getError(),
-                    queryPhaseSqlResponse.getErrorInfo().getMessage()
+                    queryPhaseSqlResponse.getErrorCode(),
+                    queryPhaseSqlResponse.getError(),
+                    queryPhaseSqlResponse.getMessage()
                 )
             );
         }
-
-        HavenaskSearchFetchProcessor fetchProcessor = new HavenaskSearchFetchProcessor(session.getClient());
-        return fetchProcessor.executeFetchHits(queryPhaseSqlResponse, session.getIndex(), session.getQuery(), session.isSourceEnabled());
     }
 }
@@ -46,7 +46,7 @@ public class HavenaskFetchSourcePhase implements HavenaskFetchSubPhase {
     }
 
     private void hitExecute(String indexName, FetchSourceContext fetchSourceContext, HitContent hitContent) {
-        BytesReference sourceAsBytes = new BytesArray((String) hitContent.source);
+        BytesReference sourceAsBytes = toSourceRef(hitContent.source);
         SourceContent sourceContent = loadSource(sourceAsBytes);
 
         // If source is disabled in the mapping, then attempt to return early.
@@ -82,6 +82,16 @@ public class HavenaskFetchSourcePhase implements HavenaskFetchSubPhase {
         }
     }
 
+    /**
+     * fetch结果中的_source可能是String, 也可能是列式解析结果中的{@link BytesReference}切片
+     */
+    public static BytesReference toSourceRef(Object source) {
+        if (source instanceof BytesReference) {
+            return (BytesReference) source;
+        }
+        return new BytesArray((String) source);
+    }
+
     private SourceContent loadSource(BytesReference sourceAsBytes) {
         Tuple<XContentType, Map<String, Object>> tuple = sourceAsMapAndType(sourceAsBytes);
         XContentType sourceContentType = tuple.v1();
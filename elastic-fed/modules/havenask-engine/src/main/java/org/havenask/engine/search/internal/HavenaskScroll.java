@@ -22,6 +22,8 @@ public class HavenaskScroll {
     public static final String SCROLL_ORDER_BY = "ORDER BY `_id` ASC";
     private String nodeId;
     private String lastEmittedDocId = null;
+    // 翻页的_id上界(包含), 导出时同一分区内的多个slice按_id区间拆分
+    private String endDocId = null;
     private Scroll scroll;
 
     public HavenaskScroll(String nodeId, Scroll scroll) {
@@ -41,19 +43,34 @@ public class HavenaskScroll {
         return lastEmittedDocId;
     }
 
+    public void setEndDocId(String endDocId) {
+        this.endDocId = endDocId;
+    }
+
+    public String getEndDocId() {
+        return endDocId;
+    }
+
     public Scroll getScroll() {
         return scroll;
     }
 
-    public static boolean hasLastEmittedDoc(HavenaskScroll havenaskScroll) {
-        return Objects.nonNull(havenaskScroll) && Objects.nonNull(havenaskScroll.getLastEmittedDocId());
+    public static boolean hasDocIdRange(HavenaskScroll havenaskScroll) {
+        return Objects.nonNull(havenaskScroll)
+            && (Objects.nonNull(havenaskScroll.getLastEmittedDocId()) || Objects.nonNull(havenaskScroll.getEndDocId()));
     }
 
-    public String translateLastEmittedDoc() {
+    public String translateDocIdRange() {
         StringBuilder sb = new StringBuilder();
         if (Objects.nonNull(lastEmittedDocId)) {
             sb.append("`_id` > '").append(lastEmittedDocId).append("'");
         }
+        if (Objects.nonNull(endDocId)) {
+            if (sb.length() > 0) {
+                sb.append(" AND ");
+            }
+            sb.append("`_id` <= '").append(endDocId).append("'");
+        }
         return sb.toString();
     }
 }
@@ -14,6 +14,11 @@
 
 package org.havenask.engine.search.internal;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.havenask.action.ActionListener;
+import org.havenask.action.StepListener;
+import org.havenask.action.search.SearchResponse;
 import org.havenask.common.lease.Releasable;
 import org.havenask.common.lease.Releasables;
 import org.havenask.engine.search.dsl.DSLSession;
@@ -22,19 +27,36 @@ import org.havenask.threadpool.ThreadPool;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class HavenaskScrollContext {
+    private static final Logger logger = LogManager.getLogger(HavenaskScrollContext.class);
+
     private final String scrollSessionId;
     private final ThreadPool threadPool;
     private final DSLSession dslSession;
     private final AtomicLong keepAlive;
     private final AtomicLong lastAccessTime;
     private final long startTimeInNano = System.nanoTime();
+    private final ScrollPrefetchMemory prefetchMemory;
+
+    // 后台预取的下一页, 没有预取时为null
+    private PrefetchedPage nextPage;
+    private boolean closed;
 
     public HavenaskScrollContext(ThreadPool threadPool, DSLSession dslSession, long keepAliveInMillis) {
+        this(threadPool, dslSession, keepAliveInMillis, new ScrollPrefetchMemory(0));
+    }
+
+    public HavenaskScrollContext(
+        ThreadPool threadPool,
+        DSLSession dslSession,
+        long keepAliveInMillis,
+        ScrollPrefetchMemory prefetchMemory
+    ) {
         this.scrollSessionId = dslSession.getSessionId();
         this.threadPool = threadPool;
         this.dslSession = dslSession;
         this.keepAlive = new AtomicLong(keepAliveInMillis);
         this.lastAccessTime = new AtomicLong(nowInMillis());
+        this.prefetchMemory = prefetchMemory;
     }
 
     public DSLSession getDSLSession() {
@@ -66,4 +88,83 @@ public class HavenaskScrollContext {
     public long getStartTimeInNano() {
         return startTimeInNano;
     }
+
+    /**
+     * 返回下一页, 已有预取结果时直接使用, 否则同步执行一次查询. 返回后在后台预取再下一页.
+     */
+    public void executeNextPage(ActionListener<SearchResponse> listener) {
+        PrefetchedPage page;
+        synchronized (this) {
+            page = nextPage;
+            nextPage = null;
+        }
+        if (page != null) {
+            page.consume();
+        } else {
+            page = new PrefetchedPage();
+            page.consumed = true;
+            dslSession.execute(page.response);
+        }
+        page.response.whenComplete(searchResponse -> {
+            prefetchIfNotExhausted(searchResponse);
+            listener.onResponse(searchResponse);
+        }, listener::onFailure);
+    }
+
+    /**
+     * 当前页有数据时预取下一页, 空页表示scroll已经结束
+     */
+    public void prefetchIfNotExhausted(SearchResponse searchResponse) {
+        if (searchResponse.getHits().getHits().length == 0) {
+            return;
+        }
+        PrefetchedPage page;
+        synchronized (this) {
+            if (closed || nextPage != null || false == prefetchMemory.hasCapacity()) {
+                return;
+            }
+            page = new PrefetchedPage();
+            nextPage = page;
+        }
+        // 预取失败时由下一次scroll请求返回异常
+        page.response.whenComplete(page::account, e -> logger.debug("havenask scroll [{}] prefetch failed", scrollSessionId));
+        dslSession.execute(page.response);
+    }
+
+    /**
+     * 释放未被取走的预取结果
+     */
+    public void close() {
+        PrefetchedPage page;
+        synchronized (this) {
+            closed = true;
+            page = nextPage;
+            nextPage = null;
+        }
+        if (page != null) {
+            page.consume();
+        }
+    }
+
+    private class PrefetchedPage {
+        private final StepListener<SearchResponse> response = new StepListener<>();
+        private boolean consumed;
+        private long bytes;
+
+        /**
+         * 预取完成且尚未被取走时计入内存占用
+         */
+        private synchronized void account(SearchResponse searchResponse) {
+            if (false == consumed) {
+                bytes = ScrollPrefetchMemory.estimateBytes(searchResponse);
+                prefetchMemory.add(bytes);
+            }
+        }
+
+        private synchronized void consume() {
+            consumed = true;
+            prefetchMemory.release(bytes);
+            bytes = 0;
+        }
+    }
 }
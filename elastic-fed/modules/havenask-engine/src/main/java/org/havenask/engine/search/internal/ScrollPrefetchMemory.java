@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.havenask.action.search.SearchResponse;
+import org.havenask.search.SearchHit;
+
+/**
+ * 记录scroll预取结果占用的内存, 超过上限后不再发起新的预取.
+ *
+ * 预取完成后才能知道结果大小, 因此上限是软限制, 最多超出正在预取的页的大小.
+ */
+public class ScrollPrefetchMemory {
+    // 每个hit除_source外的估算开销
+    private static final long HIT_OVERHEAD_BYTES = 128;
+
+    private final long limitBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    public ScrollPrefetchMemory(long limitBytes) {
+        this.limitBytes = limitBytes;
+    }
+
+    public boolean hasCapacity() {
+        return limitBytes > 0 && usedBytes.get() < limitBytes;
+    }
+
+    public void add(long bytes) {
+        usedBytes.addAndGet(bytes);
+    }
+
+    public void release(long bytes) {
+        usedBytes.addAndGet(-bytes);
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public long getLimitBytes() {
+        return limitBytes;
+    }
+
+    public static long estimateBytes(SearchResponse searchResponse) {
+        long bytes = 0;
+        for (SearchHit hit : searchResponse.getHits().getHits()) {
+            bytes += HIT_OVERHEAD_BYTES;
+            if (hit.getSourceRef() != null) {
+                bytes += hit.getSourceRef().length();
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search.rest;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.havenask.client.node.NodeClient;
+import org.havenask.common.xcontent.XContentParser;
+import org.havenask.engine.search.action.HavenaskExportAction;
+import org.havenask.engine.search.action.HavenaskExportRequest;
+import org.havenask.engine.search.action.HavenaskExportResponse;
+import org.havenask.rest.BaseRestHandler;
+import org.havenask.rest.BytesRestResponse;
+import org.havenask.rest.RestRequest;
+import org.havenask.rest.RestRequest.Method;
+import org.havenask.rest.RestResponse;
+import org.havenask.rest.RestStatus;
+import org.havenask.rest.action.RestResponseListener;
+import org.havenask.search.builder.SearchSourceBuilder;
+
+/**
+ * 按分区并发导出havenask索引, 响应体为ndjson, 未导出完成时在header中返回下一次请求使用的cursor
+ */
+public class RestHavenaskExportAction extends BaseRestHandler {
+    public static final String CURSOR_HEADER = "X-Havenask-Export-Cursor";
+    private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+    @Override
+    public String getName() {
+        return "havenask_export_action";
+    }
+
+    @Override
+    public List<Route> routes() {
+        return List.of(new Route(Method.GET, "/{index}/_havenask/export"), new Route(Method.POST, "/{index}/_havenask/export"));
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+        HavenaskExportRequest exportRequest = new HavenaskExportRequest(request.param("index"));
+        exportRequest.slices(request.paramAsInt("slices", 0));
+        exportRequest.batchSize(request.paramAsInt("size", HavenaskExportRequest.DEFAULT_BATCH_SIZE));
+        exportRequest.cursor(request.param("cursor"));
+        if (request.hasContentOrSourceParam()) {
+            try (XContentParser parser = request.contentOrSourceParamParser()) {
+                exportRequest.source(SearchSourceBuilder.fromXContent(parser));
+            }
+        }
+
+        return channel -> client.execute(HavenaskExportAction.INSTANCE, exportRequest, new RestResponseListener<>(channel) {
+            @Override
+            public RestResponse buildResponse(HavenaskExportResponse response) {
+                BytesRestResponse restResponse = new BytesRestResponse(RestStatus.OK, NDJSON_CONTENT_TYPE, response.getDocs());
+                if (response.getCursor() != null) {
+                    restResponse.addHeader(CURSOR_HEADER, response.getCursor());
+                }
+                return restResponse;
+            }
+        });
+    }
+}
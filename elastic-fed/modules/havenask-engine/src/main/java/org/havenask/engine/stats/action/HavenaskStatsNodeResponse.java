@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.havenask.engine.stats.action;
+
+import org.havenask.action.support.nodes.BaseNodeResponse;
+import org.havenask.cluster.node.DiscoveryNode;
+import org.havenask.common.io.stream.StreamInput;
+import org.havenask.common.io.stream.StreamOutput;
+import org.havenask.common.xcontent.ToXContentFragment;
+import org.havenask.common.xcontent.XContentBuilder;
+import org.havenask.engine.MetaDataSyncStats;
+import org.havenask.engine.ProcessControlStats;
+import org.havenask.engine.index.engine.RealtimeGetCacheStats;
+import org.havenask.engine.index.engine.WriteAdmissionStats;
+import org.havenask.engine.search.dsl.DSLPlanCacheStats;
+import org.havenask.index.cache.request.RequestCacheStats;
+
+import java.io.IOException;
+
+/**
+ * 节点上havenask各组件的统计
+ */
+public class HavenaskStatsNodeResponse extends BaseNodeResponse implements ToXContentFragment {
+    private final WriteAdmissionStats writeAdmissionStats;
+    private final ProcessControlStats processControlStats;
+    private final DSLPlanCacheStats planCacheStats;
+    private final RequestCacheStats requestCacheStats;
+    private final MetaDataSyncStats metaDataSyncStats;
+    private final RealtimeGetCacheStats realtimeGetCacheStats;
+
+    public HavenaskStatsNodeResponse(StreamInput in) throws IOException {
+        super(in);
+        writeAdmissionStats = new WriteAdmissionStats(in);
+        processControlStats = new ProcessControlStats(in);
+        planCacheStats = new DSLPlanCacheStats(in);
+        requestCacheStats = new RequestCacheStats(in);
+        metaDataSyncStats = new MetaDataSyncStats(in);
+        realtimeGetCacheStats = new RealtimeGetCacheStats(in);
+    }
+
+    public HavenaskStatsNodeResponse(
+        DiscoveryNode node,
+        WriteAdmissionStats writeAdmissionStats,
+        ProcessControlStats processControlStats,
+        DSLPlanCacheStats planCacheStats,
+        RequestCacheStats requestCacheStats,
+        MetaDataSyncStats metaDataSyncStats,
+        RealtimeGetCacheStats realtimeGetCacheStats
+    ) {
+        super(node);
+        this.writeAdmissionStats = writeAdmissionStats;
+        this.processControlStats = processControlStats;
+        this.planCacheStats = planCacheStats;
+        this.requestCacheStats = requestCacheStats;
+        this.metaDataSyncStats = metaDataSyncStats;
+        this.realtimeGetCacheStats = realtimeGetCacheStats;
+    }
+
+    public WriteAdmissionStats getWriteAdmissionStats() {
+        return writeAdmissionStats;
+    }
+
+    public ProcessControlStats getProcessControlStats() {
+        return processControlStats;
+    }
+
+    public DSLPlanCacheStats getPlanCacheStats() {
+        return planCacheStats;
+    }
+
+    public RequestCacheStats getRequestCacheStats() {
+        return requestCacheStats;
+    }
+
+    public MetaDataSyncStats getMetaDataSyncStats() {
+        return metaDataSyncStats;
+    }
+
+    public RealtimeGetCacheStats getRealtimeGetCacheStats() {
+        return realtimeGetCacheStats;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        writeAdmissionStats.writeTo(out);
+        processControlStats.writeTo(out);
+        planCacheStats.writeTo(out);
+        requestCacheStats.writeTo(out);
+        metaDataSyncStats.writeTo(out);
+        realtimeGetCacheStats.writeTo(out);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("name", getNode().getName());
+        writeAdmissionStats.toXContent(builder, params);
+        processControlStats.toXContent(builder, params);
+        planCacheStats.toXContent(builder, params);
+        requestCacheStats.toXContent(builder, params);
+        metaDataSyncStats.toXContent(builder, params);
+        realtimeGetCacheStats.toXContent(builder, params);
+        return builder;
+    }
+}
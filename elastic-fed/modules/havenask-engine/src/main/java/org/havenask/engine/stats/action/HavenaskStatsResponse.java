@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.havenask.engine.stats.action;
+
+import org.havenask.action.FailedNodeException;
+import org.havenask.action.support.nodes.BaseNodesResponse;
+import org.havenask.cluster.ClusterName;
+import org.havenask.common.io.stream.StreamInput;
+import org.havenask.common.io.stream.StreamOutput;
+import org.havenask.common.xcontent.ToXContentFragment;
+import org.havenask.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.List;
+
+public class HavenaskStatsResponse extends BaseNodesResponse<HavenaskStatsNodeResponse>
+    implements
+        ToXContentFragment {
+
+    public HavenaskStatsResponse(StreamInput in) throws IOException {
+        super(in);
+    }
+
+    public HavenaskStatsResponse(
+        ClusterName clusterName,
+        List<HavenaskStatsNodeResponse> nodes,
+        List<FailedNodeException> failures
+    ) {
+        super(clusterName, nodes, failures);
+    }
+
+    @Override
+    protected List<HavenaskStatsNodeResponse> readNodesFrom(StreamInput in) throws IOException {
+        return in.readList(HavenaskStatsNodeResponse::new);
+    }
+
+    @Override
+    protected void writeNodesTo(StreamOutput out, List<HavenaskStatsNodeResponse> nodes) throws IOException {
+        out.writeList(nodes);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("nodes");
+        for (HavenaskStatsNodeResponse node : getNodes()) {
+            builder.startObject(node.getNode().getId());
+            node.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+}
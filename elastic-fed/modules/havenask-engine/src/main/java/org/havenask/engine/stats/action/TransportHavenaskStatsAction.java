@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.havenask.engine.stats.action;
+
+import org.havenask.action.FailedNodeException;
+import org.havenask.action.support.ActionFilters;
+import org.havenask.action.support.nodes.TransportNodesAction;
+import org.havenask.cluster.service.ClusterService;
+import org.havenask.common.inject.Inject;
+import org.havenask.common.io.stream.StreamInput;
+import org.havenask.engine.MetaDataSyncer;
+import org.havenask.engine.NativeProcessControlService;
+import org.havenask.engine.index.engine.HavenaskEngine;
+import org.havenask.engine.index.engine.RealtimeGetCacheStats;
+import org.havenask.engine.index.engine.WriteAdmissionController;
+import org.havenask.engine.search.HavenaskSearchRequestCache;
+import org.havenask.engine.search.dsl.DSLPlanCache;
+import org.havenask.threadpool.ThreadPool;
+import org.havenask.transport.TransportService;
+
+import java.io.IOException;
+import java.util.List;
+
+public class TransportHavenaskStatsAction extends TransportNodesAction<
+    HavenaskStatsRequest,
+    HavenaskStatsResponse,
+    HavenaskStatsNodeRequest,
+    HavenaskStatsNodeResponse> {
+
+    private final WriteAdmissionController writeAdmissionController;
+    private final NativeProcessControlService nativeProcessControlService;
+    private final DSLPlanCache dslPlanCache;
+    private final HavenaskSearchRequestCache requestCache;
+    private final MetaDataSyncer metaDataSyncer;
+
+    @Inject
+    public TransportHavenaskStatsAction(
+        ThreadPool threadPool,
+        ClusterService clusterService,
+        TransportService transportService,
+        ActionFilters actionFilters,
+        WriteAdmissionController writeAdmissionController,
+        NativeProcessControlService nativeProcessControlService,
+        DSLPlanCache dslPlanCache,
+        HavenaskSearchRequestCache requestCache,
+        MetaDataSyncer metaDataSyncer
+    ) {
+        super(
+            HavenaskStatsAction.NAME,
+            threadPool,
+            clusterService,
+            transportService,
+            actionFilters,
+            HavenaskStatsRequest::new,
+            HavenaskStatsNodeRequest::new,
+            ThreadPool.Names.MANAGEMENT,
+            HavenaskStatsNodeResponse.class
+        );
+        this.writeAdmissionController = writeAdmissionController;
+        this.nativeProcessControlService = nativeProcessControlService;
+        this.dslPlanCache = dslPlanCache;
+        this.requestCache = requestCache;
+        this.metaDataSyncer = metaDataSyncer;
+    }
+
+    @Override
+    protected HavenaskStatsResponse newResponse(
+        HavenaskStatsRequest request,
+        List<HavenaskStatsNodeResponse> responses,
+        List<FailedNodeException> failures
+    ) {
+        return new HavenaskStatsResponse(clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected HavenaskStatsNodeRequest newNodeRequest(HavenaskStatsRequest request) {
+        return new HavenaskStatsNodeRequest();
+    }
+
+    @Override
+    protected HavenaskStatsNodeResponse newNodeResponse(StreamInput in) throws IOException {
+        return new HavenaskStatsNodeResponse(in);
+    }
+
+    @Override
+    protected HavenaskStatsNodeResponse nodeOperation(HavenaskStatsNodeRequest request) {
+        return new HavenaskStatsNodeResponse(
+            clusterService.localNode(),
+            writeAdmissionController.stats(),
+            nativeProcessControlService.stats(),
+            dslPlanCache.stats(),
+            requestCache.stats(),
+            metaDataSyncer.stats(),
+            realtimeGetCacheStats()
+        );
+    }
+
+    private RealtimeGetCacheStats realtimeGetCacheStats() {
+        RealtimeGetCacheStats stats = new RealtimeGetCacheStats();
+        for (HavenaskEngine engine : nativeProcessControlService.getHavenaskEngines()) {
+            stats.add(engine.realtimeGetCacheStats());
+        }
+        return stats;
+    }
+}
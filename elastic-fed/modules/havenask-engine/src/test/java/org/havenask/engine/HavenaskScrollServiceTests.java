@@ -14,25 +14,44 @@
 
 package org.havenask.engine;
 
+import org.apache.lucene.search.TotalHits;
+import org.havenask.action.ActionListener;
+import org.havenask.action.search.SearchResponse;
+import org.havenask.action.search.ShardSearchFailure;
+import org.havenask.action.support.PlainActionFuture;
 import org.havenask.cluster.HavenaskAllocationTestCase;
 import org.havenask.cluster.service.ClusterService;
 import org.havenask.common.settings.ClusterSettings;
 import org.havenask.common.settings.Setting;
 import org.havenask.common.settings.Settings;
+import org.havenask.common.bytes.BytesArray;
+import org.havenask.common.text.Text;
 import org.havenask.discovery.DiscoveryModule;
 import org.havenask.engine.index.engine.EngineSettings;
+import org.havenask.engine.search.dsl.DSLSession;
 import org.havenask.engine.search.internal.HavenaskScrollContext;
+import org.havenask.engine.search.internal.ScrollPrefetchMemory;
+import org.havenask.search.SearchHit;
+import org.havenask.search.SearchHits;
+import org.havenask.search.aggregations.InternalAggregations;
+import org.havenask.search.internal.InternalSearchResponse;
 import org.havenask.threadpool.TestThreadPool;
 import org.havenask.threadpool.ThreadPool;
 import org.junit.After;
 import org.junit.Before;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.havenask.discovery.DiscoveryModule.SINGLE_NODE_DISCOVERY_TYPE;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class HavenaskScrollServiceTests extends HavenaskAllocationTestCase {
@@ -118,4 +137,97 @@ public class HavenaskScrollServiceTests extends HavenaskAllocationTestCase {
         assertEquals(0, havenaskScrollService.getActiveContextSize());
     }
 
+    public void testPrefetchNextPage() {
+        DSLSession session = mock(DSLSession.class);
+        when(session.getSessionId()).thenReturn("prefetchSession");
+        AtomicInteger executions = new AtomicInteger();
+        doAnswer(invocation -> {
+            ActionListener<SearchResponse> listener = invocation.getArgument(0);
+            // 首页由search请求返回, 预取的第二页有数据, 第三页为空页
+            int execution = executions.incrementAndGet();
+            listener.onResponse(searchResponse(execution < 2 ? 2 : 0));
+            return null;
+        }).when(session).execute(any());
+
+        ScrollPrefetchMemory prefetchMemory = new ScrollPrefetchMemory(1024 * 1024);
+        HavenaskScrollContext context = new HavenaskScrollContext(threadPool, session, 60000, prefetchMemory);
+        havenaskScrollService.putScrollContext(context);
+
+        // 首页返回后预取第二页
+        context.prefetchIfNotExhausted(searchResponse(2));
+        assertEquals(1, executions.get());
+        assertTrue(prefetchMemory.getUsedBytes() > 0);
+
+        // 取走预取的第二页, 同时预取第三页
+        PlainActionFuture<SearchResponse> future = new PlainActionFuture<>();
+        context.executeNextPage(future);
+        assertEquals(2, future.actionGet().getHits().getHits().length);
+        assertEquals(2, executions.get());
+        assertEquals(0, prefetchMemory.getUsedBytes());
+
+        // 第三页为空, 不再预取
+        future = new PlainActionFuture<>();
+        context.executeNextPage(future);
+        assertEquals(0, future.actionGet().getHits().getHits().length);
+        assertEquals(2, executions.get());
+
+        // 没有预取结果时同步查询
+        future = new PlainActionFuture<>();
+        context.executeNextPage(future);
+        assertEquals(0, future.actionGet().getHits().getHits().length);
+        assertEquals(3, executions.get());
+
+        havenaskScrollService.removeScrollContext("prefetchSession");
+        assertEquals(0, prefetchMemory.getUsedBytes());
+    }
+
+    public void testPrefetchReleasedOnRemove() {
+        DSLSession session = mock(DSLSession.class);
+        when(session.getSessionId()).thenReturn("removedSession");
+        doAnswer(invocation -> {
+            ActionListener<SearchResponse> listener = invocation.getArgument(0);
+            listener.onResponse(searchResponse(2));
+            return null;
+        }).when(session).execute(any());
+
+        ScrollPrefetchMemory prefetchMemory = new ScrollPrefetchMemory(1024 * 1024);
+        HavenaskScrollContext context = new HavenaskScrollContext(threadPool, session, 60000, prefetchMemory);
+        havenaskScrollService.putScrollContext(context);
+        context.prefetchIfNotExhausted(searchResponse(2));
+        assertTrue(prefetchMemory.getUsedBytes() > 0);
+
+        havenaskScrollService.removeScrollContext("removedSession");
+        assertEquals(0, prefetchMemory.getUsedBytes());
+
+        // 关闭后不再预取
+        context.prefetchIfNotExhausted(searchResponse(2));
+        assertEquals(0, prefetchMemory.getUsedBytes());
+    }
+
+    public void testPrefetchDisabled() {
+        DSLSession session = mock(DSLSession.class);
+        when(session.getSessionId()).thenReturn("disabledSession");
+        HavenaskScrollContext context = new HavenaskScrollContext(threadPool, session, 60000);
+        context.prefetchIfNotExhausted(searchResponse(2));
+        verify(session, never()).execute(any());
+    }
+
+    private static SearchResponse searchResponse(int hitCount) {
+        SearchHit[] hits = new SearchHit[hitCount];
+        for (int i = 0; i < hitCount; i++) {
+            hits[i] = new SearchHit(i, "id" + i, new Text("_doc"), Collections.emptyMap(), Collections.emptyMap());
+            hits[i].sourceRef(new BytesArray("{\"field\":\"value\"}"));
+        }
+        SearchHits searchHits = new SearchHits(hits, new TotalHits(hitCount, TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO), 1.0f);
+        return new SearchResponse(
+            new InternalSearchResponse(searchHits, InternalAggregations.EMPTY, null, null, false, false, 1),
+            null,
+            1,
+            1,
+            0,
+            1,
+            ShardSearchFailure.EMPTY_ARRAY,
+            SearchResponse.Clusters.EMPTY
+        );
+    }
 }
@@ -75,6 +75,7 @@ public class MetaDataSyncerTests extends HavenaskAllocationTestCase {
     private ThreadPool threadPool;
     private ClusterState clusterState;
     private Path defaultRuntimeDataPath;
+    private Path defaultTablePath;
 
     private static final int TARGET_VERSION = 1651870394;
     private static final int DEFAULT_PART_COUNT = 1;
@@ -165,11 +166,20 @@ public class MetaDataSyncerTests extends HavenaskAllocationTestCase {
             );
 
             // generate metaDataSyncer
-            metaDataSyncer = new MetaDataSyncer(clusterService, null, havenaskEngineEnvironment, nativeProcessControlService, null, null);
+            metaDataSyncer = new MetaDataSyncer(
+                clusterService,
+                null,
+                havenaskEngineEnvironment,
+                nativeProcessControlService,
+                null,
+                null,
+                null
+            );
             this.clusterState = state;
 
             // get defaultRuntimeDataPath
             defaultRuntimeDataPath = havenaskEngineEnvironment.getRuntimedataPath();
+            defaultTablePath = havenaskEngineEnvironment.getTablePath().resolve("0");
         }
     }
 
@@ -206,7 +216,7 @@ public class MetaDataSyncerTests extends HavenaskAllocationTestCase {
         }
     }
 
-    public void testCreateSearcherUpdateHeartbeatTargetRequest() throws Exception {
+    private void createVersionFiles() throws Exception {
         for (String indexName : havenaskIndexNames) {
             int shardCount = clusterState.metadata().index(indexName).getNumberOfShards();
             List<RangeUtil.PartitionRange> vec = splitRange(0, MAX_PARTITION_RANGE, shardCount);
@@ -218,6 +228,10 @@ public class MetaDataSyncerTests extends HavenaskAllocationTestCase {
                 Files.createFile(FilePath);
             }
         }
+    }
+
+    public void testCreateSearcherUpdateHeartbeatTargetRequest() throws Exception {
+        createVersionFiles();
         UpdateHeartbeatTargetRequest searcherTargetRequest = metaDataSyncer.createSearcherUpdateHeartbeatTargetRequest(clusterState);
 
         TargetInfo.ServiceInfo serviceInfo = searcherTargetRequest.getServiceInfo();
@@ -246,4 +260,40 @@ public class MetaDataSyncerTests extends HavenaskAllocationTestCase {
             assertEquals("in0" != indexNames[i] ? 2 : 3, (int) curTableInfo.table_type);
         }
     }
+
+    public void testIncrementalSearcherUpdateHeartbeatTarget() throws Exception {
+        createVersionFiles();
+        TargetInfo first = metaDataSyncer.createSearcherUpdateHeartbeatTargetRequest(clusterState).getTargetInfo();
+        long configCopies = metaDataSyncer.stats().getConfigCopies();
+        assertTrue(configCopies > 0);
+        assertEquals(first.table_info.keySet(), MetaDataSyncer.diffTables(null, first));
+
+        // 配置未变化时不再重复拷贝
+        TargetInfo second = metaDataSyncer.createSearcherUpdateHeartbeatTargetRequest(clusterState).getTargetInfo();
+        assertEquals(configCopies, metaDataSyncer.stats().getConfigCopies());
+        assertTrue(metaDataSyncer.stats().getConfigCopySkips() > 0);
+        assertEquals(Collections.emptySet(), MetaDataSyncer.diffTables(first, second));
+
+        // 只有version变化的table出现在diff中
+        String indexName = havenaskIndexNames[0];
+        int shardCount = clusterState.metadata().index(indexName).getNumberOfShards();
+        List<RangeUtil.PartitionRange> vec = splitRange(0, MAX_PARTITION_RANGE, shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            String partition = String.format(Locale.ROOT, "partition_%d_%d", vec.get(i).first, vec.get(i).second);
+            Files.createFile(defaultRuntimeDataPath.resolve(indexName).resolve(GENETATION_PATH).resolve(partition).resolve("version.9"));
+        }
+        TargetInfo third = metaDataSyncer.createSearcherUpdateHeartbeatTargetRequest(clusterState).getTargetInfo();
+        assertEquals(Set.of(indexName), MetaDataSyncer.diffTables(second, third));
+
+        // mapping更新后table配置在相同的index uuid下重新生成, 需要重新拷贝
+        Path schemaPath = defaultTablePath.resolve("schemas").resolve(indexName + "_schema.json");
+        Files.createDirectories(schemaPath.getParent());
+        Files.writeString(schemaPath, "{\"fields\":[{\"field_name\":\"f1\"}]}");
+        metaDataSyncer.createSearcherUpdateHeartbeatTargetRequest(clusterState);
+        long copiesAfterMappingUpdate = metaDataSyncer.stats().getConfigCopies();
+        assertEquals(configCopies + 1, copiesAfterMappingUpdate);
+        Files.writeString(schemaPath, "{\"fields\":[{\"field_name\":\"f2\"}]}");
+        metaDataSyncer.createSearcherUpdateHeartbeatTargetRequest(clusterState);
+        assertEquals(copiesAfterMappingUpdate + 1, metaDataSyncer.stats().getConfigCopies());
+    }
 }
@@ -17,6 +17,8 @@ package org.havenask.engine;
 import static org.havenask.discovery.DiscoveryModule.SINGLE_NODE_DISCOVERY_TYPE;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.HashSet;
@@ -181,5 +183,25 @@ public class NativeProcessControlServiceTests extends HavenaskTestCase {
             long tableSize = nativeProcessControlService.getTableSize(PathUtils.get("/exception"));
             assertEquals(0L, tableSize);
         }
+
+        // 统计目录下全部文件大小, 刷新间隔内返回缓存结果
+        {
+            Path tablePath = createTempDir();
+            Files.write(tablePath.resolve("version.0"), new byte[100]);
+            Files.createDirectories(tablePath.resolve("segment_0"));
+            Files.write(tablePath.resolve("segment_0").resolve("data"), new byte[1000]);
+            assertEquals(1100L, nativeProcessControlService.getTableSize(tablePath));
+
+            long walks = nativeProcessControlService.stats().getTableSizeWalks();
+            Files.write(tablePath.resolve("version.1"), new byte[100]);
+            assertEquals(1100L, nativeProcessControlService.getTableSize(tablePath));
+            assertEquals(walks, nativeProcessControlService.stats().getTableSizeWalks());
+            assertEquals(1L, nativeProcessControlService.stats().getTableSizeCacheHits());
+
+            // 删除index后缓存被清理, 重新统计
+            nativeProcessControlService.removeTableSize(tablePath.getParent());
+            assertEquals(1200L, nativeProcessControlService.getTableSize(tablePath));
+            assertEquals(walks + 1, nativeProcessControlService.stats().getTableSizeWalks());
+        }
     }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.index.engine;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.util.BytesRef;
+import org.havenask.common.bytes.BytesArray;
+import org.havenask.common.bytes.BytesReference;
+import org.havenask.common.xcontent.XContentBuilder;
+import org.havenask.common.xcontent.XContentType;
+import org.havenask.engine.index.mapper.VectorField;
+import org.havenask.index.engine.Engine.Operation;
+import org.havenask.index.engine.EngineTestCase;
+import org.havenask.index.mapper.IdFieldMapper;
+import org.havenask.index.mapper.KeywordFieldMapper;
+import org.havenask.index.mapper.ParseContext;
+import org.havenask.index.mapper.ParsedDocument;
+
+import static org.havenask.engine.index.engine.HavenaskEngine.buildWriteRequest;
+import static org.havenask.engine.index.engine.HavenaskEngine.toHaIndex;
+
+public class Ha3DocEncoderTests extends EngineTestCase {
+    public void testEncodeSameAsHaIndex() throws IOException {
+        ParseContext.Document document = testDocument();
+        document.add(new KeywordFieldMapper.KeywordField("user.name", new BytesRef("Bob 中文 😀"), new FieldType()));
+        document.add(new SortedNumericDocValuesField("user.age", -25));
+        document.add(new SortedNumericDocValuesField("user.age", 30));
+        document.add(new VectorField("user.image", new float[] { 0.4F, -0.7F, 1.0E-10F, Float.MAX_VALUE }, new FieldType()));
+        BytesReference source = new BytesArray("{\"user\":{\"name\":\"Bob 中文 😀\",\"age\":-25}}");
+        ParsedDocument parsedDocument = testParsedDocument("id", "routing", document, source, null);
+
+        String expected = buildWriteRequest("table", 0, Operation.TYPE.INDEX, toHaIndex(parsedDocument)).getSource();
+        String actual = new String(Ha3DocEncoder.encode(parsedDocument, Operation.TYPE.INDEX), StandardCharsets.UTF_8);
+        assertTrue(actual.startsWith("CMD=add\u001F\n"));
+        assertTrue(actual.endsWith("\u001E\n"));
+        assertEquals(parseFields(expected), parseFields(actual));
+        assertEquals("-25", parseFields(actual).get("user_age"));
+        assertEquals("0.4,-0.7,1.0E-10,3.4028235E38", parseFields(actual).get("user_image"));
+    }
+
+    public void testEncodeNonJsonSource() throws IOException {
+        XContentBuilder builder = XContentBuilder.builder(XContentType.SMILE.xContent());
+        builder.startObject();
+        builder.field("value", "test");
+        builder.endObject();
+        builder.close();
+        ParsedDocument parsedDocument = createParsedDoc("id", null, BytesReference.bytes(builder), XContentType.SMILE);
+
+        Map<String, String> fields = parseFields(
+            new String(Ha3DocEncoder.encode(parsedDocument, Operation.TYPE.INDEX), StandardCharsets.UTF_8)
+        );
+        assertEquals("{\"value\":\"test\"}", fields.get("_source"));
+        assertEquals("id", fields.get("_routing"));
+    }
+
+    public void testEncodeDelete() {
+        Map<String, String> haDoc = new HashMap<>();
+        haDoc.put(IdFieldMapper.NAME, "id");
+        String expected = buildWriteRequest("table", 0, Operation.TYPE.DELETE, haDoc).getSource();
+        assertEquals(expected, new String(Ha3DocEncoder.encodeDelete("id"), StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String> parseFields(String message) {
+        Map<String, String> fields = new HashMap<>();
+        for (String line : message.split("\u001F\n")) {
+            int pos = line.indexOf('=');
+            if (pos > 0) {
+                assertNull("duplicated field " + line, fields.put(line.substring(0, pos), line.substring(pos + 1)));
+            }
+        }
+        return fields;
+    }
+}
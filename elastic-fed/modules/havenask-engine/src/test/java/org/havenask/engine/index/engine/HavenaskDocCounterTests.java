@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.havenask.engine.index.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.havenask.action.ActionListener;
+import org.havenask.index.shard.ShardId;
+import org.havenask.test.HavenaskTestCase;
+
+public class HavenaskDocCounterTests extends HavenaskTestCase {
+    private final List<ActionListener<Long>> pending = new ArrayList<>();
+    private final HavenaskDocCounter docCounter = new HavenaskDocCounter(new ShardId("test", "_na_", 0), pending::add);
+
+    public void testCountOnlyWhenStateChanged() {
+        assertEquals(-1, docCounter.getDocCount());
+        assertTrue(docCounter.maybeCount(List.of(1L, 0L)));
+        // 已有count在执行时不重复发起
+        assertFalse(docCounter.maybeCount(List.of(2L, 0L)));
+        assertEquals(1, pending.size());
+
+        pending.remove(0).onResponse(10L);
+        assertEquals(10, docCounter.getDocCount());
+
+        // state没有变化时直接使用内存中的结果
+        assertFalse(docCounter.maybeCount(List.of(1L, 0L)));
+        assertEquals(1, docCounter.getCountTimes());
+
+        assertTrue(docCounter.maybeCount(List.of(2L, 0L)));
+        pending.remove(0).onResponse(11L);
+        assertEquals(11, docCounter.getDocCount());
+        assertEquals(2, docCounter.getCountTimes());
+    }
+
+    public void testRetryAfterFailure() {
+        assertTrue(docCounter.maybeCount(List.of(1L, 0L)));
+        pending.remove(0).onFailure(new RuntimeException("searcher unavailable"));
+        assertEquals(-1, docCounter.getDocCount());
+
+        // 失败后即使state不变也会重新统计
+        assertTrue(docCounter.maybeCount(List.of(1L, 0L)));
+        pending.remove(0).onResponse(0L);
+        assertEquals(0, docCounter.getDocCount());
+
+        assertTrue(docCounter.maybeCount(List.of(2L, 0L)));
+        pending.remove(0).onFailure(new RuntimeException("searcher unavailable"));
+        // 失败时保留上一次的结果
+        assertEquals(0, docCounter.getDocCount());
+        assertTrue(docCounter.maybeCount(List.of(2L, 0L)));
+    }
+}
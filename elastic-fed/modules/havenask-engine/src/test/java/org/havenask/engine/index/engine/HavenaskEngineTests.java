@@ -15,6 +15,7 @@
 package org.havenask.engine.index.engine;
 
 import com.carrotsearch.randomizedtesting.annotations.ThreadLeakFilters;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.SortedNumericDocValuesField;
@@ -22,6 +23,7 @@ import org.apache.lucene.util.BytesRef;
 import org.havenask.action.bulk.BackoffPolicy;
 import org.havenask.common.bytes.BytesArray;
 import org.havenask.common.bytes.BytesReference;
+import org.havenask.common.settings.Settings;
 import org.havenask.common.unit.TimeValue;
 import org.havenask.common.xcontent.XContentBuilder;
 import org.havenask.common.xcontent.XContentType;
@@ -44,9 +46,9 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.havenask.engine.index.engine.HavenaskEngine.DEFAULT_TIMEOUT;
+import static org.havenask.engine.index.engine.HavenaskEngine.MAX_RETRY;
 import static org.havenask.engine.index.engine.HavenaskEngine.buildProducerRecord;
 import static org.havenask.engine.index.engine.HavenaskEngine.toHaIndex;
 import static org.mockito.Mockito.mock;
@@ -60,6 +62,7 @@ public class HavenaskEngineTests extends EngineTestCase {
         document.add(new KeywordFieldMapper.KeywordField("user.name", new BytesRef("Bob"), new FieldType()));
         document.add(new SortedNumericDocValuesField("user.age", 25));
         document.add(new VectorField("user.image", new float[] { 0.4F, 0.7F }, new FieldType()));
+        document.add(new VectorField("user.icon", new float[] { 0.1F, -0.2F }, " ", new FieldType()));
         String source = "\"user\": { \n"
             + "        \"properties\": {\n"
             + "          \"name\": { \n"
@@ -88,6 +91,7 @@ public class HavenaskEngineTests extends EngineTestCase {
         assertEquals(haDoc.get("user_name"), "Bob");
         assertEquals(haDoc.get("user_age"), "25");
         assertEquals(haDoc.get("user_image"), "0.4,0.7");
+        assertEquals(haDoc.get("user_icon"), "0.1 -0.2");
     }
 
     // test toHaIndex with multi XContentType in _source
@@ -194,8 +198,8 @@ public class HavenaskEngineTests extends EngineTestCase {
         assertEquals(record.partition(), Integer.valueOf(0));
     }
 
-    // test retryWrite
-    public void testRetryWriteTimeout() {
+    // test retryRpc
+    public void testRetryRpcTimeout() {
         SearcherClient searcherClient = mock(SearcherClient.class);
         WriteRequest writeRequest = mock(WriteRequest.class);
         WriteResponse writeResponse = mock(WriteResponse.class);
@@ -205,7 +209,7 @@ public class HavenaskEngineTests extends EngineTestCase {
         long start = System.currentTimeMillis();
         TimeValue timeout = TimeValue.timeValueMillis(50);
         int max_retry = 3;
-        WriteResponse response = HavenaskEngine.retryWrite(mock(ShardId.class), searcherClient, writeRequest, timeout, timeout, max_retry);
+        WriteResponse response = HavenaskEngine.retryRpc(mock(ShardId.class), () -> searcherClient.write(writeRequest), timeout, max_retry);
         long cost = System.currentTimeMillis() - start;
         Iterator<TimeValue> backoff = BackoffPolicy.exponentialBackoff(timeout, max_retry).iterator();
         long backoffTime = 0;
@@ -217,47 +221,6 @@ public class HavenaskEngineTests extends EngineTestCase {
         assertEquals(response, writeResponse);
     }
 
-    public void testRetryWriteQueueFull() {
-        SearcherClient searcherClient = mock(SearcherClient.class);
-        WriteRequest writeRequest = mock(WriteRequest.class);
-        AtomicInteger count = new AtomicInteger(0);
-        WriteResponse fullResponse = new WriteResponse(ErrorCode.TBS_ERROR_OTHERS, "doc queue is full");
-        WriteResponse successResponse = new WriteResponse(ErrorCode.TBS_ERROR_NONE, null);
-        when(searcherClient.write(writeRequest)).thenAnswer(invocation -> {
-            if (count.getAndIncrement() < 5) {
-                return fullResponse;
-            } else {
-                return successResponse;
-            }
-        });
-        long start = System.currentTimeMillis();
-        TimeValue timeout = TimeValue.timeValueMillis(50);
-        TimeValue retryTimeout = TimeValue.timeValueMillis(100);
-        int max_retry = 2;
-        WriteResponse response = HavenaskEngine.retryWrite(
-            mock(ShardId.class),
-            searcherClient,
-            writeRequest,
-            timeout,
-            retryTimeout,
-            max_retry
-        );
-        long cost = System.currentTimeMillis() - start;
-        Iterator<TimeValue> backoff = BackoffPolicy.exponentialBackoff(timeout, max_retry).iterator();
-        long backoffTime = 0;
-        while (backoff.hasNext()) {
-            backoffTime += backoff.next().millis();
-        }
-
-        Iterator<TimeValue> retryBackoff = BackoffPolicy.exponentialBackoff(timeout, max_retry).iterator();
-        while (retryBackoff.hasNext()) {
-            backoffTime += retryBackoff.next().millis();
-        }
-
-        assertTrue(cost > backoffTime);
-        assertEquals(response, successResponse);
-    }
-
     public void testRetryNoValidTable() {
         SearcherClient searcherClient = mock(SearcherClient.class);
         WriteRequest writeRequest = mock(WriteRequest.class);
@@ -268,7 +231,7 @@ public class HavenaskEngineTests extends EngineTestCase {
         long start = System.currentTimeMillis();
         TimeValue timeout = TimeValue.timeValueMillis(50);
         int max_retry = 3;
-        WriteResponse response = HavenaskEngine.retryWrite(mock(ShardId.class), searcherClient, writeRequest, timeout, timeout, max_retry);
+        WriteResponse response = HavenaskEngine.retryRpc(mock(ShardId.class), () -> searcherClient.write(writeRequest), timeout, max_retry);
         long cost = System.currentTimeMillis() - start;
         Iterator<TimeValue> backoff = BackoffPolicy.exponentialBackoff(timeout, max_retry).iterator();
         long backoffTime = 0;
@@ -280,7 +243,7 @@ public class HavenaskEngineTests extends EngineTestCase {
         assertEquals(response, writeResponse);
     }
 
-    public void testWriteNoRetry() {
+    public void testRpcNoRetry() {
         SearcherClient searcherClient = mock(SearcherClient.class);
         WriteRequest writeRequest = mock(WriteRequest.class);
         WriteResponse writeResponse = mock(WriteResponse.class);
@@ -288,7 +251,12 @@ public class HavenaskEngineTests extends EngineTestCase {
         when(writeResponse.getErrorCode()).thenReturn(ErrorCode.TBS_ERROR_NONE);
         when(writeResponse.getErrorMessage()).thenReturn(null);
         long start = System.currentTimeMillis();
-        WriteResponse response = HavenaskEngine.retryWrite(mock(ShardId.class), searcherClient, writeRequest);
+        WriteResponse response = HavenaskEngine.retryRpc(
+            mock(ShardId.class),
+            () -> searcherClient.write(writeRequest),
+            DEFAULT_TIMEOUT,
+            MAX_RETRY
+        );
         long cost = System.currentTimeMillis() - start;
         assertTrue(cost < DEFAULT_TIMEOUT.millis());
         assertEquals(response, writeResponse);
@@ -454,4 +422,18 @@ public class HavenaskEngineTests extends EngineTestCase {
         long tableSize = HavenaskEngine.getTableVersionSize(workDir);
         assertEquals(tableSize, 82 + 28 + 2335 + 1050 + 1400 + 1371 + 347 + 52 + 400 + 41);
     }
+
+    public void testParseDocCount() {
+        String result = "{\"sql_result\":{\"column_name\":[\"COUNT(*)\"],\"column_type\":[\"int64\"],\"data\":[[42]]}}";
+        assertEquals(42, HavenaskEngine.parseDocCount(result));
+
+        String empty = "{\"sql_result\":{\"column_name\":[\"COUNT(*)\"],\"column_type\":[\"int64\"],\"data\":[]}}";
+        assertEquals(0, HavenaskEngine.parseDocCount(empty));
+    }
+
+    public void testKafkaProducerConfig() {
+        Map<String, Object> props = HavenaskEngine.kafkaProducerConfig(Settings.EMPTY);
+        assertEquals(true, props.get(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG));
+        assertEquals("all", props.get(ProducerConfig.ACKS_CONFIG));
+    }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.havenask.engine.index.engine;
+
+import java.nio.charset.StandardCharsets;
+
+import org.havenask.common.bytes.BytesArray;
+import org.havenask.test.HavenaskTestCase;
+
+public class HavenaskRealtimeGetCacheTests extends HavenaskTestCase {
+
+    public void testPutAndGet() {
+        HavenaskRealtimeGetCache cache = new HavenaskRealtimeGetCache(1024 * 1024);
+        cache.put("1", 0, 1, 1, new BytesArray("{\"foo\":\"bar\"}"), null);
+        cache.put("2", 1, 1, 1, new BytesArray("{\"foo\":\"baz\"}"), "r");
+
+        HavenaskRealtimeGetCache.CachedDoc doc = cache.get("1");
+        assertNotNull(doc);
+        assertEquals(0, doc.getSeqNo());
+        assertEquals(1, doc.getPrimaryTerm());
+        assertEquals(1, doc.getVersion());
+        assertEquals("{\"foo\":\"bar\"}", new String(doc.getSource(), StandardCharsets.UTF_8));
+        assertNull(doc.getRouting());
+        assertEquals("r", cache.get("2").getRouting());
+        assertNull(cache.get("3"));
+
+        RealtimeGetCacheStats stats = cache.stats();
+        assertEquals(2, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(2, stats.getDocCount());
+        assertEquals(cache.ramBytesUsed(), stats.getSizeInBytes());
+    }
+
+    public void testKeepLatestSeqNo() {
+        HavenaskRealtimeGetCache cache = new HavenaskRealtimeGetCache(1024 * 1024);
+        cache.put("1", 5, 1, 2, new BytesArray("{\"v\":2}"), null);
+        // 乱序到达的旧写入不能覆盖新写入
+        cache.put("1", 3, 1, 1, new BytesArray("{\"v\":1}"), null);
+        assertEquals(5, cache.get("1").getSeqNo());
+        cache.put("1", 6, 1, 3, new BytesArray("{\"v\":3}"), null);
+        assertEquals(3, cache.get("1").getVersion());
+        assertEquals(1, cache.size());
+    }
+
+    public void testInvalidateAndEvict() {
+        HavenaskRealtimeGetCache cache = new HavenaskRealtimeGetCache(1024 * 1024);
+        for (int i = 0; i < 10; i++) {
+            cache.put(String.valueOf(i), i, 1, 1, new BytesArray("{}"), null);
+        }
+        cache.invalidate("9");
+        assertNull(cache.get("9"));
+
+        cache.evictUpTo(4);
+        assertEquals(4, cache.size());
+        assertNull(cache.get("4"));
+        assertNotNull(cache.get("5"));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.ramBytesUsed());
+    }
+
+    public void testBoundedBySize() {
+        HavenaskRealtimeGetCache cache = new HavenaskRealtimeGetCache(4096);
+        byte[] source = new byte[512];
+        for (int i = 0; i < 100; i++) {
+            cache.put(String.valueOf(i), i, 1, 1, new BytesArray(source), null);
+            assertTrue(cache.ramBytesUsed() <= 4096);
+        }
+        // 最近写入的doc保留, 最早的被淘汰
+        assertNotNull(cache.get("99"));
+        assertNull(cache.get("0"));
+
+        // 超过上限的doc不缓存
+        cache.put("99", 100, 1, 2, new BytesArray(new byte[8192]), null);
+        assertNull(cache.get("99"));
+    }
+
+    public void testDisabled() {
+        HavenaskRealtimeGetCache cache = new HavenaskRealtimeGetCache(0);
+        assertFalse(cache.isEnabled());
+        cache.put("1", 0, 1, 1, new BytesArray("{}"), null);
+        assertNull(cache.get("1"));
+        assertEquals(0, cache.stats().getMissCount());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.index.engine;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.havenask.index.shard.ShardId;
+import org.havenask.test.HavenaskTestCase;
+
+public class HavenaskRealtimeSenderTests extends HavenaskTestCase {
+    private final ShardId shardId = new ShardId("test", "_na_", 0);
+
+    public void testSendWithoutWaiting() throws IOException {
+        MockProducer<String, String> producer = new MockProducer<>(false, new StringSerializer(), new StringSerializer());
+        HavenaskRealtimeSender sender = new HavenaskRealtimeSender(shardId, producer, Runnable::run, e -> fail("unexpected failure: " + e));
+        for (int i = 0; i < 3; i++) {
+            sender.send(String.valueOf(i), i, new ProducerRecord<>("topic", 0, String.valueOf(i), "doc"));
+        }
+        assertEquals(3, sender.getPendingCount());
+        assertEquals(0, sender.getAckedCount());
+
+        producer.completeNext();
+        assertEquals(2, sender.getPendingCount());
+
+        // flush会让producer立即发送剩余的写入并等待确认
+        sender.flush();
+        assertEquals(0, sender.getPendingCount());
+        assertEquals(3, sender.getAckedCount());
+        assertEquals(3, producer.history().size());
+        sender.close();
+    }
+
+    public void testSendFailure() throws IOException {
+        MockProducer<String, String> producer = new MockProducer<>(false, new StringSerializer(), new StringSerializer());
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        HavenaskRealtimeSender sender = new HavenaskRealtimeSender(shardId, producer, Runnable::run, failure::set);
+        sender.send("1", 0, new ProducerRecord<>("topic", 0, "1", "doc"));
+        sender.send("2", 1, new ProducerRecord<>("topic", 0, "2", "doc"));
+
+        producer.completeNext();
+        producer.errorNext(new RuntimeException("broker down"));
+        assertNotNull(failure.get());
+        assertTrue(failure.get().getMessage().contains("[id=2, seqNo=1]"));
+
+        IOException e = expectThrows(IOException.class, sender::flush);
+        assertSame(failure.get(), e.getCause());
+        expectThrows(IOException.class, () -> sender.send("3", 2, new ProducerRecord<>("topic", 0, "3", "doc")));
+    }
+
+    public void testFlushOnlyWaitsForEarlierSends() throws Exception {
+        // flush不主动完成发送, 由测试控制kafka确认的时机
+        MockProducer<String, String> producer = new MockProducer<>(false, new StringSerializer(), new StringSerializer()) {
+            @Override
+            public synchronized void flush() {}
+        };
+        HavenaskRealtimeSender sender = new HavenaskRealtimeSender(shardId, producer, Runnable::run, e -> fail("unexpected failure: " + e));
+        sender.send("1", 0, new ProducerRecord<>("topic", 0, "1", "doc"));
+
+        AtomicReference<Exception> flushFailure = new AtomicReference<>();
+        Thread flushThread = new Thread(() -> {
+            try {
+                sender.flush();
+            } catch (Exception e) {
+                flushFailure.set(e);
+            }
+        });
+        flushThread.start();
+        assertBusy(() -> assertEquals(Thread.State.WAITING, flushThread.getState()));
+
+        // flush开始后新发送的写入不影响本次flush
+        sender.send("2", 1, new ProducerRecord<>("topic", 0, "2", "doc"));
+        producer.completeNext();
+        flushThread.join(10000);
+        assertFalse(flushThread.isAlive());
+        assertNull(flushFailure.get());
+        assertEquals(1, sender.getPendingCount());
+
+        producer.completeNext();
+        sender.flush();
+        assertEquals(0, sender.getPendingCount());
+        sender.close();
+    }
+}
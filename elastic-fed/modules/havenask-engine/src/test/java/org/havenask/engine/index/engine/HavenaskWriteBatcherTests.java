@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.index.engine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.havenask.action.ActionListener;
+import org.havenask.common.settings.Settings;
+import org.havenask.common.unit.TimeValue;
+import org.havenask.engine.HavenaskEnginePlugin;
+import org.havenask.engine.rpc.BulkWriteRequest;
+import org.havenask.engine.rpc.BulkWriteResponse;
+import org.havenask.engine.rpc.SearcherClient;
+import org.havenask.engine.rpc.WriteRequest;
+import org.havenask.index.shard.ShardId;
+import org.havenask.test.HavenaskTestCase;
+import org.havenask.threadpool.ScalingExecutorBuilder;
+import org.havenask.threadpool.TestThreadPool;
+import org.havenask.threadpool.ThreadPool;
+
+import suez.service.proto.DocWriteState;
+import suez.service.proto.ErrorCode;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class HavenaskWriteBatcherTests extends HavenaskTestCase {
+    private ThreadPool threadPool;
+    private WriteAdmissionController admissionController;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        threadPool = new TestThreadPool(
+            getTestName(),
+            new ScalingExecutorBuilder(HavenaskEnginePlugin.HAVENASK_THREAD_POOL_NAME, 0, 4, TimeValue.timeValueSeconds(30L))
+        );
+        admissionController = new WriteAdmissionController(Settings.EMPTY, threadPool);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        ThreadPool.terminate(threadPool, 10, TimeUnit.SECONDS);
+    }
+
+    public void testBatchBySize() throws IOException {
+        SearcherClient searcherClient = mock(SearcherClient.class);
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            BulkWriteRequest request = invocation.getArgument(0);
+            batchSizes.add(request.size());
+            ActionListener<BulkWriteResponse> listener = invocation.getArgument(1);
+            listener.onResponse(new BulkWriteResponse(1L, Collections.emptyList()));
+            return null;
+        }).when(searcherClient).bulkWrite(any(BulkWriteRequest.class), any());
+
+        HavenaskWriteBatcher batcher = new HavenaskWriteBatcher(
+            new ShardId("test", "_na_", 0),
+            "test",
+            searcherClient,
+            threadPool,
+            3,
+            TimeValue.timeValueHours(1),
+            admissionController,
+            e -> fail("unexpected failure: " + e)
+        );
+        for (int i = 0; i < 5; i++) {
+            batcher.add(String.valueOf(i), i, new WriteRequest("test", 0, "CMD=add\u001F\n\u001E\n"));
+        }
+        assertEquals(Arrays.asList(3), batchSizes);
+
+        batcher.flush();
+        assertEquals(Arrays.asList(3, 2), batchSizes);
+        assertEquals(2, batcher.getBatchCount());
+        assertEquals(5, batcher.getDocCount());
+        assertEquals(0, admissionController.getOutstandingBytes());
+
+        // nothing pending, no more rpc
+        batcher.close();
+        assertEquals(2, batchSizes.size());
+    }
+
+    public void testLingerFlush() throws Exception {
+        SearcherClient searcherClient = mock(SearcherClient.class);
+        mockBulkWrite(searcherClient, new BulkWriteResponse(1L, Collections.emptyList()));
+
+        HavenaskWriteBatcher batcher = new HavenaskWriteBatcher(
+            new ShardId("test", "_na_", 0),
+            "test",
+            searcherClient,
+            threadPool,
+            100,
+            TimeValue.timeValueMillis(10),
+            admissionController,
+            e -> fail("unexpected failure: " + e)
+        );
+        batcher.add("1", 0, new WriteRequest("test", 0, "CMD=add\u001F\n\u001E\n"));
+        assertBusy(() -> assertEquals(1, batcher.getDocCount()));
+        batcher.close();
+    }
+
+    public void testFailedDoc() throws Exception {
+        SearcherClient searcherClient = mock(SearcherClient.class);
+        mockBulkWrite(searcherClient, new BulkWriteResponse(1L, Arrays.asList(DocWriteState.SYNC, DocWriteState.ERROR)));
+        AtomicReference<Exception> failure = new AtomicReference<>();
+
+        HavenaskWriteBatcher batcher = new HavenaskWriteBatcher(
+            new ShardId("test", "_na_", 0),
+            "test",
+            searcherClient,
+            threadPool,
+            2,
+            TimeValue.timeValueHours(1),
+            admissionController,
+            failure::set
+        );
+        batcher.add("1", 0, new WriteRequest("test", 0, "CMD=add\u001F\n\u001E\n"));
+        batcher.add("2", 1, new WriteRequest("test", 0, "CMD=add\u001F\n\u001E\n"));
+
+        IOException e = expectThrows(IOException.class, batcher::flush);
+        assertTrue(e.getCause().getMessage().contains("[id=2, seqNo=1]"));
+        assertFalse(e.getCause().getMessage().contains("[id=1, seqNo=0]"));
+        assertBusy(() -> assertSame(e.getCause(), failure.get()));
+        expectThrows(IOException.class, () -> batcher.add("3", 2, new WriteRequest("test", 0, "CMD=add\u001F\n\u001E\n")));
+        assertTrue(admissionController.getOutstandingBytes() > 0);
+        expectThrows(IOException.class, batcher::close);
+        assertEquals(0, admissionController.getOutstandingBytes());
+    }
+
+    public void testRetryDocQueueFull() throws Exception {
+        SearcherClient searcherClient = mock(SearcherClient.class);
+        AtomicInteger calls = new AtomicInteger();
+        doAnswer(invocation -> {
+            ActionListener<BulkWriteResponse> listener = invocation.getArgument(1);
+            if (calls.incrementAndGet() == 1) {
+                listener.onResponse(new BulkWriteResponse(ErrorCode.TBS_ERROR_OTHERS, "doc queue is full"));
+            } else {
+                listener.onResponse(new BulkWriteResponse(1L, Collections.emptyList()));
+            }
+            return null;
+        }).when(searcherClient).bulkWrite(any(BulkWriteRequest.class), any());
+
+        HavenaskWriteBatcher batcher = new HavenaskWriteBatcher(
+            new ShardId("test", "_na_", 0),
+            "test",
+            searcherClient,
+            threadPool,
+            1,
+            TimeValue.timeValueHours(1),
+            admissionController,
+            e -> fail("unexpected failure: " + e)
+        );
+        batcher.add("1", 0, new WriteRequest("test", 0, "CMD=add\u001F\n\u001E\n"));
+        batcher.flush();
+        assertEquals(2, calls.get());
+        assertEquals(1, batcher.getRetryCount());
+        assertEquals(1, batcher.getDocCount());
+        assertEquals(1, admissionController.stats().getQueueFull());
+        assertEquals(0, admissionController.getOutstandingBytes());
+        batcher.close();
+    }
+
+    private static void mockBulkWrite(SearcherClient searcherClient, BulkWriteResponse response) {
+        doAnswer(invocation -> {
+            ActionListener<BulkWriteResponse> listener = invocation.getArgument(1);
+            listener.onResponse(response);
+            return null;
+        }).when(searcherClient).bulkWrite(any(BulkWriteRequest.class), any());
+    }
+}
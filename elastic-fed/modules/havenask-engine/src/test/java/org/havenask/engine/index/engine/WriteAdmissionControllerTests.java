@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.havenask.engine.index.engine;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.havenask.action.ActionListener;
+import org.havenask.common.settings.Settings;
+import org.havenask.common.util.concurrent.HavenaskRejectedExecutionException;
+import org.havenask.test.HavenaskTestCase;
+import org.havenask.threadpool.TestThreadPool;
+import org.havenask.threadpool.ThreadPool;
+
+public class WriteAdmissionControllerTests extends HavenaskTestCase {
+    private ThreadPool threadPool;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        threadPool = new TestThreadPool(getTestName());
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        ThreadPool.terminate(threadPool, 10, TimeUnit.SECONDS);
+    }
+
+    private WriteAdmissionController newController(String maxWait) {
+        Settings settings = Settings.builder()
+            .put(WriteAdmissionController.HAVENASK_WRITE_ADMISSION_MAX_LIMIT.getKey(), "100kb")
+            .put(WriteAdmissionController.HAVENASK_WRITE_ADMISSION_MIN_LIMIT.getKey(), "10kb")
+            .put(WriteAdmissionController.HAVENASK_WRITE_ADMISSION_TARGET_LATENCY.getKey(), "1h")
+            .put(WriteAdmissionController.HAVENASK_WRITE_ADMISSION_MAX_WAIT.getKey(), maxWait)
+            .build();
+        return new WriteAdmissionController(settings, threadPool);
+    }
+
+    public void testAimdLimit() {
+        WriteAdmissionController controller = newController("0s");
+        assertEquals(100 * 1024, controller.getLimit());
+
+        controller.onQueueFull();
+        assertEquals(50 * 1024, controller.getLimit());
+        // 同一个target_latency周期内只减一次
+        controller.onQueueFull();
+        assertEquals(50 * 1024, controller.getLimit());
+        assertEquals(2, controller.stats().getQueueFull());
+
+        controller.onQueued(1024);
+        controller.onCompleted(1024, TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(60 * 1024, controller.getLimit());
+        assertEquals(0, controller.getOutstandingBytes());
+
+        for (int i = 0; i < 10; i++) {
+            controller.onCompleted(0, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertEquals(100 * 1024, controller.getLimit());
+    }
+
+    public void testRejectWithoutWait() {
+        WriteAdmissionController controller = newController("0s");
+        assertTrue(controller.admit(1024, ActionListener.wrap(() -> fail("admitted directly"))));
+        assertEquals(1024, controller.getOutstandingBytes());
+
+        controller.onQueued(99 * 1024);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        assertFalse(controller.admit(1, ActionListener.wrap(r -> fail("should be rejected"), failure::set)));
+        assertTrue(failure.get() instanceof HavenaskRejectedExecutionException);
+        assertEquals(1, controller.stats().getRejected());
+        assertEquals(1, controller.stats().getAdmitted());
+        assertEquals(100 * 1024, controller.getOutstandingBytes());
+    }
+
+    public void testDelayUntilReleased() {
+        WriteAdmissionController controller = newController("1h");
+        controller.onQueued(100 * 1024);
+        AtomicBoolean admitted = new AtomicBoolean();
+        assertFalse(controller.admit(1024, ActionListener.wrap(r -> admitted.set(true), e -> fail("unexpected failure: " + e))));
+        assertFalse(admitted.get());
+        assertEquals(1, controller.stats().getWaiting());
+
+        controller.onCompleted(100 * 1024, TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(admitted.get());
+        assertEquals(1024, controller.getOutstandingBytes());
+        WriteAdmissionStats stats = controller.stats();
+        assertEquals(0, stats.getWaiting());
+        assertEquals(1, stats.getDelayed());
+        assertEquals(1, stats.getAdmitted());
+        assertEquals(0, stats.getRejected());
+    }
+
+    public void testRejectAfterWait() throws Exception {
+        WriteAdmissionController controller = newController("10ms");
+        controller.onQueued(100 * 1024);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        assertFalse(controller.admit(1024, ActionListener.wrap(r -> fail("should be rejected"), failure::set)));
+        assertBusy(() -> assertTrue(failure.get() instanceof HavenaskRejectedExecutionException));
+        assertEquals(1, controller.stats().getDelayed());
+        assertEquals(1, controller.stats().getRejected());
+        assertEquals(0, controller.stats().getWaiting());
+
+        // 超时后释放不会再次通知
+        controller.onReleased(100 * 1024);
+        assertEquals(0, controller.stats().getAdmitted());
+        assertEquals(0, controller.getOutstandingBytes());
+    }
+
+    public void testReleaseWaitersInOrderWithinLimit() {
+        WriteAdmissionController controller = newController("1h");
+        controller.onQueued(100 * 1024);
+        List<String> admitted = new CopyOnWriteArrayList<>();
+        for (String name : new String[] { "a", "b", "c" }) {
+            long bytes = "c".equals(name) ? 10 * 1024 : 60 * 1024;
+            assertFalse(controller.admit(bytes, ActionListener.wrap(r -> admitted.add(name), e -> fail("unexpected failure: " + e))));
+        }
+        assertEquals(3, controller.stats().getWaiting());
+
+        // 只放行放得下的队首请求, 更小的c也要排在b后面
+        controller.onReleased(100 * 1024);
+        assertEquals(List.of("a"), admitted);
+        assertEquals(60 * 1024, controller.getOutstandingBytes());
+        assertEquals(2, controller.stats().getWaiting());
+
+        controller.onReleased(60 * 1024);
+        assertEquals(List.of("a", "b", "c"), admitted);
+        assertEquals(70 * 1024, controller.getOutstandingBytes());
+        assertEquals(0, controller.stats().getWaiting());
+    }
+
+    public void testAdmitLargeRequestWhenIdle() {
+        WriteAdmissionController controller = newController("0s");
+        assertTrue(controller.admit(200 * 1024, ActionListener.wrap(() -> fail("admitted directly"))));
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        assertFalse(controller.admit(1, ActionListener.wrap(r -> fail("should be rejected"), failure::set)));
+        assertNotNull(failure.get());
+        controller.onReleased(200 * 1024);
+        assertTrue(controller.admit(1, ActionListener.wrap(() -> fail("admitted directly"))));
+    }
+
+    public void testDisabled() {
+        Settings settings = Settings.builder().put(WriteAdmissionController.HAVENASK_WRITE_ADMISSION_ENABLED.getKey(), false).build();
+        WriteAdmissionController controller = new WriteAdmissionController(settings, threadPool);
+        controller.onQueued(controller.getLimit() + 1);
+        assertTrue(controller.admit(1024, ActionListener.wrap(() -> fail("admitted directly"))));
+    }
+}
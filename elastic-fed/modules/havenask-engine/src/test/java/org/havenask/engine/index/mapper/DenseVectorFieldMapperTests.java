@@ -118,7 +118,7 @@ public class DenseVectorFieldMapperTests extends MapperTestCase {
         assertThat(fields[0], instanceOf(VectorField.class));
 
         VectorField vectorField = (VectorField) fields[0];
-        float[] array = (float[]) VectorField.readValue(vectorField.binaryValue().bytes);
+        float[] array = vectorField.getVector();
         assertArrayEquals("Parsed vector is not equal to original.", vector, array, 0.001f);
     }
 
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.index.mapper;
+
+import org.apache.lucene.document.FieldType;
+import org.havenask.test.HavenaskTestCase;
+
+public class VectorFieldTests extends HavenaskTestCase {
+    public void testBytesRoundTrip() {
+        float[] vector = new float[randomIntBetween(1, 2048)];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = randomFloat();
+        }
+        VectorField field = new VectorField("vector", vector, new FieldType());
+        assertEquals(vector.length * Float.BYTES, field.binaryValue().length);
+        assertArrayEquals(vector, field.getVector(), 0.0f);
+        assertEquals(VectorField.DEFAULT_DELIMITER, field.getDelimiter());
+    }
+
+    public void testAppendVector() {
+        float[] vector = new float[] { 0.4F, 0.7F, -1.0F };
+        assertEquals("0.4,0.7,-1.0", VectorField.appendVector(vector, ",", new StringBuilder()).toString());
+        assertEquals("0.4 0.7 -1.0", VectorField.appendVector(vector, " ", new StringBuilder()).toString());
+        assertEquals("", VectorField.appendVector(new float[0], ",", new StringBuilder()).toString());
+    }
+}
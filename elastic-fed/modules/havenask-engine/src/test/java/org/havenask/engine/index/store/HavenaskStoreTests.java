@@ -18,6 +18,7 @@ import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
 import org.havenask.Version;
 import org.havenask.cluster.metadata.IndexMetadata;
@@ -41,6 +42,10 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -239,6 +244,133 @@ public class HavenaskStoreTests extends HavenaskTestCase {
         }
     }
 
+    public void testHavenaskFileChecksum() throws IOException {
+        IndexCommit indexCommit = Lucene.getIndexCommit(new SegmentInfos(7), null);
+        String segment0 = "segment 0 data";
+        String segment1 = "segment 1 data";
+        Files.createDirectories(dataPath.resolve("segment_0_level_0"));
+        Files.createDirectories(dataPath.resolve("segment_1_level_0"));
+        Files.write(dataPath.resolve("segment_0_level_0/data"), segment0.getBytes(StandardCharsets.UTF_8));
+        Files.write(dataPath.resolve("segment_1_level_0/data"), segment1.getBytes(StandardCharsets.UTF_8));
+        Files.write(dataPath.resolve("version.0"), "{\"fence_name\":\"\",\"locator\":\"\"}".getBytes(StandardCharsets.UTF_8));
+        String entryTableContent = "{\"files\":{\"partition_0_65535\":{"
+            + "\"segment_0_level_0\":{\"length\":-2},"
+            + "\"segment_0_level_0/data\":{\"length\":"
+            + segment0.length()
+            + "},"
+            + "\"segment_1_level_0\":{\"length\":-2},"
+            + "\"segment_1_level_0/data\":{\"length\":"
+            + segment1.length()
+            + "}}},\"package_files\":{}}";
+        Files.write(dataPath.resolve("entry_table.0"), entryTableContent.getBytes(StandardCharsets.UTF_8));
+
+        Map<String, StoreFileMetadata> source = havenaskStore.getHavenaskMetadata(indexCommit);
+        assertEquals("DIR", source.get("segment_0_level_0").checksum());
+        assertEquals(
+            Store.digestToString(HavenaskFileChecksums.crc32(dataPath.resolve("segment_0_level_0/data"))),
+            source.get("segment_0_level_0/data").checksum()
+        );
+        long computeCount = havenaskStore.getFileChecksums().getComputeCount();
+        assertEquals(3, computeCount);
+
+        // 文件没有变化时使用缓存的checksum
+        Map<String, StoreFileMetadata> cached = havenaskStore.getHavenaskMetadata(indexCommit);
+        assertEquals(source.get("segment_1_level_0/data").checksum(), cached.get("segment_1_level_0/data").checksum());
+        assertEquals(computeCount, havenaskStore.getFileChecksums().getComputeCount());
+
+        // 修改segment_1中的文件, 长度不变
+        Path changedFile = dataPath.resolve("segment_1_level_0/data");
+        Files.write(changedFile, "segment 1 DATA".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(changedFile, FileTime.fromMillis(Files.getLastModifiedTime(changedFile).toMillis() + 1000));
+        Map<String, StoreFileMetadata> target = havenaskStore.getHavenaskMetadata(indexCommit);
+        assertEquals(computeCount + 1, havenaskStore.getFileChecksums().getComputeCount());
+        assertNotEquals(source.get("segment_1_level_0/data").checksum(), target.get("segment_1_level_0/data").checksum());
+
+        Store.RecoveryDiff diff = new Store.MetadataSnapshot(source, Collections.emptyMap(), 0).recoveryDiff(
+            new Store.MetadataSnapshot(target, Collections.emptyMap(), 0)
+        );
+        assertEquals(1, diff.different.size());
+        assertEquals("segment_1_level_0/data", diff.different.get(0).name());
+        assertTrue(diff.identical.stream().anyMatch(file -> file.name().equals("segment_0_level_0/data")));
+        assertTrue(diff.missing.isEmpty());
+    }
+
+    public void testHavenaskFileChecksumComputedInBackground() throws IOException {
+        IndexCommit indexCommit = Lucene.getIndexCommit(new SegmentInfos(7), null);
+        String segment0 = "segment 0 data";
+        Files.createDirectories(dataPath.resolve("segment_0_level_0"));
+        Files.write(dataPath.resolve("segment_0_level_0/data"), segment0.getBytes(StandardCharsets.UTF_8));
+        Files.write(dataPath.resolve("version.0"), "{\"fence_name\":\"\",\"locator\":\"\"}".getBytes(StandardCharsets.UTF_8));
+        String entryTableContent = "{\"files\":{\"partition_0_65535\":{"
+            + "\"segment_0_level_0\":{\"length\":-2},"
+            + "\"segment_0_level_0/data\":{\"length\":"
+            + segment0.length()
+            + "}}},\"package_files\":{}}";
+        Files.write(dataPath.resolve("entry_table.0"), entryTableContent.getBytes(StandardCharsets.UTF_8));
+
+        IndexMetadata build = IndexMetadata.builder(shardId.getIndexName())
+            .settings(Settings.builder().put(IndexMetadata.SETTING_VERSION_CREATED, Version.CURRENT))
+            .numberOfShards(1)
+            .numberOfReplicas(0)
+            .build();
+        List<Runnable> tasks = new ArrayList<>();
+        HavenaskStore store = new HavenaskStore(
+            shardId,
+            new IndexSettings(build, Settings.EMPTY),
+            mock(Directory.class),
+            new DummyShardLock(shardId),
+            OnClose.EMPTY,
+            dataPath,
+            null,
+            tasks::add
+        );
+
+        // checksum还没有计算完成时不阻塞, 使用类型名
+        Map<String, StoreFileMetadata> metadata = store.getHavenaskMetadata(indexCommit);
+        assertEquals("FILE", metadata.get("segment_0_level_0/data").checksum());
+        assertEquals(0, store.getFileChecksums().getComputeCount());
+        assertEquals(1, tasks.size());
+
+        tasks.remove(0).run();
+        assertEquals(2, store.getFileChecksums().getComputeCount());
+        metadata = store.getHavenaskMetadata(indexCommit);
+        assertEquals(
+            Store.digestToString(HavenaskFileChecksums.crc32(dataPath.resolve("segment_0_level_0/data"))),
+            metadata.get("segment_0_level_0/data").checksum()
+        );
+        assertTrue(tasks.isEmpty());
+
+        // store关闭后不再计算
+        Path changedFile = dataPath.resolve("segment_0_level_0/data");
+        Files.write(changedFile, "segment 0 DATA".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(changedFile, FileTime.fromMillis(Files.getLastModifiedTime(changedFile).toMillis() + 1000));
+        assertEquals("FILE", store.getHavenaskMetadata(indexCommit).get("segment_0_level_0/data").checksum());
+        store.close();
+        tasks.remove(0).run();
+        assertEquals(2, store.getFileChecksums().getComputeCount());
+    }
+
+    public void testOpenInput() throws IOException {
+        byte[] content = randomByteArrayOfLength(HavenaskStore.HavenaskFileIndexInput.CHUNK_SIZE * 2 + randomIntBetween(1, 1024));
+        Files.createDirectories(dataPath.resolve("segment_0_level_0"));
+        Files.write(dataPath.resolve("segment_0_level_0/data"), content);
+        StoreFileMetadata metadata = new StoreFileMetadata("segment_0_level_0/data", content.length, "", HavenaskStore.HAVENASK_VERSION);
+
+        try (IndexInput input = havenaskStore.openInput(metadata, IOContext.READONCE)) {
+            assertEquals(content.length, input.length());
+            // 一次读取多个chunk
+            byte[] buffer = new byte[content.length];
+            input.readBytes(buffer, 0, buffer.length);
+            assertArrayEquals(content, buffer);
+
+            int offset = randomIntBetween(0, content.length - 1);
+            IndexInput slice = input.slice("slice", offset, content.length - offset);
+            byte[] sliceBuffer = new byte[content.length - offset];
+            slice.readBytes(sliceBuffer, 0, sliceBuffer.length);
+            assertArrayEquals(Arrays.copyOfRange(content, offset, content.length), sliceBuffer);
+        }
+    }
+
     public void testCreateVerifyingOutput() throws IOException {
         List<String> fileLists = List.of("test", "dir1/test", "dir1/dir2/test");
         for (String fileName : fileLists) {
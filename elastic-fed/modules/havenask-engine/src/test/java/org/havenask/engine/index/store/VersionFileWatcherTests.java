@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.havenask.engine.index.store;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.havenask.common.collect.Tuple;
+import org.havenask.common.lease.Releasable;
+import org.havenask.common.settings.Settings;
+import org.havenask.test.HavenaskTestCase;
+
+@LuceneTestCase.SuppressFileSystems("ExtrasFS")
+public class VersionFileWatcherTests extends HavenaskTestCase {
+    private static final String PREFIX = "0000000000000000ffffffffffffffff0100000000000000";
+    private static final String SUFFIX = "00000000ffff0000";
+
+    private void writeVersionFile(Path dir, long version, String timestamp) throws IOException {
+        String content = String.format(Locale.ROOT, "{\"locator\":\"%s\"}", PREFIX + timestamp + SUFFIX);
+        Files.write(dir.resolve("version." + version), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void testPollingFallback() throws IOException {
+        Settings settings = Settings.builder()
+            .put(VersionFileWatcher.HAVENASK_VERSION_WATCHER_WATCH_SERVICE_ENABLED.getKey(), false)
+            .build();
+        VersionFileWatcher watcher = new VersionFileWatcher(settings, null);
+        watcher.openWatchService();
+        assertFalse(watcher.isWatchServiceOpened());
+
+        Path partitionPath = createTempDir().resolve("generation_0").resolve("partition_0_65535");
+        AtomicReference<Tuple<Long, Long>> latest = new AtomicReference<>();
+        AtomicInteger notified = new AtomicInteger();
+        Releasable registration = watcher.register(partitionPath, version -> {
+            latest.set(version);
+            notified.incrementAndGet();
+        });
+        assertEquals(1, watcher.getWatchedPartitionCount());
+        assertNull(latest.get());
+
+        // 目录创建后由轮询发现version文件
+        Files.createDirectories(partitionPath);
+        writeVersionFile(partitionPath, 1, "0100000000000000");
+        watcher.poll();
+        assertEquals(new Tuple<>(1L, 1L), latest.get());
+        assertEquals(1L, watcher.getIndexMaxVersionNum(partitionPath));
+
+        // version没有变化时不重复通知
+        watcher.poll();
+        assertEquals(1, notified.get());
+
+        writeVersionFile(partitionPath, 2, "0200000000000000");
+        Files.write(partitionPath.resolve("version.public"), new byte[0]);
+        watcher.poll();
+        assertEquals(new Tuple<>(2L, 2L), latest.get());
+        assertEquals(2, notified.get());
+        assertEquals(new Tuple<>(2L, 2L), watcher.getVersionAndIndexCheckpoint(partitionPath));
+
+        registration.close();
+        assertEquals(0, watcher.getWatchedPartitionCount());
+        // 取消注册后退化为扫描目录
+        writeVersionFile(partitionPath, 3, "0300000000000000");
+        assertEquals(3L, watcher.getIndexMaxVersionNum(partitionPath));
+        assertEquals(2, notified.get());
+    }
+
+    public void testWatchService() throws Exception {
+        VersionFileWatcher watcher = new VersionFileWatcher(Settings.EMPTY, null);
+        try {
+            watcher.openWatchService();
+            assumeTrue("watch service is not supported", watcher.isWatchServiceOpened());
+
+            Path partitionPath = createTempDir();
+            writeVersionFile(partitionPath, 1, "0100000000000000");
+
+            AtomicReference<Tuple<Long, Long>> latest = new AtomicReference<>();
+            Releasable registration = watcher.register(partitionPath, latest::set);
+            // 注册时立即推送当前的version
+            assertEquals(new Tuple<>(1L, 1L), latest.get());
+
+            writeVersionFile(partitionPath, 5, "0500000000000000");
+            assertBusy(() -> {
+                watcher.poll();
+                assertEquals(new Tuple<>(5L, 5L), latest.get());
+            });
+            assertEquals(5L, watcher.getIndexMaxVersionNum(partitionPath));
+
+            registration.close();
+            assertEquals(0, watcher.getWatchedPartitionCount());
+        } finally {
+            watcher.close();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.rpc;
+
+import org.havenask.client.ha.SqlResponse;
+import org.havenask.common.bytes.BytesArray;
+import org.havenask.test.HavenaskTestCase;
+
+import java.io.IOException;
+import java.util.List;
+
+public class ColumnarSqlResponseTests extends HavenaskTestCase {
+    private static final String SQL_RESPONSE = "{\"total_time\":8.126,\"has_soft_failure\":false,\"covered_percent\":1.0,"
+        + "\"row_count\":3,\"format_type\":\"full_json\",\"search_info\":{},\"rpc_info\":\"\","
+        + "\"table_leader_info\":{},\"table_build_watermark\":{},\"sql_query\":\"query=select ...\","
+        + "\"iquan_plan\":{\"error_code\":0,\"error_message\":\"\",\"result\":{\"rel_plan_version\":\"\","
+        + "\"rel_plan\":[],\"exec_params\":{}}},\"navi_graph\":\"\",\"trace\":[],\"sql_result\":{\"data\":["
+        + "[\"1\",9.5,3,\"{\\\"name\\\":\\\"中文\\\"}\",null,[1,2]],"
+        + "[\"2\",7,null,\"{}\",true,[3]],"
+        + "[\"3\",null,5,null,\"x\",null]],"
+        + "\"column_name\":[\"_id\",\"_score\",\"count\",\"_source\",\"mixed\",\"multi\"],"
+        + "\"column_type\":[\"multi_char\",\"double\",\"int64\",\"multi_char\",\"multi_char\",\"multi_int32\"]},"
+        + "\"error_info\":{\"ErrorCode\":0,\"Error\":\"ERROR_NONE\",\"Message\":\"\"}}";
+
+    public void testParse() throws IOException {
+        ColumnarSqlResponse response = ColumnarSqlResponse.parse(new BytesArray(SQL_RESPONSE));
+        assertEquals(8.126, response.getTotalTime(), 0.0001);
+        assertFalse(response.hasSoftFailure());
+        assertEquals(3, response.getRowCount());
+        assertEquals(0, response.getErrorCode());
+        assertEquals("ERROR_NONE", response.getError());
+        assertEquals(6, response.getColumnCount());
+        assertEquals(3, response.getColumnIndex("_source"));
+        assertEquals(-1, response.getColumnIndex("not_exist"));
+
+        ColumnarSqlResponse.BytesColumn idColumn = (ColumnarSqlResponse.BytesColumn) response.getColumn(0);
+        assertEquals("1", idColumn.getString(0));
+        assertEquals("3", idColumn.getBytes(2).utf8ToString());
+
+        // 整数和浮点数混合时升级为double列
+        ColumnarSqlResponse.DoubleColumn scoreColumn = (ColumnarSqlResponse.DoubleColumn) response.getColumn(1);
+        assertEquals(9.5, scoreColumn.getDouble(0), 0.0001);
+        assertEquals(7.0, scoreColumn.getDouble(1), 0.0001);
+        assertTrue(scoreColumn.isNull(2));
+        assertNull(scoreColumn.get(2));
+
+        // 第一行为null的整数列
+        ColumnarSqlResponse.LongColumn countColumn = (ColumnarSqlResponse.LongColumn) response.getColumn(2);
+        assertEquals(3L, countColumn.getLong(0));
+        assertTrue(countColumn.isNull(1));
+        assertEquals(5L, countColumn.getLong(2));
+
+        ColumnarSqlResponse.BytesColumn sourceColumn = (ColumnarSqlResponse.BytesColumn) response.getColumn(3);
+        assertEquals("{\"name\":\"中文\"}", sourceColumn.getBytes(0).utf8ToString());
+        assertEquals("{}", sourceColumn.getString(1));
+        assertNull(sourceColumn.getBytes(2));
+
+        // 类型不一致时退化为Object列
+        ColumnarSqlResponse.Column mixedColumn = response.getColumn(4);
+        assertTrue(mixedColumn instanceof ColumnarSqlResponse.ObjectColumn);
+        assertNull(mixedColumn.get(0));
+        assertEquals(true, mixedColumn.get(1));
+        assertEquals("x", mixedColumn.get(2));
+
+        ColumnarSqlResponse.Column multiColumn = response.getColumn(5);
+        assertEquals(List.of(1, 2), multiColumn.get(0));
+        assertEquals(List.of(3), multiColumn.get(1));
+        assertNull(multiColumn.get(2));
+    }
+
+    public void testSameValuesAsSqlResponse() throws IOException {
+        StringBuilder sb = new StringBuilder("{\"row_count\":").append(100).append(",\"sql_result\":{\"data\":[");
+        for (int i = 0; i < 100; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("[\"id_").append(i).append("\",").append(randomDouble()).append(",\"{\\\"f\\\":").append(i).append("}\"]");
+        }
+        sb.append("],\"column_name\":[\"_id\",\"_score\",\"_source\"]},\"error_info\":{\"ErrorCode\":0}}");
+
+        SqlResponse sqlResponse = SqlResponse.parse(sb.toString());
+        ColumnarSqlResponse columnarSqlResponse = ColumnarSqlResponse.parse(new BytesArray(sb.toString()));
+        assertEquals(sqlResponse.getRowCount(), columnarSqlResponse.getRowCount());
+        Object[][] data = sqlResponse.getSqlResult().getData();
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(data[i][0], columnarSqlResponse.getColumn(0).get(i));
+            assertEquals(((Number) data[i][1]).doubleValue(), (double) columnarSqlResponse.getColumn(1).get(i), 0.0);
+            assertEquals(data[i][2], columnarSqlResponse.getColumn(2).get(i));
+        }
+    }
+
+    public void testEmptyResult() throws IOException {
+        String str = "{\"row_count\":0,\"sql_result\":{\"data\":[],\"column_name\":[\"_id\"],\"column_type\":[\"multi_char\"]},"
+            + "\"error_info\":{\"ErrorCode\":0,\"Error\":\"ERROR_NONE\",\"Message\":\"\"}}";
+        ColumnarSqlResponse response = ColumnarSqlResponse.parse(new BytesArray(str));
+        assertEquals(0, response.getRowCount());
+        assertEquals(0, response.getColumnCount());
+    }
+
+    public void testErrorResult() throws IOException {
+        String str = "{\"row_count\":0,\"sql_result\":{},"
+            + "\"error_info\":{\"ErrorCode\":400,\"Error\":\"ERROR_SQL_PLAN_SERVICE\",\"Message\":\"table not found\"}}";
+        ColumnarSqlResponse response = ColumnarSqlResponse.parse(new BytesArray(str));
+        assertEquals(400, response.getErrorCode());
+        assertEquals("ERROR_SQL_PLAN_SERVICE", response.getError());
+        assertEquals("table not found", response.getMessage());
+    }
+}
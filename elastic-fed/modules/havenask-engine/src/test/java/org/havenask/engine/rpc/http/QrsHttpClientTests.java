@@ -18,7 +18,10 @@ import static org.hamcrest.CoreMatchers.containsString;
 
 import java.io.IOException;
 
+import org.havenask.action.support.PlainActionFuture;
+import org.havenask.common.util.concurrent.HavenaskExecutors;
 import org.havenask.engine.HavenaskITTestCase;
+import org.havenask.engine.rpc.ColumnarSqlResponse;
 import org.havenask.engine.rpc.HeartbeatTargetResponse;
 import org.havenask.engine.rpc.QrsClient;
 import org.havenask.engine.rpc.QrsSqlRequest;
@@ -47,6 +50,40 @@ public class QrsHttpClientTests extends HavenaskITTestCase {
         client.close();
     }
 
+    public void testSqlAsync() throws IOException {
+        QrsClient client = new QrsHttpClient(49200);
+        String sql = "select * from test";
+        QrsSqlRequest request = new QrsSqlRequest(sql, null);
+        PlainActionFuture<QrsSqlResponse> future = PlainActionFuture.newFuture();
+        client.executeSql(request, future);
+        QrsSqlResponse response = future.actionGet();
+        assertEquals(200, response.getResultCode());
+        assertThat(response.getResult(), containsString("total_time"));
+        client.close();
+    }
+
+    public void testSqlColumnarAsync() throws IOException {
+        QrsClient client = new QrsHttpClient(49200);
+        QrsSqlRequest request = new QrsSqlRequest("select count(*) from test", null);
+        PlainActionFuture<ColumnarSqlResponse> future = PlainActionFuture.newFuture();
+        client.executeSqlColumnar(request, HavenaskExecutors.newDirectExecutorService(), future);
+        ColumnarSqlResponse response = future.actionGet();
+        assertEquals(0, response.getErrorCode());
+        assertEquals(1, response.getRowCount());
+        assertEquals(19L, ((ColumnarSqlResponse.LongColumn) response.getColumn(0)).getLong(0));
+        client.close();
+    }
+
+    public void testTimeoutAsync() throws IOException {
+        QrsClient client = new QrsHttpClient(49200, 1);
+        String sql = "timeout";
+        QrsSqlRequest request = new QrsSqlRequest(sql, null);
+        PlainActionFuture<QrsSqlResponse> future = PlainActionFuture.newFuture();
+        client.executeSql(request, future);
+        expectThrows(Exception.class, future::actionGet);
+        client.close();
+    }
+
     public void testSqlClientInfo() throws IOException {
         QrsClient client = new QrsHttpClient(49200);
         SqlClientInfoResponse response = client.executeSqlClientInfo();
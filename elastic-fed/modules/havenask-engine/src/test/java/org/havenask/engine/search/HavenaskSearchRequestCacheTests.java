@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.havenask.Version;
+import org.havenask.action.ActionListener;
+import org.havenask.action.ActionRequest;
+import org.havenask.action.ActionResponse;
+import org.havenask.action.ActionType;
+import org.havenask.action.search.SearchRequest;
+import org.havenask.action.search.SearchResponse;
+import org.havenask.action.search.ShardSearchFailure;
+import org.havenask.action.support.PlainActionFuture;
+import org.havenask.cluster.ClusterName;
+import org.havenask.cluster.metadata.IndexMetadata;
+import org.havenask.cluster.node.DiscoveryNode;
+import org.havenask.common.breaker.NoopCircuitBreaker;
+import org.havenask.common.settings.Settings;
+import org.havenask.engine.search.action.HavenaskTableVersionNodeResponse;
+import org.havenask.engine.search.action.HavenaskTableVersionNodeResponse.ShardVersion;
+import org.havenask.engine.search.action.HavenaskTableVersionResponse;
+import org.havenask.search.builder.SearchSourceBuilder;
+import org.havenask.search.internal.InternalSearchResponse;
+import org.havenask.test.HavenaskTestCase;
+import org.havenask.test.client.NoOpClient;
+import org.havenask.threadpool.TestThreadPool;
+import org.havenask.threadpool.ThreadPool;
+
+public class HavenaskSearchRequestCacheTests extends HavenaskTestCase {
+    private ThreadPool threadPool;
+    private final AtomicReference<List<ShardVersion>> shardVersions = new AtomicReference<>();
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        threadPool = new TestThreadPool(getTestName());
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        ThreadPool.terminate(threadPool, 10, TimeUnit.SECONDS);
+    }
+
+    private HavenaskSearchRequestCache newCache() {
+        DiscoveryNode node = new DiscoveryNode("node", buildNewFakeTransportAddress(), Version.CURRENT);
+        NoOpClient client = new NoOpClient(threadPool) {
+            @Override
+            @SuppressWarnings("unchecked")
+            protected <Request extends ActionRequest, Response extends ActionResponse> void doExecute(
+                ActionType<Response> action,
+                Request request,
+                ActionListener<Response> listener
+            ) {
+                HavenaskTableVersionResponse response = new HavenaskTableVersionResponse(
+                    new ClusterName("test"),
+                    List.of(new HavenaskTableVersionNodeResponse(node, shardVersions.get())),
+                    List.of()
+                );
+                listener.onResponse((Response) response);
+            }
+        };
+        Settings settings = Settings.builder().put(HavenaskSearchRequestCache.HAVENASK_REQUEST_CACHE_SIZE.getKey(), "1mb").build();
+        return new HavenaskSearchRequestCache(
+            settings,
+            client,
+            threadPool,
+            writableRegistry(),
+            new NoopCircuitBreaker(HavenaskSearchRequestCache.CIRCUIT_BREAKER_NAME)
+        );
+    }
+
+    private IndexMetadata indexMetadata() throws IOException {
+        return IndexMetadata.builder("test")
+            .settings(settings(Version.CURRENT).put(IndexMetadata.SETTING_INDEX_UUID, "test_uuid"))
+            .numberOfShards(1)
+            .numberOfReplicas(0)
+            .build();
+    }
+
+    private SearchResponse search(HavenaskSearchRequestCache cache, SearchRequest request, AtomicInteger loads) throws IOException {
+        PlainActionFuture<SearchResponse> future = PlainActionFuture.newFuture();
+        cache.execute(indexMetadata(), request, listener -> {
+            loads.incrementAndGet();
+            listener.onResponse(
+                new SearchResponse(
+                    InternalSearchResponse.empty(),
+                    null,
+                    1,
+                    1,
+                    0,
+                    10,
+                    ShardSearchFailure.EMPTY_ARRAY,
+                    SearchResponse.Clusters.EMPTY
+                )
+            );
+        }, future);
+        return future.actionGet();
+    }
+
+    public void testCacheInvalidatedOnVersionChange() throws IOException {
+        HavenaskSearchRequestCache cache = newCache();
+        SearchRequest request = new SearchRequest("test").source(new SearchSourceBuilder().size(0)).requestCache(true);
+        AtomicInteger loads = new AtomicInteger();
+
+        // 表版本未知时不缓存
+        search(cache, request, loads);
+        search(cache, request, loads);
+        assertEquals(2, loads.get());
+
+        shardVersions.set(List.of(new ShardVersion("test_uuid", "node", 0, 1, 10, 10)));
+        cache.checkVersions();
+        search(cache, request, loads);
+        assertEquals(3, loads.get());
+        SearchResponse cached = search(cache, request, loads);
+        assertEquals(3, loads.get());
+        assertEquals(1, cached.getTotalShards());
+        assertEquals(1, cache.stats().getHitCount());
+        assertEquals(3, cache.stats().getMissCount());
+        assertTrue(cache.stats().getMemorySizeInBytes() > 0);
+
+        // 版本不变时缓存继续有效
+        cache.checkVersions();
+        search(cache, request, loads);
+        assertEquals(3, loads.get());
+
+        // commit checkpoint变化后缓存失效
+        shardVersions.set(List.of(new ShardVersion("test_uuid", "node", 0, 1, 11, 11)));
+        cache.checkVersions();
+        assertEquals(0, cache.stats().getMemorySizeInBytes());
+        search(cache, request, loads);
+        assertEquals(4, loads.get());
+        search(cache, request, loads);
+        assertEquals(4, loads.get());
+
+        // 实时写入只推进processed checkpoint, 缓存同样失效
+        shardVersions.set(List.of(new ShardVersion("test_uuid", "node", 0, 1, 11, 12)));
+        cache.checkVersions();
+        assertEquals(0, cache.stats().getMemorySizeInBytes());
+        search(cache, request, loads);
+        assertEquals(5, loads.get());
+    }
+
+    public void testCanCache() {
+        HavenaskSearchRequestCache cache = newCache();
+        // 只缓存显式设置request_cache=true的请求
+        assertFalse(cache.canCache(new SearchRequest("test").source(new SearchSourceBuilder().size(0))));
+        assertFalse(cache.canCache(new SearchRequest("test").source(new SearchSourceBuilder().size(10))));
+        assertTrue(cache.canCache(new SearchRequest("test").source(new SearchSourceBuilder().size(0)).requestCache(true)));
+        assertTrue(cache.canCache(new SearchRequest("test").source(new SearchSourceBuilder().size(10)).requestCache(true)));
+        assertFalse(cache.canCache(new SearchRequest("test").source(new SearchSourceBuilder().size(0)).requestCache(false)));
+        assertFalse(cache.canCache(new SearchRequest("test").source(new SearchSourceBuilder().size(0)).requestCache(true).scroll("1m")));
+    }
+}
@@ -15,6 +15,7 @@
 package org.havenask.engine.search.action;
 
 import static org.havenask.engine.search.action.TransportHavenaskSearchAction.isSearchHavenask;
+import static org.havenask.engine.search.action.TransportHavenaskSearchAction.resolveHavenaskIndices;
 
 import org.havenask.Version;
 import org.havenask.action.search.SearchRequest;
@@ -22,8 +23,12 @@ import org.havenask.cluster.metadata.AliasMetadata;
 import org.havenask.cluster.metadata.IndexMetadata;
 import org.havenask.cluster.metadata.Metadata;
 import org.havenask.common.settings.Settings;
+import org.havenask.common.unit.TimeValue;
+import org.havenask.search.builder.SearchSourceBuilder;
 import org.havenask.test.HavenaskTestCase;
 
+import java.util.List;
+
 public class HavenaskSearchActionTests extends HavenaskTestCase {
 
     // test isSearchHavenask
@@ -45,6 +50,27 @@ public class HavenaskSearchActionTests extends HavenaskTestCase {
         {
             SearchRequest searchRequest = new SearchRequest();
             searchRequest.indices("havenask-1", "havenask-2");
+            assertTrue(isSearchHavenask(metadata, searchRequest));
+        }
+
+        {
+            // 多表查询只支持按分数排序
+            SearchRequest searchRequest = new SearchRequest();
+            searchRequest.indices("havenask-1", "havenask-2");
+            searchRequest.source(new SearchSourceBuilder().sort("field1"));
+            assertFalse(isSearchHavenask(metadata, searchRequest));
+        }
+
+        {
+            SearchRequest searchRequest = new SearchRequest();
+            searchRequest.indices("havenask-1", "havenask-2");
+            searchRequest.scroll(TimeValue.timeValueMinutes(1));
+            assertFalse(isSearchHavenask(metadata, searchRequest));
+        }
+
+        {
+            SearchRequest searchRequest = new SearchRequest();
+            searchRequest.indices("havenask-1", "havenask-3");
             assertFalse(isSearchHavenask(metadata, searchRequest));
         }
 
@@ -79,6 +105,26 @@ public class HavenaskSearchActionTests extends HavenaskTestCase {
         }
     }
 
+    public void testResolveHavenaskIndices() {
+        Metadata metadata = initMetadata();
+
+        List<IndexMetadata> indices = resolveHavenaskIndices(metadata, new String[] { "havenask-2", "havenask-1", "havenask-alias-1" });
+        assertNotNull(indices);
+        assertEquals(2, indices.size());
+        assertEquals("havenask-2", indices.get(0).getIndex().getName());
+        assertEquals("havenask-1", indices.get(1).getIndex().getName());
+
+        indices = resolveHavenaskIndices(metadata, new String[] { "havenask-1*", "havenask-2*" });
+        assertNotNull(indices);
+        assertEquals(2, indices.size());
+
+        // 通配符匹配到非havenask索引
+        assertNull(resolveHavenaskIndices(metadata, new String[] { "havenask-*" }));
+        assertNull(resolveHavenaskIndices(metadata, new String[] { "_all" }));
+        assertNull(resolveHavenaskIndices(metadata, new String[] { "havenask-1", "-havenask-2" }));
+        assertEquals(0, resolveHavenaskIndices(metadata, new String[] { "not-found-*" }).size());
+    }
+
     private Metadata initMetadata() {
         IndexMetadata.Builder index1 = IndexMetadata.builder("havenask-1")
             .settings(Settings.builder().put(IndexMetadata.SETTING_VERSION_CREATED, Version.CURRENT).put("index.engine", "havenask"))
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search.action;
+
+import org.apache.lucene.search.TotalHits;
+import org.havenask.action.search.SearchResponse;
+import org.havenask.action.search.ShardSearchFailure;
+import org.havenask.common.bytes.BytesArray;
+import org.havenask.common.collect.Tuple;
+import org.havenask.common.document.DocumentField;
+import org.havenask.common.text.Text;
+import org.havenask.index.mapper.RoutingFieldMapper;
+import org.havenask.search.SearchHit;
+import org.havenask.search.SearchHits;
+import org.havenask.search.aggregations.InternalAggregations;
+import org.havenask.search.internal.InternalSearchResponse;
+import org.havenask.test.HavenaskTestCase;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class TransportHavenaskExportActionTests extends HavenaskTestCase {
+    public void testCursorRoundTrip() {
+        HavenaskExportCursor cursor = HavenaskExportCursor.start(3).advance(0, "id1").advance(2, null);
+        HavenaskExportCursor decoded = HavenaskExportCursor.decode(cursor.encode());
+        assertEquals(3, decoded.getSlices());
+        assertEquals("id1", decoded.getLastId(0));
+        assertFalse(decoded.isFinished(0));
+        assertNull(decoded.getLastId(1));
+        assertFalse(decoded.isFinished(1));
+        assertTrue(decoded.isFinished(2));
+        assertFalse(decoded.isAllFinished());
+
+        expectThrows(IllegalArgumentException.class, () -> HavenaskExportCursor.decode("not a cursor"));
+    }
+
+    public void testSplitCursor() {
+        // 2个分区切成5个slice: 分区0有slice 0,2,4, 分区1有slice 1,3
+        assertEquals(3, TransportHavenaskExportAction.subSliceCount(5, 2, 0));
+        assertEquals(2, TransportHavenaskExportAction.subSliceCount(5, 2, 1));
+        TransportHavenaskExportAction.PartitionSplit[] splits = new TransportHavenaskExportAction.PartitionSplit[] {
+            new TransportHavenaskExportAction.PartitionSplit(9, new String[] { null, "c", "f", null }),
+            // 只有1个doc, 第一个子区间为空
+            new TransportHavenaskExportAction.PartitionSplit(1, new String[] { null, null, null }) };
+        HavenaskExportCursor cursor = HavenaskExportCursor.decode(TransportHavenaskExportAction.buildSplitCursor(5, splits).encode());
+        assertEquals(5, cursor.getSlices());
+
+        assertNull(cursor.getLastId(0));
+        assertEquals("c", cursor.getEndId(0));
+        assertEquals("c", cursor.getLastId(2));
+        assertEquals("f", cursor.getEndId(2));
+        assertEquals("f", cursor.getLastId(4));
+        assertNull(cursor.getEndId(4));
+        for (int slice : new int[] { 0, 2, 3, 4 }) {
+            assertFalse(cursor.isFinished(slice));
+        }
+        assertTrue(cursor.isFinished(1));
+        assertNull(cursor.getLastId(3));
+        assertNull(cursor.getEndId(3));
+
+        // 翻页不改变_id上界
+        assertEquals("f", cursor.advance(2, "d").getEndId(2));
+    }
+
+    public void testSplitSql() {
+        assertEquals(
+            "SELECT /*+ SCAN_ATTR(partitionIds='1')*/ COUNT(*) FROM `table`",
+            TransportHavenaskExportAction.countSql("table", 1)
+        );
+        assertEquals(
+            "SELECT /*+ SCAN_ATTR(partitionIds='1')*/ `_id` FROM `table` ORDER BY `_id` ASC LIMIT 1 OFFSET 99",
+            TransportHavenaskExportAction.boundSql("table", 1, 99)
+        );
+    }
+
+    public void testBuildResponse() throws Exception {
+        HavenaskExportRequest request = new HavenaskExportRequest("table").batchSize(2);
+        HavenaskExportCursor cursor = HavenaskExportCursor.start(3).advance(1, null);
+
+        // slice 0取满一批, slice 2不足一批
+        List<Tuple<Integer, SearchResponse>> results = List.of(
+            new Tuple<>(2, searchResponse(hit("c", null))),
+            new Tuple<>(0, searchResponse(hit("a", "r1"), hit("b", null)))
+        );
+        HavenaskExportResponse response = TransportHavenaskExportAction.buildResponse("table", request, cursor, results, Long.MAX_VALUE);
+        assertEquals(3, response.getDocCount());
+        assertEquals(
+            "{\"_index\":\"table\",\"_id\":\"a\",\"_routing\":\"r1\",\"_source\":{\"field\":\"a\"}}\n"
+                + "{\"_index\":\"table\",\"_id\":\"b\",\"_source\":{\"field\":\"b\"}}\n"
+                + "{\"_index\":\"table\",\"_id\":\"c\",\"_source\":{\"field\":\"c\"}}\n",
+            response.getDocs().utf8ToString()
+        );
+
+        HavenaskExportCursor nextCursor = HavenaskExportCursor.decode(response.getCursor());
+        assertEquals("b", nextCursor.getLastId(0));
+        assertFalse(nextCursor.isFinished(0));
+        assertTrue(nextCursor.isFinished(1));
+        assertTrue(nextCursor.isFinished(2));
+
+        // 最后一个slice也导出完成后不再返回cursor
+        response = TransportHavenaskExportAction.buildResponse(
+            "table",
+            request,
+            nextCursor,
+            List.of(new Tuple<>(0, searchResponse())),
+            Long.MAX_VALUE
+        );
+        assertEquals(0, response.getDocCount());
+        assertNull(response.getCursor());
+    }
+
+    public void testBuildResponseExceedsMaxSize() throws Exception {
+        HavenaskExportRequest request = new HavenaskExportRequest("table").batchSize(3);
+        HavenaskExportCursor cursor = HavenaskExportCursor.start(2);
+        List<Tuple<Integer, SearchResponse>> results = List.of(
+            new Tuple<>(0, searchResponse(hit("a", null), hit("b", null), hit("c", null))),
+            new Tuple<>(1, searchResponse(hit("d", null)))
+        );
+
+        // 写出第一个doc后就超过上限, 至少返回一个doc
+        HavenaskExportResponse response = TransportHavenaskExportAction.buildResponse("table", request, cursor, results, 1);
+        assertEquals(1, response.getDocCount());
+        assertEquals("{\"_index\":\"table\",\"_id\":\"a\",\"_source\":{\"field\":\"a\"}}\n", response.getDocs().utf8ToString());
+        HavenaskExportCursor nextCursor = HavenaskExportCursor.decode(response.getCursor());
+        assertEquals("a", nextCursor.getLastId(0));
+        assertFalse(nextCursor.isFinished(0));
+        // 后面的slice没有写出, 下次从原来的位置重新查询
+        assertNull(nextCursor.getLastId(1));
+        assertFalse(nextCursor.isFinished(1));
+
+        // 上限足够时所有slice都写出
+        response = TransportHavenaskExportAction.buildResponse("table", request, cursor, results, Long.MAX_VALUE);
+        assertEquals(4, response.getDocCount());
+        nextCursor = HavenaskExportCursor.decode(response.getCursor());
+        assertEquals("c", nextCursor.getLastId(0));
+        assertTrue(nextCursor.isFinished(1));
+    }
+
+    public void testValidate() {
+        assertNull(new HavenaskExportRequest("table").validate());
+        assertNotNull(new HavenaskExportRequest("table").batchSize(0).validate());
+        assertNotNull(new HavenaskExportRequest("table").slices(HavenaskExportRequest.MAX_SLICES + 1).validate());
+        assertNotNull(new HavenaskExportRequest(null).validate());
+    }
+
+    private static SearchHit hit(String id, String routing) {
+        Map<String, DocumentField> metaFields = routing == null
+            ? Collections.emptyMap()
+            : Map.of(RoutingFieldMapper.NAME, new DocumentField(RoutingFieldMapper.NAME, List.of(routing)));
+        SearchHit hit = new SearchHit(0, id, new Text("_doc"), Collections.emptyMap(), metaFields);
+        hit.sourceRef(new BytesArray("{\"field\":\"" + id + "\"}"));
+        return hit;
+    }
+
+    private static SearchResponse searchResponse(SearchHit... hits) {
+        SearchHits searchHits = new SearchHits(hits, new TotalHits(hits.length, TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO), 1.0f);
+        return new SearchResponse(
+            new InternalSearchResponse(searchHits, InternalAggregations.EMPTY, null, null, false, false, 1),
+            null,
+            1,
+            1,
+            0,
+            1,
+            ShardSearchFailure.EMPTY_ARRAY,
+            SearchResponse.Clusters.EMPTY
+        );
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search.dsl;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.havenask.Version;
+import org.havenask.cluster.ClusterChangedEvent;
+import org.havenask.cluster.ClusterName;
+import org.havenask.cluster.ClusterState;
+import org.havenask.cluster.metadata.IndexMetadata;
+import org.havenask.cluster.metadata.Metadata;
+import org.havenask.test.HavenaskTestCase;
+
+public class DSLPlanCacheTests extends HavenaskTestCase {
+
+    private IndexMetadata indexMetadata(long mappingVersion, String mapping) throws IOException {
+        return IndexMetadata.builder("test")
+            .settings(settings(Version.CURRENT).put(IndexMetadata.SETTING_INDEX_UUID, "test_uuid"))
+            .numberOfShards(1)
+            .numberOfReplicas(0)
+            .putMapping("_doc", mapping)
+            .mappingVersion(mappingVersion)
+            .build();
+    }
+
+    public void testCacheHitAndMappingChange() throws IOException {
+        DSLPlanCache cache = new DSLPlanCache();
+        IndexMetadata v1 = indexMetadata(1, "{\"_doc\":{\"properties\":{\"user\":{\"properties\":{\"name\":{\"type\":\"keyword\"}}}}}}");
+
+        DSLPlanCache.IndexPlan plan = cache.getIndexPlan(v1);
+        assertTrue(plan.isSourceEnabled());
+        assertEquals(Map.of("type", "keyword"), plan.getFlattenFields().get("properties_user_name"));
+        assertSame(plan, cache.getIndexPlan(v1));
+        assertEquals(1, cache.stats().getHitCount());
+        assertEquals(1, cache.stats().getMissCount());
+
+        // mapping version变化后重建
+        IndexMetadata v2 = indexMetadata(
+            2,
+            "{\"_doc\":{\"_source\":{\"enabled\":false},\"properties\":{\"image\":{\"type\":\"vector\",\"similarity\":\"dot_product\"}}}}"
+        );
+        DSLPlanCache.IndexPlan newPlan = cache.getIndexPlan(v2);
+        assertNotSame(plan, newPlan);
+        assertFalse(newPlan.isSourceEnabled());
+        assertNull(newPlan.getFlattenFields().get("properties_user_name"));
+        assertNotNull(newPlan.getFlattenFields().get("properties_image"));
+        assertSame(newPlan, cache.getIndexPlan(v2));
+
+        // 持有旧metadata的查询不会覆盖新的plan
+        assertNotSame(newPlan, cache.getIndexPlan(v1));
+        assertSame(newPlan, cache.getIndexPlan(v2));
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.stats().getHitCount());
+        assertEquals(3, cache.stats().getMissCount());
+    }
+
+    public void testEvictOnIndexDeleted() throws IOException {
+        DSLPlanCache cache = new DSLPlanCache();
+        IndexMetadata indexMetadata = indexMetadata(1, "{\"_doc\":{\"properties\":{\"name\":{\"type\":\"keyword\"}}}}");
+        cache.getIndexPlan(indexMetadata);
+        assertEquals(1, cache.size());
+
+        ClusterState previous = ClusterState.builder(new ClusterName("test"))
+            .metadata(Metadata.builder().put(indexMetadata, false))
+            .build();
+        ClusterState current = ClusterState.builder(previous).metadata(Metadata.builder()).build();
+        cache.clusterChanged(new ClusterChangedEvent("test", current, previous));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.stats().getEvictions());
+    }
+
+    public void testEmptyMapping() {
+        DSLPlanCache.IndexPlan plan = new DSLPlanCache.IndexPlan(0, null);
+        assertTrue(plan.isSourceEnabled());
+        assertTrue(plan.getFlattenFields().isEmpty());
+    }
+}
@@ -16,6 +16,7 @@ package org.havenask.engine.search.dsl.expression;
 
 import org.havenask.index.query.QueryBuilders;
 import org.havenask.search.aggregations.AggregationBuilders;
+import org.havenask.search.aggregations.bucket.histogram.DateHistogramInterval;
 import org.havenask.search.builder.SearchSourceBuilder;
 import org.havenask.search.sort.SortOrder;
 import org.havenask.test.HavenaskTestCase;
@@ -79,12 +80,12 @@ public class AggregationSQLExpressionTests extends HavenaskTestCase {
         List<AggregationSQLExpression> aggregationSQLExpressionList = sourceExpression.getAggregationSQLExpressions("table1");
         assertEquals(5, aggregationSQLExpressionList.size());
         assertEquals(
-            "SELECT `field1` AS `group_by_field1`, SUM(`field11`) AS `sum_field11`, AVG(`field11`) AS `avg_field11`"
+            "SELECT `field1` AS `group_by_field1`, SUM(`field11`) AS `sum_field11`, AVG(`field11`) AS `avg_field11`, COUNT(*)"
                 + " FROM `table1` WHERE (`field1` = 'value1' AND `field2` = 'value2')  GROUP BY `field1` LIMIT 10 ",
             aggregationSQLExpressionList.get(0).translate()
         );
         assertEquals(
-            "SELECT `field1` AS `group_by_field1`, `field11` AS `group_by_field11`, SUM(`field111`) AS `sum_field111` "
+            "SELECT `field1` AS `group_by_field1`, `field11` AS `group_by_field11`, SUM(`field111`) AS `sum_field111`, COUNT(*) "
                 + "FROM `table1` WHERE (`field1` = 'value1' AND `field2` = 'value2')  GROUP BY `field1`, `field11` LIMIT 100 ",
             aggregationSQLExpressionList.get(1).translate()
         );
@@ -94,7 +95,7 @@ public class AggregationSQLExpressionTests extends HavenaskTestCase {
             aggregationSQLExpressionList.get(2).translate()
         );
         assertEquals(
-            "SELECT `field2` AS `group_by_field2`, SUM(`field21`) AS `sum_field21`, AVG(`field21`) AS `avg_field21` "
+            "SELECT `field2` AS `group_by_field2`, SUM(`field21`) AS `sum_field21`, AVG(`field21`) AS `avg_field21`, COUNT(*) "
                 + "FROM `table1` WHERE (`field1` = 'value1' AND `field2` = 'value2')  GROUP BY `field2` LIMIT 10 ",
             aggregationSQLExpressionList.get(3).translate()
         );
@@ -104,4 +105,38 @@ public class AggregationSQLExpressionTests extends HavenaskTestCase {
             aggregationSQLExpressionList.get(4).translate()
         );
     }
+
+    public void testDateHistogram() {
+        SearchSourceBuilder builder = new SearchSourceBuilder().aggregation(
+            AggregationBuilders.dateHistogram("per_hour")
+                .field("ts")
+                .fixedInterval(DateHistogramInterval.hours(1))
+                .subAggregation(AggregationBuilders.terms("group_by_field1").field("field1").size(5))
+        ).aggregation(AggregationBuilders.dateHistogram("per_week").field("ts").calendarInterval(DateHistogramInterval.WEEK));
+
+        SourceExpression sourceExpression = new SourceExpression(builder);
+        List<AggregationSQLExpression> aggregationSQLExpressionList = sourceExpression.getAggregationSQLExpressions("table1");
+        assertEquals(3, aggregationSQLExpressionList.size());
+        assertEquals(
+            "SELECT (`ts` - MOD(MOD(`ts`, 3600000) + 3600000, 3600000)) AS `per_hour`, COUNT(*) FROM `table1` "
+                + "WHERE 1=1  GROUP BY (`ts` - MOD(MOD(`ts`, 3600000) + 3600000, 3600000)) LIMIT 65535 ",
+            aggregationSQLExpressionList.get(0).translate()
+        );
+        assertEquals(
+            "SELECT (`ts` - MOD(MOD(`ts`, 3600000) + 3600000, 3600000)) AS `per_hour`, `field1` AS `group_by_field1`, COUNT(*) "
+                + "FROM `table1` "
+                + "WHERE 1=1  GROUP BY (`ts` - MOD(MOD(`ts`, 3600000) + 3600000, 3600000)), `field1` LIMIT 65535 ",
+            aggregationSQLExpressionList.get(1).translate()
+        );
+        assertEquals(
+            "SELECT (`ts` - MOD(MOD(`ts` - 345600000, 604800000) + 604800000, 604800000)) AS `per_week`, COUNT(*) FROM `table1` "
+                + "WHERE 1=1  GROUP BY (`ts` - MOD(MOD(`ts` - 345600000, 604800000) + 604800000, 604800000)) LIMIT 65535 ",
+            aggregationSQLExpressionList.get(2).translate()
+        );
+
+        SearchSourceBuilder monthly = new SearchSourceBuilder().aggregation(
+            AggregationBuilders.dateHistogram("per_month").field("ts").calendarInterval(DateHistogramInterval.MONTH)
+        );
+        expectThrows(IllegalArgumentException.class, () -> new SourceExpression(monthly).getAggregationSQLExpressions("table1"));
+    }
 }
@@ -75,6 +75,24 @@ public class KnnQueryTests extends HavenaskTestCase {
         );
     }
 
+    public void testEmbeddingDelimiter() {
+        Map<String, Object> fieldMapping = new HashMap<>();
+        fieldMapping.put("type", "vector");
+        fieldMapping.put("index_options", Map.of("embedding_delimiter", "|"));
+        Map<String, Object> mapping = Map.of("properties", Map.of("field", fieldMapping));
+
+        SearchSourceBuilder builder = new SearchSourceBuilder();
+        builder.knnSearch(List.of(new KnnSearchBuilder("field", new float[] { 1.0f, 2.0f }, 20, 20, null)));
+
+        SourceExpression sourceExpression = new SourceExpression(builder);
+        String actualTranslate = sourceExpression.getQuerySQLExpression("table1", mapping).translate();
+        assertEquals(
+            "SELECT `_id`, ((1/(1+vector_score('field')))) AS _knn_score FROM `table1` WHERE 1=1 "
+                + "AND (MATCHINDEX('field', '1.0|2.0&n=20')) ORDER BY _knn_score DESC LIMIT 10 ",
+            actualTranslate
+        );
+    }
+
     public void testKnnFilter() {
         SearchSourceBuilder builder = new SearchSourceBuilder();
         builder.knnSearch(
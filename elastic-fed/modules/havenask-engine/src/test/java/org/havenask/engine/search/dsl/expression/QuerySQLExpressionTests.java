@@ -96,6 +96,41 @@ public class QuerySQLExpressionTests extends HavenaskTestCase {
         }
     }
 
+    public void testSinglePhaseTranslate() {
+        {
+            SearchSourceBuilder builder = new SearchSourceBuilder();
+            builder.query(QueryBuilders.matchQuery("field", "value"));
+            builder.sort(new ScoreSortBuilder());
+            QuerySQLExpression querySQLExpression = new SourceExpression(builder).getQuerySQLExpression("table", Map.of());
+            assertTrue(querySQLExpression.supportsSinglePhase());
+            assertEquals(
+                "SELECT q.`_id`, q.`_score`, s.`_source`, s.`_routing` FROM (SELECT `_id`, bm25_score() AS _score FROM `table` WHERE "
+                    + "MATCHINDEX('field', 'value', 'default_op:OR') ORDER BY _score DESC LIMIT 10) AS q "
+                    + "LEFT JOIN `table_summary_` AS s ON q.`_id` = s.`_id` ORDER BY q.`_score` DESC ",
+                querySQLExpression.translateSinglePhase()
+            );
+        }
+
+        {
+            SearchSourceBuilder builder = new SearchSourceBuilder();
+            builder.query(QueryBuilders.termQuery("field", "value"));
+            QuerySQLExpression querySQLExpression = new SourceExpression(builder).getQuerySQLExpression("table", Map.of());
+            assertTrue(querySQLExpression.supportsSinglePhase());
+            assertEquals(
+                "SELECT q.`_id`, s.`_source`, s.`_routing` FROM (SELECT `_id` FROM `table` WHERE `field` = 'value' LIMIT 10) AS q "
+                    + "LEFT JOIN `table_summary_` AS s ON q.`_id` = s.`_id` ",
+                querySQLExpression.translateSinglePhase()
+            );
+        }
+
+        {
+            // 按字段排序时join后无法恢复顺序, 走两阶段
+            SearchSourceBuilder builder = new SearchSourceBuilder().sort("field1", SortOrder.ASC);
+            QuerySQLExpression querySQLExpression = new SourceExpression(builder).getQuerySQLExpression("table", Map.of());
+            assertFalse(querySQLExpression.supportsSinglePhase());
+        }
+    }
+
     public void testTermQuery() {
         SearchSourceBuilder builder = new SearchSourceBuilder();
         builder.query(QueryBuilders.termQuery("field", "value"));
@@ -309,7 +344,17 @@ public class QuerySQLExpressionTests extends HavenaskTestCase {
             );
             assertEquals(expectedSql, resSql);
 
+            // 只有_id上界, 或者上下界都有
             havenaskScroll.setLastEmittedDocId(null);
+            havenaskScroll.setEndDocId("m");
+            resSql = sourceExpression.getQuerySQLExpression("table", Map.of()).translate();
+            assertEquals("SELECT `_id` FROM `table` WHERE 1=1 AND `_id` <= 'm' ORDER BY `_id` ASC LIMIT 10 ", resSql);
+            havenaskScroll.setLastEmittedDocId("c");
+            resSql = sourceExpression.getQuerySQLExpression("table", Map.of()).translate();
+            assertEquals("SELECT `_id` FROM `table` WHERE 1=1 AND `_id` > 'c' AND `_id` <= 'm' ORDER BY `_id` ASC LIMIT 10 ", resSql);
+
+            havenaskScroll.setLastEmittedDocId(null);
+            havenaskScroll.setEndDocId(null);
         }
 
         // reindex scroll query
@@ -335,6 +380,17 @@ public class QuerySQLExpressionTests extends HavenaskTestCase {
                 lastEmittedDocId
             );
             assertEquals(expectedSql, resSql);
+
+            // scroll按_id排序时query和fetch可以合并为一条sql
+            QuerySQLExpression querySQLExpression = sourceExpression.getQuerySQLExpression("table", Map.of());
+            assertTrue(querySQLExpression.supportsSinglePhase());
+            expectedSql = String.format(
+                Locale.ROOT,
+                "SELECT q.`_id`, s.`_source`, s.`_routing` FROM (SELECT `_id` FROM `table` WHERE 1=1 AND `_id` > '%s' "
+                    + "ORDER BY `_id` ASC LIMIT 1000) AS q LEFT JOIN `table_summary_` AS s ON q.`_id` = s.`_id` ORDER BY q.`_id` ASC ",
+                lastEmittedDocId
+            );
+            assertEquals(expectedSql, querySQLExpression.translateSinglePhase());
         }
     }
 
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search.dsl.plan;
+
+import org.havenask.client.ha.SqlResponse;
+import org.havenask.common.collect.Tuple;
+import org.havenask.engine.search.dsl.expression.AggregationSQLExpression;
+import org.havenask.engine.search.dsl.expression.SourceExpression;
+import org.havenask.search.aggregations.AggregationBuilders;
+import org.havenask.search.aggregations.InternalAggregations;
+import org.havenask.search.aggregations.bucket.terms.DoubleTerms;
+import org.havenask.search.aggregations.bucket.terms.LongTerms;
+import org.havenask.search.aggregations.bucket.terms.StringTerms;
+import org.havenask.search.aggregations.metrics.InternalAvg;
+import org.havenask.search.aggregations.metrics.InternalSum;
+import org.havenask.search.builder.SearchSourceBuilder;
+import org.havenask.test.HavenaskTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AggExecTests extends HavenaskTestCase {
+    public void testBuildAggregations() {
+        SearchSourceBuilder builder = new SearchSourceBuilder().aggregation(
+            AggregationBuilders.terms("group_by_field1")
+                .field("field1")
+                .size(2)
+                .subAggregation(AggregationBuilders.terms("group_by_field11").field("field11"))
+                .subAggregation(AggregationBuilders.sum("sum_field2").field("field2"))
+        ).aggregation(AggregationBuilders.avg("avg_field3").field("field3"));
+
+        SourceExpression sourceExpression = new SourceExpression(builder);
+        List<AggregationSQLExpression> aggregationSQLExpressions = sourceExpression.getAggregationSQLExpressions("table1");
+        assertEquals(3, aggregationSQLExpressions.size());
+
+        List<Tuple<AggregationSQLExpression, SqlResponse>> aggResults = new ArrayList<>();
+        // group by field1: key, sum_field2, count
+        aggResults.add(
+            new Tuple<>(
+                aggregationSQLExpressions.get(0),
+                sqlResponse(new Object[][] { { "a", 10.0, 3L }, { "b", 5.0, 1L }, { "c", 7.0, 2L } })
+            )
+        );
+        // group by field1, field11: key1, key2, count
+        aggResults.add(
+            new Tuple<>(
+                aggregationSQLExpressions.get(1),
+                sqlResponse(new Object[][] { { "a", 1L, 2L }, { "a", 2L, 1L }, { "c", 1L, 2L }, { "b", 3L, 1L } })
+            )
+        );
+        aggResults.add(new Tuple<>(aggregationSQLExpressions.get(2), sqlResponse(new Object[][] { { 4.5 } })));
+
+        InternalAggregations aggregations = AggExec.buildAggregations(builder.aggregations(), aggResults);
+        assertEquals(2, aggregations.asList().size());
+
+        StringTerms terms = aggregations.get("group_by_field1");
+        // 按doc count倒序取前2个bucket
+        assertEquals(2, terms.getBuckets().size());
+        assertEquals(1L, terms.getSumOfOtherDocCounts());
+        StringTerms.Bucket first = terms.getBuckets().get(0);
+        assertEquals("a", first.getKeyAsString());
+        assertEquals(3L, first.getDocCount());
+        InternalSum sum = first.getAggregations().get("sum_field2");
+        assertEquals(10.0, sum.getValue(), 0.0);
+        LongTerms subTerms = first.getAggregations().get("group_by_field11");
+        assertEquals(2, subTerms.getBuckets().size());
+        assertEquals(1L, subTerms.getBuckets().get(0).getKey());
+        assertEquals(2L, subTerms.getBuckets().get(0).getDocCount());
+
+        StringTerms.Bucket second = terms.getBuckets().get(1);
+        assertEquals("c", second.getKeyAsString());
+        assertEquals(2L, second.getDocCount());
+        LongTerms secondSubTerms = second.getAggregations().get("group_by_field11");
+        assertEquals(1, secondSubTerms.getBuckets().size());
+
+        InternalAvg avg = aggregations.get("avg_field3");
+        assertEquals(4.5, avg.getValue(), 0.0);
+    }
+
+    public void testBuildDoubleTerms() {
+        SearchSourceBuilder builder = new SearchSourceBuilder().aggregation(AggregationBuilders.terms("group_by_price").field("price"));
+        List<AggregationSQLExpression> aggregationSQLExpressions = new SourceExpression(builder).getAggregationSQLExpressions("table1");
+
+        List<Tuple<AggregationSQLExpression, SqlResponse>> aggResults = new ArrayList<>();
+        aggResults.add(new Tuple<>(aggregationSQLExpressions.get(0), sqlResponse(new Object[][] { { 1.5, 2L }, { 2.5, 1L } })));
+
+        InternalAggregations aggregations = AggExec.buildAggregations(builder.aggregations(), aggResults);
+        DoubleTerms terms = aggregations.get("group_by_price");
+        assertEquals(2, terms.getBuckets().size());
+        assertEquals(1.5, terms.getBuckets().get(0).getKey());
+        assertEquals(2L, terms.getBuckets().get(0).getDocCount());
+        assertEquals(2.5, terms.getBuckets().get(1).getKey());
+    }
+
+    private static SqlResponse sqlResponse(Object[][] data) {
+        return new SqlResponse(1, false, 1, data.length, new SqlResponse.SqlResult(data, null, null), new SqlResponse.ErrorInfo(0, "", ""));
+    }
+}
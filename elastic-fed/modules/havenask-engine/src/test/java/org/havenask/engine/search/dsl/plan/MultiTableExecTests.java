@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2021, Alibaba Group;
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.havenask.engine.search.dsl.plan;
+
+import org.apache.lucene.search.TotalHits;
+import org.havenask.action.search.SearchRequest;
+import org.havenask.action.search.SearchResponse;
+import org.havenask.action.search.ShardSearchFailure;
+import org.havenask.common.text.Text;
+import org.havenask.search.DocValueFormat;
+import org.havenask.search.SearchHit;
+import org.havenask.search.SearchHits;
+import org.havenask.search.aggregations.AggregationBuilders;
+import org.havenask.search.aggregations.InternalAggregations;
+import org.havenask.search.aggregations.metrics.InternalSum;
+import org.havenask.search.builder.SearchSourceBuilder;
+import org.havenask.search.internal.InternalSearchResponse;
+import org.havenask.search.sort.SortBuilders;
+import org.havenask.search.sort.SortOrder;
+import org.havenask.test.HavenaskTestCase;
+
+import java.util.Collections;
+import java.util.List;
+
+public class MultiTableExecTests extends HavenaskTestCase {
+    public void testMergeByScore() {
+        MultiTableExec exec = new MultiTableExec(new SearchSourceBuilder().from(1).size(3));
+        assertEquals(0, exec.buildTableSource().from());
+        assertEquals(4, exec.buildTableSource().size());
+
+        SearchResponse table1 = response("table1", 2, new float[] { 5.0f, 3.0f, 1.0f }, 10.0);
+        SearchResponse table2 = response("table2", 1, new float[] { 4.0f, 3.0f }, 2.5);
+        SearchResponse merged = exec.merge(List.of(table1, table2), 10);
+
+        SearchHit[] hits = merged.getHits().getHits();
+        // 排名: 5.0(t1), 4.0(t2), 3.0(t1), 3.0(t2), 1.0(t1), 跳过from=1条后取3条
+        assertEquals(3, hits.length);
+        assertEquals("table2", hits[0].getIndex());
+        assertEquals(4.0f, hits[0].getScore(), 0.0f);
+        assertEquals("table1", hits[1].getIndex());
+        assertEquals(3.0f, hits[1].getScore(), 0.0f);
+        assertEquals("table2", hits[2].getIndex());
+        assertEquals(3.0f, hits[2].getScore(), 0.0f);
+
+        assertEquals(5L, merged.getHits().getTotalHits().value);
+        assertEquals(5.0f, merged.getHits().getMaxScore(), 0.0f);
+        assertEquals(3, merged.getTotalShards());
+        assertEquals(3, merged.getSuccessfulShards());
+
+        InternalSum sum = merged.getAggregations().get("sum_field");
+        assertEquals(12.5, sum.getValue(), 0.0);
+    }
+
+    public void testMergeByScoreAscending() {
+        MultiTableExec exec = new MultiTableExec(new SearchSourceBuilder().size(2).sort(SortBuilders.scoreSort().order(SortOrder.ASC)));
+        SearchResponse table1 = response("table1", 1, new float[] { 2.0f, 6.0f }, 0);
+        SearchResponse table2 = response("table2", 1, new float[] { 1.0f, 7.0f }, 0);
+        SearchHit[] hits = exec.merge(List.of(table1, table2), 10).getHits().getHits();
+        assertEquals(2, hits.length);
+        assertEquals(1.0f, hits[0].getScore(), 0.0f);
+        assertEquals(2.0f, hits[1].getScore(), 0.0f);
+    }
+
+    public void testMergeWithSizeZero() {
+        MultiTableExec exec = new MultiTableExec(new SearchSourceBuilder().size(0));
+        SearchResponse merged = exec.merge(List.of(response("table1", 1, new float[0], 1.0), response("table2", 1, new float[0], 2.0)), 10);
+        assertEquals(0, merged.getHits().getHits().length);
+        InternalSum sum = merged.getAggregations().get("sum_field");
+        assertEquals(3.0, sum.getValue(), 0.0);
+    }
+
+    public void testSupports() {
+        assertTrue(MultiTableExec.supports(new SearchRequest()));
+        assertTrue(MultiTableExec.supports(new SearchRequest().source(new SearchSourceBuilder().sort(SortBuilders.scoreSort()))));
+        assertTrue(
+            MultiTableExec.supports(
+                new SearchRequest().source(new SearchSourceBuilder().aggregation(AggregationBuilders.terms("terms").field("field1")))
+            )
+        );
+        assertFalse(MultiTableExec.supports(new SearchRequest().source(new SearchSourceBuilder().sort("field1"))));
+        assertFalse(
+            MultiTableExec.supports(
+                new SearchRequest().source(
+                    new SearchSourceBuilder().aggregation(
+                        AggregationBuilders.terms("terms").field("field1").subAggregation(AggregationBuilders.avg("avg").field("field2"))
+                    )
+                )
+            )
+        );
+        assertFalse(MultiTableExec.supports(new SearchRequest().scroll("1m")));
+    }
+
+    private static SearchResponse response(String index, int shards, float[] scores, double sum) {
+        SearchHit[] hits = new SearchHit[scores.length];
+        float maxScore = Float.NaN;
+        for (int i = 0; i < scores.length; i++) {
+            hits[i] = new SearchHit(i, index + "-" + i, new Text("_doc"), Collections.emptyMap(), Collections.emptyMap());
+            hits[i].setIndex(index);
+            hits[i].score(scores[i]);
+            maxScore = Float.isNaN(maxScore) ? scores[i] : Math.max(maxScore, scores[i]);
+        }
+        SearchHits searchHits = new SearchHits(hits, new TotalHits(scores.length, TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO), maxScore);
+        InternalAggregations aggregations = InternalAggregations.from(
+            List.of(new InternalSum("sum_field", sum, DocValueFormat.RAW, null))
+        );
+        return new SearchResponse(
+            new InternalSearchResponse(searchHits, aggregations, null, null, false, false, 1),
+            null,
+            shards,
+            shards,
+            0,
+            1,
+            ShardSearchFailure.EMPTY_ARRAY,
+            SearchResponse.Clusters.EMPTY
+        );
+    }
+}
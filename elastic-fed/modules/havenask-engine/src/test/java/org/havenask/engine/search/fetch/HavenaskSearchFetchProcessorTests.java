@@ -18,12 +18,15 @@ import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TotalHits;
 import org.havenask.client.ha.SqlResponse;
+import org.havenask.common.bytes.BytesArray;
 import org.havenask.common.lucene.search.TopDocsAndMaxScore;
+import org.havenask.engine.rpc.ColumnarSqlResponse;
 import org.havenask.engine.rpc.QrsClient;
 import org.havenask.engine.rpc.QrsSqlRequest;
 import org.havenask.engine.search.fetch.HavenaskFetchSubPhase.HitContent;
 import org.havenask.engine.search.HavenaskSearchFetchProcessor;
 import org.havenask.search.SearchHit;
+import org.havenask.search.SearchHits;
 import org.havenask.search.builder.SearchSourceBuilder;
 import org.havenask.search.fetch.subphase.FetchSourceContext;
 import org.havenask.search.internal.InternalSearchResponse;
@@ -233,4 +236,32 @@ public class HavenaskSearchFetchProcessorTests extends HavenaskTestCase {
             assertEquals(resStr[i], internalSearchResponse.hits().getHits()[i].toString());
         }
     }
+
+    public void testExecuteSinglePhaseHits() throws IOException {
+        // _id, _score, _source, _routing, doc 3在summary中不存在
+        String sqlResponseStr = "{\"total_time\":1.0,\"row_count\":3,\"sql_result\":{\"data\":["
+            + "[\"2\",2.0,\"{\\\"image\\\":[2.1, 2.1]}\",\"r2\"],"
+            + "[\"3\",1.5,null,null],"
+            + "[\"1\",1.0,\"{\\\"image\\\":[1.1, 1.1]}\",\"1\"]],"
+            + "\"column_name\":[\"_id\",\"_score\",\"_source\",\"_routing\"],"
+            + "\"column_type\":[\"multi_char\",\"double\",\"multi_char\",\"multi_char\"]},"
+            + "\"error_info\":{\"ErrorCode\":0,\"Error\":\"ERROR_NONE\",\"Message\":\"\"}}";
+        ColumnarSqlResponse sqlResponse = ColumnarSqlResponse.parse(new BytesArray(sqlResponseStr));
+
+        HavenaskSearchFetchProcessor havenaskSearchFetchProcessor = new HavenaskSearchFetchProcessor(qrsClient);
+        SearchHits hits = havenaskSearchFetchProcessor.executeSinglePhaseHits(sqlResponse, "table", new SearchSourceBuilder(), true);
+        assertEquals(3, hits.getHits().length);
+        assertEquals(2.0F, hits.getMaxScore(), 0.0001);
+
+        assertEquals("2", hits.getHits()[0].getId());
+        assertEquals(2.0F, hits.getHits()[0].getScore(), 0.0001);
+        assertEquals(List.of(2.1, 2.1), hits.getHits()[0].getSourceAsMap().get("image"));
+        assertEquals("r2", hits.getHits()[0].field("_routing").getValue());
+
+        assertEquals("3", hits.getHits()[1].getId());
+        assertEquals("source not found", hits.getHits()[1].getSourceAsMap().get("warn"));
+
+        assertEquals("1", hits.getHits()[2].getId());
+        assertNull(hits.getHits()[2].field("_routing"));
+    }
 }
@@ -123,12 +123,24 @@ public class TransportShardMultiGetAction extends TransportSingleShardAction<Mul
             indexShard.refresh("refresh_flag_mget");
         }
 
+        GetResult[] batchedResults = null;
+        try {
+            batchedResults = indexShard.getService().multiGet(request.items, request.realtime());
+        } catch (RuntimeException e) {
+            if (TransportActions.isShardNotAvailableException(e)) {
+                throw e;
+            }
+            logger.debug(() -> new ParameterizedMessage("{} failed to execute batched multi_get, falling back to single gets", shardId), e);
+        }
+
         MultiGetShardResponse response = new MultiGetShardResponse();
         for (int i = 0; i < request.locations.size(); i++) {
             MultiGetRequest.Item item = request.items.get(i);
             try {
-                GetResult getResult = indexShard.getService().get(item.type(), item.id(), item.storedFields(), request.realtime(),
-                    item.version(), item.versionType(), item.fetchSourceContext());
+                GetResult getResult = batchedResults != null && batchedResults[i] != null
+                    ? batchedResults[i]
+                    : indexShard.getService().get(item.type(), item.id(), item.storedFields(), request.realtime(),
+                        item.version(), item.versionType(), item.fetchSourceContext());
                 response.add(request.locations.get(i), new GetResponse(getResult));
             } catch (RuntimeException e) {
                 if (TransportActions.isShardNotAvailableException(e)) {
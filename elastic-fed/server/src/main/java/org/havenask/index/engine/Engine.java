@@ -639,6 +639,15 @@ public abstract class Engine implements Closeable {
 
     public abstract GetResult get(Get get, BiFunction<String, SearcherScope, Searcher> searcherFactory) throws EngineException;
 
+    /**
+     * Looks up several documents at once, for engines that can serve a batch of ids with fewer round trips than one
+     * {@link #get} per id. Returns {@code null} if batching is not supported. A {@code null} element means that the
+     * document was not looked up and the caller should fall back to {@link #get} for it.
+     */
+    public GetResult[] multiGet(List<Get> gets, BiFunction<String, SearcherScope, Searcher> searcherFactory) throws EngineException {
+        return null;
+    }
+
     /**
      * Acquires a point-in-time reader that can be used to create {@link Engine.Searcher}s on demand.
      */
@@ -47,6 +47,7 @@ import org.apache.lucene.index.IndexableFieldType;
 import org.apache.lucene.index.StoredFieldVisitor;
 import org.apache.lucene.index.Term;
 import org.havenask.HavenaskException;
+import org.havenask.action.get.MultiGetRequest;
 import org.havenask.common.Nullable;
 import org.havenask.common.bytes.BytesReference;
 import org.havenask.common.collect.Tuple;
@@ -80,6 +81,7 @@ import org.havenask.index.shard.IndexShard;
 import org.havenask.search.fetch.subphase.FetchSourceContext;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -134,6 +136,73 @@ public final class ShardGetService extends AbstractIndexShardComponent {
         }
     }
 
+    /**
+     * Looks up the given multi get items with one batched engine lookup, see {@link Engine#multiGet}. Returns one entry per
+     * item, or {@code null} if the engine can't batch them. A {@code null} entry means the item wasn't looked up (or its
+     * lookup failed) and has to be fetched with {@link #get} so that it fails on its own.
+     */
+    public GetResult[] multiGet(List<MultiGetRequest.Item> items, boolean realtime) {
+        DocumentMapper mapper = mapperService.documentMapper();
+        if (mapper == null || items.size() < 2) {
+            return null;
+        }
+        currentMetric.inc(items.size());
+        try {
+            long now = System.nanoTime();
+            List<Engine.Get> gets = new ArrayList<>(items.size());
+            for (MultiGetRequest.Item item : items) {
+                String type = item.type() == null || item.type().equals("_all") ? mapper.type() : item.type();
+                Term uidTerm = new Term(IdFieldMapper.NAME, Uid.encodeId(item.id()));
+                gets.add(new Engine.Get(realtime, realtime, type, item.id(), uidTerm)
+                    .version(item.version()).versionType(item.versionType()));
+            }
+            Engine.GetResult[] engineResults = indexShard.multiGet(gets);
+            if (engineResults == null) {
+                return null;
+            }
+
+            GetResult[] results = new GetResult[items.size()];
+            for (int i = 0; i < items.size(); i++) {
+                Engine.GetResult get = engineResults[i];
+                if (get == null) {
+                    continue;
+                }
+                MultiGetRequest.Item item = items.get(i);
+                Engine.Get engineGet = gets.get(i);
+                try {
+                    if (get.exists()) {
+                        FetchSourceContext fetchSourceContext = normalizeFetchSourceContent(item.fetchSourceContext(), item.storedFields());
+                        results[i] = innerGetLoadFromStoredFields(engineGet.type(), item.id(), item.storedFields(), fetchSourceContext, get,
+                            mapperService);
+                    } else {
+                        results[i] = new GetResult(shardId.getIndexName(), engineGet.type(), item.id(), UNASSIGNED_SEQ_NO,
+                            UNASSIGNED_PRIMARY_TERM, -1, false, null, null, null);
+                    }
+                } catch (RuntimeException e) {
+                    // leave it to the single get to report the failure of this item
+                    results[i] = null;
+                } finally {
+                    get.close();
+                }
+            }
+
+            long tookPerItem = (System.nanoTime() - now) / items.size();
+            for (GetResult result : results) {
+                if (result == null) {
+                    continue;
+                }
+                if (result.isExists()) {
+                    existsMetric.inc(tookPerItem);
+                } else {
+                    missingMetric.inc(tookPerItem);
+                }
+            }
+            return results;
+        } finally {
+            currentMetric.dec(items.size());
+        }
+    }
+
     public GetResult getForUpdate(String type, String id, long ifSeqNo, long ifPrimaryTerm) {
         return get(type, id, new String[]{RoutingFieldMapper.NAME}, true,
             Versions.MATCH_ANY, VersionType.INTERNAL, ifSeqNo, ifPrimaryTerm, FetchSourceContext.FETCH_SOURCE);
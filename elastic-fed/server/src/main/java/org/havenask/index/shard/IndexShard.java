@@ -977,6 +977,23 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         return getEngine().get(get, this::acquireSearcher);
     }
 
+    /**
+     * Looks up several documents at once, see {@link Engine#multiGet}. Returns {@code null} if the engine can't batch them.
+     */
+    public Engine.GetResult[] multiGet(List<Engine.Get> gets) {
+        readAllowed();
+        DocumentMapper mapper = mapperService.documentMapper();
+        if (mapper == null) {
+            return null;
+        }
+        for (Engine.Get get : gets) {
+            if (mapper.type().equals(mapperService.resolveDocumentType(get.type())) == false) {
+                return null;
+            }
+        }
+        return getEngine().multiGet(gets, this::acquireSearcher);
+    }
+
     /**
      * Writes all indexing changes to disk and opens a new searcher reflecting all changes.  This can throw {@link AlreadyClosedException}.
      */
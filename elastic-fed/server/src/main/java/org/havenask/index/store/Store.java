@@ -1007,6 +1007,8 @@ public class Store extends AbstractIndexShardComponent implements Closeable, Ref
          * The metadata transfers the {@code segments_N} file content as it's hash</li>
          * </ul>
          * <p>
+         * Havenask index files inside a segment directory are treated per havenask segment directory the same way.
+         * <p>
          * NOTE: this diff will not contain the {@code segments.gen} file. This file is omitted on recovery.
          */
         public RecoveryDiff recoveryDiff(MetadataSnapshot recoveryTargetSnapshot) {
@@ -1020,6 +1022,12 @@ public class Store extends AbstractIndexShardComponent implements Closeable, Ref
                 if (IndexFileNames.OLD_SEGMENTS_GEN.equals(meta.name())) { // legacy
                     continue; // we don't need that file at all
                 }
+                final String havenaskSegmentDir = havenaskSegmentDir(meta.name());
+                if (havenaskSegmentDir != null) {
+                    // havenask files are grouped by their segment directory so that unchanged segments are reused
+                    perSegment.computeIfAbsent(havenaskSegmentDir, k -> new ArrayList<>()).add(meta);
+                    continue;
+                }
                 final String segmentId = IndexFileNames.parseSegmentName(meta.name());
                 final String extension = IndexFileNames.getExtension(meta.name());
                 if (IndexFileNames.SEGMENTS.equals(segmentId) ||
@@ -1061,6 +1069,27 @@ public class Store extends AbstractIndexShardComponent implements Closeable, Ref
             return recoveryDiff;
         }
 
+        /**
+         * Returns the segment directory of a havenask index file, e.g. {@code segment_1_level_0} for
+         * {@code segment_1_level_0/attribute/_id/data}, or {@code null} if the file is not inside a directory.
+         * Lucene file names never contain a path separator.
+         */
+        static String havenaskSegmentDir(String name) {
+            final int lastSlash = name.lastIndexOf('/');
+            if (lastSlash < 0) {
+                return null;
+            }
+            int start = 0;
+            while (start < lastSlash) {
+                final int end = name.indexOf('/', start);
+                if (name.startsWith("segment_", start)) {
+                    return name.substring(0, end);
+                }
+                start = end + 1;
+            }
+            return name.substring(0, lastSlash);
+        }
+
         /**
          * Returns the number of files in this snapshot
          */
@@ -56,6 +56,7 @@ import org.havenask.common.collect.Tuple;
 import org.havenask.common.component.AbstractLifecycleComponent;
 import org.havenask.common.inject.Inject;
 import org.havenask.common.settings.Settings;
+import org.havenask.common.unit.ByteSizeValue;
 import org.havenask.common.util.concurrent.FutureUtils;
 import org.havenask.index.IndexService;
 import org.havenask.index.shard.IndexEventListener;
@@ -346,9 +347,15 @@ public class PeerRecoverySourceService extends AbstractLifecycleComponent implem
                 final RemoteRecoveryTargetHandler recoveryTarget =
                     new RemoteRecoveryTargetHandler(request.recoveryId(), request.shardId(), transportService,
                         request.targetNode(), recoverySettings, throttleTime -> shard.recoveryStats().addThrottleTime(throttleTime));
+                // havenask segment files are large and immutable, send them in bigger and more concurrent chunks
+                final boolean havenaskIndex = IndexShard.isHavenaskIndex(shard.indexSettings().getSettings());
+                final ByteSizeValue chunkSize = havenaskIndex ? recoverySettings.getHavenaskChunkSize() : recoverySettings.getChunkSize();
+                final int maxConcurrentFileChunks = havenaskIndex
+                    ? recoverySettings.getHavenaskMaxConcurrentFileChunks()
+                    : recoverySettings.getMaxConcurrentFileChunks();
                 handler = new RecoverySourceHandler(shard, recoveryTarget, shard.getThreadPool(), request,
-                    Math.toIntExact(recoverySettings.getChunkSize().getBytes()),
-                    recoverySettings.getMaxConcurrentFileChunks(),
+                    Math.toIntExact(chunkSize.getBytes()),
+                    maxConcurrentFileChunks,
                     recoverySettings.getMaxConcurrentOperations());
                 return Tuple.tuple(handler, recoveryTarget);
             }
@@ -65,6 +65,20 @@ public class RecoverySettings {
     public static final Setting<Integer> INDICES_RECOVERY_MAX_CONCURRENT_FILE_CHUNKS_SETTING =
         Setting.intSetting("indices.recovery.max_concurrent_file_chunks", 2, 1, 5, Property.Dynamic, Property.NodeScope);
 
+    /**
+     * The size of the file chunks sent when recovering havenask indices. Havenask tables are made of large immutable segment files,
+     * so bigger chunks than the lucene default cut the number of round trips; throughput is still bounded by max_bytes_per_sec.
+     */
+    public static final Setting<ByteSizeValue> INDICES_RECOVERY_HAVENASK_CHUNK_SIZE_SETTING =
+        Setting.byteSizeSetting("indices.recovery.havenask.chunk_size", new ByteSizeValue(4, ByteSizeUnit.MB),
+            new ByteSizeValue(512, ByteSizeUnit.KB), new ByteSizeValue(64, ByteSizeUnit.MB), Property.Dynamic, Property.NodeScope);
+
+    /**
+     * Controls the maximum number of file chunk requests that can be sent concurrently when recovering havenask indices.
+     */
+    public static final Setting<Integer> INDICES_RECOVERY_HAVENASK_MAX_CONCURRENT_FILE_CHUNKS_SETTING =
+        Setting.intSetting("indices.recovery.havenask.max_concurrent_file_chunks", 4, 1, 16, Property.Dynamic, Property.NodeScope);
+
     /**
      * Controls the maximum number of operation chunk requests that can be sent concurrently from the source node to the target node.
      */
@@ -127,11 +141,15 @@ public class RecoverySettings {
     private volatile TimeValue internalActionLongTimeout;
 
     private volatile ByteSizeValue chunkSize = DEFAULT_CHUNK_SIZE;
+    private volatile ByteSizeValue havenaskChunkSize;
+    private volatile int havenaskMaxConcurrentFileChunks;
 
     public RecoverySettings(Settings settings, ClusterSettings clusterSettings) {
         this.retryDelayStateSync = INDICES_RECOVERY_RETRY_DELAY_STATE_SYNC_SETTING.get(settings);
         this.maxConcurrentFileChunks = INDICES_RECOVERY_MAX_CONCURRENT_FILE_CHUNKS_SETTING.get(settings);
         this.maxConcurrentOperations = INDICES_RECOVERY_MAX_CONCURRENT_OPERATIONS_SETTING.get(settings);
+        this.havenaskChunkSize = INDICES_RECOVERY_HAVENASK_CHUNK_SIZE_SETTING.get(settings);
+        this.havenaskMaxConcurrentFileChunks = INDICES_RECOVERY_HAVENASK_MAX_CONCURRENT_FILE_CHUNKS_SETTING.get(settings);
         // doesn't have to be fast as nodes are reconnected every 10s by default (see InternalClusterService.ReconnectToNodes)
         // and we want to give the master time to remove a faulty node
         this.retryDelayNetwork = INDICES_RECOVERY_RETRY_DELAY_NETWORK_SETTING.get(settings);
@@ -155,6 +173,9 @@ public class RecoverySettings {
         clusterSettings.addSettingsUpdateConsumer(INDICES_RECOVERY_MAX_CONCURRENT_FILE_CHUNKS_SETTING, this::setMaxConcurrentFileChunks);
         clusterSettings.addSettingsUpdateConsumer(INDICES_RECOVERY_MAX_CONCURRENT_OPERATIONS_SETTING,
             this::setMaxConcurrentOperations);
+        clusterSettings.addSettingsUpdateConsumer(INDICES_RECOVERY_HAVENASK_CHUNK_SIZE_SETTING, this::setHavenaskChunkSize);
+        clusterSettings.addSettingsUpdateConsumer(INDICES_RECOVERY_HAVENASK_MAX_CONCURRENT_FILE_CHUNKS_SETTING,
+            this::setHavenaskMaxConcurrentFileChunks);
         clusterSettings.addSettingsUpdateConsumer(INDICES_RECOVERY_RETRY_DELAY_STATE_SYNC_SETTING, this::setRetryDelayStateSync);
         clusterSettings.addSettingsUpdateConsumer(INDICES_RECOVERY_RETRY_DELAY_NETWORK_SETTING, this::setRetryDelayNetwork);
         clusterSettings.addSettingsUpdateConsumer(INDICES_RECOVERY_INTERNAL_ACTION_TIMEOUT_SETTING, this::setInternalActionTimeout);
@@ -236,6 +257,22 @@ public class RecoverySettings {
         return maxConcurrentFileChunks;
     }
 
+    public ByteSizeValue getHavenaskChunkSize() {
+        return havenaskChunkSize;
+    }
+
+    private void setHavenaskChunkSize(ByteSizeValue havenaskChunkSize) {
+        this.havenaskChunkSize = havenaskChunkSize;
+    }
+
+    public int getHavenaskMaxConcurrentFileChunks() {
+        return havenaskMaxConcurrentFileChunks;
+    }
+
+    private void setHavenaskMaxConcurrentFileChunks(int havenaskMaxConcurrentFileChunks) {
+        this.havenaskMaxConcurrentFileChunks = havenaskMaxConcurrentFileChunks;
+    }
+
     private void setMaxConcurrentFileChunks(int maxConcurrentFileChunks) {
         this.maxConcurrentFileChunks = maxConcurrentFileChunks;
     }
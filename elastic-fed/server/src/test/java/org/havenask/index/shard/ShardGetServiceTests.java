@@ -39,11 +39,17 @@
 package org.havenask.index.shard;
 
 import org.havenask.Version;
+import org.havenask.action.get.MultiGetRequest;
 import org.havenask.cluster.metadata.IndexMetadata;
+import org.havenask.cluster.routing.RecoverySource;
+import org.havenask.cluster.routing.ShardRouting;
+import org.havenask.cluster.routing.ShardRoutingState;
+import org.havenask.cluster.routing.TestShardRouting;
 import org.havenask.common.settings.Settings;
 import org.havenask.common.xcontent.XContentType;
 import org.havenask.index.VersionType;
 import org.havenask.index.engine.Engine;
+import org.havenask.index.engine.InternalEngine;
 import org.havenask.index.engine.VersionConflictEngineException;
 import org.havenask.index.get.GetResult;
 import org.havenask.index.mapper.RoutingFieldMapper;
@@ -51,6 +57,9 @@ import org.havenask.search.fetch.subphase.FetchSourceContext;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
 
 import static org.havenask.index.seqno.SequenceNumbers.UNASSIGNED_PRIMARY_TERM;
 import static org.havenask.index.seqno.SequenceNumbers.UNASSIGNED_SEQ_NO;
@@ -188,6 +197,53 @@ public class ShardGetServiceTests extends IndexShardTestCase {
         closeShards(primary);
     }
 
+    public void testMultiGet() throws IOException {
+        Settings settings = Settings.builder().put(IndexMetadata.SETTING_VERSION_CREATED, Version.CURRENT)
+            .put(IndexMetadata.SETTING_NUMBER_OF_REPLICAS, 1)
+            .put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, 1)
+            .build();
+        IndexMetadata metadata = IndexMetadata.builder("test")
+            .putMapping("test", "{ \"properties\": { \"foo\":  { \"type\": \"text\"}}}")
+            .settings(settings)
+            .primaryTerm(0, 1).build();
+        List<MultiGetRequest.Item> items = Arrays.asList(
+            new MultiGetRequest.Item("test", "test", "0"),
+            new MultiGetRequest.Item("test", "test", "1"),
+            new MultiGetRequest.Item("test", "test", "2"));
+
+        // engines without batched lookups fall back to single gets
+        IndexShard shard = newShard(new ShardId(metadata.getIndex(), 0), true, "n1", metadata, null);
+        recoverShardFromStore(shard);
+        indexDoc(shard, "test", "0", "{\"foo\" : \"bar\"}");
+        assertNull(shard.getService().multiGet(items, true));
+        closeShards(shard);
+
+        // the second document is left to a single get
+        ShardRouting routing = TestShardRouting.newShardRouting(new ShardId(metadata.getIndex(), 0), "n1", true,
+            ShardRoutingState.INITIALIZING, RecoverySource.EmptyStoreRecoverySource.INSTANCE);
+        shard = newShard(routing, metadata, null, config -> new InternalEngine(config) {
+            @Override
+            public GetResult[] multiGet(List<Get> gets, BiFunction<String, SearcherScope, Searcher> searcherFactory) {
+                GetResult[] results = new GetResult[gets.size()];
+                for (int i = 0; i < gets.size(); i++) {
+                    results[i] = i == 1 ? null : get(gets.get(i), searcherFactory);
+                }
+                return results;
+            }
+        });
+        recoverShardFromStore(shard);
+        indexDoc(shard, "test", "0", "{\"foo\" : \"bar\"}");
+        indexDoc(shard, "test", "1", "{\"foo\" : \"baz\"}");
+        GetResult[] results = shard.getService().multiGet(items, true);
+        assertEquals(3, results.length);
+        assertTrue(results[0].isExists());
+        assertEquals("{\"foo\" : \"bar\"}", new String(results[0].source(), StandardCharsets.UTF_8));
+        assertNull(results[1]);
+        assertFalse(results[2].isExists());
+        assertEquals(2, shard.getService().stats().getCount());
+        closeShards(shard);
+    }
+
     public void testTypelessGetForUpdate() throws IOException {
         Settings settings = Settings.builder().put(IndexMetadata.SETTING_VERSION_CREATED, Version.CURRENT)
                 .put(IndexMetadata.SETTING_NUMBER_OF_REPLICAS, 1)